@@ -0,0 +1,179 @@
+package DiaryManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Metadata for every backup, kept in {@code backups/backup_catalog.ser} and
+ * updated whenever a backup is created. Listing and date searches read only
+ * this file; an archive is opened once, the first time it is seen without a
+ * record (older backups, or ones copied in by hand).
+ */
+public class BackupCatalog implements Serializable {
+    // 2: entry counts and days leave out dictionaries and other non-entry files
+    private static final long serialVersionUID = 2L;
+    private static final String CATALOG_FILE = "backup_catalog.ser";
+    
+    public static class BackupRecord implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String fileName;
+        private final String relativePath;
+        private final long sizeBytes;
+        private final int entryCount;
+        private final int[] entryDays;
+        private final String parent;
+        private final String checksum;
+        
+        BackupRecord(String fileName, String relativePath, long sizeBytes, int entryCount,
+                     int[] entryDays, String parent, String checksum) {
+            this.fileName = fileName;
+            this.relativePath = relativePath;
+            this.sizeBytes = sizeBytes;
+            this.entryCount = entryCount;
+            this.entryDays = entryDays;
+            this.parent = parent;
+            this.checksum = checksum;
+        }
+        
+        public String getFileName() { return fileName; }
+        public String getRelativePath() { return relativePath; }
+        public long getSizeBytes() { return sizeBytes; }
+        public int getEntryCount() { return entryCount; }
+        public String getParent() { return parent; }
+        public String getChecksum() { return checksum; }
+        
+        public LocalDate getFirstEntryDate() {
+            return entryDays.length == 0 ? null : LocalDate.ofEpochDay(entryDays[0]);
+        }
+        
+        public LocalDate getLastEntryDate() {
+            return entryDays.length == 0 ? null : LocalDate.ofEpochDay(entryDays[entryDays.length - 1]);
+        }
+        
+        public boolean containsEntriesFrom(LocalDate date) {
+            return Arrays.binarySearch(entryDays, (int) date.toEpochDay()) >= 0;
+        }
+    }
+    
+    private final TreeMap<String, BackupRecord> records = new TreeMap<>();
+    
+    public static synchronized BackupCatalog load(Path backupDir) {
+        Path file = backupDir.resolve(CATALOG_FILE);
+        if (Files.exists(file)) {
+            try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(file))) {
+                return (BackupCatalog) ois.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                System.err.println("Backup catalog unreadable, rebuilding: " + e.getMessage());
+            }
+        }
+        return new BackupCatalog();
+    }
+    
+    public synchronized void save(Path backupDir) throws IOException {
+        Path file = backupDir.resolve(CATALOG_FILE);
+        Path temp = backupDir.resolve(CATALOG_FILE + ".tmp");
+        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(temp))) {
+            oos.writeObject(this);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    /** Adds a freshly written backup, given the names of the files it contains; only entries are counted. */
+    public synchronized BackupRecord record(Path backupDir, Path backupFile, Collection<String> fileNames) throws IOException {
+        List<String> entryNames = fileNames.stream()
+            .map(name -> Paths.get(name).getFileName().toString())
+            .filter(DiaryEntry::isEntryFile)
+            .collect(Collectors.toList());
+        String relative = backupDir.relativize(backupFile).toString();
+        String parent = records.isEmpty() ? null : records.lastKey();
+        BackupRecord record = new BackupRecord(backupFile.getFileName().toString(), relative,
+            Files.size(backupFile), entryNames.size(), entryDays(entryNames), parent, sha256(backupFile));
+        records.put(sortKey(backupFile), record);
+        return record;
+    }
+    
+    /**
+     * Brings the catalog in line with the directory: drops records for deleted
+     * backups and catalogs unknown ones. Returns true if anything changed.
+     */
+    public synchronized boolean reconcile(Path backupDir) throws IOException {
+        Set<String> present = new HashSet<>();
+        boolean changed = false;
+        for (Path backup : DiaryBackup.listBackups(backupDir.toString())) {
+            String key = sortKey(backup);
+            present.add(key);
+            if (!records.containsKey(key)) {
+                record(backupDir, backup, readEntryNames(backup));
+                changed = true;
+            }
+        }
+        changed |= records.keySet().retainAll(present);
+        return changed;
+    }
+    
+    /** All backups, oldest first. */
+    public synchronized List<BackupRecord> list() {
+        return new ArrayList<>(records.values());
+    }
+    
+    public synchronized List<BackupRecord> findContaining(LocalDate date) {
+        return records.values().stream()
+            .filter(record -> record.containsEntriesFrom(date))
+            .collect(Collectors.toList());
+    }
+    
+    private static String sortKey(Path backup) {
+        return backup.getFileName().toString();
+    }
+    
+    private static int[] entryDays(Collection<String> entryNames) {
+        return entryNames.stream()
+            .map(DiaryEntry::parseTimestamp)
+            .filter(Objects::nonNull)
+            .mapToInt(timestamp -> (int) timestamp.toLocalDate().toEpochDay())
+            .distinct()
+            .sorted()
+            .toArray();
+    }
+    
+    private static List<String> readEntryNames(Path backup) throws IOException {
+        List<String> names = new ArrayList<>();
+        if (backup.toString().endsWith(DedupRepository.MANIFEST_SUFFIX)) {
+            for (String line : Files.readAllLines(backup, StandardCharsets.UTF_8)) {
+                if (line.startsWith("file\t")) {
+                    names.add(line.split("\t", 3)[2]);
+                }
+            }
+        } else {
+            try (ZipFile zip = new ZipFile(backup.toFile())) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory()) {
+                        names.add(entry.getName());
+                    }
+                }
+            }
+        }
+        return names;
+    }
+    
+    private static String sha256(Path file) throws IOException {
+        MessageDigest sha = BackupChecksums.newSha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                sha.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(sha.digest());
+    }
+}
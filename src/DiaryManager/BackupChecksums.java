@@ -0,0 +1,115 @@
+package DiaryManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Record of what a zip backup is supposed to contain, kept next to it as
+ * {@code <backup>.zip.sums}. Each entry carries its size, CRC32C and SHA-256;
+ * files that could not be read at backup time are listed as failed so a
+ * partial backup is visible without opening the archive.
+ */
+public class BackupChecksums {
+    public static final String SUFFIX = ".sums";
+    private static final String HEADER = "# diary backup checksums v1";
+    
+    public static class Entry {
+        public final String name;
+        public final long size;
+        public final String crc32c;
+        public final String sha256;
+        
+        public Entry(String name, long size, String crc32c, String sha256) {
+            this.name = name;
+            this.size = size;
+            this.crc32c = crc32c;
+            this.sha256 = sha256;
+        }
+    }
+    
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final List<String> failed = new ArrayList<>();
+    
+    public static Path sidecarFor(Path backupFile) {
+        return backupFile.resolveSibling(backupFile.getFileName() + SUFFIX);
+    }
+    
+    /** Copies {@code in} to {@code out} and returns the checksums of what was copied. */
+    public static Entry copyAndDigest(String name, InputStream in, OutputStream out) throws IOException {
+        CRC32C crc = new CRC32C();
+        MessageDigest sha = newSha256();
+        byte[] buffer = new byte[64 * 1024];
+        long size = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            crc.update(buffer, 0, read);
+            sha.update(buffer, 0, read);
+            if (out != null) {
+                out.write(buffer, 0, read);
+            }
+            size += read;
+        }
+        return new Entry(name, size, Long.toHexString(crc.getValue()), HexFormat.of().formatHex(sha.digest()));
+    }
+    
+    public void add(Entry entry) {
+        entries.put(entry.name, entry);
+    }
+    
+    public void addFailed(String name) {
+        failed.add(name);
+    }
+    
+    public Map<String, Entry> getEntries() {
+        return Collections.unmodifiableMap(entries);
+    }
+    
+    public List<String> getFailed() {
+        return Collections.unmodifiableList(failed);
+    }
+    
+    public void write(Path file) throws IOException {
+        StringBuilder out = new StringBuilder(HEADER).append('\n');
+        out.append("created\t").append(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).append('\n');
+        for (Entry entry : entries.values()) {
+            out.append("entry\t").append(entry.size).append('\t').append(entry.crc32c).append('\t')
+                .append(entry.sha256).append('\t').append(entry.name).append('\n');
+        }
+        for (String name : failed) {
+            out.append("failed\t").append(name).append('\n');
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, out.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    public static BackupChecksums read(Path file) throws IOException {
+        BackupChecksums checksums = new BackupChecksums();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.startsWith("entry\t")) {
+                String[] fields = line.split("\t", 5);
+                checksums.add(new Entry(fields[4], Long.parseLong(fields[1]), fields[2], fields[3]));
+            } else if (line.startsWith("failed\t")) {
+                checksums.addFailed(line.substring("failed\t".length()));
+            }
+        }
+        return checksums;
+    }
+    
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
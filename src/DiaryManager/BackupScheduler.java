@@ -0,0 +1,150 @@
+package DiaryManager;
+
+import com.diary.EntryStorage;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs zip backups on a single low-priority daemon thread so the menu loop
+ * never waits for one. A backup is due when {@code interval} has passed since
+ * the last one, or when {@code changeThreshold} distinct entries have changed
+ * since then. Reads are throttled to {@code maxBytesPerSecond}.
+ *
+ * Progress and results are kept as short status lines; the CLI prints them
+ * between commands instead of interrupting the user's typing.
+ */
+public class BackupScheduler implements AutoCloseable {
+    private static final DateTimeFormatter BACKUP_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final long CHECK_PERIOD_SECONDS = 30;
+    
+    private final EntryStorage engine;
+    private final String entriesDir;
+    private final String backupDir;
+    private final DiaryConfig config;
+    private final EntryCatalog catalog;
+    private final Duration interval;
+    private final int changeThreshold;
+    private final long maxBytesPerSecond;
+    private final ScheduledExecutorService executor;
+    private final Set<String> changedSinceBackup = ConcurrentHashMap.newKeySet();
+    private final Queue<String> notices = new ConcurrentLinkedQueue<>();
+    private volatile String progress;
+    private Future<?> running;
+    
+    public BackupScheduler(EntryStorage engine, String entriesDir, String backupDir, DiaryConfig config,
+                           EntryCatalog catalog, Duration interval, int changeThreshold, long maxBytesPerSecond) {
+        this.engine = engine;
+        this.entriesDir = entriesDir;
+        this.backupDir = backupDir;
+        this.config = config;
+        this.catalog = catalog;
+        this.interval = interval;
+        this.changeThreshold = changeThreshold;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "diary-backup");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        catalog.addChangeListener(changedSinceBackup::add);
+    }
+    
+    public void start() {
+        executor.scheduleWithFixedDelay(this::backupIfDue, CHECK_PERIOD_SECONDS, CHECK_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    /** Queues a backup now; returns false if one is already queued or running. */
+    public synchronized boolean backupNow() {
+        if (running != null && !running.isDone()) {
+            return false;
+        }
+        running = executor.submit(this::runBackup);
+        return true;
+    }
+    
+    public boolean isRunning() {
+        return progress != null;
+    }
+    
+    /** Current progress line, or null when no backup is running. */
+    public String getProgress() {
+        return progress;
+    }
+    
+    /** Messages about backups that finished since the last call. */
+    public List<String> drainNotices() {
+        List<String> drained = new ArrayList<>();
+        String notice;
+        while ((notice = notices.poll()) != null) {
+            drained.add(notice);
+        }
+        return drained;
+    }
+    
+    private void backupIfDue() {
+        if (catalog.getFiles().isEmpty()) {
+            return;
+        }
+        if (changedSinceBackup.size() >= changeThreshold) {
+            runBackup();
+            return;
+        }
+        LocalDateTime last = lastBackup();
+        if (last == null || Duration.between(last, LocalDateTime.now()).compareTo(interval) >= 0) {
+            runBackup();
+        }
+    }
+    
+    private void runBackup() {
+        // Changes made while the backup runs stay counted for the next one
+        Set<String> covered = new HashSet<>(changedSinceBackup);
+        progress = "starting";
+        try {
+            String backupFile = DiaryBackup.createBackup(engine, entriesDir, backupDir, maxBytesPerSecond,
+                (done, total, bytes) -> progress = String.format("%d/%d entries, %,d bytes", done, total, bytes));
+            config.setLastBackupDate(LocalDateTime.now().format(BACKUP_DATE_FORMAT));
+            changedSinceBackup.removeAll(covered);
+            notices.add("Background backup created: " + backupFile);
+        } catch (IOException e) {
+            notices.add("Background backup failed: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Keep the scheduled task alive; an escaped exception would cancel it
+            notices.add("Background backup failed: " + e);
+        } finally {
+            progress = null;
+        }
+    }
+    
+    private LocalDateTime lastBackup() {
+        String last = config.getLastBackupDate();
+        if (last == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(last, BACKUP_DATE_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+    
+    /** Lets a running backup finish (up to a minute) so no half-written archive is left behind. */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package DiaryManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Checks backups against what they are supposed to contain. Zip backups are
+ * compared entry by entry with their {@link BackupChecksums} sidecar;
+ * deduplicated backups have every referenced chunk re-hashed. Each archive is
+ * verified on its own worker so a full sweep of {@code backups/} uses every
+ * core.
+ */
+public class BackupVerifier {
+    
+    public static class Result {
+        public final Path backup;
+        public final int entriesChecked;
+        public final List<String> problems;
+        public final List<String> warnings;
+        
+        Result(Path backup, int entriesChecked, List<String> problems, List<String> warnings) {
+            this.backup = backup;
+            this.entriesChecked = entriesChecked;
+            this.problems = problems;
+            this.warnings = warnings;
+        }
+        
+        public boolean isOk() {
+            return problems.isEmpty();
+        }
+    }
+    
+    public static Result verify(Path backup, Path backupDir) {
+        try {
+            if (backup.toString().endsWith(DedupRepository.MANIFEST_SUFFIX)) {
+                List<String> problems = new DedupRepository(backupDir).verify(backup);
+                return new Result(backup, -1, problems, Collections.emptyList());
+            }
+            return verifyZip(backup);
+        } catch (IOException e) {
+            return new Result(backup, 0, Collections.singletonList("Unreadable: " + e.getMessage()),
+                Collections.emptyList());
+        }
+    }
+    
+    /** Verifies every backup in {@code backupDir} in parallel, oldest first in the result. */
+    public static List<Result> verifyAll(Path backupDir) throws IOException {
+        List<Path> backups = DiaryBackup.listBackups(backupDir.toString());
+        int threads = Math.max(1, Math.min(backups.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Path backup : backups) {
+                futures.add(pool.submit(() -> verify(backup, backupDir)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Verification interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Verification failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private static Result verifyZip(Path zip) throws IOException {
+        List<String> problems = new ArrayList<>();
+        List<String> warnings = new ArrayList<>();
+        Path sidecar = BackupChecksums.sidecarFor(zip);
+        BackupChecksums expected = Files.exists(sidecar) ? BackupChecksums.read(sidecar) : null;
+        if (expected == null) {
+            warnings.add("No checksum manifest, only archive CRCs were checked");
+        } else {
+            for (String name : expected.getFailed()) {
+                problems.add("Not backed up: " + name);
+            }
+        }
+        
+        int checked = 0;
+        Set<String> seen = new HashSet<>();
+        // ZipFile reads the central directory, so a truncated archive fails here
+        try (ZipFile archive = new ZipFile(zip.toFile())) {
+            Enumeration<? extends ZipEntry> zipEntries = archive.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                if (zipEntry.isDirectory()) {
+                    continue;
+                }
+                seen.add(zipEntry.getName());
+                BackupChecksums.Entry actual;
+                try (InputStream in = archive.getInputStream(zipEntry)) {
+                    actual = BackupChecksums.copyAndDigest(zipEntry.getName(), in, null);
+                } catch (IOException e) {
+                    problems.add("Unreadable entry " + zipEntry.getName() + ": " + e.getMessage());
+                    continue;
+                }
+                checked++;
+                if (expected == null) {
+                    continue;
+                }
+                BackupChecksums.Entry want = expected.getEntries().get(zipEntry.getName());
+                if (want == null) {
+                    problems.add("Unexpected entry " + zipEntry.getName());
+                } else if (want.size != actual.size || !want.crc32c.equals(actual.crc32c)
+                        || !want.sha256.equals(actual.sha256)) {
+                    problems.add("Checksum mismatch " + zipEntry.getName());
+                }
+            }
+        }
+        if (expected != null) {
+            for (String name : expected.getEntries().keySet()) {
+                if (!seen.contains(name)) {
+                    problems.add("Missing entry " + name);
+                }
+            }
+        }
+        return new Result(zip, checked, problems, warnings);
+    }
+}
@@ -0,0 +1,205 @@
+package DiaryManager;
+
+import java.util.*;
+
+/**
+ * Entry text cache bounded by an estimate of the bytes it holds, used by
+ * {@link EntryCatalog} for everything that reads entries: the menu, the HTTP
+ * API, backups and reports.
+ *
+ * Eviction is segmented LRU. A new entry starts in the probation segment and
+ * moves to the protected segment (four fifths of the budget) when it is read
+ * again; overflow from protected drops back into probation rather than out.
+ * Entries read once therefore leave before anything read twice, so paging
+ * through a large diary can't flush the entries someone keeps coming back to.
+ *
+ * Sizes count two bytes per character plus a fixed overhead, the most a
+ * String can cost. Lookups through {@link #get} are counted for
+ * {@link #stats}; {@link #peek} is for bulk passes and neither counts nor
+ * changes the eviction order.
+ */
+public class ContentCache {
+    private static final long ENTRY_OVERHEAD = 96; // String, array and node headers
+    
+    private final long maxBytes;
+    private final long protectedMaxBytes;
+    private final Map<String, Node> nodes = new HashMap<>();
+    // Circular lists through a sentinel: next of the sentinel is the most recent
+    private final Node probation = new Node(null, null);
+    private final Node protectedHead = new Node(null, null);
+    private long probationBytes;
+    private long protectedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /** Snapshot of the counters, from {@link #stats}. */
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long bytes;
+        private final long maxBytes;
+        
+        Stats(long hits, long misses, long evictions, int entries, long bytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+        }
+        
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public int getEntries() { return entries; }
+        public long getBytes() { return bytes; }
+        public long getMaxBytes() { return maxBytes; }
+        
+        /** Hits over lookups, or 0 before the first lookup. */
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions, %d entries in %,d of %,d bytes",
+                hits, misses, getHitRate() * 100, evictions, entries, bytes, maxBytes);
+        }
+    }
+    
+    private static class Node {
+        final String key;
+        String value;
+        long weight;
+        boolean isProtected;
+        Node prev = this;
+        Node next = this;
+        
+        Node(String key, String value) {
+            this.key = key;
+            this.value = value;
+            this.weight = value == null ? 0 : weight(value);
+        }
+    }
+    
+    public ContentCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.protectedMaxBytes = maxBytes / 5 * 4;
+    }
+    
+    /** The cached text, or null on a miss; a hit on a probation entry protects it. */
+    public synchronized String get(String key) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        unlink(node);
+        if (node.isProtected) {
+            linkFirst(protectedHead, node);
+        } else {
+            probationBytes -= node.weight;
+            node.isProtected = true;
+            protectedBytes += node.weight;
+            linkFirst(protectedHead, node);
+            demoteOverflow();
+        }
+        return node.value;
+    }
+    
+    /** The cached text without counting the lookup or touching the eviction order. */
+    public synchronized String peek(String key) {
+        Node node = nodes.get(key);
+        return node == null ? null : node.value;
+    }
+    
+    /** Adds or replaces an entry in probation; text too large to ever fit isn't kept. */
+    public synchronized void put(String key, String value) {
+        remove(key);
+        Node node = new Node(key, value);
+        if (node.weight > maxBytes - protectedMaxBytes) {
+            return;
+        }
+        nodes.put(key, node);
+        linkFirst(probation, node);
+        probationBytes += node.weight;
+        evictOverflow();
+    }
+    
+    public synchronized void remove(String key) {
+        Node node = nodes.remove(key);
+        if (node != null) {
+            unlink(node);
+            if (node.isProtected) {
+                protectedBytes -= node.weight;
+            } else {
+                probationBytes -= node.weight;
+            }
+        }
+    }
+    
+    /** Drops every entry whose key isn't in {@code keys}. */
+    public synchronized void retainAll(Collection<String> keys) {
+        for (String key : new ArrayList<>(nodes.keySet())) {
+            if (!keys.contains(key)) {
+                remove(key);
+            }
+        }
+    }
+    
+    public synchronized void clear() {
+        nodes.clear();
+        probation.prev = probation.next = probation;
+        protectedHead.prev = protectedHead.next = protectedHead;
+        probationBytes = 0;
+        protectedBytes = 0;
+    }
+    
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, nodes.size(), probationBytes + protectedBytes, maxBytes);
+    }
+    
+    private void demoteOverflow() {
+        while (protectedBytes > protectedMaxBytes) {
+            Node oldest = protectedHead.prev;
+            unlink(oldest);
+            protectedBytes -= oldest.weight;
+            oldest.isProtected = false;
+            probationBytes += oldest.weight;
+            linkFirst(probation, oldest);
+        }
+        evictOverflow();
+    }
+    
+    private void evictOverflow() {
+        while (probationBytes + protectedBytes > maxBytes && probation.prev != probation) {
+            Node oldest = probation.prev;
+            unlink(oldest);
+            nodes.remove(oldest.key);
+            probationBytes -= oldest.weight;
+            evictions++;
+        }
+    }
+    
+    private static void linkFirst(Node head, Node node) {
+        node.prev = head;
+        node.next = head.next;
+        head.next.prev = node;
+        head.next = node;
+    }
+    
+    private static void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = node.next = node;
+    }
+    
+    private static long weight(String value) {
+        return ENTRY_OVERHEAD + 2L * value.length();
+    }
+}
@@ -0,0 +1,57 @@
+package DiaryManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunking with a gear rolling hash.
+ *
+ * A boundary is cut wherever the rolling hash of the last bytes has its top
+ * bits clear, so an edit in the middle of an entry only changes the chunks
+ * around it and the rest still deduplicate against earlier backups. Chunks are
+ * kept between 2 KB and 64 KB and average about 8 KB.
+ */
+public class ContentChunker {
+    public static final int MIN_SIZE = 2 * 1024;
+    public static final int MAX_SIZE = 64 * 1024;
+    private static final int AVERAGE_BITS = 13;
+    private static final long BOUNDARY_MASK = ((1L << AVERAGE_BITS) - 1) << (64 - AVERAGE_BITS);
+    private static final long[] GEAR = new long[256];
+    
+    static {
+        // Fixed seed: chunk boundaries must be identical across runs to deduplicate
+        SplittableRandom random = new SplittableRandom(0x5EED_D1A7L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+    
+    public static List<byte[]> split(byte[] data) {
+        List<byte[]> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < data.length) {
+            int end = nextBoundary(data, start);
+            chunks.add(Arrays.copyOfRange(data, start, end));
+            start = end;
+        }
+        return chunks;
+    }
+    
+    private static int nextBoundary(byte[] data, int start) {
+        int remaining = data.length - start;
+        if (remaining <= MIN_SIZE) {
+            return data.length;
+        }
+        int limit = start + Math.min(remaining, MAX_SIZE);
+        long hash = 0;
+        for (int i = start + MIN_SIZE; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xff];
+            if ((hash & BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
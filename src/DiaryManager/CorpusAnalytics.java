@@ -0,0 +1,337 @@
+package DiaryManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Yearly reports over the whole diary: word frequencies, the hours entries
+ * are written at and how long they are.
+ *
+ * Entries are read on a {@link ForkJoinPool}: the file list is split in
+ * halves until pieces are small, each piece is tallied on its own and the
+ * tallies are merged on the way back up. Tallies are kept per month of the
+ * entry filenames together with a fingerprint of that month's files (names,
+ * sizes, modification times, and how many changes the catalog saw to
+ * each). A later run with a changed catalog version only re-reads the
+ * months whose fingerprint moved, which after a few new entries is just the
+ * current one; an unchanged version reuses the report as is. The cache
+ * lives in memory only, since word counts of an encrypted diary must not
+ * land on disk in the clear.
+ */
+public class CorpusAnalytics {
+    public static final int[] LENGTH_BUCKETS = {50, 100, 250, 500, 1000}; // upper bounds in words; last bucket is open
+    private static final int SPLIT_THRESHOLD = 32;
+    private static final String HEADER = "=== Diary Entry ===";
+    private static final String FOOTER = "===================";
+    private static final Pattern TIME = Pattern.compile("(\\d{1,2}):(\\d{2})(?::\\d{2})?\\s*([AaPp][Mm])?");
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+        "the", "and", "for", "was", "with", "that", "this", "have", "had", "but", "not", "are", "you", "all",
+        "from", "they", "were", "been", "has", "his", "her", "she", "him", "its", "our", "out", "about",
+        "into", "then", "than", "them", "what", "when", "there", "their", "which", "would", "could", "just",
+        "some", "very", "also", "too", "did", "got", "get", "can", "one", "again", "after", "before"));
+    
+    private final EntryCatalog catalog;
+    private final Map<String, MonthTally> months = new HashMap<>();
+    private long cachedVersion = -1;
+    private Report cachedReport;
+    
+    public CorpusAnalytics(EntryCatalog catalog) {
+        this.catalog = catalog;
+    }
+    
+    /** Totals for one calendar year. */
+    public static class YearStats {
+        private final int year;
+        private final Map<String, Integer> words = new HashMap<>();
+        private final int[] hours = new int[24];
+        private final int[] lengths = new int[LENGTH_BUCKETS.length + 1];
+        private int entries;
+        private long totalWords;
+        
+        YearStats(int year) {
+            this.year = year;
+        }
+        
+        public int getYear() { return year; }
+        public int getEntries() { return entries; }
+        public long getTotalWords() { return totalWords; }
+        public int[] getHours() { return hours.clone(); }
+        public int[] getLengths() { return lengths.clone(); }
+        
+        public int count(String word) {
+            return words.getOrDefault(word, 0);
+        }
+        
+        public List<Map.Entry<String, Integer>> topWords(int limit) {
+            return top(words, limit);
+        }
+        
+        void merge(YearStats other) {
+            other.words.forEach((word, count) -> words.merge(word, count, Integer::sum));
+            for (int i = 0; i < hours.length; i++) {
+                hours[i] += other.hours[i];
+            }
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] += other.lengths[i];
+            }
+            entries += other.entries;
+            totalWords += other.totalWords;
+        }
+    }
+    
+    /** Result of {@link #analyze}: the years plus how much of the run came from the cache. */
+    public static class Report {
+        private final SortedMap<Integer, YearStats> years;
+        private final int entriesRead;
+        private final int monthsReused;
+        private final int monthsRead;
+        private final long elapsedMillis;
+        
+        Report(SortedMap<Integer, YearStats> years, int entriesRead, int monthsReused, int monthsRead, long elapsedMillis) {
+            this.years = years;
+            this.entriesRead = entriesRead;
+            this.monthsReused = monthsReused;
+            this.monthsRead = monthsRead;
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        public SortedMap<Integer, YearStats> getYears() { return years; }
+        public int getEntriesRead() { return entriesRead; }
+        public int getMonthsReused() { return monthsReused; }
+        public int getMonthsRead() { return monthsRead; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        
+        /** Most frequent words over all years, for following them year by year. */
+        public List<Map.Entry<String, Integer>> topWords(int limit) {
+            Map<String, Integer> all = new HashMap<>();
+            for (YearStats year : years.values()) {
+                year.words.forEach((word, count) -> all.merge(word, count, Integer::sum));
+            }
+            return top(all, limit);
+        }
+    }
+    
+    private static class MonthTally {
+        final long fingerprint;
+        final Map<Integer, YearStats> years;
+        
+        MonthTally(long fingerprint, Map<Integer, YearStats> years) {
+            this.fingerprint = fingerprint;
+            this.years = years;
+        }
+    }
+    
+    public synchronized Report analyze() {
+        long version = catalog.version();
+        if (cachedReport != null && version == cachedVersion) {
+            return new Report(cachedReport.years, 0, months.size(), 0, 0);
+        }
+        long start = System.nanoTime();
+        
+        Map<String, List<String>> filesByMonth = new HashMap<>();
+        for (String filename : catalog.getFiles()) {
+            filesByMonth.computeIfAbsent(monthKey(filename), key -> new ArrayList<>()).add(filename);
+        }
+        months.keySet().retainAll(filesByMonth.keySet());
+        
+        Map<String, Long> stale = new HashMap<>();
+        List<String> toRead = new ArrayList<>();
+        for (Map.Entry<String, List<String>> month : filesByMonth.entrySet()) {
+            long fingerprint = fingerprint(month.getValue());
+            MonthTally cached = months.get(month.getKey());
+            if (cached == null || cached.fingerprint != fingerprint) {
+                stale.put(month.getKey(), fingerprint);
+                toRead.addAll(month.getValue());
+            }
+        }
+        
+        Map<String, Map<Integer, YearStats>> tallies = toRead.isEmpty() ? new HashMap<>()
+            : ForkJoinPool.commonPool().invoke(new TallyTask(toRead, 0, toRead.size()));
+        for (Map.Entry<String, Long> month : stale.entrySet()) {
+            Map<Integer, YearStats> years = tallies.getOrDefault(month.getKey(), new HashMap<>());
+            months.put(month.getKey(), new MonthTally(month.getValue(), years));
+        }
+        
+        SortedMap<Integer, YearStats> years = new TreeMap<>();
+        for (MonthTally month : months.values()) {
+            for (YearStats year : month.years.values()) {
+                years.computeIfAbsent(year.year, YearStats::new).merge(year);
+            }
+        }
+        cachedVersion = version;
+        cachedReport = new Report(Collections.unmodifiableSortedMap(years), toRead.size(),
+            months.size() - stale.size(), stale.size(), (System.nanoTime() - start) / 1_000_000);
+        return cachedReport;
+    }
+    
+    /** Tallies {@code files[from, to)} by filename month, splitting until pieces are small. */
+    private class TallyTask extends RecursiveTask<Map<String, Map<Integer, YearStats>>> {
+        private static final long serialVersionUID = 1L;
+        // Tasks are never serialized; ForkJoinTask is only Serializable by inheritance
+        private final transient List<String> files;
+        private final int from;
+        private final int to;
+        
+        TallyTask(List<String> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected Map<String, Map<Integer, YearStats>> compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                Map<String, Map<Integer, YearStats>> tally = new HashMap<>();
+                for (int i = from; i < to; i++) {
+                    tallyEntry(files.get(i), tally);
+                }
+                return tally;
+            }
+            int middle = (from + to) >>> 1;
+            TallyTask left = new TallyTask(files, from, middle);
+            left.fork();
+            Map<String, Map<Integer, YearStats>> right = new TallyTask(files, middle, to).compute();
+            Map<String, Map<Integer, YearStats>> merged = left.join();
+            right.forEach((month, years) -> {
+                Map<Integer, YearStats> into = merged.computeIfAbsent(month, key -> new HashMap<>());
+                years.forEach((year, stats) -> into.computeIfAbsent(year, YearStats::new).merge(stats));
+            });
+            return merged;
+        }
+    }
+    
+    private void tallyEntry(String filename, Map<String, Map<Integer, YearStats>> tally) {
+        String text;
+        try {
+            text = catalog.scanContent(filename);
+        } catch (IOException e) {
+            return; // Deleted since listing, or unreadable; left out of the report
+        }
+        LocalDateTime timestamp = DiaryEntry.parseTimestamp(filename);
+        LocalDate date = timestamp == null ? null : timestamp.toLocalDate();
+        int hour = timestamp == null ? -1 : timestamp.getHour();
+        
+        // Entries exported from the GUI carry their own Date/Time header, which beats the file time
+        int bodyStart = 0;
+        if (text.startsWith(HEADER)) {
+            int pos = text.indexOf('\n') + 1;
+            while (pos > 0 && pos < text.length()) {
+                int end = text.indexOf('\n', pos);
+                String line = (end < 0 ? text.substring(pos) : text.substring(pos, end)).trim();
+                pos = end < 0 ? text.length() : end + 1;
+                if (line.equals(FOOTER)) {
+                    break;
+                } else if (line.startsWith("Date:")) {
+                    try {
+                        date = LocalDate.parse(line.substring(5).trim());
+                    } catch (DateTimeParseException e) {
+                        // Keep the filename date
+                    }
+                } else if (line.startsWith("Time:")) {
+                    int parsed = parseHour(line.substring(5));
+                    hour = parsed >= 0 ? parsed : hour;
+                }
+            }
+            bodyStart = pos;
+        }
+        if (date == null) {
+            return; // Not a dated entry
+        }
+        
+        YearStats stats = tally.computeIfAbsent(monthKey(filename), key -> new HashMap<>())
+            .computeIfAbsent(date.getYear(), YearStats::new);
+        int entryWords = countWords(text, bodyStart, stats.words);
+        stats.entries++;
+        stats.totalWords += entryWords;
+        if (hour >= 0) {
+            stats.hours[hour]++;
+        }
+        int bucket = 0;
+        while (bucket < LENGTH_BUCKETS.length && entryWords >= LENGTH_BUCKETS[bucket]) {
+            bucket++;
+        }
+        stats.lengths[bucket]++;
+    }
+    
+    /** Counts the words in {@code text} from {@code start} and adds the meaningful ones to {@code counts}. */
+    private static int countWords(String text, int start, Map<String, Integer> counts) {
+        int total = 0;
+        int i = start;
+        while (i < text.length()) {
+            while (i < text.length() && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int wordStart = i;
+            while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '\'')) {
+                i++;
+            }
+            if (i > wordStart) {
+                total++;
+                String word = text.substring(wordStart, i).toLowerCase(Locale.ROOT);
+                if (word.length() > 2 && !STOP_WORDS.contains(word) && !Character.isDigit(word.charAt(0))) {
+                    counts.merge(word, 1, Integer::sum);
+                }
+            }
+        }
+        return total;
+    }
+    
+    static int parseHour(String value) {
+        Matcher matcher = TIME.matcher(value);
+        if (!matcher.find()) {
+            return -1;
+        }
+        int hour = Integer.parseInt(matcher.group(1));
+        String meridiem = matcher.group(3);
+        if (meridiem != null) {
+            if (hour < 1 || hour > 12) {
+                return -1;
+            }
+            hour = hour % 12 + (meridiem.equalsIgnoreCase("PM") ? 12 : 0);
+        }
+        return hour < 24 ? hour : -1;
+    }
+    
+    /** {@code yyyy_MM} of an entry filename, or "" for files without a timestamp. */
+    private static String monthKey(String filename) {
+        return filename.startsWith("diary_") && filename.length() >= 13 ? filename.substring(6, 13) : "";
+    }
+    
+    private long fingerprint(List<String> files) {
+        long hash = 17;
+        for (String filename : files) {
+            long size = -1;
+            long modified = -1;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(catalog.getEntriesDir().resolve(filename),
+                    BasicFileAttributes.class);
+                size = attributes.size();
+                modified = attributes.lastModifiedTime().toMillis();
+            } catch (NoSuchFileException e) {
+                // Gone since listing, or kept by an engine without a file per entry; the change count covers it
+            } catch (IOException e) {
+                // Unreadable attributes count as changed every time
+                modified = System.nanoTime();
+            }
+            // Order-independent, so the month's listing order doesn't matter
+            hash += ((filename.hashCode() * 31L + size) * 31L + modified) * 31L + catalog.changeCount(filename);
+        }
+        return hash * 31 + files.size();
+    }
+    
+    private static List<Map.Entry<String, Integer>> top(Map<String, Integer> counts, int limit) {
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(counts.entrySet());
+        sorted.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+}
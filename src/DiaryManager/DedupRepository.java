@@ -0,0 +1,222 @@
+package DiaryManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Deduplicating backup store under {@code backups/repository}.
+ *
+ * Entries are cut into content-defined chunks ({@link ContentChunker}) and
+ * each chunk is stored once under its SHA-256. A backup is only a small
+ * manifest listing the chunks of every file, so a daily backup of an
+ * unchanged diary costs one manifest instead of a full copy.
+ */
+public class DedupRepository {
+    public static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String MANIFEST_HEADER = "# diary backup manifest v1";
+    
+    private final Path chunksDir;
+    private final Path manifestsDir;
+    
+    public DedupRepository(Path backupDir) {
+        Path root = backupDir.resolve("repository");
+        this.chunksDir = root.resolve("chunks");
+        this.manifestsDir = root.resolve("manifests");
+    }
+    
+    public static class BackupResult {
+        public final Path manifest;
+        public final List<String> entryNames;
+        public final int files;
+        public final long logicalBytes;
+        public final long newChunkBytes;
+        
+        BackupResult(Path manifest, List<String> entryNames, long logicalBytes, long newChunkBytes) {
+            this.manifest = manifest;
+            this.entryNames = entryNames;
+            this.files = entryNames.size();
+            this.logicalBytes = logicalBytes;
+            this.newChunkBytes = newChunkBytes;
+        }
+    }
+    
+    public BackupResult backup(Path entriesDir, String backupName) throws IOException {
+        Files.createDirectories(chunksDir);
+        Files.createDirectories(manifestsDir);
+        
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(entriesDir)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        
+        StringBuilder manifest = new StringBuilder(MANIFEST_HEADER).append('\n');
+        manifest.append("created\t").append(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).append('\n');
+        long logicalBytes = 0;
+        long newChunkBytes = 0;
+        List<String> names = new ArrayList<>();
+        for (Path file : files) {
+            byte[] data;
+            try {
+                data = Files.readAllBytes(file);
+            } catch (IOException e) {
+                System.err.println("Error adding file to backup: " + file);
+                continue;
+            }
+            String name = entriesDir.relativize(file).toString().replace('\\', '/');
+            manifest.append("file\t").append(data.length).append('\t').append(name).append('\n');
+            for (byte[] chunk : ContentChunker.split(data)) {
+                String hash = sha256(chunk);
+                if (storeChunk(hash, chunk)) {
+                    newChunkBytes += chunk.length;
+                }
+                manifest.append("chunk\t").append(hash).append('\t').append(chunk.length).append('\n');
+            }
+            logicalBytes += data.length;
+            names.add(name);
+        }
+        
+        Path manifestFile = manifestsDir.resolve(backupName + MANIFEST_SUFFIX);
+        writeAtomically(manifestFile, manifest.toString().getBytes(StandardCharsets.UTF_8));
+        return new BackupResult(manifestFile, names, logicalBytes, newChunkBytes);
+    }
+    
+    public List<Path> listManifests() throws IOException {
+        if (!Files.isDirectory(manifestsDir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> listing = Files.list(manifestsDir)) {
+            return listing
+                .filter(path -> path.toString().endsWith(MANIFEST_SUFFIX))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+    
+    public void restore(Path manifestFile, Path restoreDir) throws IOException {
+        Files.createDirectories(restoreDir);
+        Path target = null;
+        OutputStream out = null;
+        try {
+            for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", 3);
+                if (fields[0].equals("file")) {
+                    if (out != null) {
+                        out.close();
+                    }
+                    target = restoreDir.resolve(fields[2]).normalize();
+                    if (!target.startsWith(restoreDir.normalize())) {
+                        throw new IOException("Manifest entry escapes restore directory: " + fields[2]);
+                    }
+                    Files.createDirectories(target.getParent());
+                    out = Files.newOutputStream(target);
+                } else if (fields[0].equals("chunk")) {
+                    if (out == null) {
+                        throw new IOException("Chunk before file entry in " + manifestFile);
+                    }
+                    byte[] chunk = readChunk(fields[1]);
+                    if (!sha256(chunk).equals(fields[1])) {
+                        throw new IOException("Corrupt chunk " + fields[1] + " while restoring " + target);
+                    }
+                    out.write(chunk);
+                }
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+    
+    /** Checks every chunk a manifest references; returns a list of problems, empty if intact. */
+    public List<String> verify(Path manifestFile) throws IOException {
+        List<String> problems = new ArrayList<>();
+        Set<String> checked = new HashSet<>();
+        for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", 3);
+            if (!fields[0].equals("chunk") || !checked.add(fields[1])) {
+                continue;
+            }
+            Path chunkFile = chunkPath(fields[1]);
+            if (!Files.exists(chunkFile)) {
+                problems.add("Missing chunk " + fields[1]);
+            } else if (!sha256(Files.readAllBytes(chunkFile)).equals(fields[1])) {
+                problems.add("Corrupt chunk " + fields[1]);
+            }
+        }
+        return problems;
+    }
+    
+    /** Bytes on disk for all chunks and manifests. */
+    public long repositorySize() throws IOException {
+        return directorySize(chunksDir) + directorySize(manifestsDir);
+    }
+    
+    /** Bytes the backup would take if stored as plain copies. */
+    public long logicalSize(Path manifestFile) throws IOException {
+        long total = 0;
+        for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", 3);
+            if (fields[0].equals("file")) {
+                total += Long.parseLong(fields[1]);
+            }
+        }
+        return total;
+    }
+    
+    private boolean storeChunk(String hash, byte[] chunk) throws IOException {
+        Path chunkFile = chunkPath(hash);
+        if (Files.exists(chunkFile)) {
+            return false;
+        }
+        Files.createDirectories(chunkFile.getParent());
+        writeAtomically(chunkFile, chunk);
+        return true;
+    }
+    
+    private byte[] readChunk(String hash) throws IOException {
+        Path chunkFile = chunkPath(hash);
+        if (!Files.exists(chunkFile)) {
+            throw new IOException("Missing chunk " + hash);
+        }
+        return Files.readAllBytes(chunkFile);
+    }
+    
+    private Path chunkPath(String hash) {
+        return chunksDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+    
+    private static void writeAtomically(Path target, byte[] data) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), ".tmp-", null);
+        try {
+            Files.write(temp, data);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    private static long directorySize(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+    
+    static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,15 +1,45 @@
 
 package DiaryManager;
 
+import com.diary.EntryStorage;
+import com.diary.FileEntryStorage;
+import com.diary.LogEntryStorage;
+
 import java.io.*;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.*;
 
 public class DiaryBackup {
     
+    /** Called after each entry is written to a backup. */
+    public interface Progress {
+        void update(int entriesDone, int entriesTotal, long bytesDone);
+    }
+    
+    /** Zips an entries directory kept by the files engine. */
     public static String createBackup(String entriesDirPath, String backupDirPath) throws IOException {
+        return createBackup(new FileEntryStorage(Paths.get(entriesDirPath)), entriesDirPath, backupDirPath, 0, null);
+    }
+    
+    /**
+     * Zips the entries in {@code engine}, as stored, with the other files of
+     * the entries directory (see {@link EntrySnapshot}), reading at most
+     * {@code maxBytesPerSecond} (0 for no limit) and reporting to
+     * {@code progress} if it is not null.
+     */
+    public static String createBackup(EntryStorage engine, String entriesDirPath, String backupDirPath,
+                                      long maxBytesPerSecond, Progress progress) throws IOException {
         Path entriesDir = Paths.get(entriesDirPath);
         if (!Files.exists(entriesDir) || !Files.isDirectory(entriesDir)) {
             throw new IOException("Entries directory not found: " + entriesDirPath);
@@ -26,24 +56,198 @@ public class DiaryBackup {
         String backupFilename = "diary_backup_" + LocalDateTime.now().format(formatter) + ".zip";
         Path backupFile = backupDir.resolve(backupFilename);
         
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(backupFile.toFile()))) {
-            Files.walk(entriesDir)
-                .filter(Files::isRegularFile)
-                .forEach(file -> {
-                    try {
-                        String entryName = entriesDir.relativize(file).toString();
-                        zos.putNextEntry(new ZipEntry(entryName));
-                        Files.copy(file, zos);
-                        zos.closeEntry();
-                    } catch (IOException e) {
-                        System.err.println("Error adding file to backup: " + file);
-                    }
-                });
+        BackupChecksums checksums = new BackupChecksums();
+        long bytesDone = 0;
+        // Read from a point-in-time snapshot so saves and deletes during the backup don't leak in
+        try (EntrySnapshot snapshot = EntrySnapshot.take(engine, entriesDir, backupDir);
+             ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(backupFile.toFile()))) {
+            List<Path> files = listFiles(snapshot.getDirectory());
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                String entryName = snapshot.getDirectory().relativize(file).toString();
+                try (InputStream in = maxBytesPerSecond > 0
+                        ? new ThrottledInputStream(Files.newInputStream(file), maxBytesPerSecond)
+                        : Files.newInputStream(file)) {
+                    // Encrypted or already compressed entries don't shrink; deflating them only costs time
+                    zos.setLevel(isPacked(file) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                    zos.putNextEntry(new ZipEntry(entryName));
+                    BackupChecksums.Entry entry = BackupChecksums.copyAndDigest(entryName, in, zos);
+                    checksums.add(entry);
+                    bytesDone += entry.size;
+                    zos.closeEntry();
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    System.err.println("Error adding file to backup: " + file);
+                    checksums.addFailed(entryName);
+                }
+                if (progress != null) {
+                    progress.update(i + 1, files.size(), bytesDone);
+                }
+            }
+        } catch (InterruptedIOException e) {
+            // Cancelled: drop the partial archive rather than leave it looking complete
+            Files.deleteIfExists(backupFile);
+            throw e;
         }
         
+        // Record what the archive should contain so it can be verified without restoring
+        checksums.write(BackupChecksums.sidecarFor(backupFile));
+        addToCatalog(backupDir, backupFile, checksums.getEntries().keySet());
+        
         return backupFile.toString();
     }
     
+    public static DedupRepository.BackupResult createDedupBackup(EntryStorage engine, String entriesDirPath,
+                                                                 String backupDirPath) throws IOException {
+        Path entriesDir = Paths.get(entriesDirPath);
+        if (!Files.exists(entriesDir) || !Files.isDirectory(entriesDir)) {
+            throw new IOException("Entries directory not found: " + entriesDirPath);
+        }
+        
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+        String backupName = "diary_backup_" + LocalDateTime.now().format(formatter);
+        DedupRepository.BackupResult result;
+        try (EntrySnapshot snapshot = EntrySnapshot.take(engine, entriesDir, Paths.get(backupDirPath))) {
+            result = new DedupRepository(Paths.get(backupDirPath)).backup(snapshot.getDirectory(), backupName);
+        }
+        addToCatalog(Paths.get(backupDirPath), result.manifest, result.entryNames);
+        return result;
+    }
+    
+    private static boolean isPacked(Path file) throws IOException {
+        byte[] start = new byte[4];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read = in.readNBytes(start, 0, start.length);
+            byte[] head = Arrays.copyOf(start, read);
+            return EntryCipher.isEncrypted(head) || EntryCompression.isCompressed(head);
+        }
+    }
+    
+    private static List<Path> listFiles(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+    
+    /** Backup metadata from the catalog, cataloguing any backups it has not seen yet. */
+    public static synchronized BackupCatalog getCatalog(String backupDirPath) throws IOException {
+        Path backupDir = Paths.get(backupDirPath);
+        BackupCatalog catalog = BackupCatalog.load(backupDir);
+        if (Files.isDirectory(backupDir) && catalog.reconcile(backupDir)) {
+            catalog.save(backupDir);
+        }
+        return catalog;
+    }
+    
+    private static synchronized void addToCatalog(Path backupDir, Path backupFile, Collection<String> entryNames) {
+        try {
+            BackupCatalog catalog = BackupCatalog.load(backupDir);
+            catalog.record(backupDir, backupFile, entryNames);
+            catalog.save(backupDir);
+        } catch (IOException e) {
+            System.err.println("Error updating backup catalog: " + e.getMessage());
+        }
+    }
+    
+    /** Zip backups and deduplicated manifests, oldest first. */
+    public static List<Path> listBackups(String backupDirPath) throws IOException {
+        Path backupDir = Paths.get(backupDirPath);
+        List<Path> backups = new ArrayList<>();
+        if (Files.isDirectory(backupDir)) {
+            try (Stream<Path> listing = Files.list(backupDir)) {
+                backups.addAll(listing
+                    .filter(path -> path.toString().endsWith(".zip"))
+                    .collect(Collectors.toList()));
+            }
+        }
+        backups.addAll(new DedupRepository(backupDir).listManifests());
+        backups.sort(Comparator.comparing(path -> path.getFileName().toString()));
+        return backups;
+    }
+    
+    public static BackupVerifier.Result verifyBackup(String backupFilePath, String backupDirPath) throws IOException {
+        Path backupFile = Paths.get(backupFilePath);
+        if (!Files.exists(backupFile)) {
+            throw new IOException("Backup file not found: " + backupFilePath);
+        }
+        return BackupVerifier.verify(backupFile, Paths.get(backupDirPath));
+    }
+    
+    /** Verifies every backup in the directory, one archive per core at a time. */
+    public static List<BackupVerifier.Result> verifyAllBackups(String backupDirPath) throws IOException {
+        return BackupVerifier.verifyAll(Paths.get(backupDirPath));
+    }
+    
+    public static long repositorySize(String backupDirPath) throws IOException {
+        return new DedupRepository(Paths.get(backupDirPath)).repositorySize();
+    }
+    
+    /**
+     * Replaces the entries in {@code engine} with the backup's, and copies the
+     * backup's other files (dictionaries) into the entries directory; returns
+     * how many entries were restored. The archive is unpacked into a staging
+     * directory under the backup directory first, so a damaged backup fails
+     * before any entry is touched, and the backup's entries are written over
+     * the current ones before those it lacks are deleted, all through the
+     * engine, which stays open throughout. Entries go in as
+     * stored, still compressed or encrypted. A backup taken from the log
+     * engine's file, as older versions did, is read through that engine.
+     */
+    public static int restoreBackup(String backupFilePath, EntryStorage engine, String entriesDirPath,
+                                    String backupDirPath) throws IOException {
+        Path entriesDir = Paths.get(entriesDirPath);
+        Path staging = Files.createTempDirectory(Files.createDirectories(Paths.get(backupDirPath)), ".restore-");
+        try {
+            restoreBackup(backupFilePath, staging.toString());
+            FileEntryStorage stagedFiles = new FileEntryStorage(staging);
+            
+            // Dictionaries first, so no entry is ever there without the one it needs
+            Set<String> stagedEntries = new HashSet<>(stagedFiles.names());
+            try (Stream<Path> listing = Files.list(staging)) {
+                for (Path file : listing.collect(Collectors.toList())) {
+                    String name = file.getFileName().toString();
+                    if (Files.isRegularFile(file) && !stagedEntries.contains(name) && !name.startsWith(".")
+                            && !name.equals(LogEntryStorage.FILE_NAME)) {
+                        Files.copy(file, entriesDir.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+            
+            List<EntryStorage> sources = new ArrayList<>();
+            sources.add(stagedFiles);
+            if (Files.exists(staging.resolve(LogEntryStorage.FILE_NAME))) {
+                sources.add(new LogEntryStorage(staging.resolve(LogEntryStorage.FILE_NAME)));
+            }
+            Set<String> restored = new HashSet<>();
+            try {
+                for (EntryStorage source : sources) {
+                    for (String name : source.names()) {
+                        byte[] data = source.read(name);
+                        if (data != null) {
+                            engine.write(name, data);
+                            restored.add(name);
+                        }
+                    }
+                }
+            } finally {
+                for (EntryStorage source : sources) {
+                    source.close();
+                }
+            }
+            for (String name : engine.names()) {
+                if (!restored.contains(name)) {
+                    engine.delete(name);
+                }
+            }
+            engine.flush();
+            return restored.size();
+        } finally {
+            EntrySnapshot.deleteTree(staging);
+        }
+    }
+    
+    /** Unpacks a backup into {@code restoreDirPath} as plain files. */
     public static void restoreBackup(String backupFilePath, String restoreDirPath) throws IOException {
         Path backupFile = Paths.get(backupFilePath);
         if (!Files.exists(backupFile)) {
@@ -55,6 +259,12 @@ public class DiaryBackup {
             Files.createDirectories(restoreDir);
         }
         
+        if (backupFile.toString().endsWith(DedupRepository.MANIFEST_SUFFIX)) {
+            // Manifest lives in <backups>/repository/manifests
+            new DedupRepository(backupFile.getParent().getParent().getParent()).restore(backupFile, restoreDir);
+            return;
+        }
+        
         try (ZipInputStream zis = new ZipInputStream(new FileInputStream(backupFile.toFile()))) {
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
@@ -0,0 +1,254 @@
+package DiaryManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * Measures what encryption and compression at rest cost: entry writes,
+ * sequential and parallel reads, backup and restore, each run on a plain and
+ * an encrypted copy of the same diary in a temp directory; then the size and
+ * read latency of dictionary-compressed entries against plain ones, and
+ * the content cache's hit rate when it holds a tenth of the diary.
+ *
+ * Usage: {@code java DiaryManager.DiaryBenchmark [entries] [entryKB]}
+ * (defaults 2000 and 4) on generated entries, or
+ * {@code java DiaryManager.DiaryBenchmark --corpus <dir>} on copies of the
+ * files in a real entries directory. Key derivation is timed separately; it
+ * happens once per session, not per entry.
+ */
+public class DiaryBenchmark {
+    private static final int ROUNDS = 5;
+    
+    public static void main(String[] args) throws IOException {
+        List<byte[]> texts;
+        if (args.length > 1 && args[0].equals("--corpus")) {
+            texts = readCorpus(Paths.get(args[1]));
+        } else {
+            int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+            int entryKb = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+            texts = generate(entries, entryKb * 1024);
+        }
+        Path root = Files.createTempDirectory("diary-benchmark");
+        try {
+            long start = System.nanoTime();
+            EntryCipher cipher = EntryCipher.create(root.resolve("key.properties"), "benchmark".toCharArray());
+            System.out.printf("Key derivation (once per session): %d ms%n", (System.nanoTime() - start) / 1_000_000);
+            
+            long totalBytes = texts.stream().mapToLong(text -> text.length).sum();
+            System.out.printf("%d entries, %,d bytes total, best of %d rounds%n%n", texts.size(), totalBytes, ROUNDS);
+            System.out.printf("%-22s %12s %12s %8s%n", "", "plain MB/s", "encr. MB/s", "cost");
+            
+            Path plain = root.resolve("plain");
+            Path encrypted = root.resolve("encrypted");
+            compare("Write entries", totalBytes,
+                () -> writeAll(plain, texts, null), () -> writeAll(encrypted, texts, cipher));
+            compare("Read sequentially", totalBytes,
+                () -> readAll(plain, null, false), () -> readAll(encrypted, cipher, false));
+            compare("Read in parallel", totalBytes,
+                () -> readAll(plain, null, true), () -> readAll(encrypted, cipher, true));
+            compare("Zip backup", totalBytes,
+                () -> backup(plain), () -> backup(encrypted));
+            compare("Restore backup", totalBytes,
+                () -> restore(plain), () -> restore(encrypted));
+            
+            compareCompression(root, texts, plain);
+            measureCache(plain, totalBytes);
+        } finally {
+            try (Stream<Path> walk = Files.walk(root)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+    
+    private interface Run {
+        void run() throws IOException;
+    }
+    
+    private static void compare(String name, long bytes, Run plain, Run encrypted) throws IOException {
+        double plainRate = bestRate(plain, bytes);
+        double encryptedRate = bestRate(encrypted, bytes);
+        System.out.printf("%-22s %12.1f %12.1f %+7.0f%%%n", name, plainRate, encryptedRate,
+            (plainRate / encryptedRate - 1) * 100);
+    }
+    
+    private static double bestRate(Run run, long bytes) throws IOException {
+        return bytes / (bestNanos(run) / 1e9) / (1024 * 1024);
+    }
+    
+    private static long bestNanos(Run run) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+    
+    private static void compareCompression(Path root, List<byte[]> texts, Path plain) throws IOException {
+        Path compressed = root.resolve("compressed");
+        Path entriesDir = Files.createDirectories(compressed.resolve("entries"));
+        long start = System.nanoTime();
+        EntryCompression compression = EntryCompression.train(entriesDir, texts);
+        long trainMs = (System.nanoTime() - start) / 1_000_000;
+        
+        long plainBytes = 0;
+        long deflatedBytes = 0;
+        long compressedBytes = 0;
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 8, 0);
+        for (int i = 0; i < texts.size(); i++) {
+            byte[] text = texts.get(i);
+            plainBytes += text.length;
+            deflatedBytes += deflatedSize(text);
+            byte[] data = compression.compress(text);
+            compressedBytes += data.length;
+            String filename = new DiaryEntry(base.plusMinutes(i), "").getFilename();
+            EntrySnapshot.replaceAtomically(entriesDir.resolve(filename), data);
+        }
+        
+        System.out.printf("%nCompression (dictionary of %,d bytes trained in %d ms)%n",
+            compression.getDictionarySize(), trainMs);
+        System.out.printf("%-22s %,12d bytes%n", "Plain", plainBytes);
+        System.out.printf("%-22s %,12d bytes %5.1f%%%n", "Deflate per entry", deflatedBytes, deflatedBytes * 100.0 / plainBytes);
+        System.out.printf("%-22s %,12d bytes %5.1f%%%n", "Deflate + dictionary",
+            compressedBytes + compression.getDictionarySize(),
+            (compressedBytes + compression.getDictionarySize()) * 100.0 / plainBytes);
+        
+        long plainNanos = bestNanos(() -> readAll(plain, null, false));
+        long compressedNanos = bestNanos(() -> readAll(compressed, null, false));
+        System.out.printf("%-22s %9.1f us plain %9.1f us compressed%n", "Read latency per entry",
+            plainNanos / 1e3 / texts.size(), compressedNanos / 1e3 / texts.size());
+    }
+    
+    /**
+     * Reads skewed toward recent entries, the way a diary is browsed, with a
+     * full-text search every 500 reads, through a cache of a tenth of the diary.
+     */
+    private static void measureCache(Path plain, long totalBytes) throws IOException {
+        Random random = new Random(7);
+        try (EntryCatalog catalog = new EntryCatalog(plain.resolve("entries"), totalBytes * 2 / 10)) {
+            catalog.rescan();
+            List<String> files = catalog.getFiles();
+            int reads = 20_000;
+            long start = System.nanoTime();
+            for (int i = 1; i <= reads; i++) {
+                double skew = random.nextDouble();
+                catalog.content(files.get((int) (files.size() * skew * skew * skew)));
+                if (i % 500 == 0) {
+                    catalog.scan(files, (file, text) -> { });
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            ContentCache.Stats stats = catalog.cacheStats();
+            System.out.printf("%nContent cache (%,d bytes, a tenth of the diary, %d reads plus %d searches)%n",
+                stats.getMaxBytes(), reads, reads / 500);
+            System.out.printf("%-22s %11.1f%%%n", "Hit rate", stats.getHitRate() * 100);
+            System.out.printf("%-22s %,12d of %,d entries%n", "Cached", stats.getEntries(), files.size());
+            System.out.printf("%-22s %9.1f us including searches%n", "Time per read", nanos / 1e3 / reads);
+        }
+    }
+    
+    private static long deflatedSize(byte[] text) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(text);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            long size = 0;
+            while (!deflater.finished()) {
+                size += deflater.deflate(buffer);
+            }
+            return size;
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    private static List<byte[]> readCorpus(Path dir) throws IOException {
+        try (Stream<Path> listing = Files.list(dir)) {
+            List<byte[]> texts = new ArrayList<>();
+            for (Path file : listing.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                texts.add(Files.readAllBytes(file));
+            }
+            return texts;
+        }
+    }
+    
+    private static List<byte[]> generate(int entries, int size) {
+        String[] words = {"today", "walked", "the", "river", "and", "thought", "about", "work", "#ideas", "coffee",
+            "with", "friends", "tired", "but", "happy", "plans", "for", "tomorrow", "weather", "#travel"};
+        Random random = new Random(42);
+        List<byte[]> texts = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            StringBuilder text = new StringBuilder(size + 16);
+            while (text.length() < size) {
+                text.append(words[random.nextInt(words.length)]).append(random.nextInt(12) == 0 ? ".\n" : " ");
+            }
+            texts.add(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return texts;
+    }
+    
+    private static void writeAll(Path dir, List<byte[]> texts, EntryCipher cipher) throws IOException {
+        Files.createDirectories(dir.resolve("entries"));
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 8, 0);
+        for (int i = 0; i < texts.size(); i++) {
+            String filename = new DiaryEntry(base.plusMinutes(i), "").getFilename();
+            byte[] data = cipher == null ? texts.get(i) : cipher.encrypt(texts.get(i));
+            EntrySnapshot.replaceAtomically(dir.resolve("entries").resolve(filename), data);
+        }
+    }
+    
+    private static void readAll(Path dir, EntryCipher cipher, boolean parallel) throws IOException {
+        // A fresh catalog each round so nothing is served from its content cache
+        try (EntryCatalog catalog = new EntryCatalog(dir.resolve("entries"))) {
+            catalog.rescan();
+            catalog.setCipher(cipher);
+            List<String> files = catalog.getFiles();
+            if (parallel) {
+                catalog.scan(files, (file, text) -> { });
+            } else {
+                for (String file : files) {
+                    catalog.content(file);
+                }
+            }
+        }
+    }
+    
+    private static void backup(Path dir) throws IOException {
+        Path backups = dir.resolve("backups");
+        deleteBackups(backups);
+        DiaryBackup.createBackup(dir.resolve("entries").toString(), backups.toString());
+    }
+    
+    private static void restore(Path dir) throws IOException {
+        Path backups = dir.resolve("backups");
+        Path zip;
+        try (Stream<Path> listing = Files.list(backups)) {
+            zip = listing.filter(path -> path.toString().endsWith(".zip")).findFirst()
+                .orElseThrow(() -> new IOException("No backup to restore in " + backups));
+        }
+        DiaryBackup.restoreBackup(zip.toString(), dir.resolve("restored").toString());
+    }
+    
+    private static void deleteBackups(Path backups) throws IOException {
+        if (!Files.isDirectory(backups)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(backups)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                if (!path.equals(backups)) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+}
@@ -1,39 +1,68 @@
 package DiaryManager;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+/**
+ * Settings shared by the menu loop and the background backup thread; every
+ * accessor locks the instance, and so does serialization, so a save never
+ * captures a half-applied update.
+ */
 public class DiaryConfig implements Serializable {
     private static final long serialVersionUID = 1L;
     private List<String> diaryFiles;
+    // Membership test for diaryFiles, so adding stays cheap as the list grows; rebuilt after loading
+    private transient Set<String> diaryFileSet;
     private String lastBackupDate;
     private int totalEntries;
+    private String compressionDictionary;
     
     public DiaryConfig() {
         this.diaryFiles = new ArrayList<>();
     }
     
-    public void addDiaryFile(String filename) {
-        if (!diaryFiles.contains(filename)) {
+    public synchronized void addDiaryFile(String filename) {
+        if (fileSet().add(filename)) {
             diaryFiles.add(filename);
             totalEntries = diaryFiles.size();
         }
     }
     
-    public void removeDiaryFile(String filename) {
-        diaryFiles.remove(filename);
+    public synchronized void removeDiaryFile(String filename) {
+        if (fileSet().remove(filename)) {
+            diaryFiles.remove(filename);
+        }
         totalEntries = diaryFiles.size();
     }
     
-    public List<String> getDiaryFiles() { return diaryFiles; }
-    public String getLastBackupDate() { return lastBackupDate; }
-    public void setLastBackupDate(String lastBackupDate) { this.lastBackupDate = lastBackupDate; }
-    public int getTotalEntries() { return totalEntries; }
+    public synchronized List<String> getDiaryFiles() { return new ArrayList<>(diaryFiles); }
+    public synchronized String getLastBackupDate() { return lastBackupDate; }
+    public synchronized void setLastBackupDate(String lastBackupDate) { this.lastBackupDate = lastBackupDate; }
+    public synchronized int getTotalEntries() { return totalEntries; }
+    public synchronized String getCompressionDictionary() { return compressionDictionary; }
+    public synchronized void setCompressionDictionary(String compressionDictionary) { this.compressionDictionary = compressionDictionary; }
     
-    public void clear() {
+    public synchronized void clear() {
         diaryFiles.clear();
+        diaryFileSet = null;
         totalEntries = 0;
         lastBackupDate = null;
+        compressionDictionary = null;
+    }
+    
+    private Set<String> fileSet() {
+        if (diaryFileSet == null) {
+            diaryFileSet = new HashSet<>(diaryFiles);
+        }
+        return diaryFileSet;
+    }
+    
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
     }
 }
\ No newline at end of file
@@ -1,25 +1,109 @@
-
 package DiaryManager;
 
 import java.io.Serializable;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * An entry and the file it is kept in. New entries are named
+ * {@code diary_yyyy_MM_dd_HH_mm_ss_SSS_nnn.txt}: the creation time in UTC to
+ * the millisecond and a sequence number, so names are unique within the
+ * process and sort in creation order, even across a daylight saving change.
+ * Files from before the milliseconds were added
+ * ({@code diary_yyyy_MM_dd_HH_mm_ss.txt}) were named in local time. Their
+ * names sort by that local time, so lists order entries by
+ * {@link #CHRONOLOGICAL}, which places them by the instant they stand for.
+ * {@link #getTimestamp} and {@link #parseTimestamp} give local time for both.
+ */
 public class DiaryEntry implements Serializable {
     private static final long serialVersionUID = 1L;
+    private static final int PER_MILLISECOND = 1000;
+    private static final DateTimeFormatter SECONDS = DateTimeFormatter.ofPattern("yyyy_MM_dd_HH_mm_ss");
+    private static final DateTimeFormatter MILLISECONDS = DateTimeFormatter.ofPattern("yyyy_MM_dd_HH_mm_ss_SSS");
+    // Epoch milliseconds times PER_MILLISECOND plus the sequence, of the last id handed out
+    private static final AtomicLong LAST_ID = new AtomicLong();
+    /** Entry file names, oldest first whichever format they are in; other names by name. */
+    public static final Comparator<String> CHRONOLOGICAL =
+        Comparator.comparing(DiaryEntry::sortKey).thenComparing(Comparator.naturalOrder());
     private String filename;
     private LocalDateTime timestamp;
     private String content;
     
+    /** An entry written at {@code timestamp}, local time. */
     public DiaryEntry(LocalDateTime timestamp, String content) {
-        this.timestamp = timestamp;
+        this(timestamp.atZone(ZoneId.systemDefault()).toInstant(), content, 0);
+    }
+    
+    private DiaryEntry(Instant created, String content, int sequence) {
+        this.timestamp = LocalDateTime.ofInstant(created, ZoneId.systemDefault());
         this.content = content;
-        this.filename = generateFilename(timestamp);
+        this.filename = generateFilename(LocalDateTime.ofInstant(created, ZoneOffset.UTC), sequence);
+    }
+    
+    /**
+     * A new entry stamped with the current time and a name no earlier call
+     * returned. Up to a thousand names fit in a millisecond; past that, and
+     * if the clock is set back, names carry on from the last one, running a
+     * little ahead of the clock until it catches up.
+     */
+    public static DiaryEntry create(String content) {
+        long now = System.currentTimeMillis() * PER_MILLISECOND;
+        long id = LAST_ID.updateAndGet(last -> Math.max(last + 1, now));
+        return new DiaryEntry(Instant.ofEpochMilli(id / PER_MILLISECOND), content, (int) (id % PER_MILLISECOND));
+    }
+    
+    private String generateFilename(LocalDateTime utc, int sequence) {
+        return String.format("diary_%s_%03d.txt", utc.format(MILLISECONDS), sequence);
+    }
+    
+    /** Whether {@code filename} names an entry ({@code diary_*.txt}) rather than a dictionary, key or log. */
+    public static boolean isEntryFile(String filename) {
+        return filename.startsWith("diary_") && filename.endsWith(".txt");
+    }
+    
+    /**
+     * The name's time in UTC, as a new name spells it, followed by the rest
+     * of the name; a name without a timestamp is its own key. Millisecond
+     * names already are UTC, so only old names are parsed.
+     */
+    private static String sortKey(String filename) {
+        if (isMillisecondName(filename)) {
+            return filename.substring(6);
+        }
+        LocalDateTime local = parseTimestamp(filename);
+        if (local == null) {
+            return filename;
+        }
+        return local.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZoneOffset.UTC).format(MILLISECONDS)
+            + filename.substring(25);
+    }
+    
+    private static boolean isMillisecondName(String filename) {
+        return filename.startsWith("diary_") && filename.length() >= 29 && filename.charAt(25) == '_';
     }
     
-    private String generateFilename(LocalDateTime timestamp) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy_MM_dd_HH_mm_ss");
-        return "diary_" + timestamp.format(formatter) + ".txt";
+    /** When the entry in {@code filename} was written, in local time; null if the name has no timestamp. */
+    public static LocalDateTime parseTimestamp(String filename) {
+        if (filename == null || !filename.startsWith("diary_") || filename.length() < 25) {
+            return null;
+        }
+        try {
+            LocalDateTime timestamp = LocalDateTime.parse(filename.substring(6, 25), SECONDS);
+            if (isMillisecondName(filename)) {
+                timestamp = timestamp.withNano(Integer.parseInt(filename.substring(26, 29)) * 1_000_000);
+                // Millisecond names are UTC
+                return LocalDateTime.ofInstant(timestamp.toInstant(ZoneOffset.UTC), ZoneId.systemDefault());
+            }
+            return timestamp;
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return null;
+        }
     }
     
     public String getFilename() { return filename; }
@@ -34,4 +118,4 @@ public class DiaryEntry implements Serializable {
                content.substring(0, Math.min(content.length(), 50)) + 
                (content.length() > 50 ? "..." : "");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,565 @@
+package DiaryManager;
+
+import com.diary.EntryBitmap;
+import com.diary.EntryQuery;
+import com.diary.QueryPlanner;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Local JSON API over the entries directory, for other tools to use while
+ * the diary is running. Binds to the loopback address only.
+ *
+ * Binding to loopback does not keep out web pages the user has open, which
+ * can send requests to localhost too. So every request must carry the
+ * session token in {@link #TOKEN_HEADER}; the server makes a new one at
+ * startup and writes it to {@link #TOKEN_FILE}, readable by the user only,
+ * and deletes it on close. Requests from a browser page (any {@code Origin}
+ * header) and requests for a host other than localhost (DNS rebinding) are
+ * refused, and a POST must be {@code application/json}, which a page can't
+ * send without the browser asking the server first.
+ *
+ * <pre>
+ * GET    /entries?offset=0&amp;limit=100     entries, newest first (streamed)
+ * GET    /entries/search?q=word           entries containing a word (streamed)
+ * GET    /entries/search?query=tag:x ...  same query language as menu option 9
+ * GET    /entries/{filename}              one entry with its content
+ * POST   /entries  {"content": "..."}     add an entry, 201 with its filename
+ * DELETE /entries/{filename}              delete an entry, 204
+ * GET    /backup                          background backup status
+ * POST   /backup                          start a backup, 202
+ * GET    /cache                           entry cache hit rate and size
+ * </pre>
+ *
+ * Every request runs on its own virtual thread, so a slow client or a long
+ * search never holds up the others. Lists are written as they are produced
+ * with chunked encoding, so a large result set is never built in memory.
+ */
+public class DiaryHttpServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8765;
+    public static final String TOKEN_FILE = "diary_api.token";
+    public static final String TOKEN_HEADER = "X-Diary-Token";
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+    
+    /** Writes go through the CLI so they follow its encryption, compression and bookkeeping. */
+    public interface EntryWriter {
+        DiaryEntry add(String content) throws IOException;
+        void delete(String filename) throws IOException;
+    }
+    
+    static {
+        // Headers and body go out in separate writes; with Nagle on, every small
+        // response waits ~40 ms for the client's delayed ACK. Read once, when the
+        // JDK server first starts, so it has to be set before then.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+    
+    private final EntryCatalog catalog;
+    private final EntryWriter writer;
+    private final BackupScheduler backups;
+    private final Supplier<FileQuerySource> querySource;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Path tokenFile;
+    private final byte[] token;
+    
+    /** Serves on {@code port}, writing the session token to {@code tokenFile}. */
+    public DiaryHttpServer(int port, EntryCatalog catalog, EntryWriter writer, BackupScheduler backups,
+                           Supplier<FileQuerySource> querySource, Path tokenFile) throws IOException {
+        this.catalog = catalog;
+        this.writer = writer;
+        this.backups = backups;
+        this.querySource = querySource;
+        this.tokenFile = tokenFile;
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+        this.token = encoded.getBytes(StandardCharsets.US_ASCII);
+        writeToken(tokenFile, encoded);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        Filter guard = new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                if (admit(exchange)) {
+                    chain.doFilter(exchange);
+                } else {
+                    exchange.close();
+                }
+            }
+            
+            @Override
+            public String description() {
+                return "Session token, Origin, Host and content type checks";
+            }
+        };
+        server.createContext("/entries", this::handleEntries).getFilters().add(guard);
+        server.createContext("/backup", this::handleBackup).getFilters().add(guard);
+        server.createContext("/cache", this::handleCache).getFilters().add(guard);
+        server.setExecutor(executor);
+    }
+    
+    public void start() {
+        server.start();
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    // ===== ACCESS =====
+    
+    /** Whether the request may go on to a handler; if not, the refusal has been sent. */
+    private boolean admit(HttpExchange exchange) throws IOException {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null || !isLocalHost(host)) {
+            sendError(exchange, 403, "Host must be localhost");
+            return false;
+        }
+        if (exchange.getRequestHeaders().containsKey("Origin")) {
+            sendError(exchange, 403, "Requests from web pages are not accepted");
+            return false;
+        }
+        String presented = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+        if (presented == null || !MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.US_ASCII))) {
+            sendError(exchange, 401, "Missing or wrong " + TOKEN_HEADER + " (see " + TOKEN_FILE + ")");
+            return false;
+        }
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (exchange.getRequestMethod().equals("POST")
+                && (type == null || !type.toLowerCase(Locale.ROOT).startsWith("application/json"))) {
+            sendError(exchange, 415, "POST bodies must be application/json");
+            return false;
+        }
+        return true;
+    }
+    
+    private static boolean isLocalHost(String host) {
+        String name = host.toLowerCase(Locale.ROOT);
+        int colon = name.lastIndexOf(':');
+        if (colon > name.lastIndexOf(']')) {
+            name = name.substring(0, colon); // Port
+        }
+        return name.equals("localhost") || name.equals("127.0.0.1") || name.equals("[::1]");
+    }
+    
+    /** Writes the token so only the current user can read it: created 0600 where the file system has permissions. */
+    private static void writeToken(Path file, String token) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp;
+        try {
+            temp = Files.createTempFile(dir, "." + file.getFileName(), ".tmp",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // No POSIX permissions (Windows): the file inherits the directory's access list
+            temp = Files.createTempFile(dir, "." + file.getFileName(), ".tmp");
+        }
+        try {
+            Files.writeString(temp, token + System.lineSeparator());
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    // ===== HANDLERS =====
+    
+    private void handleEntries(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            String rest = path.length() > "/entries".length() ? path.substring("/entries/".length()) : "";
+            if (rest.isEmpty()) {
+                if (method.equals("GET")) {
+                    listEntries(exchange);
+                } else if (method.equals("POST")) {
+                    addEntry(exchange);
+                } else {
+                    sendError(exchange, 405, "Use GET or POST on /entries");
+                }
+            } else if (rest.equals("search") && method.equals("GET")) {
+                searchEntries(exchange);
+            } else if (method.equals("GET")) {
+                getEntry(exchange, rest);
+            } else if (method.equals("DELETE")) {
+                deleteEntry(exchange, rest);
+            } else {
+                sendError(exchange, 405, "Use GET or DELETE on /entries/{filename}");
+            }
+        } catch (RuntimeException e) {
+            // HttpServer drops the connection silently on an escaped exception
+            System.err.println("HTTP API error: " + e);
+            sendErrorIfPossible(exchange, 500, "Internal error");
+        }
+    }
+    
+    private void handleBackup(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (method.equals("GET")) {
+                String progress = backups.getProgress();
+                sendJson(exchange, 200, "{\"running\":" + (progress != null)
+                    + ",\"progress\":" + quoteOrNull(progress) + "}");
+            } else if (method.equals("POST")) {
+                boolean started = backups.backupNow();
+                sendJson(exchange, started ? 202 : 409, started ? "{\"started\":true}"
+                    : "{\"started\":false,\"error\":\"A backup is already running\"}");
+            } else {
+                sendError(exchange, 405, "Use GET or POST on /backup");
+            }
+        }
+    }
+    
+    private void handleCache(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Use GET on /cache");
+                return;
+            }
+            ContentCache.Stats stats = catalog.cacheStats();
+            sendJson(exchange, 200, String.format(Locale.ROOT,
+                "{\"hits\":%d,\"misses\":%d,\"hitRate\":%.4f,\"evictions\":%d,\"entries\":%d,\"bytes\":%d,\"maxBytes\":%d}",
+                stats.getHits(), stats.getMisses(), stats.getHitRate(), stats.getEvictions(), stats.getEntries(),
+                stats.getBytes(), stats.getMaxBytes()));
+        }
+    }
+    
+    private void listEntries(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryParams(exchange.getRequestURI());
+        int offset;
+        int limit;
+        try {
+            offset = Math.max(0, Integer.parseInt(params.getOrDefault("offset", "0")));
+            limit = Math.max(0, Integer.parseInt(params.getOrDefault("limit", String.valueOf(Integer.MAX_VALUE))));
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "offset and limit must be numbers");
+            return;
+        }
+        List<String> files = catalog.getFiles();
+        List<String> page = files.subList(Math.min(offset, files.size()),
+            (int) Math.min(files.size(), (long) offset + limit));
+        streamSummaries(exchange, page);
+    }
+    
+    private void searchEntries(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryParams(exchange.getRequestURI());
+        String keyword = params.get("q");
+        String queryText = params.get("query");
+        List<String> matches = new ArrayList<>();
+        if (keyword != null && !keyword.isBlank()) {
+            String term = keyword.trim().toLowerCase(Locale.ROOT);
+            catalog.scan(catalog.getFiles(), (filename, text) -> {
+                // Unreadable entries can't match
+                if (text != null && text.toLowerCase(Locale.ROOT).contains(term)) {
+                    matches.add(filename);
+                }
+            });
+        } else if (queryText != null && !queryText.isBlank()) {
+            EntryQuery query;
+            try {
+                query = EntryQuery.parse(queryText);
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+            FileQuerySource source = querySource.get();
+            EntryBitmap found = QueryPlanner.execute(query, source);
+            found.forEach(id -> matches.add(source.filename(id)));
+        } else {
+            sendError(exchange, 400, "Give a keyword as q= or a query as query=");
+            return;
+        }
+        streamSummaries(exchange, matches);
+    }
+    
+    private void getEntry(HttpExchange exchange, String filename) throws IOException {
+        if (!isKnownEntry(filename)) {
+            sendError(exchange, 404, "No entry " + filename);
+            return;
+        }
+        String content;
+        try {
+            content = catalog.content(filename);
+        } catch (NoSuchFileException e) {
+            sendError(exchange, 404, "No entry " + filename);
+            return;
+        } catch (IOException e) {
+            sendError(exchange, 500, "Could not read " + filename + ": " + e.getMessage());
+            return;
+        }
+        sendJson(exchange, 200, "{\"filename\":" + quote(filename)
+            + ",\"timestamp\":" + quoteOrNull(timestamp(filename))
+            + ",\"content\":" + quote(content) + "}");
+    }
+    
+    private void addEntry(HttpExchange exchange) throws IOException {
+        String content;
+        try {
+            content = readContentField(exchange.getRequestBody());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+        if (content == null || content.isBlank()) {
+            sendError(exchange, 400, "Body must be a JSON object with a non-empty \"content\"");
+            return;
+        }
+        DiaryEntry entry;
+        try {
+            entry = writer.add(content.trim());
+        } catch (IOException e) {
+            sendError(exchange, 500, "Could not save entry: " + e.getMessage());
+            return;
+        }
+        exchange.getResponseHeaders().set("Location", "/entries/" + entry.getFilename());
+        sendJson(exchange, 201, "{\"filename\":" + quote(entry.getFilename())
+            + ",\"timestamp\":" + quote(entry.getTimestamp().toString()) + "}");
+    }
+    
+    private void deleteEntry(HttpExchange exchange, String filename) throws IOException {
+        if (!isKnownEntry(filename)) {
+            sendError(exchange, 404, "No entry " + filename);
+            return;
+        }
+        try {
+            writer.delete(filename);
+        } catch (NoSuchFileException e) {
+            sendError(exchange, 404, "No entry " + filename);
+            return;
+        } catch (IOException e) {
+            sendError(exchange, 500, "Could not delete " + filename + ": " + e.getMessage());
+            return;
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+    
+    // ===== RESPONSES =====
+    
+    /** Writes a JSON array of entry summaries one element at a time. */
+    private void streamSummaries(HttpExchange exchange, List<String> files) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0); // 0: chunked, length unknown
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            out.write('[');
+            boolean first = true;
+            for (String filename : files) {
+                String preview;
+                try {
+                    preview = catalog.preview(filename);
+                } catch (IOException e) {
+                    continue; // Deleted or unreadable since it was listed
+                }
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write("{\"filename\":" + quote(filename) + ",\"timestamp\":" + quoteOrNull(timestamp(filename))
+                    + ",\"preview\":" + quote(preview.substring(0, Math.min(preview.length(), 100))) + "}");
+            }
+            out.write(']');
+        }
+    }
+    
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, "{\"error\":" + quote(message) + "}");
+    }
+    
+    private static void sendErrorIfPossible(HttpExchange exchange, int status, String message) {
+        try {
+            sendError(exchange, status, message);
+        } catch (IOException | RuntimeException e) {
+            // Headers were already sent; the client sees a cut-off response
+        }
+    }
+    
+    // ===== HELPERS =====
+    
+    private boolean isKnownEntry(String filename) {
+        // Only names the catalog lists, so a request can never reach outside the entries directory
+        return catalog.getFiles().contains(filename);
+    }
+    
+    private static String timestamp(String filename) {
+        LocalDateTime timestamp = DiaryEntry.parseTimestamp(filename);
+        return timestamp == null ? null : timestamp.toString();
+    }
+    
+    private static Map<String, String> queryParams(URI uri) {
+        Map<String, String> params = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+    
+    static String quote(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 16).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"').toString();
+    }
+    
+    private static String quoteOrNull(String text) {
+        return text == null ? "null" : quote(text);
+    }
+    
+    /**
+     * The string value of "content" in a JSON object; other members are
+     * skipped as long as they are strings, numbers, booleans or null.
+     */
+    static String readContentField(InputStream body) throws IOException {
+        byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Body is larger than " + MAX_BODY_BYTES + " bytes");
+        }
+        String json = new String(bytes, StandardCharsets.UTF_8);
+        int[] pos = {skipSpace(json, 0)};
+        expect(json, pos, '{');
+        String content = null;
+        pos[0] = skipSpace(json, pos[0]);
+        if (pos[0] < json.length() && json.charAt(pos[0]) == '}') {
+            return null;
+        }
+        while (true) {
+            pos[0] = skipSpace(json, pos[0]);
+            String name = readString(json, pos);
+            pos[0] = skipSpace(json, pos[0]);
+            expect(json, pos, ':');
+            pos[0] = skipSpace(json, pos[0]);
+            if (pos[0] < json.length() && json.charAt(pos[0]) == '"') {
+                String value = readString(json, pos);
+                if (name.equals("content")) {
+                    content = value;
+                }
+            } else {
+                int start = pos[0];
+                while (pos[0] < json.length() && "{}[],".indexOf(json.charAt(pos[0])) < 0) {
+                    pos[0]++;
+                }
+                if (!json.substring(start, pos[0]).trim().matches("true|false|null|-?[0-9.eE+-]+")) {
+                    throw new IllegalArgumentException("Unsupported JSON value for \"" + name + "\"");
+                }
+            }
+            pos[0] = skipSpace(json, pos[0]);
+            if (pos[0] < json.length() && json.charAt(pos[0]) == ',') {
+                pos[0]++;
+                continue;
+            }
+            expect(json, pos, '}');
+            return content;
+        }
+    }
+    
+    private static String readString(String json, int[] pos) {
+        expect(json, pos, '"');
+        StringBuilder value = new StringBuilder();
+        while (pos[0] < json.length()) {
+            char c = json.charAt(pos[0]++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (pos[0] >= json.length()) {
+                break;
+            }
+            char escaped = json.charAt(pos[0]++);
+            switch (escaped) {
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'u':
+                    if (pos[0] + 4 > json.length()) {
+                        throw new IllegalArgumentException("Bad \\u escape in JSON string");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(json.substring(pos[0], pos[0] + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Bad \\u escape in JSON string");
+                    }
+                    pos[0] += 4;
+                    break;
+                default: value.append(escaped); // \" \\ \/
+            }
+        }
+        throw new IllegalArgumentException("Unterminated JSON string");
+    }
+    
+    private static void expect(String json, int[] pos, char c) {
+        if (pos[0] >= json.length() || json.charAt(pos[0]) != c) {
+            throw new IllegalArgumentException("Malformed JSON: expected '" + c + "' at " + pos[0]);
+        }
+        pos[0]++;
+    }
+    
+    private static int skipSpace(String json, int pos) {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+    
+    /** Stops accepting requests and gives running ones a second to finish. */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.close();
+        try {
+            Files.deleteIfExists(tokenFile);
+        } catch (IOException e) {
+            System.err.println("Error removing " + tokenFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package DiaryManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives a running HTTP API ({@code DiaryManager --serve}) with concurrent
+ * clients and reports throughput and latency percentiles per request type.
+ *
+ * Usage: {@code java DiaryManager.DiaryLoadTest [baseUrl] [clients] [seconds] [--writes | --ingest]}
+ * (defaults http://localhost:8765, 200 clients, 10 seconds), run from the
+ * server's directory so it can read the session token from
+ * {@link DiaryHttpServer#TOKEN_FILE}. Each client is a
+ * virtual thread issuing requests back to back: list a page, search, and get
+ * one entry. With {@code --writes} a client also adds an entry now and then
+ * and deletes it again, so the diary ends up as it started. With
+ * {@code --ingest} clients do nothing but add entries, which are kept, and
+ * the run ends by checking that no two of them were given the same name.
+ */
+public class DiaryLoadTest {
+    private static final Pattern FILENAME = Pattern.compile("\"filename\":\"([^\"]+)\"");
+    private static final String[] SEARCH_WORDS = {"today", "work", "coffee", "river", "plans", "tired"};
+    
+    private static final Map<String, List<Long>> LATENCIES = new ConcurrentHashMap<>();
+    private static final AtomicLong ERRORS = new AtomicLong();
+    private static final AtomicLong BYTES = new AtomicLong();
+    private static final Set<String> ADDED = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong ADDS = new AtomicLong();
+    private static String token;
+    
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        boolean writes = false;
+        boolean ingest = false;
+        for (String arg : args) {
+            if (arg.equals("--writes")) {
+                writes = true;
+            } else if (arg.equals("--ingest")) {
+                ingest = true;
+            } else {
+                positional.add(arg);
+            }
+        }
+        String baseUrl = positional.size() > 0 ? positional.get(0) : "http://localhost:" + DiaryHttpServer.DEFAULT_PORT;
+        int clients = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : 200;
+        int seconds = positional.size() > 2 ? Integer.parseInt(positional.get(2)) : 10;
+        token = Files.readString(Paths.get(DiaryHttpServer.TOKEN_FILE)).trim();
+        
+        try (HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build()) {
+            List<String> filenames = filenames(send(client, "list", get(baseUrl + "/entries?limit=500")));
+            if (filenames.isEmpty() && !writes && !ingest) {
+                System.out.println("The diary has no entries; add some or run with --writes.");
+                return;
+            }
+            System.out.printf("%d clients for %d s against %s (%d entries sampled)%s%n", clients, seconds, baseUrl,
+                filenames.size(), ingest ? ", adding entries only" : writes ? ", with writes" : "");
+            LATENCIES.clear();
+            
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            boolean withWrites = writes;
+            boolean ingestOnly = ingest;
+            long start = System.nanoTime();
+            try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < clients; i++) {
+                    threads.submit(() -> runClient(client, baseUrl, filenames, withWrites, ingestOnly, deadline));
+                }
+            }
+            report((System.nanoTime() - start) / 1e9);
+            if (ingest) {
+                System.out.printf("%d entries added under %d distinct names%s%n", ADDS.get(), ADDED.size(),
+                    ADDED.size() == ADDS.get() ? "" : " - NAMES COLLIDED");
+            }
+        }
+    }
+    
+    private static void runClient(HttpClient client, String baseUrl, List<String> filenames, boolean writes,
+                                  boolean ingest, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            int pick = ingest ? 9 : random.nextInt(writes ? 10 : 9);
+            try {
+                if (pick < 3) {
+                    send(client, "list", get(baseUrl + "/entries?offset=" + random.nextInt(Math.max(1, filenames.size()))
+                        + "&limit=20"));
+                } else if (pick < 5) {
+                    String word = SEARCH_WORDS[random.nextInt(SEARCH_WORDS.length)];
+                    send(client, "search", get(baseUrl + "/entries/search?q=" + URLEncoder.encode(word, StandardCharsets.UTF_8)));
+                } else if (pick < 9) {
+                    if (!filenames.isEmpty()) {
+                        send(client, "get", get(baseUrl + "/entries/" + filenames.get(random.nextInt(filenames.size()))));
+                    }
+                } else {
+                    String body = "{\"content\":" + DiaryHttpServer.quote("Load test entry " + random.nextLong()) + "}";
+                    String created = send(client, "add", request(baseUrl + "/entries")
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body)).build());
+                    for (String filename : filenames(created)) {
+                        if (ingest) {
+                            ADDS.incrementAndGet();
+                            ADDED.add(filename);
+                            continue;
+                        }
+                        send(client, "delete", request(baseUrl + "/entries/" + filename).DELETE().build());
+                    }
+                }
+            } catch (IOException e) {
+                ERRORS.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    private static HttpRequest get(String url) {
+        return request(url).GET().build();
+    }
+    
+    private static HttpRequest.Builder request(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).header(DiaryHttpServer.TOKEN_HEADER, token);
+    }
+    
+    /** Sends a request and records its latency under {@code type}; returns the body, or "" on an error status. */
+    private static String send(HttpClient client, String type, HttpRequest request) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        byte[] body;
+        try (InputStream in = response.body()) {
+            body = in.readAllBytes(); // Latency includes the whole streamed body
+        }
+        long nanos = System.nanoTime() - start;
+        LATENCIES.computeIfAbsent(type, key -> Collections.synchronizedList(new ArrayList<>())).add(nanos);
+        BYTES.addAndGet(body.length);
+        if (response.statusCode() >= 400) {
+            ERRORS.incrementAndGet();
+            return "";
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+    
+    private static List<String> filenames(String json) {
+        List<String> names = new ArrayList<>();
+        Matcher matcher = FILENAME.matcher(json);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        return names;
+    }
+    
+    private static void report(double seconds) {
+        long total = 0;
+        System.out.printf("%n%-8s %9s %9s %9s %9s %9s%n", "", "requests", "req/s", "p50 ms", "p95 ms", "p99 ms");
+        for (String type : new TreeSet<>(LATENCIES.keySet())) {
+            long[] sorted = LATENCIES.get(type).stream().mapToLong(Long::longValue).sorted().toArray();
+            total += sorted.length;
+            System.out.printf("%-8s %9d %9.0f %9.2f %9.2f %9.2f%n", type, sorted.length, sorted.length / seconds,
+                percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99));
+        }
+        System.out.printf("%-8s %9d %9.0f   %,d bytes received, %d errors%n", "total", total, total / seconds,
+            BYTES.get(), ERRORS.get());
+    }
+    
+    private static double percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -1,23 +1,84 @@
 
 package DiaryManager;
 
+import com.diary.EntryBitmap;
+import com.diary.EntryQuery;
+import com.diary.EntryStorage;
+import com.diary.FileEntryStorage;
+import com.diary.QueryPlanner;
+
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class DiaryManager {
     private static final String ENTRIES_DIR = "entries";
     private static final String CONFIG_FILE = "diary_config.ser";
     private static final String BACKUP_DIR = "backups";
+    private static final String KEY_FILE = "diary_key.properties";
+    private static final Duration BACKUP_INTERVAL = Duration.ofHours(24);
+    private static final int BACKUP_AFTER_CHANGES = 10;
+    private static final long BACKUP_MAX_BYTES_PER_SECOND = 1024 * 1024;
+    // Entries an import stores before flushing them together
+    private static final int IMPORT_BATCH = 500;
+    // Same property as the GUI's: files (the default), log or memory
+    private static final String STORAGE_ENGINE = System.getProperty("diary.storage", "files");
     private static DiaryConfig config;
+    // Holds the compression and cipher entries are written with; backups take entries from its engine as stored
+    private static EncodedEntryStorage storage;
+    private static EntryCatalog catalog;
+    private static BackupScheduler backupScheduler;
+    // Held shared while an entry is stored or removed, exclusively while the whole diary is rewritten or replaced,
+    // so an entry added mid-rewrite can't keep the old dictionary or cipher, or miss the new one
+    private static final ReentrantReadWriteLock rewriteLock = new ReentrantReadWriteLock();
+    private static CorpusAnalytics analytics;
+    private static FileQuerySource querySource;
     private static Scanner scanner = new Scanner(System.in);
     
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--verify-backups")) {
+            // Non-interactive mode for nightly jobs; exit code 1 if any backup is damaged
+            System.exit(verifyBackups() ? 0 : 1);
+        }
+        
         initializeApplication();
         
+        if (args.length > 0 && args[0].equals("--serve")) {
+            // Headless: only the HTTP API, until the process is stopped
+            DiaryHttpServer server = startHttpServer(args);
+            if (server == null) {
+                System.exit(1);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                backupScheduler.close();
+                saveConfig();
+                catalog.close();
+                closeStorage();
+            }));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--import")) {
+            // Non-interactive: each file named becomes an entry, or without files
+            // standard input does, entries separated by END lines as in the menu
+            boolean imported = importEntries(Arrays.asList(args).subList(1, args.length));
+            backupScheduler.close();
+            saveConfig();
+            catalog.close();
+            closeStorage();
+            System.exit(imported ? 0 : 1);
+        }
+        DiaryHttpServer httpServer = args.length > 0 && args[0].equals("--http") ? startHttpServer(args) : null;
+        
         boolean running = true;
         while (running) {
             displayMenu();
@@ -48,6 +109,27 @@ public class DiaryManager {
                 case "8":
                     clearAllEntries();
                     break;
+                case "9":
+                    queryEntries();
+                    break;
+                case "10":
+                    createDedupBackup();
+                    break;
+                case "11":
+                    verifyBackups();
+                    break;
+                case "12":
+                    findBackupsByDate();
+                    break;
+                case "13":
+                    toggleEncryption();
+                    break;
+                case "14":
+                    compressEntries();
+                    break;
+                case "15":
+                    showYearlyReport();
+                    break;
                 case "0":
                     running = false;
                     System.out.println("Goodbye! Your diary has been saved.");
@@ -57,18 +139,47 @@ public class DiaryManager {
             }
         }
         
+        if (httpServer != null) {
+            httpServer.close();
+        }
+        if (backupScheduler.isRunning()) {
+            System.out.println("Waiting for the background backup to finish...");
+        }
+        backupScheduler.close();
         saveConfig();
+        catalog.close();
+        closeStorage();
         scanner.close();
     }
     
+    private static void closeStorage() {
+        try {
+            storage.close();
+        } catch (IOException e) {
+            System.err.println("Error closing entry storage: " + e.getMessage());
+        }
+    }
+    
     private static void initializeApplication() {
         try {
             // Create directories if they don't exist
             Files.createDirectories(Paths.get(ENTRIES_DIR));
             Files.createDirectories(Paths.get(BACKUP_DIR));
             
+            storage = new EncodedEntryStorage(EntryStorage.open(STORAGE_ENGINE, Paths.get(ENTRIES_DIR)),
+                Paths.get(ENTRIES_DIR));
+            // Watch the entries directory instead of relisting it per operation
+            catalog = new EntryCatalog(storage, Paths.get(ENTRIES_DIR));
+            catalog.start();
+            
             // Load configuration
             loadConfig();
+            unlockEntries();
+            loadCompression();
+            
+            backupScheduler = new BackupScheduler(storage.getEngine(), ENTRIES_DIR, BACKUP_DIR, config, catalog,
+                BACKUP_INTERVAL, BACKUP_AFTER_CHANGES, BACKUP_MAX_BYTES_PER_SECOND);
+            backupScheduler.start();
             
             System.out.println("====================================");
             System.out.println("     PERSONAL DIARY MANAGER");
@@ -82,7 +193,42 @@ public class DiaryManager {
         } catch (IOException e) {
             System.err.println("Error initializing application: " + e.getMessage());
             config = new DiaryConfig();
+            if (storage == null) {
+                storage = new EncodedEntryStorage(new FileEntryStorage(Paths.get(ENTRIES_DIR)), Paths.get(ENTRIES_DIR));
+            }
+            catalog = new EntryCatalog(storage, Paths.get(ENTRIES_DIR));
+            backupScheduler = new BackupScheduler(storage.getEngine(), ENTRIES_DIR, BACKUP_DIR, config, catalog,
+                BACKUP_INTERVAL, BACKUP_AFTER_CHANGES, BACKUP_MAX_BYTES_PER_SECOND);
+        }
+    }
+    
+    private static DiaryHttpServer startHttpServer(String[] args) {
+        int port = DiaryHttpServer.DEFAULT_PORT;
+        try {
+            if (args.length > 1) {
+                port = Integer.parseInt(args[1]);
+            }
+            DiaryHttpServer server = new DiaryHttpServer(port, catalog, new DiaryHttpServer.EntryWriter() {
+                @Override
+                public DiaryEntry add(String content) throws IOException {
+                    return storeEntry(content);
+                }
+                
+                @Override
+                public void delete(String filename) throws IOException {
+                    removeEntry(filename);
+                }
+            }, backupScheduler, DiaryManager::getQuerySource, Paths.get(DiaryHttpServer.TOKEN_FILE));
+            server.start();
+            System.out.println("HTTP API listening on http://localhost:" + server.getPort() + "/entries");
+            System.out.println("Clients must send the " + DiaryHttpServer.TOKEN_HEADER + " header from " + DiaryHttpServer.TOKEN_FILE);
+            return server;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid port: " + args[1]);
+        } catch (IOException e) {
+            System.err.println("Error starting HTTP API: " + e.getMessage());
         }
+        return null;
     }
     
     private static void loadConfig() {
@@ -110,7 +256,14 @@ public class DiaryManager {
     }
     
     private static void displayMenu() {
+        for (String notice : backupScheduler.drainNotices()) {
+            System.out.println("\n" + notice);
+        }
         System.out.println("\n=== MAIN MENU ===");
+        String progress = backupScheduler.getProgress();
+        if (progress != null) {
+            System.out.println("(Backup running: " + progress + ")");
+        }
         System.out.println("1. Write New Entry");
         System.out.println("2. Read an Entry");
         System.out.println("3. List All Entries");
@@ -119,6 +272,13 @@ public class DiaryManager {
         System.out.println("6. Create Backup");
         System.out.println("7. Restore from Backup");
         System.out.println("8. Clear All Entries");
+        System.out.println("9. Query Entries (tag:, after:, before:, \"phrase\")");
+        System.out.println("10. Create Deduplicated Backup");
+        System.out.println("11. Verify All Backups");
+        System.out.println("12. Find Backups by Entry Date");
+        System.out.println("13. " + (Files.exists(Paths.get(KEY_FILE)) ? "Disable" : "Enable") + " Encryption");
+        System.out.println("14. Compress Entries (" + (storage.getCompression() == null ? "off" : "on") + ")");
+        System.out.println("15. Yearly Report");
         System.out.println("0. Exit");
         System.out.print("\nEnter your choice: ");
     }
@@ -134,20 +294,13 @@ public class DiaryManager {
         }
         
         if (content.length() > 0) {
-            LocalDateTime now = LocalDateTime.now();
-            DiaryEntry entry = new DiaryEntry(now, content.toString().trim());
-            
-            Path entryFile = Paths.get(ENTRIES_DIR, entry.getFilename());
-            
-            try (BufferedWriter writer = Files.newBufferedWriter(entryFile, 
-                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
-                writer.write(content.toString().trim());
-                config.addDiaryFile(entry.getFilename());
+            try {
+                DiaryEntry entry = storeEntry(content.toString().trim());
                 
                 DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
                 System.out.println("Entry saved successfully!");
                 System.out.println("Filename: " + entry.getFilename());
-                System.out.println("Timestamp: " + now.format(formatter));
+                System.out.println("Timestamp: " + entry.getTimestamp().format(formatter));
             } catch (IOException e) {
                 System.err.println("Error saving entry: " + e.getMessage());
             }
@@ -156,6 +309,161 @@ public class DiaryManager {
         }
     }
     
+    /**
+     * Stores the files as entries in the order given, or the entries read
+     * from standard input if there are none, {@link #IMPORT_BATCH} at a time
+     * (see {@link #storeBatch}). False if any could not be read or stored;
+     * the others are stored regardless.
+     */
+    private static boolean importEntries(List<String> files) {
+        System.out.println("\n=== IMPORT ENTRIES ===");
+        long start = System.nanoTime();
+        int imported = 0;
+        int failed = 0;
+        List<String> batch = new ArrayList<>();
+        if (files.isEmpty()) {
+            StringBuilder content = new StringBuilder();
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine();
+                if (!line.equals("END")) {
+                    content.append(line).append("\n");
+                    if (scanner.hasNextLine()) {
+                        continue;
+                    }
+                }
+                String text = content.toString().trim();
+                content.setLength(0);
+                if (text.isEmpty()) {
+                    continue;
+                }
+                batch.add(text);
+                if (batch.size() == IMPORT_BATCH) {
+                    int stored = storeBatch(batch);
+                    imported += stored;
+                    failed += batch.size() - stored;
+                    batch.clear();
+                }
+            }
+        } else {
+            for (String file : files) {
+                try {
+                    String text = Files.readString(Paths.get(file)).trim();
+                    if (text.isEmpty()) {
+                        System.out.println("Skipping empty file " + file);
+                        continue;
+                    }
+                    batch.add(text);
+                } catch (IOException e) {
+                    System.err.println("Error importing " + file + ": " + e.getMessage());
+                    failed++;
+                }
+                if (batch.size() == IMPORT_BATCH) {
+                    int stored = storeBatch(batch);
+                    imported += stored;
+                    failed += batch.size() - stored;
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            int stored = storeBatch(batch);
+            imported += stored;
+            failed += batch.size() - stored;
+        }
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.printf("Imported %d entries in %d ms (%.0f per second), %d failed.%n",
+            imported, elapsedMs, imported * 1000.0 / elapsedMs, failed);
+        return failed == 0;
+    }
+    
+    /**
+     * Writes a new entry stamped with the current time. Called from HTTP API
+     * threads and imports at once, sharing the rewrite lock: every call gets
+     * its own name from {@link DiaryEntry#create}, and the storage only
+     * creates an entry that isn't there, so a name taken by another process (or
+     * an old entry) just means trying the next one. The entry is durable and
+     * in the catalog before the lock is released, so a rewrite waiting for it
+     * will include it.
+     */
+    static DiaryEntry storeEntry(String content) throws IOException {
+        rewriteLock.readLock().lock();
+        try {
+            byte[] text = content.getBytes(StandardCharsets.UTF_8);
+            DiaryEntry entry = DiaryEntry.create(content);
+            while (!storage.create(entry.getFilename(), text)) {
+                entry = DiaryEntry.create(content);
+            }
+            storage.flush();
+            config.addDiaryFile(entry.getFilename());
+            catalog.entryChanged(entry.getFilename());
+            return entry;
+        } finally {
+            rewriteLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Stores each text as a new entry like {@link #storeEntry}, but as one
+     * batch: the storage creates them together and is flushed once, where
+     * syncing entries one at a time costs far more than writing them.
+     * Returns how many were stored. If the batch fails none count, though
+     * whichever entries made it are kept and catalogued.
+     */
+    private static int storeBatch(List<String> contents) {
+        rewriteLock.readLock().lock();
+        try {
+            Map<String, String> pending = new LinkedHashMap<>();
+            for (String content : contents) {
+                pending.put(DiaryEntry.create(content).getFilename(), content);
+            }
+            List<String> created = new ArrayList<>();
+            try {
+                while (!pending.isEmpty()) {
+                    Map<String, byte[]> texts = new LinkedHashMap<>();
+                    pending.forEach((filename, content) -> texts.put(filename, content.getBytes(StandardCharsets.UTF_8)));
+                    Set<String> taken = new HashSet<>(storage.createAll(texts));
+                    Map<String, String> retry = new LinkedHashMap<>();
+                    pending.forEach((filename, content) -> {
+                        if (taken.contains(filename)) {
+                            retry.put(DiaryEntry.create(content).getFilename(), content);
+                        } else {
+                            created.add(filename);
+                        }
+                    });
+                    pending = retry;
+                }
+                storage.flush();
+            } catch (IOException e) {
+                System.err.println("Error saving imported entries: " + e.getMessage());
+                catalog.rescan();
+                catalog.getFiles().forEach(config::addDiaryFile);
+                return 0;
+            }
+            for (String filename : created) {
+                config.addDiaryFile(filename);
+                catalog.entryChanged(filename);
+            }
+            return created.size();
+        } finally {
+            rewriteLock.readLock().unlock();
+        }
+    }
+    
+    static void removeEntry(String filename) throws IOException {
+        // Shared lock: a rewrite in progress would otherwise write the entry back
+        rewriteLock.readLock().lock();
+        try {
+            if (!storage.delete(filename)) {
+                throw new NoSuchFileException(filename);
+            }
+            storage.flush();
+            config.removeDiaryFile(filename);
+            catalog.entryChanged(filename);
+        } finally {
+            rewriteLock.readLock().unlock();
+        }
+    }
+    
     private static void listEntries() {
         System.out.println("\n=== ALL DIARY ENTRIES ===");
         
@@ -167,10 +475,7 @@ public class DiaryManager {
         
         for (int i = 0; i < files.size(); i++) {
             try {
-                Path filePath = Paths.get(ENTRIES_DIR, files.get(i));
-                String firstLine = Files.lines(filePath)
-                    .findFirst()
-                    .orElse("");
+                String firstLine = catalog.preview(files.get(i));
                 System.out.printf("%d. %s - %s%n", i + 1, files.get(i).replace(".txt", ""), 
                     firstLine.substring(0, Math.min(firstLine.length(), 50)));
             } catch (IOException e) {
@@ -200,16 +505,12 @@ public class DiaryManager {
             }
             
             String selectedFile = files.get(choice - 1);
-            Path filePath = Paths.get(ENTRIES_DIR, selectedFile);
             
             System.out.println("\n=== " + selectedFile.replace(".txt", "") + " ===");
             System.out.println("=".repeat(50));
             
-            try (BufferedReader reader = Files.newBufferedReader(filePath)) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    System.out.println(line);
-                }
+            try {
+                System.out.println(catalog.content(selectedFile));
             } catch (IOException e) {
                 System.err.println("Error reading file: " + e.getMessage());
             }
@@ -224,7 +525,7 @@ public class DiaryManager {
     private static void searchEntries() {
         System.out.println("\n=== SEARCH ENTRIES ===");
         System.out.print("Enter search keyword: ");
-        String keyword = scanner.nextLine().trim().toLowerCase();
+        String keyword = scanner.nextLine().trim().toLowerCase(Locale.ROOT);
         
         if (keyword.isEmpty()) {
             System.out.println("Search keyword cannot be empty.");
@@ -237,30 +538,23 @@ public class DiaryManager {
         System.out.println("\nSearching for: \"" + keyword + "\"");
         System.out.println("=".repeat(50));
         
-        for (String filename : files) {
-            try {
-                Path filePath = Paths.get(ENTRIES_DIR, filename);
-                String content = Files.lines(filePath)
-                    .map(String::toLowerCase)
+        catalog.scan(files, (filename, text) -> {
+            if (text == null) {
+                System.err.println("Error reading file: " + filename);
+            } else if (text.toLowerCase(Locale.ROOT).contains(keyword)) {
+                results.add(filename);
+                
+                // Show preview
+                String preview = text.lines()
+                    .limit(3)
                     .collect(Collectors.joining("\n"));
                 
-                if (content.contains(keyword)) {
-                    results.add(filename);
-                    
-                    // Show preview
-                    String preview = Files.lines(filePath)
-                        .limit(3)
-                        .collect(Collectors.joining("\n"));
-                    
-                    System.out.println("Found in: " + filename);
-                    System.out.println("Preview:");
-                    System.out.println(preview.substring(0, Math.min(preview.length(), 100)) + "...");
-                    System.out.println("-".repeat(50));
-                }
-            } catch (IOException e) {
-                System.err.println("Error reading file: " + filename);
+                System.out.println("Found in: " + filename);
+                System.out.println("Preview:");
+                System.out.println(preview.substring(0, Math.min(preview.length(), 100)) + "...");
+                System.out.println("-".repeat(50));
             }
-        }
+        });
         
         if (results.isEmpty()) {
             System.out.println("No entries found containing: \"" + keyword + "\"");
@@ -269,6 +563,38 @@ public class DiaryManager {
         }
     }
     
+    private static void queryEntries() {
+        System.out.println("\n=== QUERY ENTRIES ===");
+        System.out.println("Example: tag:ideas after:2025-01-01 before:2025-12-31 \"release\"");
+        System.out.print("Enter query: ");
+        String text = scanner.nextLine().trim();
+        
+        EntryQuery query;
+        try {
+            query = EntryQuery.parse(text);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (query.isEmpty()) {
+            System.out.println("Query cannot be empty.");
+            return;
+        }
+        
+        FileQuerySource source = getQuerySource();
+        System.out.println("Plan: " + QueryPlanner.explain(query, source));
+        System.out.println("=".repeat(50));
+        
+        EntryBitmap matches = QueryPlanner.execute(query, source);
+        matches.forEach(id -> System.out.println("Found in: " + source.filename(id)));
+        
+        if (matches.isEmpty()) {
+            System.out.println("No entries match: " + text);
+        } else {
+            System.out.println("Total matches: " + matches.cardinality());
+        }
+    }
+    
     private static void deleteEntry() {
         List<String> files = getDiaryFiles();
         if (files.isEmpty()) {
@@ -299,8 +625,7 @@ public class DiaryManager {
             
             if (confirm.equals("yes")) {
                 try {
-                    Files.delete(Paths.get(ENTRIES_DIR, selectedFile));
-                    config.removeDiaryFile(selectedFile);
+                    removeEntry(selectedFile);
                     System.out.println("Entry deleted successfully.");
                 } catch (IOException e) {
                     System.err.println("Error deleting file: " + e.getMessage());
@@ -316,28 +641,95 @@ public class DiaryManager {
     
     private static void createBackup() {
         System.out.println("\n=== CREATE BACKUP ===");
+        if (backupScheduler.backupNow()) {
+            System.out.println("Backup started in the background, you can keep working.");
+        } else {
+            System.out.println("A backup is already running.");
+        }
+    }
+    
+    
+    private static void createDedupBackup() {
+        System.out.println("\n=== CREATE DEDUPLICATED BACKUP ===");
         try {
-            String backupFile = DiaryBackup.createBackup(ENTRIES_DIR, BACKUP_DIR);
+            DedupRepository.BackupResult result = DiaryBackup.createDedupBackup(storage.getEngine(), ENTRIES_DIR, BACKUP_DIR);
             config.setLastBackupDate(LocalDateTime.now().format(
                 DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
             
             System.out.println("Backup created successfully!");
-            System.out.println("Backup file: " + backupFile);
-            System.out.println("Entries backed up: " + config.getTotalEntries());
+            System.out.println("Manifest: " + result.manifest);
+            System.out.println("Entries backed up: " + result.files);
+            System.out.printf("Entry data: %,d bytes, new chunk data stored: %,d bytes%n",
+                result.logicalBytes, result.newChunkBytes);
+            System.out.printf("Repository size: %,d bytes%n", DiaryBackup.repositorySize(BACKUP_DIR));
             
         } catch (IOException e) {
             System.err.println("Error creating backup: " + e.getMessage());
         }
     }
     
+    private static boolean verifyBackups() {
+        System.out.println("\n=== VERIFY BACKUPS ===");
+        try {
+            long start = System.nanoTime();
+            List<BackupVerifier.Result> results = DiaryBackup.verifyAllBackups(BACKUP_DIR);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            
+            int damaged = 0;
+            for (BackupVerifier.Result result : results) {
+                System.out.println((result.isOk() ? "OK      " : "DAMAGED ") + result.backup.getFileName());
+                for (String problem : result.problems) {
+                    System.out.println("    " + problem);
+                }
+                for (String warning : result.warnings) {
+                    System.out.println("    note: " + warning);
+                }
+                if (!result.isOk()) {
+                    damaged++;
+                }
+            }
+            System.out.printf("Verified %d backups in %d ms, %d damaged.%n", results.size(), elapsedMs, damaged);
+            return damaged == 0;
+        } catch (IOException e) {
+            System.err.println("Error verifying backups: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private static void findBackupsByDate() {
+        System.out.println("\n=== FIND BACKUPS BY DATE ===");
+        System.out.print("Entry date (yyyy-MM-dd): ");
+        try {
+            LocalDate date = LocalDate.parse(scanner.nextLine().trim());
+            List<BackupCatalog.BackupRecord> matches = DiaryBackup.getCatalog(BACKUP_DIR).findContaining(date);
+            if (matches.isEmpty()) {
+                System.out.println("No backup contains entries from " + date + ".");
+            } else {
+                System.out.println("Backups with entries from " + date + ":");
+                printBackups(matches);
+            }
+        } catch (DateTimeParseException e) {
+            System.out.println("Please enter a date like 2025-01-31.");
+        } catch (IOException e) {
+            System.err.println("Error reading backup catalog: " + e.getMessage());
+        }
+    }
+    
+    private static void printBackups(List<BackupCatalog.BackupRecord> backups) {
+        for (int i = 0; i < backups.size(); i++) {
+            BackupCatalog.BackupRecord backup = backups.get(i);
+            String range = backup.getFirstEntryDate() == null ? "no dated entries"
+                : backup.getFirstEntryDate() + " to " + backup.getLastEntryDate();
+            System.out.printf("%d. %s | %d entries | %s | %,d bytes%n", i + 1, backup.getFileName(),
+                backup.getEntryCount(), range, backup.getSizeBytes());
+        }
+    }
+    
     private static void restoreBackup() {
         System.out.println("\n=== RESTORE FROM BACKUP ===");
         
         try {
-            List<Path> backups = Files.list(Paths.get(BACKUP_DIR))
-                .filter(path -> path.toString().endsWith(".zip"))
-                .sorted()
-                .collect(Collectors.toList());
+            List<BackupCatalog.BackupRecord> backups = DiaryBackup.getCatalog(BACKUP_DIR).list();
             
             if (backups.isEmpty()) {
                 System.out.println("No backup files found.");
@@ -345,9 +737,7 @@ public class DiaryManager {
             }
             
             System.out.println("Available backups:");
-            for (int i = 0; i < backups.size(); i++) {
-                System.out.printf("%d. %s%n", i + 1, backups.get(i).getFileName());
-            }
+            printBackups(backups);
             
             System.out.print("Select backup to restore (or 0 to cancel): ");
             int choice = Integer.parseInt(scanner.nextLine().trim());
@@ -359,24 +749,24 @@ public class DiaryManager {
                 return;
             }
             
-            Path selectedBackup = backups.get(choice - 1);
+            Path selectedBackup = Paths.get(BACKUP_DIR).resolve(backups.get(choice - 1).getRelativePath());
             System.out.print("This will overwrite current entries. Continue? (yes/no): ");
             String confirm = scanner.nextLine().trim().toLowerCase();
             
             if (confirm.equals("yes")) {
-                // Clear current entries
-                Files.list(Paths.get(ENTRIES_DIR))
-                    .forEach(path -> {
-                        try { Files.delete(path); } catch (IOException e) {}
-                    });
-                config.clear();
-                
-                // Restore from backup
-                DiaryBackup.restoreBackup(selectedBackup.toString(), ENTRIES_DIR);
-                
-                // Reload entries into config
-                Files.list(Paths.get(ENTRIES_DIR))
-                    .forEach(path -> config.addDiaryFile(path.getFileName().toString()));
+                rewriteLock.writeLock().lock();
+                try {
+                    // Replace the entries through the engine, which stays open
+                    DiaryBackup.restoreBackup(selectedBackup.toString(), storage.getEngine(), ENTRIES_DIR, BACKUP_DIR);
+                    config.clear();
+                    
+                    // Reload entries into config
+                    catalog.rescan();
+                    catalog.getFiles().forEach(config::addDiaryFile);
+                    loadCompression();
+                } finally {
+                    rewriteLock.writeLock().unlock();
+                }
                 
                 System.out.println("Backup restored successfully!");
                 System.out.println("Entries restored: " + config.getTotalEntries());
@@ -395,31 +785,338 @@ public class DiaryManager {
         String confirm = scanner.nextLine().trim().toLowerCase();
         
         if (confirm.equals("yes")) {
+            rewriteLock.writeLock().lock();
             try {
-                Files.list(Paths.get(ENTRIES_DIR))
-                    .forEach(path -> {
-                        try { Files.delete(path); } catch (IOException e) {}
-                    });
+                for (String name : storage.names()) {
+                    storage.delete(name);
+                }
+                storage.flush();
                 config.clear();
+                loadCompression();
+                removeUnusedDictionaries();
+                catalog.rescan();
                 System.out.println("All entries have been deleted.");
             } catch (IOException e) {
                 System.err.println("Error clearing entries: " + e.getMessage());
+            } finally {
+                rewriteLock.writeLock().unlock();
             }
         } else {
             System.out.println("Operation cancelled.");
         }
     }
     
-    private static List<String> getDiaryFiles() {
+    private static void unlockEntries() {
+        Path keyFile = Paths.get(KEY_FILE);
+        if (!Files.exists(keyFile)) {
+            return;
+        }
+        for (int attempt = 1; attempt <= 3; attempt++) {
+            char[] passphrase = readPassphrase("Diary passphrase: ");
+            try {
+                catalog.setCipher(EntryCipher.unlock(keyFile, passphrase));
+                return;
+            } catch (IOException e) {
+                System.out.println(e.getMessage() + ".");
+            } finally {
+                Arrays.fill(passphrase, ' ');
+            }
+        }
+        System.out.println("Diary is locked; encrypted entries can't be read this session.");
+    }
+    
+    private static void toggleEncryption() {
+        Path keyFile = Paths.get(KEY_FILE);
+        boolean enable = !Files.exists(keyFile);
+        System.out.println(enable ? "\n=== ENABLE ENCRYPTION ===" : "\n=== DISABLE ENCRYPTION ===");
+        if (!enable && catalog.getCipher() == null) {
+            System.out.println("The diary is locked; restart and enter the passphrase first.");
+            return;
+        }
+        
+        EntryCipher cipher = null;
+        if (enable) {
+            char[] passphrase = readPassphrase("New passphrase: ");
+            char[] repeated = readPassphrase("Repeat passphrase: ");
+            try {
+                if (passphrase.length == 0 || !Arrays.equals(passphrase, repeated)) {
+                    System.out.println("Passphrases are empty or don't match, nothing changed.");
+                    return;
+                }
+                cipher = EntryCipher.create(keyFile, passphrase);
+            } catch (IOException e) {
+                System.err.println("Error creating key: " + e.getMessage());
+                return;
+            } finally {
+                Arrays.fill(passphrase, ' ');
+                Arrays.fill(repeated, ' ');
+            }
+        } else {
+            System.out.print("Entries will be stored as plain text again. Continue? (yes/no): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("yes")) {
+                System.out.println("Operation cancelled.");
+                return;
+            }
+        }
+        
+        EntryCipher reader = catalog.getCipher();
+        long start = System.nanoTime();
+        List<String> files;
+        List<String> failed;
+        rewriteLock.writeLock().lock();
+        try {
+            files = getDiaryFiles();
+            // Entries are rewritten in parallel, each replaced atomically
+            failed = rewriteEntries(files, storage.getCompression(), cipher);
+            catalog.setCipher(cipher);
+            
+            if (!enable && failed.isEmpty()) {
+                try {
+                    Files.delete(keyFile);
+                } catch (IOException e) {
+                    System.err.println("Error removing key file: " + e.getMessage());
+                }
+            } else if (!enable) {
+                // Keep the key so the entries still encrypted can be read next time
+                catalog.setCipher(reader);
+            }
+        } finally {
+            rewriteLock.writeLock().unlock();
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("%s %d of %d entries in %d ms.%n", enable ? "Encrypted" : "Decrypted",
+            files.size() - failed.size(), files.size(), elapsedMs);
+        if (enable) {
+            System.out.println("Backups made from now on contain the encrypted entries. Keep your passphrase safe,");
+            System.out.println("without it neither the entries nor those backups can be read.");
+        }
+    }
+    
+    private static void compressEntries() {
+        System.out.println("\n=== COMPRESS ENTRIES ===");
+        boolean disable = false;
+        EntryCompression compression = storage.getCompression();
+        if (compression != null) {
+            System.out.println("Entries are compressed against " + compression.getDictionaryName() + ".");
+            System.out.print("(r)etrain the dictionary on the current entries, (d)isable compression, or 0 to cancel: ");
+            String choice = scanner.nextLine().trim().toLowerCase();
+            if (choice.equals("d")) {
+                disable = true;
+            } else if (!choice.equals("r")) {
+                System.out.println("Operation cancelled.");
+                return;
+            }
+        }
+        
+        List<String> files;
+        List<String> failed;
+        long before;
+        long after;
+        long elapsedMs;
+        EntryCompression trained = null;
+        rewriteLock.writeLock().lock();
+        try {
+            files = getDiaryFiles();
+            long start = System.nanoTime();
+            if (!disable) {
+                List<byte[]> samples = new ArrayList<>();
+                catalog.scan(files, (filename, text) -> {
+                    if (text == null) {
+                        System.err.println("Error reading file: " + filename);
+                    } else {
+                        samples.add(text.getBytes(StandardCharsets.UTF_8));
+                    }
+                });
+                if (samples.size() < 2) {
+                    System.out.println("At least two entries are needed to train a dictionary.");
+                    return;
+                }
+                try {
+                    trained = EntryCompression.train(Paths.get(ENTRIES_DIR), samples);
+                    if (trained == null) {
+                        System.out.println("The entries have too little in common for compression to save space; nothing changed.");
+                        return;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error training dictionary: " + e.getMessage());
+                    return;
+                }
+            }
+            
+            before = entriesSize(files);
+            failed = rewriteEntries(files, trained, catalog.getCipher());
+            after = entriesSize(files);
+            elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            storage.setCompression(trained);
+            config.setCompressionDictionary(trained == null ? null : trained.getDictionaryName());
+            if (failed.isEmpty()) {
+                removeUnusedDictionaries();
+            }
+        } finally {
+            rewriteLock.writeLock().unlock();
+        }
+        
+        System.out.printf("Rewrote %d of %d entries in %d ms.%n", files.size() - failed.size(), files.size(), elapsedMs);
+        if (trained != null) {
+            System.out.printf("Dictionary: %s, %,d bytes%n", trained.getDictionaryName(), trained.getDictionarySize());
+        }
+        System.out.printf("Entries on disk: %,d bytes -> %,d bytes (%.0f%%)%n", before, after,
+            before == 0 ? 100.0 : after * 100.0 / before);
+    }
+    
+    /**
+     * Rewrites entries with the given compression and cipher (null for none),
+     * in parallel. Each entry is replaced atomically, so an interrupted run
+     * leaves every entry whole in its old or new form. Returns the failures;
+     * if the rewrite can't be made durable, that is every entry.
+     */
+    private static List<String> rewriteEntries(List<String> files, EntryCompression newCompression, EntryCipher newCipher) {
+        List<String> failed = Collections.synchronizedList(new ArrayList<>());
+        files.parallelStream().forEach(filename -> {
+            try {
+                storage.rewrite(filename, newCompression, newCipher);
+            } catch (IOException e) {
+                failed.add(filename);
+                System.err.println("Error rewriting " + filename + ": " + e.getMessage());
+            }
+        });
+        try {
+            storage.flush();
+        } catch (IOException e) {
+            System.err.println("Error saving rewritten entries: " + e.getMessage());
+            return new ArrayList<>(files);
+        }
+        return failed;
+    }
+    
+    private static long entriesSize(List<String> files) {
+        long total = 0;
+        for (String filename : files) {
+            try {
+                total += storage.storedSize(filename);
+            } catch (IOException e) {
+                // Unreadable entries count for nothing
+            }
+        }
+        return total;
+    }
+    
+    /** Drops dictionaries no entry refers to any more; backups keep their own copies. */
+    private static void removeUnusedDictionaries() {
+        EntryCompression compression = storage.getCompression();
+        String current = compression == null ? null : compression.getDictionaryName();
+        try (Stream<Path> listing = Files.list(Paths.get(ENTRIES_DIR))) {
+            for (Path path : listing.collect(Collectors.toList())) {
+                String name = path.getFileName().toString();
+                if (EntryCompression.isDictionaryFile(name) && !name.equals(current)) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error removing old dictionaries: " + e.getMessage());
+        }
+    }
+    
+    /** Picks up the configured dictionary; compression is off if it has gone missing. */
+    private static void loadCompression() {
+        storage.setCompression(null);
+        String dictionary = config.getCompressionDictionary();
+        if (dictionary == null) {
+            return;
+        }
         try {
-            return Files.list(Paths.get(ENTRIES_DIR))
-                .filter(Files::isRegularFile)
-                .map(path -> path.getFileName().toString())
-                .filter(name -> name.startsWith("diary_") && name.endsWith(".txt"))
-                .sorted(Comparator.reverseOrder()) // Show newest first
-                .collect(Collectors.toList());
+            storage.setCompression(EntryCompression.load(Paths.get(ENTRIES_DIR), dictionary));
         } catch (IOException e) {
-            return new ArrayList<>();
+            System.err.println("Compression dictionary unavailable, new entries will be stored uncompressed: " + e.getMessage());
+            config.setCompressionDictionary(null);
+        }
+    }
+    
+    private static char[] readPassphrase(String prompt) {
+        Console console = System.console();
+        if (console != null) {
+            char[] passphrase = console.readPassword(prompt);
+            return passphrase == null ? new char[0] : passphrase;
+        }
+        // No terminal (e.g. run from an IDE): the passphrase will be echoed
+        System.out.print(prompt);
+        return scanner.nextLine().toCharArray();
+    }
+    
+    private static void showYearlyReport() {
+        if (analytics == null) {
+            analytics = new CorpusAnalytics(catalog);
+        }
+        CorpusAnalytics.Report report = analytics.analyze();
+        if (report.getYears().isEmpty()) {
+            System.out.println("No entries to report on.");
+            return;
+        }
+        
+        System.out.println("\n=== YEARLY REPORT ===");
+        for (CorpusAnalytics.YearStats year : report.getYears().values()) {
+            System.out.printf("%n%d: %d entries, %,d words (%d per entry)%n", year.getYear(), year.getEntries(),
+                year.getTotalWords(), year.getTotalWords() / Math.max(1, year.getEntries()));
+            
+            StringBuilder words = new StringBuilder();
+            for (Map.Entry<String, Integer> word : year.topWords(10)) {
+                words.append(words.length() == 0 ? "" : ", ").append(word.getKey()).append(" (").append(word.getValue()).append(")");
+            }
+            System.out.println("  Top words: " + words);
+            
+            int[] hours = year.getHours();
+            Integer[] byCount = new Integer[24];
+            for (int hour = 0; hour < 24; hour++) {
+                byCount[hour] = hour;
+            }
+            Arrays.sort(byCount, (a, b) -> hours[b] - hours[a]);
+            StringBuilder busiest = new StringBuilder();
+            for (int i = 0; i < 3 && hours[byCount[i]] > 0; i++) {
+                busiest.append(i == 0 ? "" : ", ").append(String.format("%02d:00 (%d)", byCount[i], hours[byCount[i]]));
+            }
+            System.out.println("  Most active hours: " + busiest);
+            
+            int[] lengths = year.getLengths();
+            StringBuilder distribution = new StringBuilder();
+            int lower = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                String range = i < CorpusAnalytics.LENGTH_BUCKETS.length
+                    ? lower + "-" + (CorpusAnalytics.LENGTH_BUCKETS[i] - 1) : lower + "+";
+                distribution.append(i == 0 ? "" : ", ").append(range).append(": ").append(lengths[i]);
+                lower = i < CorpusAnalytics.LENGTH_BUCKETS.length ? CorpusAnalytics.LENGTH_BUCKETS[i] : lower;
+            }
+            System.out.println("  Entry lengths (words): " + distribution);
+        }
+        
+        if (report.getYears().size() > 1) {
+            System.out.println("\nWord trends:");
+            System.out.printf("  %-14s", "");
+            for (int year : report.getYears().keySet()) {
+                System.out.printf("%7d", year);
+            }
+            System.out.println();
+            for (Map.Entry<String, Integer> word : report.topWords(8)) {
+                System.out.printf("  %-14s", word.getKey());
+                for (CorpusAnalytics.YearStats year : report.getYears().values()) {
+                    System.out.printf("%7d", year.count(word.getKey()));
+                }
+                System.out.println();
+            }
+        }
+        
+        System.out.printf("%n(%d entries read, %d months from cache, %d ms)%n", report.getEntriesRead(),
+            report.getMonthsReused(), report.getElapsedMillis());
+    }
+    
+    private static List<String> getDiaryFiles() {
+        return catalog.getFiles(); // Newest first, kept current by the watcher
+    }
+    
+    private static synchronized FileQuerySource getQuerySource() {
+        // Rebuilt only when the catalog has seen a change since the last query
+        if (querySource == null || querySource.version() != catalog.version()) {
+            querySource = new FileQuerySource(catalog);
         }
+        return querySource;
     }
 }
\ No newline at end of file
@@ -0,0 +1,262 @@
+package DiaryManager;
+
+import com.diary.EntryStorage;
+import com.diary.FileEntryStorage;
+import com.diary.TagIndex;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CLI's entries on any {@link EntryStorage} engine. Wraps the engine so
+ * that {@link #read} and {@link #write} deal in entry text while the engine
+ * holds it compressed and encrypted as the diary is set up: writes are
+ * encoded with the current {@link EntryCompression} and {@link EntryCipher},
+ * and reads are decoded whatever they were written with, since a stored
+ * entry says whether it is encrypted and which dictionary it needs.
+ * Dictionaries stay files in the entries directory whichever engine holds
+ * the entries.
+ *
+ * Encryption streams: entries are sealed and opened a chunk at a time on
+ * their way to and from the engine ({@link EntryStorage#openRead} and
+ * {@link EntryStorage#write(String, Content)}), so on the files engine the
+ * ciphertext of an entry is never held whole, and {@link #rewrite} moves an
+ * uncompressed entry between ciphers without holding its text whole either.
+ * Compression doesn't stream: a compressed entry is deflated and inflated in
+ * one piece, since its header records the length and checksum of the text.
+ *
+ * {@link #load} and {@link #save} map the CLI's entries onto the shared
+ * {@link com.diary.DiaryEntry} model: a CLI entry is plain text named by
+ * {@link DiaryEntry#create}, so its date, time and creation come from the
+ * name and its title is its first line. Entries under other names are taken
+ * to be in the GUI's format.
+ */
+public class EncodedEntryStorage implements EntryStorage {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("h:mm:ss a");
+    private static final int MAGIC_LENGTH = 4;
+    
+    private final Path entriesDir;
+    private final EntryStorage engine;
+    // Read by HTTP API threads as they store entries
+    private volatile EntryCompression compression;
+    private volatile EntryCipher cipher;
+    
+    public EncodedEntryStorage(EntryStorage engine, Path entriesDir) {
+        this.engine = engine;
+        this.entriesDir = entriesDir;
+    }
+    
+    /** Compression for new writes, or null to store them uncompressed. */
+    public void setCompression(EntryCompression compression) {
+        this.compression = compression;
+    }
+    
+    public EntryCompression getCompression() {
+        return compression;
+    }
+    
+    /** Cipher for reading encrypted entries and encrypting new writes, or null when locked or unencrypted. */
+    public void setCipher(EntryCipher cipher) {
+        this.cipher = cipher;
+    }
+    
+    public EntryCipher getCipher() {
+        return cipher;
+    }
+    
+    /** The engine underneath, which holds entries as stored: for backups, which keep them that way. */
+    public EntryStorage getEngine() {
+        return engine;
+    }
+    
+    @Override
+    public List<String> names() throws IOException {
+        return engine.names();
+    }
+    
+    @Override
+    public boolean contains(String name) throws IOException {
+        return engine.contains(name);
+    }
+    
+    /** The entry's text, decoded as it is read; null if there is none. */
+    @Override
+    public InputStream openRead(String name) throws IOException {
+        InputStream stored = engine.openRead(name);
+        return stored == null ? null : decoding(name, stored);
+    }
+    
+    @Override
+    public byte[] read(String name) throws IOException {
+        try (InputStream text = openRead(name)) {
+            return text == null ? null : text.readAllBytes();
+        }
+    }
+    
+    @Override
+    public void write(String name, byte[] text) throws IOException {
+        EntryCompression withCompression = compression;
+        EntryCipher withCipher = cipher;
+        engine.write(name, out -> encode(new ByteArrayInputStream(text), out, withCompression, withCipher));
+    }
+    
+    /**
+     * Stores the entry again with the given compression and cipher instead of
+     * the ones it was written with (null for none), reading the old form as
+     * the new one is written.
+     */
+    public void rewrite(String name, EntryCompression withCompression, EntryCipher withCipher) throws IOException {
+        engine.write(name, out -> {
+            try (InputStream text = openRead(name)) {
+                if (text == null) {
+                    throw new NoSuchFileException(name);
+                }
+                encode(text, out, withCompression, withCipher);
+            }
+        });
+    }
+    
+    @Override
+    public boolean create(String name, byte[] text) throws IOException {
+        EntryCompression withCompression = compression;
+        EntryCipher withCipher = cipher;
+        return engine.create(name, out -> encode(new ByteArrayInputStream(text), out, withCompression, withCipher));
+    }
+    
+    @Override
+    public List<String> createAll(Map<String, byte[]> texts) throws IOException {
+        EntryCompression withCompression = compression;
+        EntryCipher withCipher = cipher;
+        Map<String, byte[]> encoded = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> text : texts.entrySet()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            encode(new ByteArrayInputStream(text.getValue()), out, withCompression, withCipher);
+            encoded.put(text.getKey(), out.toByteArray());
+        }
+        return engine.createAll(encoded);
+    }
+    
+    @Override
+    public boolean delete(String name) throws IOException {
+        return engine.delete(name);
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        engine.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        engine.close();
+    }
+    
+    /** Bytes the engine holds for {@code name}, after compression and encryption; 0 if there is none. */
+    public long storedSize(String name) throws IOException {
+        if (engine instanceof FileEntryStorage) {
+            try {
+                return Files.size(((FileEntryStorage) engine).path(name));
+            } catch (NoSuchFileException e) {
+                return 0;
+            }
+        }
+        byte[] data = engine.read(name);
+        return data == null ? 0 : data.length;
+    }
+    
+    /** Text of an entry, decoded as a string; null if there is none. */
+    public String text(String name) throws IOException {
+        byte[] text = read(name);
+        return text == null ? null : new String(text, StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public com.diary.DiaryEntry load(String name) throws IOException {
+        LocalDateTime timestamp = DiaryEntry.parseTimestamp(name);
+        if (timestamp == null) {
+            return EntryStorage.super.load(name);
+        }
+        String text = text(name);
+        if (text == null) {
+            return null;
+        }
+        int newline = text.indexOf('\n');
+        String title = (newline < 0 ? text : text.substring(0, newline)).trim();
+        com.diary.DiaryEntry entry = new com.diary.DiaryEntry(timestamp.toLocalDate(), timestamp.format(TIME_FORMAT),
+            title, text, "Personal", false);
+        entry.setFileName(name);
+        entry.setCreated(timestamp);
+        entry.setModified(timestamp);
+        entry.setTags(TagIndex.extractTags(text));
+        return entry;
+    }
+    
+    /** Stores the entry under its file name; a CLI entry keeps only its text, as the CLI writes it. */
+    @Override
+    public void save(com.diary.DiaryEntry entry) throws IOException {
+        if (DiaryEntry.parseTimestamp(entry.getFileName()) == null) {
+            EntryStorage.super.save(entry);
+        } else {
+            write(entry.getFileName(), entry.getContent().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+    
+    /** Compresses, then encrypts: ciphertext would not compress. */
+    private static void encode(InputStream text, OutputStream out, EntryCompression withCompression,
+                               EntryCipher withCipher) throws IOException {
+        OutputStream target = withCipher == null ? out : withCipher.encryptingStream(out);
+        if (withCompression == null) {
+            text.transferTo(target);
+        } else {
+            target.write(withCompression.compress(text.readAllBytes()));
+        }
+        if (target != out) {
+            // Seals the last chunk
+            target.close();
+        }
+    }
+    
+    /** Wraps the stored bytes of {@code name} in whatever decoding they need, closing them if that fails. */
+    private InputStream decoding(String name, InputStream stored) throws IOException {
+        InputStream in = new BufferedInputStream(stored);
+        try {
+            if (EntryCipher.isEncrypted(peek(in))) {
+                EntryCipher reader = cipher;
+                if (reader == null) {
+                    throw new IOException("Entry is encrypted, unlock the diary first: " + name);
+                }
+                in = new BufferedInputStream(reader.decryptingStream(in));
+            }
+            if (EntryCompression.isCompressed(peek(in))) {
+                try (InputStream compressed = in) {
+                    return new ByteArrayInputStream(EntryCompression.decompress(compressed.readAllBytes(), entriesDir));
+                }
+            }
+            return in;
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+    
+    /** The first few bytes of {@code in}, which are read again afterwards: enough for either format's magic. */
+    private static byte[] peek(InputStream in) throws IOException {
+        in.mark(MAGIC_LENGTH);
+        byte[] head = in.readNBytes(MAGIC_LENGTH);
+        in.reset();
+        return head;
+    }
+}
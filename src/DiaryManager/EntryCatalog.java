@@ -0,0 +1,266 @@
+package DiaryManager;
+
+import com.diary.FileEntryStorage;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Sorted in-memory view of the entries in an {@link EncodedEntryStorage},
+ * kept current by the changes this process reports and by a
+ * {@link WatchService} on the entries directory instead of relisting on
+ * every operation. The watcher only sees entries kept one file each; with
+ * any other engine the entries can only change through this process.
+ *
+ * Create, modify and delete events update the file set and drop the cached
+ * content of just that file. Only an OVERFLOW event (or a platform without
+ * file watching) falls back to a full rescan. {@link #version()} increases on
+ * every change so callers can tell whether derived data is still current.
+ *
+ * Entry text is read through the storage on first use and kept in a size-bounded
+ * {@link ContentCache}. Whole-diary passes go through {@link #scan}, which
+ * reads in parallel but leaves the cache to the entries actually opened.
+ */
+public class EntryCatalog implements AutoCloseable {
+    public static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final int SCAN_BATCH = 256;
+    
+    private final Path entriesDir;
+    private final EncodedEntryStorage storage;
+    private final NavigableSet<String> files = new ConcurrentSkipListSet<>(DiaryEntry.CHRONOLOGICAL.reversed());
+    private final ContentCache contents;
+    private final AtomicLong version = new AtomicLong();
+    private final Map<String, Long> changeCounts = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private WatchService watchService;
+    private Thread watcher;
+    
+    public EntryCatalog(Path entriesDir) {
+        this(entriesDir, DEFAULT_CACHE_BYTES);
+    }
+    
+    public EntryCatalog(Path entriesDir, long cacheBytes) {
+        this(new EncodedEntryStorage(new FileEntryStorage(entriesDir), entriesDir), entriesDir, cacheBytes);
+    }
+    
+    public EntryCatalog(EncodedEntryStorage storage, Path entriesDir) {
+        this(storage, entriesDir, DEFAULT_CACHE_BYTES);
+    }
+    
+    public EntryCatalog(EncodedEntryStorage storage, Path entriesDir, long cacheBytes) {
+        this.storage = storage;
+        this.entriesDir = entriesDir;
+        this.contents = new ContentCache(cacheBytes);
+    }
+    
+    public void start() {
+        try {
+            watchService = entriesDir.getFileSystem().newWatchService();
+            entriesDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watcher = new Thread(this::watchLoop, "entry-catalog-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("File watching unavailable, entries will be rescanned on each use: " + e.getMessage());
+            watchService = null;
+        }
+        rescan();
+    }
+    
+    /** Entry filenames, newest first. */
+    public List<String> getFiles() {
+        if (watchService == null) {
+            rescan();
+        }
+        return new ArrayList<>(files);
+    }
+    
+    public long version() {
+        return version.get();
+    }
+    
+    /**
+     * How many changes to {@code filename} this catalog has seen, for telling
+     * whether an entry changed when its file, if it has one, looks the same.
+     */
+    public long changeCount(String filename) {
+        return changeCounts.getOrDefault(filename, 0L);
+    }
+    
+    /** Called with the filename of every changed entry, from whichever thread saw the change. */
+    public void addChangeListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+    
+    public Path getEntriesDir() {
+        return entriesDir;
+    }
+    
+    /** Cipher for reading encrypted entries, or null when the diary is locked or unencrypted. */
+    public void setCipher(EntryCipher cipher) {
+        storage.setCipher(cipher);
+        contents.clear();
+        version.incrementAndGet();
+    }
+    
+    public EntryCipher getCipher() {
+        return storage.getCipher();
+    }
+    
+    public String content(String filename) throws IOException {
+        String cached = contents.get(filename);
+        if (cached != null) {
+            return cached;
+        }
+        long seen = version.get();
+        String content = readEntry(filename);
+        if (version.get() == seen) {
+            // Only cache if no change event raced with the read
+            contents.put(filename, content);
+        }
+        return content;
+    }
+    
+    /**
+     * Text of an entry for a pass over many entries: served from the cache
+     * when there, but not added to it, so the pass doesn't evict the entries
+     * someone is reading.
+     */
+    public String scanContent(String filename) throws IOException {
+        String cached = contents.peek(filename);
+        return cached != null ? cached : readEntry(filename);
+    }
+    
+    /**
+     * Calls {@code action} with each file in {@code filenames} and its text, in
+     * order, reading a batch at a time on all cores so a full scan of an
+     * encrypted diary decrypts entries in parallel. Unreadable files are passed
+     * a null text. See {@link #scanContent} for how the cache is used.
+     */
+    public void scan(List<String> filenames, BiConsumer<String, String> action) {
+        for (int from = 0; from < filenames.size(); from += SCAN_BATCH) {
+            List<String> batch = filenames.subList(from, Math.min(from + SCAN_BATCH, filenames.size()));
+            String[] texts = new String[batch.size()];
+            IntStream.range(0, texts.length).parallel().forEach(i -> {
+                try {
+                    texts[i] = scanContent(batch.get(i));
+                } catch (IOException e) {
+                    // Passed on as null
+                }
+            });
+            for (int i = 0; i < texts.length; i++) {
+                action.accept(batch.get(i), texts[i]);
+            }
+        }
+    }
+    
+    public ContentCache.Stats cacheStats() {
+        return contents.stats();
+    }
+    
+    /** Text of an entry, decrypted and decompressed by the storage. */
+    private String readEntry(String filename) throws IOException {
+        String text = storage.text(filename);
+        if (text == null) {
+            throw new NoSuchFileException(filename);
+        }
+        return text;
+    }
+    
+    public String preview(String filename) throws IOException {
+        String content = content(filename);
+        int newline = content.indexOf('\n');
+        return newline < 0 ? content : content.substring(0, newline);
+    }
+    
+    /** Records a change made by this process without waiting for the watch event. */
+    public void entryChanged(String filename) {
+        contents.remove(filename);
+        changeCounts.merge(filename, 1L, Long::sum);
+        if (DiaryEntry.isEntryFile(filename) && stored(filename)) {
+            files.add(filename);
+        } else {
+            files.remove(filename);
+        }
+        version.incrementAndGet();
+        for (Consumer<String> listener : listeners) {
+            listener.accept(filename);
+        }
+    }
+    
+    public synchronized void rescan() {
+        Set<String> current;
+        try {
+            current = storage.names().stream()
+                .filter(DiaryEntry::isEntryFile)
+                .collect(Collectors.toSet());
+        } catch (IOException e) {
+            current = Collections.emptySet();
+        }
+        if (!current.equals(files)) {
+            files.retainAll(current);
+            files.addAll(current);
+            version.incrementAndGet();
+        }
+        contents.retainAll(current);
+    }
+    
+    private void watchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        contents.clear();
+                        files.forEach(filename -> changeCounts.merge(filename, 1L, Long::sum));
+                        rescan();
+                        version.incrementAndGet();
+                    } else {
+                        String filename = ((Path) event.context()).getFileName().toString();
+                        // Dictionaries, temp files and an engine's own files are not entries
+                        if (DiaryEntry.isEntryFile(filename)) {
+                            entryChanged(filename);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+    
+    private boolean stored(String filename) {
+        try {
+            return storage.contains(filename);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+}
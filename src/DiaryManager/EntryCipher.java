@@ -0,0 +1,323 @@
+package DiaryManager;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Properties;
+
+/**
+ * AES-256-GCM encryption for entry files, keyed by a passphrase.
+ *
+ * Files are encrypted as a stream of 64 KB chunks, each sealed on its own, so
+ * neither side ever holds more than one chunk of an entry in memory. A file
+ * starts with a header: magic, format version, the key salt and a random
+ * nonce prefix. Chunk {@code n} uses the nonce prefix followed by {@code n},
+ * and its length word has the top bit set on the last chunk; the header and
+ * that flag are authenticated with every chunk, so reordered, swapped or
+ * truncated chunks fail to decrypt instead of yielding partial text.
+ *
+ * The key is derived once per session with PBKDF2 (the slow part) and the
+ * salt is stored in {@code keyFile} together with a sealed check value that
+ * tells a wrong passphrase apart from a damaged file. Each encrypted file also
+ * carries the salt, so entries inside a backup remain readable with the
+ * passphrase alone.
+ *
+ * Instances are immutable and safe to share between threads.
+ */
+public class EntryCipher {
+    private static final byte[] MAGIC = {'D', 'E', 'N', 'C'};
+    private static final byte VERSION = 1;
+    private static final int SALT_LENGTH = 16;
+    private static final int NONCE_PREFIX_LENGTH = 8;
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + SALT_LENGTH + NONCE_PREFIX_LENGTH;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int TAG_BITS = 128;
+    private static final int FINAL_FLAG = 0x80000000;
+    private static final int PBKDF2_ITERATIONS = 600_000;
+    private static final byte[] CHECK_VALUE = "diary key check".getBytes(StandardCharsets.UTF_8);
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // Cipher lookup costs about as much as sealing a small entry, so each thread keeps one
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(EntryCipher::newCipher);
+    
+    private final SecretKey key;
+    private final byte[] salt;
+    
+    private EntryCipher(SecretKey key, byte[] salt) {
+        this.key = key;
+        this.salt = salt;
+    }
+    
+    /** Creates a new key file for {@code passphrase}; fails if one already exists. */
+    public static EntryCipher create(Path keyFile, char[] passphrase) throws IOException {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        EntryCipher cipher = new EntryCipher(deriveKey(passphrase, salt), salt);
+        
+        Properties properties = new Properties();
+        properties.setProperty("version", Byte.toString(VERSION));
+        properties.setProperty("salt", Base64.getEncoder().encodeToString(salt));
+        properties.setProperty("check", Base64.getEncoder().encodeToString(cipher.encrypt(CHECK_VALUE)));
+        try (OutputStream out = Files.newOutputStream(keyFile, StandardOpenOption.CREATE_NEW)) {
+            properties.store(out, "Diary encryption key check, contains no key material");
+        }
+        return cipher;
+    }
+    
+    /** Derives the key from the passphrase; throws if the passphrase is wrong. */
+    public static EntryCipher unlock(Path keyFile, char[] passphrase) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(keyFile)) {
+            properties.load(in);
+        }
+        String salt = properties.getProperty("salt");
+        String check = properties.getProperty("check");
+        if (salt == null || check == null) {
+            throw new IOException("Key file is damaged: " + keyFile);
+        }
+        byte[] saltBytes = Base64.getDecoder().decode(salt);
+        EntryCipher cipher = new EntryCipher(deriveKey(passphrase, saltBytes), saltBytes);
+        byte[] decoded;
+        try {
+            decoded = cipher.decrypt(Base64.getDecoder().decode(check));
+        } catch (IOException e) {
+            throw new IOException("Wrong passphrase");
+        }
+        if (!Arrays.equals(decoded, CHECK_VALUE)) {
+            throw new IOException("Wrong passphrase");
+        }
+        return cipher;
+    }
+    
+    public static boolean isEncrypted(byte[] data) {
+        return data.length >= MAGIC.length && Arrays.equals(data, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+    
+    /** Stream that encrypts everything written to it into {@code out}; closing it closes {@code out}. */
+    public OutputStream encryptingStream(OutputStream out) throws IOException {
+        return new EncryptingStream(out);
+    }
+    
+    /** Stream that decrypts {@code in}; reading past a damaged or truncated chunk throws. */
+    public InputStream decryptingStream(InputStream in) throws IOException {
+        return new DecryptingStream(in);
+    }
+    
+    /** Encrypts a value held in memory anyway, such as the key check; entries go through {@link #encryptingStream}. */
+    public byte[] encrypt(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + HEADER_LENGTH + 32);
+        try (OutputStream encrypting = encryptingStream(out)) {
+            encrypting.write(data);
+        }
+        return out.toByteArray();
+    }
+    
+    /** Counterpart of {@link #encrypt}, for values small enough to hold whole. */
+    public byte[] decrypt(byte[] data) throws IOException {
+        try (InputStream decrypting = decryptingStream(new ByteArrayInputStream(data))) {
+            return decrypting.readAllBytes();
+        }
+    }
+    
+    private static SecretKey deriveKey(char[] passphrase, byte[] salt) {
+        PBEKeySpec spec = new PBEKeySpec(passphrase, salt, PBKDF2_ITERATIONS, 256);
+        try {
+            byte[] keyBytes = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            return new SecretKeySpec(keyBytes, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+    
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM not available", e);
+        }
+    }
+    
+    private static byte[] nonce(byte[] header, int chunk) {
+        return ByteBuffer.allocate(12)
+            .put(header, HEADER_LENGTH - NONCE_PREFIX_LENGTH, NONCE_PREFIX_LENGTH)
+            .putInt(chunk)
+            .array();
+    }
+    
+    private static byte[] aad(byte[] header, boolean last) {
+        byte[] aad = Arrays.copyOf(header, header.length + 1);
+        aad[header.length] = (byte) (last ? 1 : 0);
+        return aad;
+    }
+    
+    private class EncryptingStream extends FilterOutputStream {
+        private final byte[] header = new byte[HEADER_LENGTH];
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int buffered;
+        private int chunk;
+        private boolean closed;
+        
+        EncryptingStream(OutputStream out) throws IOException {
+            super(out);
+            ByteBuffer.wrap(header).put(MAGIC).put(VERSION).put(salt);
+            byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+            RANDOM.nextBytes(noncePrefix);
+            System.arraycopy(noncePrefix, 0, header, HEADER_LENGTH - NONCE_PREFIX_LENGTH, NONCE_PREFIX_LENGTH);
+            out.write(header);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                // A full chunk is only sealed once more data shows it is not the last one
+                if (buffered == CHUNK_SIZE) {
+                    seal(false);
+                }
+                int count = Math.min(length, CHUNK_SIZE - buffered);
+                System.arraycopy(data, offset, buffer, buffered, count);
+                buffered += count;
+                offset += count;
+                length -= count;
+            }
+        }
+        
+        private void seal(boolean last) throws IOException {
+            byte[] sealed;
+            try {
+                // Fetched per chunk: the stream may be handed between threads
+                Cipher cipher = CIPHERS.get();
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce(header, chunk)));
+                cipher.updateAAD(aad(header, last));
+                sealed = cipher.doFinal(buffer, 0, buffered);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Encryption failed", e);
+            }
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(last ? sealed.length | FINAL_FLAG : sealed.length);
+            data.write(sealed);
+            buffered = 0;
+            chunk++;
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            // Buffered plaintext stays put: sealing it early would end a chunk mid-stream
+            out.flush();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                seal(true);
+            } finally {
+                out.close();
+            }
+        }
+    }
+    
+    private class DecryptingStream extends InputStream {
+        private final DataInputStream in;
+        private final byte[] header = new byte[HEADER_LENGTH];
+        private byte[] plain = new byte[0];
+        private int position;
+        private int chunk;
+        private boolean last;
+        
+        DecryptingStream(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            try {
+                this.in.readFully(header);
+            } catch (EOFException e) {
+                throw new IOException("Not an encrypted entry (too short)");
+            }
+            if (!isEncrypted(header) || header[MAGIC.length] != VERSION) {
+                throw new IOException("Not an encrypted entry or unsupported version");
+            }
+            if (!Arrays.equals(header, MAGIC.length + 1, MAGIC.length + 1 + SALT_LENGTH, salt, 0, SALT_LENGTH)) {
+                throw new IOException("Entry was encrypted with a different passphrase");
+            }
+        }
+        
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+        
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (position == plain.length) {
+                if (last) {
+                    return -1;
+                }
+                openNextChunk();
+            }
+            int count = Math.min(length, plain.length - position);
+            System.arraycopy(plain, position, target, offset, count);
+            position += count;
+            return count;
+        }
+        
+        private void openNextChunk() throws IOException {
+            int lengthWord;
+            byte[] sealed;
+            try {
+                lengthWord = in.readInt();
+                int length = lengthWord & ~FINAL_FLAG;
+                if (length < TAG_BITS / 8 || length > CHUNK_SIZE + TAG_BITS / 8) {
+                    throw new IOException("Encrypted entry is damaged (bad chunk length)");
+                }
+                sealed = new byte[length];
+                in.readFully(sealed);
+            } catch (EOFException e) {
+                throw new IOException("Encrypted entry is truncated");
+            }
+            last = (lengthWord & FINAL_FLAG) != 0;
+            try {
+                Cipher cipher = CIPHERS.get();
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce(header, chunk)));
+                cipher.updateAAD(aad(header, last));
+                plain = cipher.doFinal(sealed);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Encrypted entry is damaged or was tampered with");
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Decryption failed", e);
+            }
+            position = 0;
+            chunk++;
+            if (last && in.read() != -1) {
+                throw new IOException("Encrypted entry has data after its last chunk");
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
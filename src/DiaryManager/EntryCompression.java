@@ -0,0 +1,358 @@
+package DiaryManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression of entry files against a preset dictionary trained on
+ * the diary itself.
+ *
+ * A single entry is too short for Deflate to find much to refer back to, but
+ * entries repeat each other: the same openings, names and phrases. The
+ * dictionary holds those shared passages, so each entry can reference them
+ * as if they had appeared earlier in the same file.
+ *
+ * A compressed file is {@link #MAGIC}, the Adler-32 of its dictionary, the
+ * length and CRC-32 of the text, then a raw Deflate stream. (A zlib stream
+ * would carry the same information, but zlib re-checksums the whole
+ * dictionary on every read, which costs more than inflating a short entry.)
+ * Dictionaries are stored beside the entries as
+ * {@code dictionary_<adler32>.bin}, which puts them in every backup, and are
+ * never changed once written; retraining writes a new one. Since a file is
+ * found by checksum alone, training never reuses a name that holds other
+ * bytes.
+ */
+public class EntryCompression {
+    public static final String DICTIONARY_PREFIX = "dictionary_";
+    // 0xFF never occurs in UTF-8, so no plain text entry can start like this
+    private static final byte[] MAGIC = {(byte) 0xFF, 'D', 'Z', '1'};
+    private static final int HEADER_LENGTH = MAGIC.length + 12;
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024; // Deflate's window
+    private static final int MAX_SAMPLE_BYTES = 4 * 1024 * 1024;
+    private static final int SEGMENT_KEY = 8;
+    private static final int MAX_CANDIDATES_TRIED = 20_000;
+    // Dictionaries by directory and Adler-32, so a read never has to build a file name
+    private static final Map<Path, Map<Long, byte[]>> DICTIONARIES = new ConcurrentHashMap<>();
+    // Setting up zlib state costs more than inflating a typical entry, so each thread reuses one
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+    
+    private final Path dictionaryFile;
+    private final byte[] dictionary;
+    private final long dictionaryAdler;
+    
+    private EntryCompression(Path dictionaryFile, byte[] dictionary, long dictionaryAdler) {
+        this.dictionaryFile = dictionaryFile;
+        this.dictionary = dictionary;
+        this.dictionaryAdler = dictionaryAdler;
+    }
+    
+    /** Loads a dictionary written by {@link #train}. */
+    public static EntryCompression load(Path entriesDir, String dictionaryName) throws IOException {
+        Path file = entriesDir.resolve(dictionaryName);
+        if (!Files.exists(file)) {
+            throw new IOException("Compression dictionary missing: " + dictionaryName);
+        }
+        byte[] dictionary = Files.readAllBytes(file);
+        return new EntryCompression(file, dictionary, cache(entriesDir, dictionary));
+    }
+    
+    /**
+     * Builds a dictionary from {@code samples} (newest entries first) and
+     * writes it to {@code entriesDir}.
+     *
+     * Passages are scored by how many entries share them: every 8-byte
+     * sequence is counted once per entry, and each run of sequences that occur
+     * in more than one entry becomes a candidate weighted by those counts. The
+     * best candidates fill the dictionary, highest score last, since Deflate
+     * codes nearer references in fewer bits.
+     *
+     * Returns null, writing nothing, if the dictionary comes out empty or
+     * compressing the samples against it would not make them smaller.
+     */
+    public static EntryCompression train(Path entriesDir, List<byte[]> samples) throws IOException {
+        List<byte[]> used = new ArrayList<>();
+        long total = 0;
+        for (byte[] sample : samples) {
+            if (total + sample.length > MAX_SAMPLE_BYTES) {
+                break;
+            }
+            used.add(sample);
+            total += sample.length;
+        }
+        
+        GramCounts entriesContaining = new GramCounts();
+        for (int s = 0; s < used.size(); s++) {
+            byte[] sample = used.get(s);
+            for (int i = 0; i + SEGMENT_KEY <= sample.length; i++) {
+                entriesContaining.countOnce(key(sample, i), s);
+            }
+        }
+        
+        Map<String, Long> candidates = new HashMap<>();
+        for (byte[] sample : used) {
+            int i = 0;
+            while (i + SEGMENT_KEY <= sample.length) {
+                int start = i;
+                long score = 0;
+                int count;
+                while (i + SEGMENT_KEY <= sample.length
+                        && (count = entriesContaining.get(key(sample, i))) > 1) {
+                    score += count;
+                    i++;
+                }
+                if (i > start) {
+                    candidates.merge(latin1(sample, start, i - 1 + SEGMENT_KEY), score, Math::max);
+                } else {
+                    i++;
+                }
+            }
+        }
+        
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>(candidates.entrySet());
+        ranked.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        List<String> chosen = new ArrayList<>();
+        StringBuilder contents = new StringBuilder();
+        int size = 0;
+        for (Map.Entry<String, Long> candidate : ranked.subList(0, Math.min(ranked.size(), MAX_CANDIDATES_TRIED))) {
+            String segment = candidate.getKey();
+            if (size + segment.length() > MAX_DICTIONARY_SIZE) {
+                continue;
+            }
+            if (contents.indexOf(segment) >= 0) {
+                continue; // Already covered by a longer passage
+            }
+            chosen.add(segment);
+            contents.append(segment);
+            size += segment.length();
+        }
+        Collections.reverse(chosen);
+        byte[] dictionary = String.join("", chosen).getBytes(StandardCharsets.ISO_8859_1);
+        if (dictionary.length == 0) {
+            return null;
+        }
+        EntryCompression candidate = new EntryCompression(null, dictionary, 0);
+        long compressed = 0;
+        for (byte[] sample : used) {
+            compressed += candidate.compress(sample).length;
+        }
+        if (compressed >= total) {
+            return null;
+        }
+        
+        while (dictionary.length > 0) {
+            Path file = entriesDir.resolve(dictionaryName(adler32(dictionary)));
+            if (!Files.exists(file)) {
+                EntrySnapshot.replaceAtomically(file, dictionary);
+            } else if (!Arrays.equals(Files.readAllBytes(file), dictionary)) {
+                // Another dictionary with the same checksum: entries compressed against it
+                // must keep finding it, so drop the least useful byte (the first) and try again
+                dictionary = Arrays.copyOfRange(dictionary, 1, dictionary.length);
+                continue;
+            }
+            return new EntryCompression(file, dictionary, cache(entriesDir, dictionary));
+        }
+        return null;
+    }
+    
+    public String getDictionaryName() {
+        return dictionaryFile.getFileName().toString();
+    }
+    
+    public int getDictionarySize() {
+        return dictionary.length;
+    }
+    
+    public static boolean isCompressed(byte[] data) {
+        return data.length >= MAGIC.length && Arrays.equals(data, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+    
+    public static boolean isDictionaryFile(String name) {
+        return name.startsWith(DICTIONARY_PREFIX) && name.endsWith(".bin");
+    }
+    
+    /** Compressed form of {@code data}, or {@code data} itself if compressing would not make it smaller. */
+    public byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            if (dictionary.length > 0) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data);
+            deflater.finish();
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            out.writeBytes(ByteBuffer.allocate(HEADER_LENGTH).put(MAGIC)
+                .putInt((int) dictionaryAdler).putInt(data.length).putInt((int) crc.getValue()).array());
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.size() < data.length ? out.toByteArray() : data;
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    /**
+     * Inflates a file written by {@link #compress}, loading the dictionary it
+     * names from {@code entriesDir}. Any dictionary works here, not only the
+     * current one, so entries compressed before a retrain stay readable.
+     */
+    public static byte[] decompress(byte[] data, Path entriesDir) throws IOException {
+        if (data.length < HEADER_LENGTH) {
+            throw new IOException("Compressed entry is truncated");
+        }
+        ByteBuffer header = ByteBuffer.wrap(data, MAGIC.length, HEADER_LENGTH - MAGIC.length);
+        long adler = header.getInt() & 0xffffffffL;
+        int length = header.getInt();
+        long expectedCrc = header.getInt() & 0xffffffffL;
+        if (length < 0) {
+            throw new IOException("Compressed entry is damaged (bad length)");
+        }
+        
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        try {
+            byte[] dictionary = dictionary(entriesDir, adler);
+            if (dictionary.length > 0) {
+                inflater.setDictionary(dictionary);
+            }
+            inflater.setInput(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+            byte[] text = new byte[length];
+            int filled = 0;
+            while (filled < length && !inflater.finished()) {
+                int count = inflater.inflate(text, filled, length - filled);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                filled += count;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(text, 0, filled);
+            if (filled != length || crc.getValue() != expectedCrc) {
+                throw new IOException("Compressed entry is damaged (checksum mismatch)");
+            }
+            return text;
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed entry is damaged: " + e.getMessage());
+        }
+    }
+    
+    private static byte[] dictionary(Path entriesDir, long adler) throws IOException {
+        byte[] cached = DICTIONARIES.getOrDefault(entriesDir, Collections.emptyMap()).get(adler);
+        if (cached != null) {
+            return cached;
+        }
+        Path file = entriesDir.resolve(dictionaryName(adler));
+        if (!Files.exists(file)) {
+            throw new IOException("Compression dictionary missing: " + file.getFileName());
+        }
+        byte[] dictionary = Files.readAllBytes(file);
+        cache(entriesDir, dictionary);
+        return dictionary;
+    }
+    
+    /** Remembers a dictionary for reads from {@code entriesDir}; returns its Adler-32. */
+    private static long cache(Path entriesDir, byte[] dictionary) {
+        long adler = adler32(dictionary);
+        DICTIONARIES.computeIfAbsent(entriesDir, dir -> new ConcurrentHashMap<>()).put(adler, dictionary);
+        return adler;
+    }
+    
+    private static long adler32(byte[] dictionary) {
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        return adler.getValue();
+    }
+    
+    private static String dictionaryName(long adler) {
+        return String.format("%s%08x.bin", DICTIONARY_PREFIX, adler);
+    }
+    
+    /** The 8 bytes at {@code offset} packed into a long: an exact key, no collisions. */
+    private static long key(byte[] data, int offset) {
+        long key = 0;
+        for (int i = 0; i < SEGMENT_KEY; i++) {
+            key = key << 8 | (data[offset + i] & 0xff);
+        }
+        return key;
+    }
+    
+    private static String latin1(byte[] data, int from, int to) {
+        // One char per byte, so substrings map straight back to the bytes
+        return new String(data, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+    
+    /**
+     * How many samples contain each 8-byte sequence, in an open-addressed
+     * table of primitives: over 4 MB of samples, boxed keys in a HashMap took
+     * several times the samples' size. Each slot remembers the last sample
+     * that counted it, so a sequence is counted once per sample without a set
+     * of what each sample has seen.
+     */
+    private static final class GramCounts {
+        private long[] keys = new long[1 << 16];
+        private int[] counts = new int[1 << 16];
+        private int[] lastSample = new int[1 << 16];
+        private int size;
+        
+        void countOnce(long key, int sample) {
+            int slot = slot(key);
+            if (counts[slot] == 0) {
+                keys[slot] = key;
+                counts[slot] = 1;
+                lastSample[slot] = sample;
+                if (++size > keys.length / 4 * 3) {
+                    grow();
+                }
+            } else if (lastSample[slot] != sample) {
+                counts[slot]++;
+                lastSample[slot] = sample;
+            }
+        }
+        
+        /** Samples containing {@code key}; 0 if none. */
+        int get(long key) {
+            return counts[slot(key)];
+        }
+        
+        /** The slot holding {@code key}, or the empty one where it would go. */
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            long hash = key * 0x9E3779B97F4A7C15L;
+            int slot = (int) (hash ^ hash >>> 32) & mask;
+            while (counts[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+        
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            int[] oldLastSample = lastSample;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            lastSample = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] != 0) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                    lastSample[slot] = oldLastSample[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package DiaryManager;
+
+import com.diary.EntryStorage;
+import com.diary.FileEntryStorage;
+import com.diary.LogEntryStorage;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Point-in-time copy of the entries for a backup to read from: a private
+ * directory with one file per entry, as stored (still compressed or
+ * encrypted), beside the dictionaries and other files of the entries
+ * directory.
+ *
+ * On the files engine every file is hard-linked into the snapshot, which
+ * costs one directory entry per file and no data copy. This only works
+ * because entry files are never modified in place: writers replace them with
+ * an atomic rename (see {@link #replaceAtomically}), which gives the live
+ * name a new file and leaves the snapshot's link pointing at the old
+ * contents. Deleting an entry likewise only removes the live name. Writers
+ * therefore never wait for a backup, and a backup never sees a half-written
+ * or vanished file. Where hard links are not supported the file is copied
+ * instead.
+ *
+ * Other engines keep their entries somewhere the snapshot can't link (the
+ * log engine in one file it rewrites on compaction, the memory engine
+ * nowhere), so their entries are exported through {@link EntryStorage#read},
+ * each one whole as of its read; only the other files are linked.
+ */
+public class EntrySnapshot implements AutoCloseable {
+    private static final String PREFIX = ".snapshot-";
+    private static final Set<Path> OPEN = ConcurrentHashMap.newKeySet();
+    
+    private final Path dir;
+    private final int linked;
+    private final int copied;
+    private final int exported;
+    
+    private EntrySnapshot(Path dir, int linked, int copied, int exported) {
+        this.dir = dir;
+        this.linked = linked;
+        this.copied = copied;
+        this.exported = exported;
+    }
+    
+    /**
+     * Snapshots the entries in {@code engine}, and the other files of
+     * {@code entriesDir}, into a new directory under {@code snapshotRoot}.
+     */
+    public static EntrySnapshot take(EntryStorage engine, Path entriesDir, Path snapshotRoot) throws IOException {
+        removeStale(snapshotRoot);
+        Path dir = Files.createTempDirectory(Files.createDirectories(snapshotRoot), PREFIX);
+        OPEN.add(dir);
+        try {
+            boolean linkEntries = engine instanceof FileEntryStorage;
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(entriesDir)) {
+                files = listing.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().endsWith(".tmp"))
+                    .filter(file -> linkEntries || !isEngineFile(file.getFileName().toString()))
+                    .collect(Collectors.toList());
+            }
+            EntrySnapshot snapshot = link(dir, files);
+            if (linkEntries) {
+                return snapshot;
+            }
+            int exported = 0;
+            for (String name : engine.names()) {
+                byte[] data = engine.read(name);
+                if (data != null) {
+                    Files.write(dir.resolve(name), data);
+                    exported++;
+                }
+            }
+            return new EntrySnapshot(dir, snapshot.linked, snapshot.copied, exported);
+        } catch (IOException | RuntimeException e) {
+            try {
+                deleteTree(dir);
+            } finally {
+                OPEN.remove(dir);
+            }
+            throw e;
+        }
+    }
+    
+    /** Whether the file holds entries, which on engines other than the files engine come from the engine instead. */
+    private static boolean isEngineFile(String name) {
+        return name.endsWith(".txt") || name.equals(LogEntryStorage.FILE_NAME);
+    }
+    
+    private static EntrySnapshot link(Path dir, List<Path> files) throws IOException {
+        int linked = 0;
+        int copied = 0;
+        boolean linksSupported = true;
+        for (Path file : files) {
+            Path target = dir.resolve(file.getFileName());
+            try {
+                if (linksSupported) {
+                    try {
+                        Files.createLink(target, file);
+                        linked++;
+                        continue;
+                    } catch (NoSuchFileException e) {
+                        throw e;
+                    } catch (UnsupportedOperationException | FileSystemException e) {
+                        linksSupported = false;
+                    }
+                }
+                Files.copy(file, target);
+                copied++;
+            } catch (NoSuchFileException e) {
+                // Deleted after the listing: it is simply not part of this snapshot
+            }
+        }
+        return new EntrySnapshot(dir, linked, copied, 0);
+    }
+    
+    public Path getDirectory() {
+        return dir;
+    }
+    
+    public int size() {
+        return linked + copied + exported;
+    }
+    
+    public boolean usedCopies() {
+        return copied > 0;
+    }
+    
+    /**
+     * Writes {@code data} to a temp file beside {@code target} and renames it
+     * over the target, so readers and snapshots only ever see whole files.
+     */
+    public static void replaceAtomically(Path target, byte[] data) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            Files.write(temp, data);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            deleteTree(dir);
+        } finally {
+            OPEN.remove(dir);
+        }
+    }
+    
+    private static void removeStale(Path snapshotRoot) throws IOException {
+        // Left behind if the application was killed mid-backup
+        if (!Files.isDirectory(snapshotRoot)) {
+            return;
+        }
+        List<Path> stale;
+        try (Stream<Path> listing = Files.list(snapshotRoot)) {
+            stale = listing.filter(path -> path.getFileName().toString().startsWith(PREFIX))
+                .filter(path -> !OPEN.contains(path))
+                .collect(Collectors.toList());
+        }
+        for (Path path : stale) {
+            deleteTree(path);
+        }
+    }
+    
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package DiaryManager;
+
+import com.diary.EntryBitmap;
+import com.diary.QuerySource;
+import com.diary.TagIndex;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Query indexes over the entries directory. Entry ids are positions in the
+ * file list the source was built from. CLI entries carry no category or
+ * favorite flag, so those predicates simply match nothing.
+ */
+public class FileQuerySource implements QuerySource {
+    private static final EntryBitmap EMPTY = new EntryBitmap();
+    
+    private final List<String> files;
+    private final String[] contents;
+    private final EntryBitmap allIds = new EntryBitmap();
+    private final TreeMap<LocalDate, EntryBitmap> byDate = new TreeMap<>();
+    private final TagIndex tags = new TagIndex();
+    
+    private final long version;
+    
+    public FileQuerySource(EntryCatalog catalog) {
+        this.version = catalog.version();
+        this.files = catalog.getFiles();
+        this.contents = new String[files.size()];
+        int[] next = {0};
+        catalog.scan(files, (filename, text) -> {
+            int id = next[0]++;
+            allIds.add(id);
+            if (text == null) {
+                System.err.println("Error reading file: " + filename);
+                text = "";
+            }
+            tags.update(id, TagIndex.extractTags(text));
+            contents[id] = text.toLowerCase(Locale.ROOT);
+            
+            LocalDateTime timestamp = DiaryEntry.parseTimestamp(filename);
+            if (timestamp != null) {
+                byDate.computeIfAbsent(timestamp.toLocalDate(), d -> new EntryBitmap()).add(id);
+            }
+        });
+    }
+    
+    /** Catalog version this source was built from. */
+    public long version() {
+        return version;
+    }
+    
+    public String filename(int id) {
+        return files.get(id);
+    }
+    
+    @Override
+    public EntryBitmap allEntries() {
+        return allIds;
+    }
+    
+    @Override
+    public EntryBitmap withTag(String tag) {
+        return tags.withTag(tag);
+    }
+    
+    @Override
+    public EntryBitmap inCategory(String category) {
+        return EMPTY;
+    }
+    
+    @Override
+    public EntryBitmap favorites() {
+        return EMPTY;
+    }
+    
+    @Override
+    public EntryBitmap between(LocalDate from, LocalDate to) {
+        EntryBitmap result = new EntryBitmap();
+        if (from != null && to != null && from.isAfter(to)) {
+            return result;
+        }
+        NavigableMap<LocalDate, EntryBitmap> range = byDate;
+        if (from != null) {
+            range = range.tailMap(from, true);
+        }
+        if (to != null) {
+            range = range.headMap(to, true);
+        }
+        for (EntryBitmap day : range.values()) {
+            result = result.or(day);
+        }
+        return result;
+    }
+    
+    @Override
+    public boolean containsText(int id, String term) {
+        return contents[id].contains(term);
+    }
+}
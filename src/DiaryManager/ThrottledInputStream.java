@@ -0,0 +1,53 @@
+package DiaryManager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Input stream that sleeps as needed to stay under a byte rate, so a
+ * background backup does not compete with the user for the disk.
+ */
+public class ThrottledInputStream extends FilterInputStream {
+    private final long bytesPerSecond;
+    private final long startNanos = System.nanoTime();
+    private long bytesRead;
+    
+    public ThrottledInputStream(InputStream in, long bytesPerSecond) {
+        super(in);
+        this.bytesPerSecond = bytesPerSecond;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            throttle(1);
+        }
+        return b;
+    }
+    
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            throttle(read);
+        }
+        return read;
+    }
+    
+    private void throttle(int count) throws IOException {
+        bytesRead += count;
+        long expectedNanos = bytesRead * 1_000_000_000L / bytesPerSecond;
+        long aheadNanos = expectedNanos - (System.nanoTime() - startNanos);
+        if (aheadNanos > 0) {
+            try {
+                Thread.sleep(aheadNanos / 1_000_000, (int) (aheadNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Backup cancelled");
+            }
+        }
+    }
+}
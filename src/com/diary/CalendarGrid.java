@@ -0,0 +1,96 @@
+package com.diary;
+
+import javafx.css.PseudoClass;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.shape.Circle;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Month view built once as a fixed 6x7 pool of day cells. Showing another
+ * month or selection only changes each cell's text, pseudo-classes and dot
+ * visibility, so the scene graph never changes and no handlers are created.
+ */
+class CalendarGrid extends GridPane {
+    private static final int CELLS = 6 * 7;
+    private static final PseudoClass TODAY = PseudoClass.getPseudoClass("today");
+    private static final PseudoClass SELECTED = PseudoClass.getPseudoClass("selected");
+    private static final PseudoClass HAS_ENTRIES = PseudoClass.getPseudoClass("has-entries");
+    private static final String[] DAY_TEXT = new String[32];
+    
+    static {
+        for (int day = 1; day < DAY_TEXT.length; day++) {
+            DAY_TEXT[day] = String.valueOf(day);
+        }
+    }
+    
+    private final StackPane[] cells = new StackPane[CELLS];
+    private final Label[] dayLabels = new Label[CELLS];
+    private final Circle[] dots = new Circle[CELLS];
+    private final LocalDate[] cellDates = new LocalDate[CELLS];
+    private Consumer<LocalDate> onDateClicked = date -> { };
+    
+    CalendarGrid() {
+        setHgap(1);
+        setVgap(1);
+        for (int i = 0; i < CELLS; i++) {
+            Label dayLabel = new Label();
+            dayLabel.getStyleClass().add("calendar-day");
+            dayLabel.setAlignment(Pos.CENTER);
+            dayLabel.setPrefSize(22, 22);
+            
+            Circle dot = new Circle(2);
+            dot.getStyleClass().add("entry-dot");
+            dot.setTranslateY(6);
+            dot.setMouseTransparent(true);
+            
+            StackPane cell = new StackPane(dayLabel, dot);
+            cell.setAlignment(Pos.CENTER);
+            
+            int index = i;
+            dayLabel.setOnMouseClicked(e -> {
+                if (cellDates[index] != null) {
+                    onDateClicked.accept(cellDates[index]);
+                }
+            });
+            
+            cells[i] = cell;
+            dayLabels[i] = dayLabel;
+            dots[i] = dot;
+            add(cell, i % 7, i / 7);
+        }
+    }
+    
+    void setOnDateClicked(Consumer<LocalDate> onDateClicked) {
+        this.onDateClicked = onDateClicked;
+    }
+    
+    /** Shows {@code month}; {@code entryDates} need only cover that month. */
+    void show(YearMonth month, LocalDate selected, Set<LocalDate> entryDates) {
+        LocalDate today = LocalDate.now();
+        int offset = month.atDay(1).getDayOfWeek().getValue() % 7; // Sunday first
+        int daysInMonth = month.lengthOfMonth();
+        
+        for (int i = 0; i < CELLS; i++) {
+            int day = i - offset + 1;
+            boolean inMonth = day >= 1 && day <= daysInMonth;
+            LocalDate date = inMonth ? month.atDay(day) : null;
+            boolean hasEntries = inMonth && entryDates.contains(date);
+            
+            cellDates[i] = date;
+            cells[i].setVisible(inMonth);
+            dayLabels[i].setText(inMonth ? DAY_TEXT[day] : "");
+            // Rule order in diary.css makes today win over selected, and selected over has-entries
+            dayLabels[i].pseudoClassStateChanged(TODAY, inMonth && date.equals(today));
+            dayLabels[i].pseudoClassStateChanged(SELECTED, inMonth && date.equals(selected));
+            dayLabels[i].pseudoClassStateChanged(HAS_ENTRIES, hasEntries);
+            dots[i].setVisible(hasEntries);
+        }
+    }
+}
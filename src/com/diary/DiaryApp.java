@@ -2,17 +2,19 @@ package com.diary;
 
 import javafx.application.Platform;
 import javafx.application.Application;
+import javafx.css.PseudoClass;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
-import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
-import javafx.scene.text.Font;
-import javafx.scene.text.FontWeight;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.stage.Stage;
 import javafx.stage.FileChooser;
 import javafx.animation.Animation;
@@ -20,26 +22,44 @@ import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.util.Duration;
 import java.io.File;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
-import java.time.DayOfWeek;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class DiaryApp extends Application {
     
     private VBox entriesContainer;
     private TextArea editorArea;
+    private EditorDocument editorDocument = new EditorDocument("");
+    private DiaryEntry editorOwner; // Entry the editor document belongs to
+    private boolean loadingEditor;
+    private Label wordCountLabel;
     private Label dateLabel;
     private Label timeLabel;
     private TextField titleField;
-    private GridPane calendarGrid;
+    private CalendarGrid calendarGrid;
     private Label monthYearLabel;
     private LocalDate currentDate = LocalDate.now();
     private LocalDate selectedCalendarDate = LocalDate.now();
-    private List<DiaryEntry> entries = new ArrayList<>();
+    // Read from background tasks as well as the FX thread, which is the only one to change it
+    private final EntryStore entries = new EntryStore();
+    private EntryIndex entryIndex = new EntryIndex();
+    // While the loaded entries are indexed in the background: entries changed or removed meanwhile
+    private Set<DiaryEntry> touchedWhileIndexing = null;
+    private final List<DiaryEntry> removedWhileIndexing = new ArrayList<>();
+    // Entries whose text was changed in the editor but not yet saved to their file
+    private final Set<DiaryEntry> unsavedEntries = new HashSet<>();
+    // Before the first load finishes, entries is missing files and must not become the startup snapshot
+    private boolean entriesLoaded = false;
+    
+    // Every disk read and write runs here, never on the FX thread
+    private final DiaryIOService io = new DiaryIOService(Paths.get("diary_data"));
+    private Label ioStatusLabel;
     private boolean darkMode = false;
     private Stage primaryStage;
     private DiaryEntry selectedEntry = null;
@@ -49,7 +69,7 @@ public class DiaryApp extends Application {
     private ComboBox<String> categoryCombo;
     
     // User Profile
-    private UserProfile currentUser = new UserProfile();
+    private UserProfile currentUser = new UserProfile(() -> entryIndex.stats());
     
     // Profile components
     private Circle profilePhotoCircle;
@@ -61,30 +81,27 @@ public class DiaryApp extends Application {
     private TextField searchField;
     private Label resultsCountLabel;
     
+    // Tag cloud
+    private FlowPane tagCloud;
+    
     // Timeline for updating time
     private Timeline timeUpdater;
     
-    // Theme colors
-    private Color primaryLight = Color.web("#2c3e50");
-    private Color backgroundLight = Color.web("#f5f8fa");
-    private Color panelLight = Color.web("#ffffff");
-    private Color borderLight = Color.web("#e9ecef");
-    private Color textLight = Color.web("#212529");
-    private Color mutedLight = Color.web("#6c757d");
-    private Color accentLight = Color.web("#007bff");
-    private Color successLight = Color.web("#28a745");
-    private Color warningLight = Color.web("#ffc107");
-    private Color dangerLight = Color.web("#dc3545");
-    
-    private Color primaryDark = Color.web("#e0e0e0");
-    private Color backgroundDark = Color.web("#1a1a1a");
-    private Color panelDark = Color.web("#2d2d2d");
-    private Color borderDark = Color.web("#404040");
-    private Color textDark = Color.web("#ffffff");
-    private Color mutedDark = Color.web("#909090");
-    private Color accentDark = Color.web("#4dabf7");
-    private Color successDark = Color.web("#20c997");
-    private Color dangerDark = Color.web("#fa5252");
+    // Frame-time diagnostics, toggled with Ctrl+Shift+D
+    private PulseMonitor pulseMonitor;
+    
+    // Stylesheets: diary.css holds the layout, the theme sheet only the -diary-* colors
+    private static final String BASE_STYLESHEET = DiaryApp.class.getResource("diary.css").toExternalForm();
+    private static final String LIGHT_STYLESHEET = DiaryApp.class.getResource("diary-light.css").toExternalForm();
+    private static final String DARK_STYLESHEET = DiaryApp.class.getResource("diary-dark.css").toExternalForm();
+    
+    private static final PseudoClass SELECTED = PseudoClass.getPseudoClass("selected");
+    private static final PseudoClass FAVORITE = PseudoClass.getPseudoClass("favorite");
+    
+    private static final String[] TAG_SIZE_CLASSES = {"tag-size-1", "tag-size-2", "tag-size-3", "tag-size-4", "tag-size-5"};
+    private static final DateTimeFormatter CARD_DATE_FORMAT = DateTimeFormatter.ofPattern("MMM d, yyyy");
+    // Cards are built a page at a time, so a large diary's list appears as fast as a small one's
+    private static final int CARD_PAGE_SIZE = 200;
     
     @Override
     public void start(Stage stage) {
@@ -93,7 +110,7 @@ public class DiaryApp extends Application {
         setupDefaultUserProfile();
         
         BorderPane mainPane = new BorderPane();
-        mainPane.setStyle("-fx-background-color: " + toHex(backgroundLight) + ";");
+        mainPane.getStyleClass().add("diary-root");
         
         HBox topPanel = createTopPanel();
         mainPane.setTop(topPanel);
@@ -115,12 +132,23 @@ public class DiaryApp extends Application {
         
         mainPane.setCenter(mainContent);
         
-        addSampleEntries();
+        loadSavedData();
         
         // Start time updater
         startTimeUpdater();
         
-        Scene scene = new Scene(mainPane, 1200, 700); // Increased size for profile
+        // Stack so the diagnostics overlay can float above the layout
+        StackPane root = new StackPane(mainPane);
+        Scene scene = new Scene(root, 1200, 700); // Increased size for profile
+        scene.getStylesheets().addAll(BASE_STYLESHEET, themeStylesheet());
+        
+        pulseMonitor = new PulseMonitor(scene);
+        root.getChildren().add(pulseMonitor.getOverlay());
+        StackPane.setAlignment(pulseMonitor.getOverlay(), Pos.BOTTOM_LEFT);
+        StackPane.setMargin(pulseMonitor.getOverlay(), new Insets(8));
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.D, KeyCombination.SHORTCUT_DOWN,
+            KeyCombination.SHIFT_DOWN), pulseMonitor::toggle);
+        pulseMonitor.setEnabled(Boolean.getBoolean("diary.diagnostics"));
         primaryStage.setTitle("My Diary");
         primaryStage.setScene(scene);
         primaryStage.show();
@@ -131,9 +159,6 @@ public class DiaryApp extends Application {
         currentUser.setEmail("tesfamikealhailu@gmail.com");
         currentUser.setBio("Keeping memories alive through words.");
         currentUser.setJoinDate(LocalDate.of(2023, 1, 15));
-        currentUser.setTotalEntries(entries.size());
-        currentUser.setStreakDays(7);
-        currentUser.setFavoriteCategory("Personal");
         // Default profile photo (emoji as fallback)
         currentUser.setProfilePhotoUrl(null);
     }
@@ -166,18 +191,17 @@ public class DiaryApp extends Application {
         HBox topPanel = new HBox(8);
         topPanel.setPadding(new Insets(8));
         topPanel.setAlignment(Pos.CENTER_LEFT);
-        topPanel.setStyle("-fx-background-color: " + toHex(panelLight) + ";");
+        topPanel.getStyleClass().add("top-bar");
         
         // App icon and title
         HBox titleBox = new HBox(6);
         titleBox.setAlignment(Pos.CENTER_LEFT);
         
         Label appIcon = new Label("📓");
-        appIcon.setFont(Font.font("Arial", FontWeight.BOLD, 16));
+        appIcon.getStyleClass().add("app-icon");
         
         Label appTitle = new Label("My Diary");
-        appTitle.setFont(Font.font("Georgia", FontWeight.BOLD, 18));
-        appTitle.setTextFill(primaryLight);
+        appTitle.getStyleClass().add("app-title");
         
         titleBox.getChildren().addAll(appIcon, appTitle);
         
@@ -186,12 +210,11 @@ public class DiaryApp extends Application {
         
         // Search field
         searchField = new TextField();
-        searchField.setPromptText("Search entries...");
+        searchField.setPromptText("Search, e.g. tag:ideas fav:true");
+        searchField.setTooltip(new Tooltip(
+            "Combine filters: category:Work tag:ideas after:2025-01-01 before:2025-12-31 fav:true \"exact phrase\""));
         searchField.setPrefWidth(180);
-        searchField.setStyle(
-            "-fx-background-color: #ffffff; -fx-text-fill: #212529; " +
-            "-fx-background-radius: 12; -fx-padding: 4 12; -fx-font-size: 12;"
-        );
+        searchField.getStyleClass().add("search-field");
         searchField.setOnAction(e -> performSearch());
         
         // Quick actions
@@ -199,22 +222,17 @@ public class DiaryApp extends Application {
         quickActions.setAlignment(Pos.CENTER);
         
         Button newEntryBtn = new Button("+ New Entry");
-        newEntryBtn.setStyle(
-            "-fx-background-color: " + toHex(accentLight) + "; -fx-text-fill: white; " +
-            "-fx-font-weight: bold; -fx-background-radius: 4; -fx-padding: 6 14; -fx-font-size: 12;"
-        );
+        newEntryBtn.getStyleClass().add("primary-button");
         newEntryBtn.setTooltip(new Tooltip("Create new entry"));
         newEntryBtn.setOnAction(e -> createNewEntry());
         
         // Theme toggle
         ToggleButton themeToggle = new ToggleButton(darkMode ? "☀️" : "🌙");
-        themeToggle.setStyle(
-            "-fx-background-color: #f1f3f5; -fx-text-fill: #495057; " +
-            "-fx-background-radius: 12; -fx-padding: 4 8; -fx-min-width: 40;"
-        );
+        themeToggle.getStyleClass().add("theme-toggle");
         
         themeToggle.selectedProperty().addListener((observable, oldValue, newValue) -> {
             darkMode = newValue;
+            themeToggle.setText(darkMode ? "☀️" : "🌙");
             applyThemeToAll();
         });
         
@@ -238,7 +256,10 @@ public class DiaryApp extends Application {
         // ===== FOLDERS PANEL =====
         VBox foldersPanel = createCompactFoldersPanel();
         
-        leftPanel.getChildren().addAll(profilePanel, calendarPanel, foldersPanel);
+        // ===== TAGS PANEL =====
+        VBox tagsPanel = createTagCloudPanel();
+        
+        leftPanel.getChildren().addAll(profilePanel, calendarPanel, foldersPanel, tagsPanel);
         VBox.setVgrow(foldersPanel, Priority.ALWAYS);
         
         return leftPanel;
@@ -247,19 +268,14 @@ public class DiaryApp extends Application {
     private VBox createProfilePanel() {
         VBox profilePanel = new VBox(8);
         profilePanel.setPadding(new Insets(12));
-        profilePanel.setStyle(
-            "-fx-background-color: #ffffff; -fx-background-radius: 8; " +
-            "-fx-border-color: #e9ecef; -fx-border-radius: 8; -fx-border-width: 1;"
-        );
+        profilePanel.getStyleClass().add("card-panel");
         
         // Profile photo
         StackPane photoContainer = new StackPane();
         photoContainer.setAlignment(Pos.CENTER);
         
         profilePhotoCircle = new Circle(40);
-        profilePhotoCircle.setFill(Color.web("#e9ecef"));
-        profilePhotoCircle.setStroke(accentLight);
-        profilePhotoCircle.setStrokeWidth(2);
+        profilePhotoCircle.getStyleClass().add("photo-ring");
         
         profileImageView = new ImageView();
         profileImageView.setFitWidth(70);
@@ -269,7 +285,7 @@ public class DiaryApp extends Application {
         
         // Set default profile photo (emoji)
         Label defaultPhoto = new Label("👤");
-        defaultPhoto.setFont(Font.font("Arial", FontWeight.BOLD, 24));
+        defaultPhoto.getStyleClass().add("profile-photo-placeholder");
         
         StackPane.setAlignment(defaultPhoto, Pos.CENTER);
         
@@ -277,23 +293,17 @@ public class DiaryApp extends Application {
         
         // User name
         userNameLabel = new Label(currentUser.getName());
-        userNameLabel.setFont(Font.font("Segoe UI", FontWeight.BOLD, 16));
-        userNameLabel.setTextFill(primaryLight);
+        userNameLabel.getStyleClass().add("profile-name");
         userNameLabel.setAlignment(Pos.CENTER);
         
         // User stats
         userStatsLabel = new Label(currentUser.getTotalEntries() + " entries • " + currentUser.getStreakDays() + " day streak");
-        userStatsLabel.setFont(Font.font("Segoe UI", 10));
-        userStatsLabel.setTextFill(mutedLight);
+        userStatsLabel.getStyleClass().add("profile-stats");
         userStatsLabel.setAlignment(Pos.CENTER);
         
         // Edit profile button
         Button editProfileBtn = new Button("Edit Profile");
-        editProfileBtn.setStyle(
-            "-fx-background-color: transparent; -fx-text-fill: " + toHex(accentLight) + "; " +
-            "-fx-border-color: " + toHex(accentLight) + "; -fx-border-width: 1; " +
-            "-fx-border-radius: 15; -fx-padding: 4 12; -fx-font-size: 11;"
-        );
+        editProfileBtn.getStyleClass().add("outline-button");
         editProfileBtn.setOnAction(e -> showEditProfileDialog());
         
         VBox profileInfo = new VBox(4);
@@ -311,10 +321,7 @@ public class DiaryApp extends Application {
     private VBox createCompactCalendarPanel() {
         VBox calendarPanel = new VBox(6);
         calendarPanel.setPadding(new Insets(12));
-        calendarPanel.setStyle(
-            "-fx-background-color: #f8f9fa; -fx-background-radius: 6; " +
-            "-fx-border-color: #e9ecef; -fx-border-radius: 6; -fx-border-width: 1;"
-        );
+        calendarPanel.getStyleClass().add("side-panel");
         
         // Calendar header
         HBox calendarHeader = new HBox(4);
@@ -322,15 +329,14 @@ public class DiaryApp extends Application {
         calendarHeader.setPadding(new Insets(0, 0, 6, 0));
         
         Button prevMonthBtn = new Button("◀");
-        prevMonthBtn.setStyle("-fx-background-color: transparent; -fx-font-size: 11; -fx-padding: 1 4;");
+        prevMonthBtn.getStyleClass().add("nav-button");
         prevMonthBtn.setOnAction(e -> navigateCalendar(-1));
         
         monthYearLabel = new Label();
-        monthYearLabel.setFont(Font.font("Segoe UI", FontWeight.BOLD, 12));
-        monthYearLabel.setTextFill(primaryLight);
+        monthYearLabel.getStyleClass().add("month-label");
         
         Button nextMonthBtn = new Button("▶");
-        nextMonthBtn.setStyle("-fx-background-color: transparent; -fx-font-size: 11; -fx-padding: 1 4;");
+        nextMonthBtn.getStyleClass().add("nav-button");
         nextMonthBtn.setOnAction(e -> navigateCalendar(1));
         
         calendarHeader.getChildren().addAll(prevMonthBtn, monthYearLabel, nextMonthBtn);
@@ -342,17 +348,15 @@ public class DiaryApp extends Application {
         String[] dayNames = {"S", "M", "T", "W", "T", "F", "S"};
         for (int i = 0; i < 7; i++) {
             Label dayLabel = new Label(dayNames[i]);
-            dayLabel.setFont(Font.font("Segoe UI", FontWeight.BOLD, 9));
-            dayLabel.setTextFill(mutedLight);
+            dayLabel.getStyleClass().add("weekday-label");
             dayLabel.setAlignment(Pos.CENTER);
             dayLabel.setPrefWidth(20);
             daysHeader.add(dayLabel, i, 0);
         }
         
         // Calendar grid
-        calendarGrid = new GridPane();
-        calendarGrid.setHgap(1);
-        calendarGrid.setVgap(1);
+        calendarGrid = new CalendarGrid();
+        calendarGrid.setOnDateClicked(this::filterEntriesByDate);
         
         updateCalendar();
         
@@ -364,14 +368,10 @@ public class DiaryApp extends Application {
     private VBox createCompactFoldersPanel() {
         VBox foldersPanel = new VBox(6);
         foldersPanel.setPadding(new Insets(12));
-        foldersPanel.setStyle(
-            "-fx-background-color: #f8f9fa; -fx-background-radius: 6; " +
-            "-fx-border-color: #e9ecef; -fx-border-radius: 6; -fx-border-width: 1;"
-        );
+        foldersPanel.getStyleClass().add("side-panel");
         
         Label folderTitle = new Label("📁 Folders");
-        folderTitle.setFont(Font.font("Segoe UI", FontWeight.BOLD, 12));
-        folderTitle.setTextFill(primaryLight);
+        folderTitle.getStyleClass().add("panel-title");
         
         // Folder list
         VBox folderList = new VBox(2);
@@ -380,22 +380,12 @@ public class DiaryApp extends Application {
         for (String folderName : folderNames) {
             HBox folderItem = new HBox(4);
             folderItem.setAlignment(Pos.CENTER_LEFT);
-            folderItem.setPadding(new Insets(6, 8, 6, 8));
-            folderItem.setStyle("-fx-cursor: hand;");
-            
-            folderItem.setOnMouseEntered(e -> folderItem.setStyle(
-                "-fx-background-color: #e9ecef; -fx-cursor: hand; -fx-background-radius: 4;"
-            ));
-            folderItem.setOnMouseExited(e -> folderItem.setStyle(
-                "-fx-background-color: transparent; -fx-cursor: hand;"
-            ));
+            folderItem.getStyleClass().add("folder-item");
             
             Label folderIcon = new Label(getFolderIcon(folderName));
-            folderIcon.setFont(Font.font("Arial", 12));
+            folderIcon.getStyleClass().add("folder-icon");
             
             Label folderLabel = new Label(folderName);
-            folderLabel.setFont(Font.font("Segoe UI", 12));
-            folderLabel.setTextFill(primaryLight);
             
             Region spacer = new Region();
             HBox.setHgrow(spacer, Priority.ALWAYS);
@@ -408,12 +398,7 @@ public class DiaryApp extends Application {
                 .collect(Collectors.toList()).size();
             
             Label countBadge = new Label(String.valueOf(count));
-            countBadge.setFont(Font.font("Segoe UI", FontWeight.BOLD, 9));
-            countBadge.setPadding(new Insets(1, 6, 1, 6));
-            countBadge.setStyle(
-                "-fx-background-color: " + toHex(accentLight) + "; " +
-                "-fx-text-fill: white; -fx-background-radius: 8;"
-            );
+            countBadge.getStyleClass().add("count-badge");
             countBadge.setVisible(count > 0);
             
             folderItem.getChildren().addAll(folderIcon, folderLabel, spacer, countBadge);
@@ -429,6 +414,56 @@ public class DiaryApp extends Application {
         return foldersPanel;
     }
     
+    private VBox createTagCloudPanel() {
+        VBox tagsPanel = new VBox(6);
+        tagsPanel.setPadding(new Insets(12));
+        tagsPanel.getStyleClass().add("side-panel");
+        
+        Label tagsTitle = new Label("🏷️ Tags");
+        tagsTitle.getStyleClass().add("panel-title");
+        
+        tagCloud = new FlowPane(4, 4);
+        
+        tagsPanel.getChildren().addAll(tagsTitle, tagCloud);
+        
+        updateTagCloud();
+        
+        return tagsPanel;
+    }
+    
+    private void updateTagCloud() {
+        if (tagCloud == null) {
+            return;
+        }
+        tagCloud.getChildren().clear();
+        
+        if (touchedWhileIndexing != null) {
+            Label counting = new Label("Counting tags...");
+            counting.getStyleClass().add("muted");
+            tagCloud.getChildren().add(counting);
+            return;
+        }
+        
+        List<Map.Entry<String, Integer>> counts = entryIndex.tags().tagCounts();
+        if (counts.isEmpty()) {
+            Label noTags = new Label("No tags yet");
+            noTags.getStyleClass().add("muted");
+            tagCloud.getChildren().add(noTags);
+            return;
+        }
+        
+        int maxCount = counts.get(0).getValue();
+        for (Map.Entry<String, Integer> tagCount : counts) {
+            String tag = tagCount.getKey();
+            Label tagLabel = new Label("#" + tag + " " + tagCount.getValue());
+            // Five size steps, most used tag largest
+            int size = 1 + (4 * tagCount.getValue() + maxCount / 2) / maxCount;
+            tagLabel.getStyleClass().addAll("tag-chip", TAG_SIZE_CLASSES[Math.min(size, 5) - 1]);
+            tagLabel.setOnMouseClicked(e -> filterByTag(tag));
+            tagCloud.getChildren().add(tagLabel);
+        }
+    }
+    
     private String getFolderIcon(String folderName) {
         switch (folderName) {
             case "All Entries": return "📄";
@@ -453,12 +488,10 @@ public class DiaryApp extends Application {
         entriesHeader.setPadding(new Insets(0, 0, 8, 0));
         
         Label entriesTitle = new Label("Recent Entries");
-        entriesTitle.setFont(Font.font("Segoe UI", FontWeight.BOLD, 16));
-        entriesTitle.setTextFill(primaryLight);
+        entriesTitle.getStyleClass().add("section-title");
         
         resultsCountLabel = new Label(entries.size() + " entries");
-        resultsCountLabel.setFont(Font.font("Segoe UI", FontWeight.MEDIUM, 11));
-        resultsCountLabel.setTextFill(mutedLight);
+        resultsCountLabel.getStyleClass().add("count-label");
         
         Region headerSpacer = new Region();
         HBox.setHgrow(headerSpacer, Priority.ALWAYS);
@@ -467,13 +500,10 @@ public class DiaryApp extends Application {
         
         // Entries list
         VBox entriesListPanel = new VBox();
-        entriesListPanel.setStyle(
-            "-fx-background-color: #ffffff; -fx-background-radius: 8; " +
-            "-fx-border-color: #e9ecef; -fx-border-radius: 8; -fx-border-width: 1;"
-        );
+        entriesListPanel.getStyleClass().add("card-panel");
         
         ScrollPane scrollPane = new ScrollPane();
-        scrollPane.setStyle("-fx-background-color: transparent; -fx-border-color: transparent;");
+        scrollPane.getStyleClass().add("entries-scroll");
         scrollPane.setFitToWidth(true);
         scrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
         scrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.AS_NEEDED);
@@ -502,21 +532,16 @@ public class DiaryApp extends Application {
         editorHeader.setPadding(new Insets(0, 0, 8, 0));
         
         dateLabel = new Label(LocalDateTime.now().format(DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy")));
-        dateLabel.setFont(Font.font("Segoe UI", FontWeight.BOLD, 14));
-        dateLabel.setTextFill(primaryLight);
+        dateLabel.getStyleClass().add("editor-date");
         
         timeLabel = new Label(LocalDateTime.now().format(DateTimeFormatter.ofPattern("h:mm:ss a")));
-        timeLabel.setFont(Font.font("Segoe UI", 11));
-        timeLabel.setTextFill(mutedLight);
+        timeLabel.getStyleClass().add("editor-time");
         
         editorHeader.getChildren().addAll(dateLabel, timeLabel);
         
         // Editor panel
         VBox editorPanel = new VBox(6);
-        editorPanel.setStyle(
-            "-fx-background-color: #ffffff; -fx-background-radius: 8; " +
-            "-fx-border-color: #e9ecef; -fx-border-radius: 8; -fx-border-width: 1;"
-        );
+        editorPanel.getStyleClass().add("card-panel");
         
         // Title and category
         HBox titleBox = new HBox(6);
@@ -525,11 +550,7 @@ public class DiaryApp extends Application {
         
         titleField = new TextField();
         titleField.setPromptText("Entry title...");
-        titleField.setFont(Font.font("Segoe UI", FontWeight.BOLD, 16));
-        titleField.setStyle(
-            "-fx-background-color: transparent; -fx-border-color: transparent; " +
-            "-fx-text-fill: #212529; -fx-padding: 4;"
-        );
+        titleField.getStyleClass().add("title-field");
         HBox.setHgrow(titleField, Priority.ALWAYS);
         
         // Title field listener - creates draft entry when typing starts
@@ -550,6 +571,9 @@ public class DiaryApp extends Application {
                         false
                     );
                     
+                    // The (empty) editor document now belongs to the draft
+                    editorOwner = currentDraftEntry;
+                    
                     // Enable editor
                     editorArea.setDisable(false);
                     Platform.runLater(() -> editorArea.requestFocus());
@@ -570,15 +594,13 @@ public class DiaryApp extends Application {
         categoryCombo.getItems().addAll("Personal", "Work", "Health", "Travel", "Ideas");
         categoryCombo.setValue("Personal");
         categoryCombo.setPrefWidth(90);
-        categoryCombo.setStyle(
-            "-fx-background-color: #f8f9fa; -fx-border-color: #e9ecef; " +
-            "-fx-text-fill: #495057; -fx-font-size: 12;"
-        );
+        categoryCombo.getStyleClass().add("category-combo");
         categoryCombo.setOnAction(e -> {
             if (currentDraftEntry != null) {
                 currentDraftEntry.setCategory(categoryCombo.getValue());
             } else if (selectedEntry != null) {
                 selectedEntry.setCategory(categoryCombo.getValue());
+                reindex(selectedEntry);
                 performSearch();
             }
         });
@@ -590,41 +612,49 @@ public class DiaryApp extends Application {
         editorArea.setWrapText(true);
         editorArea.setPromptText("Start writing here...\n\nTips:\n• Write freely about your thoughts\n• Use categories to organize\n• Add tags with #symbol");
         editorArea.setDisable(true);
-        editorArea.setStyle(
-            "-fx-font-size: 13px; -fx-font-family: 'Segoe UI', sans-serif; " +
-            "-fx-control-inner-background: #ffffff; -fx-text-fill: #212529; -fx-padding: 10;"
-        );
+        editorArea.getStyleClass().add("editor-area");
         VBox.setVgrow(editorArea, Priority.ALWAYS);
         
-        // Editor area listener - updates content
-        editorArea.textProperty().addListener((observable, oldValue, newValue) -> {
-            if (currentDraftEntry != null) {
-                currentDraftEntry.setContent(newValue);
-            } else if (selectedEntry != null) {
-                selectedEntry.setContent(newValue);
+        // Feed each edit's delta to the document; the full text is only built on save or switch
+        editorArea.setTextFormatter(new TextFormatter<String>(change -> {
+            if (!loadingEditor) {
+                if (change.isContentChange()) {
+                    change.setText(stripControlCharacters(change.getText()));
+                    editorDocument.replace(change.getRangeStart(), change.getRangeEnd(), change.getText());
+                    updateWordCount();
+                }
             }
-        });
+            return change;
+        }));
         
         // Editor toolbar
         HBox editorToolbar = new HBox(8);
         editorToolbar.setPadding(new Insets(8, 12, 12, 12));
         editorToolbar.setAlignment(Pos.CENTER_RIGHT);
         
+        wordCountLabel = new Label();
+        wordCountLabel.getStyleClass().add("status-label");
+        
+        ioStatusLabel = new Label();
+        ioStatusLabel.getStyleClass().add("status-label");
+        ioStatusLabel.textProperty().bind(io.statusProperty());
+        
+        Region toolbarSpacer = new Region();
+        HBox.setHgrow(toolbarSpacer, Priority.ALWAYS);
+        
+        Button historyBtn = new Button("History");
+        historyBtn.getStyleClass().add("outline-button");
+        historyBtn.setOnAction(e -> showHistoryDialog());
+        
         Button deleteBtn = new Button("Delete");
-        deleteBtn.setStyle(
-            "-fx-background-color: " + toHex(dangerLight) + "; -fx-text-fill: white; " +
-            "-fx-padding: 6 16; -fx-font-size: 12; -fx-background-radius: 4;"
-        );
+        deleteBtn.getStyleClass().add("danger-button");
         deleteBtn.setOnAction(e -> deleteSelectedEntry());
         
         Button saveBtn = new Button("Save Entry");
-        saveBtn.setStyle(
-            "-fx-background-color: " + toHex(successLight) + "; -fx-text-fill: white; " +
-            "-fx-padding: 6 20; -fx-font-size: 12; -fx-background-radius: 4; -fx-font-weight: bold;"
-        );
+        saveBtn.getStyleClass().add("success-button");
         saveBtn.setOnAction(e -> saveEntry());
         
-        editorToolbar.getChildren().addAll(deleteBtn, saveBtn);
+        editorToolbar.getChildren().addAll(wordCountLabel, ioStatusLabel, toolbarSpacer, historyBtn, deleteBtn, saveBtn);
         
         editorPanel.getChildren().addAll(titleBox, editorArea, editorToolbar);
         
@@ -638,6 +668,7 @@ public class DiaryApp extends Application {
         Dialog<UserProfile> dialog = new Dialog<>();
         dialog.setTitle("Edit Profile");
         dialog.setHeaderText("Update your profile information");
+        dialog.getDialogPane().getStylesheets().addAll(BASE_STYLESHEET, themeStylesheet());
         
         // Set the button types
         ButtonType saveButtonType = new ButtonType("Save", ButtonBar.ButtonData.OK_DONE);
@@ -661,14 +692,10 @@ public class DiaryApp extends Application {
         bioField.setPrefRowCount(3);
         
         Button changePhotoBtn = new Button("Change Profile Photo");
-        changePhotoBtn.setStyle(
-            "-fx-background-color: " + toHex(accentLight) + "; -fx-text-fill: white; " +
-            "-fx-padding: 6 12; -fx-font-size: 12;"
-        );
+        changePhotoBtn.getStyleClass().add("primary-button");
         
         Label currentPhotoLabel = new Label("Current photo will be updated after saving");
-        currentPhotoLabel.setFont(Font.font("Segoe UI", 10));
-        currentPhotoLabel.setTextFill(mutedLight);
+        currentPhotoLabel.getStyleClass().add("profile-stats");
         
         changePhotoBtn.setOnAction(e -> {
             FileChooser fileChooser = new FileChooser();
@@ -692,6 +719,14 @@ public class DiaryApp extends Application {
         grid.add(changePhotoBtn, 0, 3, 2, 1);
         grid.add(currentPhotoLabel, 0, 4, 2, 1);
         
+        String favoriteCategory = currentUser.getFavoriteCategory();
+        Label statsLabel = new Label(String.format(
+            "%,d words • %.0f words per writing day • longest streak %d days%n%d favorites • most used category: %s",
+            currentUser.getTotalWords(), currentUser.getAverageWordsPerDay(), currentUser.getLongestStreak(),
+            currentUser.getFavoriteCount(), favoriteCategory == null ? "none yet" : favoriteCategory));
+        statsLabel.getStyleClass().add("profile-stats");
+        grid.add(statsLabel, 0, 5, 2, 1);
+        
         dialog.getDialogPane().setContent(grid);
         
         // Request focus on the name field by default
@@ -713,10 +748,90 @@ public class DiaryApp extends Application {
         result.ifPresent(profile -> {
             // Update profile display
             updateProfileDisplay();
+            io.saveProfile(profileProperties(), () -> { },
+                error -> showAlert("Save Failed", "Could not save your profile: " + error.getMessage()));
             showAlert("Profile Updated", "Your profile has been updated successfully!");
         });
     }
     
+    /** Lists the saved revisions of the selected entry and can bring one back into the editor. */
+    private void showHistoryDialog() {
+        if (currentDraftEntry != null || selectedEntry == null || selectedEntry.getFileName() == null) {
+            showAlert("No History", "Save the entry first; history starts with its first save.");
+            return;
+        }
+        DiaryEntry entry = selectedEntry;
+        
+        Dialog<EntryFiles.Fields> dialog = new Dialog<>();
+        dialog.setTitle("Entry History");
+        dialog.setHeaderText("Saved versions of '" + entry.getTitle() + "'");
+        dialog.getDialogPane().getStylesheets().addAll(BASE_STYLESHEET, themeStylesheet());
+        
+        ButtonType restoreButtonType = new ButtonType("Restore", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(restoreButtonType, ButtonType.CANCEL);
+        Node restoreButton = dialog.getDialogPane().lookupButton(restoreButtonType);
+        restoreButton.setDisable(true);
+        
+        ListView<RevisionHistory.Revision> revisionList = new ListView<>();
+        revisionList.setPrefWidth(220);
+        revisionList.setCellFactory(list -> new ListCell<RevisionHistory.Revision>() {
+            @Override
+            protected void updateItem(RevisionHistory.Revision revision, boolean empty) {
+                super.updateItem(revision, empty);
+                setText(empty || revision == null ? null : "#" + revision.number + "  "
+                    + revision.time.format(DateTimeFormatter.ofPattern("MMM d, h:mm a")));
+            }
+        });
+        
+        TextArea preview = new TextArea();
+        preview.setEditable(false);
+        preview.setWrapText(true);
+        preview.setPrefSize(420, 320);
+        
+        // Latest selection wins; a slower earlier rebuild must not overwrite it
+        EntryFiles.Fields[] shown = new EntryFiles.Fields[1];
+        revisionList.getSelectionModel().selectedItemProperty().addListener((obs, oldRevision, revision) -> {
+            shown[0] = null;
+            restoreButton.setDisable(true);
+            if (revision == null) {
+                return;
+            }
+            io.loadRevision(entry.getFileName(), revision.number, loaded -> {
+                if (revisionList.getSelectionModel().getSelectedItem() == revision) {
+                    shown[0] = loaded;
+                    preview.setText(loaded.title + "\n\n" + loaded.content);
+                    restoreButton.setDisable(false);
+                }
+            }, error -> preview.setText("Could not rebuild this version: " + error.getMessage()));
+        });
+        
+        io.loadRevisions(entry.getFileName(), revisions -> {
+            List<RevisionHistory.Revision> newestFirst = new ArrayList<>(revisions);
+            Collections.reverse(newestFirst);
+            revisionList.getItems().setAll(newestFirst);
+            if (revisions.isEmpty()) {
+                preview.setText("No saved versions yet.");
+            } else {
+                revisionList.getSelectionModel().selectFirst();
+            }
+        }, error -> preview.setText("Could not read history: " + error.getMessage()));
+        
+        HBox content = new HBox(10, revisionList, preview);
+        HBox.setHgrow(preview, Priority.ALWAYS);
+        dialog.getDialogPane().setContent(content);
+        dialog.setResultConverter(dialogButton -> dialogButton == restoreButtonType ? shown[0] : null);
+        
+        // Restored into the editor only; it becomes a new revision when saved
+        dialog.showAndWait().ifPresent(revision -> {
+            if (selectedEntry == entry) {
+                titleField.setText(revision.title);
+                categoryCombo.setValue(revision.category);
+                showInEditor(entry, entry.getContent());
+                editorArea.replaceText(0, editorArea.getLength(), revision.content);
+            }
+        });
+    }
+    
     private void updateProfileDisplay() {
         if (userNameLabel != null) {
             userNameLabel.setText(currentUser.getName());
@@ -742,74 +857,12 @@ public class DiaryApp extends Application {
     // ===== CALENDAR METHODS =====
     
     private void updateCalendar() {
-        calendarGrid.getChildren().clear();
-        
         YearMonth yearMonth = YearMonth.from(currentDate);
         monthYearLabel.setText(yearMonth.getMonth().toString().substring(0, 3) + " " + yearMonth.getYear());
         
-        LocalDate firstOfMonth = yearMonth.atDay(1);
-        DayOfWeek firstDayOfWeek = firstOfMonth.getDayOfWeek();
-        
-        int daysInMonth = yearMonth.lengthOfMonth();
-        int startColumn = firstDayOfWeek.getValue() % 7;
-        
-        // Fill calendar grid
-        int row = 0;
-        int col = startColumn;
-        
-        // Current month days
-        for (int day = 1; day <= daysInMonth; day++) {
-            LocalDate date = yearMonth.atDay(day);
-            Label dayLabel = new Label(String.valueOf(day));
-            dayLabel.setFont(Font.font("Segoe UI", FontWeight.NORMAL, 10));
-            dayLabel.setAlignment(Pos.CENTER);
-            dayLabel.setPrefSize(22, 22);
-            
-            boolean hasEntries = entries.stream().anyMatch(e -> e.getDate().equals(date));
-            
-            if (date.equals(LocalDate.now())) {
-                dayLabel.setStyle(
-                    "-fx-background-color: " + toHex(accentLight) + "; " +
-                    "-fx-text-fill: white; -fx-background-radius: 11; -fx-cursor: hand;"
-                );
-            } else if (date.equals(selectedCalendarDate)) {
-                dayLabel.setStyle(
-                    "-fx-background-color: " + toHex(warningLight) + "; " +
-                    "-fx-text-fill: white; -fx-background-radius: 11; -fx-cursor: hand;"
-                );
-            } else if (hasEntries) {
-                dayLabel.setStyle(
-                    "-fx-background-color: #e9ecef; -fx-text-fill: " + toHex(accentLight) + "; " +
-                    "-fx-background-radius: 11; -fx-cursor: hand;"
-                );
-            } else {
-                dayLabel.setStyle("-fx-cursor: hand;");
-                dayLabel.setTextFill(primaryLight);
-            }
-            
-            if (hasEntries) {
-                StackPane dayContainer = new StackPane();
-                dayContainer.setAlignment(Pos.CENTER);
-                
-                Circle dot = new Circle(2);
-                dot.setFill(accentLight);
-                dot.setTranslateY(6);
-                
-                dayContainer.getChildren().addAll(dayLabel, dot);
-                calendarGrid.add(dayContainer, col, row);
-            } else {
-                calendarGrid.add(dayLabel, col, row);
-            }
-            
-            final LocalDate clickDate = date;
-            dayLabel.setOnMouseClicked(e -> filterEntriesByDate(clickDate));
-            
-            col++;
-            if (col == 7) {
-                col = 0;
-                row++;
-            }
-        }
+        // Read off the index's date postings, so the cost is the month's days rather than every entry
+        Set<LocalDate> entryDates = entryIndex.datesBetween(yearMonth.atDay(1), yearMonth.atEndOfMonth());
+        calendarGrid.show(yearMonth, selectedCalendarDate, entryDates);
     }
     
     private void navigateCalendar(int months) {
@@ -820,9 +873,9 @@ public class DiaryApp extends Application {
     private void filterEntriesByDate(LocalDate date) {
         selectedCalendarDate = date;
         
-        List<DiaryEntry> filteredEntries = entries.stream()
-            .filter(entry -> entry.getDate().equals(date))
-            .collect(Collectors.toList());
+        List<DiaryEntry> filteredEntries = touchedWhileIndexing == null
+            ? entryIndex.entriesFor(entryIndex.between(date, date))
+            : entries.stream().filter(entry -> entry.getDate().equals(date)).collect(Collectors.toList());
         
         displayFilteredEntries(filteredEntries);
         resultsCountLabel.setText(filteredEntries.size() + " entries");
@@ -839,11 +892,11 @@ public class DiaryApp extends Application {
             // Clear editor for new entry
             titleField.setText("");
             titleField.setPromptText("Title for " + date.format(DateTimeFormatter.ofPattern("MMM d, yyyy")));
-            editorArea.clear();
+            showInEditor(null, "");
             editorArea.setDisable(true);
             
             // Clear any draft
-            currentDraftEntry = null;
+            discardDraft();
             selectedEntry = null;
             
             // Show exact date and time
@@ -864,12 +917,12 @@ public class DiaryApp extends Application {
         
         // Reset selection and draft
         selectedEntry = null;
-        currentDraftEntry = null;
+        discardDraft();
         
         // Clear fields and show EXACT time
         titleField.setText("");
         titleField.setPromptText("Enter entry title...");
-        editorArea.clear();
+        showInEditor(null, "");
         editorArea.setDisable(true);
         
         // Show EXACT date and time
@@ -884,12 +937,22 @@ public class DiaryApp extends Application {
     // ===== ENTRY METHODS =====
     
     private void performSearch() {
-        String searchText = searchField.getText().toLowerCase();
-        List<DiaryEntry> filteredEntries = entries.stream()
-            .filter(entry -> searchText.isEmpty() ||
-                entry.getTitle().toLowerCase().contains(searchText) ||
-                entry.getContent().toLowerCase().contains(searchText))
-            .collect(Collectors.toList());
+        EntryQuery query;
+        try {
+            query = EntryQuery.parse(searchField.getText());
+        } catch (IllegalArgumentException e) {
+            resultsCountLabel.setText(e.getMessage());
+            return;
+        }
+        
+        if (touchedWhileIndexing != null && !query.isEmpty()) {
+            resultsCountLabel.setText("Indexing entries...");
+            return;
+        }
+        
+        List<DiaryEntry> filteredEntries = query.isEmpty()
+            ? new ArrayList<>(entries)
+            : entryIndex.entriesFor(QueryPlanner.execute(query, entryIndex));
         
         resultsCountLabel.setText(filteredEntries.size() + " entries");
         displayFilteredEntries(filteredEntries);
@@ -900,9 +963,7 @@ public class DiaryApp extends Application {
         
         if (filteredEntries.isEmpty()) {
             Label noResults = new Label("No entries found");
-            noResults.setFont(Font.font("Segoe UI", 12));
-            noResults.setTextFill(mutedLight);
-            noResults.setPadding(new Insets(20));
+            noResults.getStyleClass().add("empty-label");
             noResults.setAlignment(Pos.CENTER);
             entriesContainer.getChildren().add(noResults);
             return;
@@ -911,75 +972,83 @@ public class DiaryApp extends Application {
         // Sort entries by date (newest first)
         filteredEntries.sort((e1, e2) -> e2.getDate().compareTo(e1.getDate()));
         
-        for (DiaryEntry entry : filteredEntries) {
+        showCards(filteredEntries, 0);
+    }
+    
+    /** Adds a page of cards from {@code from}, and a button for the next page if there is one. */
+    private void showCards(List<DiaryEntry> filteredEntries, int from) {
+        int to = Math.min(from + CARD_PAGE_SIZE, filteredEntries.size());
+        for (DiaryEntry entry : filteredEntries.subList(from, to)) {
             VBox entryCard = createCompactEntryCard(entry);
             entriesContainer.getChildren().add(entryCard);
         }
+        
+        int remaining = filteredEntries.size() - to;
+        if (remaining > 0) {
+            Button moreBtn = new Button("Show " + Math.min(remaining, CARD_PAGE_SIZE) + " more (" + remaining + " left)");
+            moreBtn.getStyleClass().add("outline-button");
+            moreBtn.setMaxWidth(Double.MAX_VALUE);
+            moreBtn.setOnAction(e -> {
+                entriesContainer.getChildren().remove(moreBtn);
+                showCards(filteredEntries, to);
+            });
+            entriesContainer.getChildren().add(moreBtn);
+        }
     }
     
     private VBox createCompactEntryCard(DiaryEntry entry) {
         VBox card = new VBox(4);
-        card.setPadding(new Insets(10));
-        card.setStyle(
-            "-fx-background-color: " + (entry.equals(selectedEntry) ? "#e7f5ff" : "#ffffff") + "; " +
-            "-fx-background-radius: 6; -fx-border-color: #e9ecef; " +
-            "-fx-border-radius: 6; -fx-border-width: 1; -fx-cursor: hand;"
-        );
+        card.getStyleClass().add("entry-card");
+        card.pseudoClassStateChanged(SELECTED, entry.equals(selectedEntry));
         
         // Header
         HBox header = new HBox(4);
         header.setAlignment(Pos.CENTER_LEFT);
         
         Label timeLabel = new Label(entry.getTime());
-        timeLabel.setFont(Font.font("Segoe UI", FontWeight.BOLD, 10));
-        timeLabel.setTextFill(mutedLight);
+        timeLabel.getStyleClass().add("entry-time");
         
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
         
         Label categoryBadge = new Label(entry.getCategory());
-        categoryBadge.setFont(Font.font("Segoe UI", FontWeight.MEDIUM, 9));
-        categoryBadge.setPadding(new Insets(2, 6, 2, 6));
-        categoryBadge.setStyle(
-            "-fx-background-color: " + getCategoryColor(entry.getCategory()) + "; " +
-            "-fx-text-fill: white; -fx-background-radius: 8;"
-        );
+        categoryBadge.getStyleClass().addAll("category-badge", getCategoryStyleClass(entry.getCategory()));
         
         header.getChildren().addAll(timeLabel, spacer, categoryBadge);
         
         // Title
         Label titleLabel = new Label(entry.getTitle());
-        titleLabel.setFont(Font.font("Segoe UI", FontWeight.BOLD, 14));
-        titleLabel.setTextFill(primaryLight);
+        titleLabel.getStyleClass().add("entry-title");
         titleLabel.setWrapText(true);
         
         // Preview
-        String preview = entry.getContent();
+        String preview = entry.getContentPrefix(81);
         if (preview.length() > 80) {
             preview = preview.substring(0, 77) + "...";
         }
         Label previewLabel = new Label(preview);
-        previewLabel.setFont(Font.font("Segoe UI", 11));
-        previewLabel.setTextFill(mutedLight);
+        previewLabel.getStyleClass().add("entry-preview");
         previewLabel.setWrapText(true);
         
         // Date and favorite
         HBox footer = new HBox();
         footer.setAlignment(Pos.CENTER_LEFT);
         
-        Label dateLabel = new Label(entry.getDate().format(DateTimeFormatter.ofPattern("MMM d, yyyy")));
-        dateLabel.setFont(Font.font("Segoe UI", 9));
-        dateLabel.setTextFill(mutedLight);
+        Label dateLabel = new Label(entry.getDate().format(CARD_DATE_FORMAT));
+        dateLabel.getStyleClass().add("entry-date");
         
         Region footerSpacer = new Region();
         HBox.setHgrow(footerSpacer, Priority.ALWAYS);
         
         Label favoriteIcon = new Label(entry.isFavorite() ? "★" : "☆");
-        favoriteIcon.setFont(Font.font("Arial", 12));
-        favoriteIcon.setTextFill(entry.isFavorite() ? Color.GOLD : mutedLight);
-        favoriteIcon.setCursor(javafx.scene.Cursor.HAND);
+        favoriteIcon.getStyleClass().add("favorite-icon");
+        favoriteIcon.pseudoClassStateChanged(FAVORITE, entry.isFavorite());
         favoriteIcon.setOnMouseClicked(e -> {
             entry.setFavorite(!entry.isFavorite());
+            reindex(entry);
+            if (entry.getFileName() != null) {
+                persistEntry(entry);
+            }
             displayFilteredEntries(entries);
         });
         
@@ -990,7 +1059,7 @@ public class DiaryApp extends Application {
         // Click handler
         card.setOnMouseClicked(e -> {
             selectedEntry = entry;
-            currentDraftEntry = null;
+            discardDraft();
             loadEntryForEditing(entry);
             displayFilteredEntries(entries);
         });
@@ -1018,29 +1087,107 @@ public class DiaryApp extends Application {
         
         if (!filtered.isEmpty()) {
             selectedEntry = filtered.get(0);
-            currentDraftEntry = null;
+            discardDraft();
             loadEntryForEditing(selectedEntry);
         } else {
             // Clear current entry and prepare for new one
             selectedEntry = null;
-            currentDraftEntry = null;
+            discardDraft();
             titleField.setText("");
             titleField.setPromptText("Enter entry title...");
-            editorArea.clear();
+            showInEditor(null, "");
             editorArea.setDisable(true);
         }
     }
     
+    private void filterByTag(String tag) {
+        if (touchedWhileIndexing != null) {
+            resultsCountLabel.setText("Indexing entries...");
+            return;
+        }
+        List<DiaryEntry> filtered = entryIndex.entriesFor(entryIndex.withTag(tag));
+        
+        displayFilteredEntries(filtered);
+        resultsCountLabel.setText(filtered.size() + " entries tagged #" + tag);
+        
+        if (!filtered.isEmpty()) {
+            loadEntryForEditing(filtered.get(0));
+        }
+    }
+    
+    private void addEntry(DiaryEntry entry) {
+        entries.add(entry);
+        indexTags(entry);
+    }
+    
+    private void removeEntry(DiaryEntry entry) {
+        entries.remove(entry);
+        entryIndex.remove(entry);
+        unsavedEntries.remove(entry);
+        updateTagCloud();
+        if (touchedWhileIndexing != null) {
+            // The index being built may still read it, so its row is freed once that's done
+            removedWhileIndexing.add(entry);
+        } else {
+            entry.release();
+        }
+    }
+    
+    /** Drops the entry being drafted, if any; it was never saved, so nothing else refers to it. */
+    private void discardDraft() {
+        if (currentDraftEntry != null) {
+            if (editorOwner == currentDraftEntry) {
+                editorOwner = null;
+            }
+            unsavedEntries.remove(currentDraftEntry);
+            currentDraftEntry.release();
+            currentDraftEntry = null;
+        }
+    }
+    
+    private void persistEntry(DiaryEntry entry) {
+        if (entry.getFileName() == null) {
+            Set<String> taken = entries.stream()
+                .map(DiaryEntry::getFileName)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+            entry.setFileName(EntryFiles.fileNameFor(entry, taken));
+        }
+        entry.setModified(LocalDateTime.now());
+        unsavedEntries.remove(entry);
+        // Formatted here so the worker never reads an entry the UI may be editing
+        io.saveEntry(entry.getFileName(), EntryFiles.format(entry), () -> { }, error -> {
+            unsavedEntries.add(entry);
+            showAlert("Save Failed", "Could not save '" + entry.getTitle() + "': " + error.getMessage());
+        });
+    }
+    
+    private void indexTags(DiaryEntry entry) {
+        Set<String> tags = TagIndex.extractTags(entry.getTitle() + "\n" + entry.getContent());
+        entry.setTags(tags);
+        reindex(entry);
+        updateTagCloud();
+    }
+    
+    private void reindex(DiaryEntry entry) {
+        entryIndex.update(entry);
+        if (touchedWhileIndexing != null) {
+            touchedWhileIndexing.add(entry);
+        }
+    }
+    
     private void saveEntry() {
+        commitEditorText();
+        
         // Save draft entry if exists
         if (currentDraftEntry != null) {
             // Add draft to entries list
-            entries.add(currentDraftEntry);
+            addEntry(currentDraftEntry);
+            persistEntry(currentDraftEntry);
             selectedEntry = currentDraftEntry;
             currentDraftEntry = null;
             
             // Update UI
-            currentUser.setTotalEntries(entries.size());
             updateProfileDisplay();
             
             // Update calendar
@@ -1067,16 +1214,16 @@ public class DiaryApp extends Application {
         LocalDate today = now.toLocalDate();
         
         selectedEntry.setTitle(titleField.getText());
-        selectedEntry.setContent(editorArea.getText());
         selectedEntry.setCategory(categoryCombo.getValue());
         selectedEntry.setTime(exactTime);
         selectedEntry.setDate(today); // Update date to today
+        indexTags(selectedEntry);
+        persistEntry(selectedEntry);
         
         // Update display with exact time
         dateLabel.setText(now.format(DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy")));
         timeLabel.setText(exactTime);
         
-        currentUser.setTotalEntries(entries.size());
         updateProfileDisplay();
         
         // Update calendar
@@ -1107,18 +1254,22 @@ public class DiaryApp extends Application {
         
         Optional<ButtonType> result = alert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            entries.remove(selectedEntry);
+            if (selectedEntry.getFileName() != null) {
+                String fileName = selectedEntry.getFileName();
+                io.deleteEntry(fileName, () -> { },
+                    error -> showAlert("Delete Failed", "Could not delete " + fileName + ": " + error.getMessage()));
+            }
+            removeEntry(selectedEntry);
             selectedEntry = null;
             currentDraftEntry = null;
             
-            currentUser.setTotalEntries(entries.size());
             updateProfileDisplay();
             
             // Clear editor and show EXACT current time
             LocalDateTime now = LocalDateTime.now();
             titleField.setText("");
             titleField.setPromptText("Enter entry title...");
-            editorArea.clear();
+            showInEditor(null, "");
             editorArea.setDisable(true);
             dateLabel.setText(now.format(DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy")));
             timeLabel.setText(now.format(DateTimeFormatter.ofPattern("h:mm:ss a")));
@@ -1136,14 +1287,65 @@ public class DiaryApp extends Application {
         }
     }
     
+    /** Puts {@code content} in the editor as the document of {@code owner}, keeping edits to the previous one. */
+    private void showInEditor(DiaryEntry owner, String content) {
+        commitEditorText();
+        loadingEditor = true;
+        try {
+            editorArea.setText(content);
+        } finally {
+            loadingEditor = false;
+        }
+        // Built from what the TextArea kept, which may differ from content (e.g. no \r)
+        editorDocument = new EditorDocument(editorArea.getText());
+        editorOwner = owner;
+        updateWordCount();
+    }
+    
+    /** Copies the editor text into its entry, only if it was edited. */
+    private void commitEditorText() {
+        if (editorOwner != null && editorDocument.isDirty()) {
+            editorOwner.setContent(editorDocument.getText());
+            unsavedEntries.add(editorOwner);
+        }
+        editorDocument.markClean();
+    }
+    
+    private void updateWordCount() {
+        int words = editorDocument.getWordCount();
+        wordCountLabel.setText(words == 1 ? "1 word" : words + " words");
+    }
+    
+    /** Same characters TextArea drops on input, so the document stays in step with it. */
+    private static String stripControlCharacters(String text) {
+        int i = 0;
+        while (i < text.length() && !isDroppedByTextArea(text.charAt(i))) {
+            i++;
+        }
+        if (i == text.length()) {
+            return text;
+        }
+        StringBuilder kept = new StringBuilder(text.length()).append(text, 0, i);
+        for (; i < text.length(); i++) {
+            if (!isDroppedByTextArea(text.charAt(i))) {
+                kept.append(text.charAt(i));
+            }
+        }
+        return kept.toString();
+    }
+    
+    private static boolean isDroppedByTextArea(char c) {
+        return (c < 0x20 && c != '\n' && c != '\t') || c == 0x7F;
+    }
+    
     private void loadEntryForEditing(DiaryEntry entry) {
         selectedEntry = entry;
-        currentDraftEntry = null; // Clear any draft
+        discardDraft(); // Clear any draft
         
         titleField.setText(entry.getTitle());
         dateLabel.setText(entry.getDate().format(DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy")));
         timeLabel.setText(entry.getTime());
-        editorArea.setText(entry.getContent());
+        showInEditor(entry, entry.getContent());
         editorArea.setDisable(false);
         categoryCombo.setValue(entry.getCategory());
         
@@ -1155,31 +1357,183 @@ public class DiaryApp extends Application {
         Platform.runLater(() -> editorArea.requestFocus());
     }
     
+    // ===== PERSISTENCE =====
+    
+    private void loadSavedData() {
+        io.loadProfile(this::applyProfile,
+            error -> System.err.println("Failed to load profile: " + error.getMessage()));
+        
+        io.loadEntries(loaded -> {
+            entriesLoaded = true;
+            if (loaded.isEmpty()) {
+                addSampleEntries();
+                return;
+            }
+            // Sorted and tagged on the loader thread; the first page goes up before the index is built
+            entries.addAll(loaded);
+            touchedWhileIndexing = new HashSet<>();
+            updateTagCloud();
+            performSearch();
+            loadEntryForEditing(entries.get(0));
+            
+            io.buildIndex(loaded, this::applyIndex, error -> {
+                System.err.println("Failed to index entries: " + error.getMessage());
+                // Index on the FX thread instead; slow, but search must work
+                EntryIndex index = new EntryIndex();
+                entries.forEach(index::update);
+                applyIndex(index);
+            });
+        }, error -> {
+            showAlert("Load Failed", "Could not read saved entries: " + error.getMessage());
+            addSampleEntries();
+        });
+    }
+    
+    /**
+     * Swaps in the index built from the loaded entries, brings it up to date
+     * with the entries changed or removed while it was built, and only then
+     * looks for files changed on disk, so those changes land in the new index.
+     */
+    private void applyIndex(EntryIndex index) {
+        for (DiaryEntry entry : removedWhileIndexing) {
+            index.remove(entry);
+            touchedWhileIndexing.remove(entry);
+            entry.release();
+        }
+        touchedWhileIndexing.forEach(index::update);
+        removedWhileIndexing.clear();
+        touchedWhileIndexing = null;
+        entryIndex = index;
+        
+        updateTagCloud();
+        updateProfileDisplay();
+        updateCalendar();
+        performSearch();
+        
+        // Entries from the snapshot have their text read ahead of the first search that needs it
+        io.loadContent(entries, error -> System.err.println("Failed to read entries: " + error.getMessage()));
+        // The snapshot can't see files edited in place while the app was closed
+        io.checkForChanges(this::applyDiskChanges,
+            error -> System.err.println("Failed to check entries for changes: " + error.getMessage()));
+    }
+    
+    /** Takes in entry files that were added, edited or removed outside the app. */
+    private void applyDiskChanges(DiaryIOService.DiskChanges changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        // So an entry being typed into counts as unsaved and keeps its edits
+        commitEditorText();
+        Map<String, DiaryEntry> byFileName = new HashMap<>();
+        for (DiaryEntry entry : entries) {
+            if (entry.getFileName() != null) {
+                byFileName.put(entry.getFileName(), entry);
+            }
+        }
+        DiaryEntry selected = selectedEntry;
+        List<DiaryEntry> replaced = new ArrayList<>();
+        for (String fileName : changes.removed) {
+            DiaryEntry entry = byFileName.get(fileName);
+            if (entry != null && !unsavedEntries.contains(entry)) {
+                entries.remove(entry);
+                entryIndex.remove(entry);
+                replaced.add(entry);
+                if (entry == selected) {
+                    selected = null;
+                }
+            }
+        }
+        for (DiaryEntry changed : changes.changed) {
+            DiaryEntry current = byFileName.get(changed.getFileName());
+            if (current != null && unsavedEntries.contains(current)) {
+                // Keep the edits made here; saving them overwrites the file anyway
+                changed.release();
+                continue;
+            }
+            if (current != null) {
+                entries.remove(current);
+                entryIndex.remove(current);
+                replaced.add(current);
+                if (current == selected) {
+                    selected = changed;
+                }
+            }
+            entries.add(changed);
+            entryIndex.update(changed);
+        }
+        entries.sort(Comparator.comparing(DiaryEntry::getCreated).reversed());
+        if (selected == null && selectedEntry != null && currentDraftEntry == null) {
+            selected = entries.isEmpty() ? null : entries.get(0);
+        }
+        
+        updateTagCloud();
+        updateProfileDisplay();
+        updateCalendar();
+        performSearch();
+        if (selected != selectedEntry) {
+            if (selected == null) {
+                createNewEntry();
+            } else {
+                loadEntryForEditing(selected);
+            }
+        }
+        // Only now, once nothing shows the old rows any more
+        replaced.forEach(DiaryEntry::release);
+    }
+    
+    private Properties profileProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("name", Objects.toString(currentUser.getName(), ""));
+        properties.setProperty("email", Objects.toString(currentUser.getEmail(), ""));
+        properties.setProperty("bio", Objects.toString(currentUser.getBio(), ""));
+        properties.setProperty("joinDate", currentUser.getJoinDate().toString());
+        if (currentUser.getProfilePhotoUrl() != null) {
+            properties.setProperty("photo", currentUser.getProfilePhotoUrl());
+        }
+        return properties;
+    }
+    
+    private void applyProfile(Properties properties) {
+        if (properties.isEmpty()) {
+            return;
+        }
+        currentUser.setName(properties.getProperty("name", currentUser.getName()));
+        currentUser.setEmail(properties.getProperty("email", currentUser.getEmail()));
+        currentUser.setBio(properties.getProperty("bio", currentUser.getBio()));
+        try {
+            currentUser.setJoinDate(LocalDate.parse(properties.getProperty("joinDate")));
+        } catch (RuntimeException e) {
+            // Keep the default join date
+        }
+        currentUser.setProfilePhotoUrl(properties.getProperty("photo"));
+        updateProfileDisplay();
+    }
+    
     // ===== HELPER METHODS =====
     
     private void addSampleEntries() {
         // Use EXACT time formatting for sample entries
         LocalDateTime now = LocalDateTime.now();
         
-        entries.add(new DiaryEntry(now.toLocalDate(), 
+        addEntry(new DiaryEntry(now.toLocalDate(), 
             now.minusHours(2).format(DateTimeFormatter.ofPattern("h:mm:ss a")), 
             "Morning Thoughts", 
-            "Starting the day with coffee and planning my tasks. Feeling productive today!", 
+            "Starting the day with coffee and planning my tasks. Feeling productive today! #morning #planning", 
             "Personal", true));
         
-        entries.add(new DiaryEntry(now.toLocalDate(), 
+        addEntry(new DiaryEntry(now.toLocalDate(), 
             now.minusHours(1).format(DateTimeFormatter.ofPattern("h:mm:ss a")), 
             "Project Update", 
-            "Made significant progress on the new feature. Need to write unit tests tomorrow.", 
+            "Made significant progress on the new feature. Need to write unit tests tomorrow. #planning", 
             "Work", false));
         
-        entries.add(new DiaryEntry(LocalDate.of(2024, 10, 25), 
+        addEntry(new DiaryEntry(LocalDate.of(2024, 10, 25), 
             "19:00:00", 
             "Gratitude", 
-            "Grateful for family, health, and new opportunities. Life is beautiful!", 
+            "Grateful for family, health, and new opportunities. Life is beautiful! #gratitude", 
             "Personal", true));
         
-        currentUser.setTotalEntries(entries.size());
+        updateProfileDisplay();
         
         performSearch();
         if (!entries.isEmpty()) {
@@ -1189,14 +1543,14 @@ public class DiaryApp extends Application {
         updateCalendar();
     }
     
-    private String getCategoryColor(String category) {
+    private String getCategoryStyleClass(String category) {
         switch (category) {
-            case "Personal": return "#007bff";
-            case "Work": return "#28a745";
-            case "Health": return "#dc3545";
-            case "Travel": return "#17a2b8";
-            case "Ideas": return "#6f42c1";
-            default: return "#6c757d";
+            case "Personal": return "category-personal";
+            case "Work": return "category-work";
+            case "Health": return "category-health";
+            case "Travel": return "category-travel";
+            case "Ideas": return "category-ideas";
+            default: return "category-other";
         }
     }
     
@@ -1208,21 +1562,14 @@ public class DiaryApp extends Application {
         alert.showAndWait();
     }
     
-    private String toHex(Color color) {
-        return String.format("#%02X%02X%02X",
-            (int)(color.getRed() * 255),
-            (int)(color.getGreen() * 255),
-            (int)(color.getBlue() * 255));
+    private String themeStylesheet() {
+        return darkMode ? DARK_STYLESHEET : LIGHT_STYLESHEET;
     }
     
     private void applyThemeToAll() {
-        BorderPane mainPane = (BorderPane) primaryStage.getScene().getRoot();
-        Color bgColor = darkMode ? backgroundDark : backgroundLight;
-        mainPane.setStyle("-fx-background-color: " + toHex(bgColor) + ";");
-        
-        if (monthYearLabel != null) {
-            monthYearLabel.setTextFill(darkMode ? primaryDark : primaryLight);
-        }
+        // Swapping the palette sheet restyles every node in one CSS pass
+        List<String> stylesheets = primaryStage.getScene().getStylesheets();
+        stylesheets.set(stylesheets.indexOf(darkMode ? LIGHT_STYLESHEET : DARK_STYLESHEET), themeStylesheet());
         
         primaryStage.setTitle("My Diary" + (darkMode ? " - Dark Mode" : " - Light Mode"));
     }
@@ -1233,6 +1580,15 @@ public class DiaryApp extends Application {
         if (timeUpdater != null) {
             timeUpdater.stop();
         }
+        if (entriesLoaded) {
+            // Entries with unsaved edits no longer match their files, so they are left to be read from disk
+            commitEditorText();
+            List<DiaryEntry> saved = new ArrayList<>(entries);
+            saved.removeAll(unsavedEntries);
+            io.saveSnapshot(saved, entryIndex,
+                error -> System.err.println("Failed to save startup snapshot: " + error.getMessage()));
+        }
+        io.close();
     }
     
     public static void main(String[] args) {
@@ -1240,51 +1596,17 @@ public class DiaryApp extends Application {
     }
 }
 
-class DiaryEntry {
-    private LocalDate date;
-    private String time;
-    private String title;
-    private String content;
-    private String category;
-    private boolean favorite;
-    
-    public DiaryEntry(LocalDate date, String time, String title, String content, String category, boolean favorite) {
-        this.date = date;
-        this.time = time;
-        this.title = title;
-        this.content = content;
-        this.category = category;
-        this.favorite = favorite;
-    }
-    
-    public LocalDate getDate() { return date; }
-    public String getTime() { return time; }
-    public String getTitle() { return title; }
-    public String getContent() { return content; }
-    public String getCategory() { return category; }
-    public boolean isFavorite() { return favorite; }
-    
-    public void setDate(LocalDate date) { this.date = date; }
-    public void setTime(String time) { this.time = time; }
-    public void setTitle(String title) { this.title = title; }
-    public void setContent(String content) { this.content = content; }
-    public void setCategory(String category) { this.category = category; }
-    public void setFavorite(boolean favorite) { this.favorite = favorite; }
-}
-
 class UserProfile {
+    private final Supplier<EntryStats> stats;
     private String name;
     private String email;
     private String bio;
     private LocalDate joinDate;
-    private int totalEntries;
-    private int streakDays;
-    private String favoriteCategory;
     private String profilePhotoUrl;
     
-    public UserProfile() {
-        this.totalEntries = 0;
-        this.streakDays = 0;
+    /** Entry counts, streaks and the favorite category come live from whatever {@code stats} returns. */
+    public UserProfile(Supplier<EntryStats> stats) {
+        this.stats = stats;
         this.joinDate = LocalDate.now();
     }
     
@@ -1300,14 +1622,13 @@ class UserProfile {
     public LocalDate getJoinDate() { return joinDate; }
     public void setJoinDate(LocalDate joinDate) { this.joinDate = joinDate; }
     
-    public int getTotalEntries() { return totalEntries; }
-    public void setTotalEntries(int totalEntries) { this.totalEntries = totalEntries; }
-    
-    public int getStreakDays() { return streakDays; }
-    public void setStreakDays(int streakDays) { this.streakDays = streakDays; }
-    
-    public String getFavoriteCategory() { return favoriteCategory; }
-    public void setFavoriteCategory(String favoriteCategory) { this.favoriteCategory = favoriteCategory; }
+    public int getTotalEntries() { return stats.get().totalEntries(); }
+    public int getStreakDays() { return stats.get().currentStreak(LocalDate.now()); }
+    public int getLongestStreak() { return stats.get().longestStreak(); }
+    public String getFavoriteCategory() { return stats.get().favoriteCategory(); }
+    public int getFavoriteCount() { return stats.get().favoriteCount(); }
+    public long getTotalWords() { return stats.get().totalWords(); }
+    public double getAverageWordsPerDay() { return stats.get().averageWordsPerDay(); }
     
     public String getProfilePhotoUrl() { return profilePhotoUrl; }
     public void setProfilePhotoUrl(String profilePhotoUrl) { this.profilePhotoUrl = profilePhotoUrl; }
@@ -0,0 +1,94 @@
+package com.diary;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An entry, as both front ends see it through {@link EntryStorage#load}.
+ * The fields live in a shared {@link EntryTable}; an instance is only a
+ * handle on its row, so there is exactly one per entry and identity
+ * comparison still works.
+ */
+public class DiaryEntry {
+    private static final EntryTable TABLE = new EntryTable();
+    
+    private final int id;
+    
+    public DiaryEntry(LocalDate date, String time, String title, String content, String category, boolean favorite) {
+        this.id = TABLE.add(date, time, title, content, category, favorite, LocalDateTime.now());
+    }
+    
+    private DiaryEntry(int id) {
+        this.id = id;
+    }
+    
+    public int getId() { return id; }
+    public LocalDate getDate() { return TABLE.date(id); }
+    public String getTime() { return TABLE.time(id); }
+    public String getTitle() { return TABLE.title(id); }
+    public String getContent() { return TABLE.content(id); }
+    public String getCategory() { return TABLE.category(id); }
+    public boolean isFavorite() { return TABLE.isFavorite(id); }
+    public Set<String> getTags() { return TABLE.tags(id); }
+    public String getFileName() { return TABLE.fileName(id); }
+    public LocalDateTime getCreated() { return TABLE.created(id); }
+    public LocalDateTime getModified() { return TABLE.modified(id); }
+    
+    /** The start of the content, for previews; cheaper than {@link #getContent()} on long entries. */
+    public String getContentPrefix(int length) { return TABLE.contentPrefix(id, length); }
+    public int getContentWordCount() { return TABLE.wordCount(id); }
+    
+    public void setDate(LocalDate date) { TABLE.setDate(id, date); }
+    public void setTime(String time) { TABLE.setTime(id, time); }
+    public void setTitle(String title) { TABLE.setTitle(id, title); }
+    public void setContent(String content) { TABLE.setContent(id, content); }
+    public void setCategory(String category) { TABLE.setCategory(id, category); }
+    public void setFavorite(boolean favorite) { TABLE.setFavorite(id, favorite); }
+    public void setTags(Set<String> tags) { TABLE.setTags(id, tags); }
+    public void setFileName(String fileName) { TABLE.setFileName(id, fileName); }
+    public void setCreated(LocalDateTime created) { TABLE.setCreated(id, created); }
+    public void setModified(LocalDateTime modified) { TABLE.setModified(id, modified); }
+    
+    /**
+     * Gives the entry's row back to the table, once nothing will show or save
+     * it again; the instance must not be used afterwards.
+     */
+    public void release() { TABLE.remove(id); }
+    
+    /**
+     * Reads the content of the entry's file now if it was left there, as
+     * entries from the startup snapshot are, instead of when it's first asked for.
+     */
+    void loadContent() { TABLE.loadContent(id); }
+    
+    /** Where entries from the startup snapshot read their content from. */
+    static void setContentLoader(EntryTable.ContentLoader loader) { TABLE.setContentLoader(loader); }
+    
+    /** Off-heap bytes held by all entries' content. */
+    static long contentBytesOffHeap() { return TABLE.offHeapBytes(); }
+    
+    /** Writes the entries' fields as stored, for {@link #readAll}; content stays in their files. */
+    static void writeAll(DataOutputStream out, List<DiaryEntry> entries) throws IOException {
+        int[] ids = new int[entries.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = entries.get(i).id;
+        }
+        TABLE.writeRows(out, ids);
+    }
+    
+    /** New entries with the fields written by {@link #writeAll}, in the same order. */
+    static List<DiaryEntry> readAll(ByteBuffer in) {
+        int[] ids = TABLE.readRows(in);
+        List<DiaryEntry> entries = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            entries.add(new DiaryEntry(id));
+        }
+        return entries;
+    }
+}
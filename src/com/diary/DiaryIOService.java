@@ -0,0 +1,506 @@
+package com.diary;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.concurrent.Task;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * All of DiaryApp's disk access, kept off the JavaFX application thread.
+ *
+ * Writes go through a single worker so saves and deletes of the same entry
+ * land in the order they were made; loads use a small separate pool so a long
+ * read never holds up a save. Both queues are bounded: when one is full the
+ * operation fails straight away instead of piling up unbounded work.
+ *
+ * Each operation is a {@link Task}; its success or failure callback and the
+ * {@link #pendingProperty()}/{@link #statusProperty()} updates are delivered on
+ * the FX thread, so callers only ever touch the scene graph from there.
+ *
+ * Entries are kept by an {@link EntryStorage} engine, chosen with the
+ * {@code diary.storage} system property ({@code files} unless set) and
+ * opened on first use so that happens on an I/O thread too. With one file
+ * per entry, loading starts from the {@link SnapshotStore} image when there
+ * is one, and the service remembers the size and modification time of every
+ * entry file it has loaded or saved, so {@link #checkForChanges} can find
+ * files edited outside the app without reading the rest. Other engines are
+ * only written by the app, so they are read whole and never checked.
+ *
+ * Entries from the image come without their text and with their index.
+ * {@link #buildIndex} hands that index over instead of building one, and
+ * each entry's text is read from its file when first shown or searched, or
+ * by {@link #loadContent} in the background, whichever comes first.
+ */
+class DiaryIOService implements AutoCloseable {
+    static final String PROFILE_FILE = "profile.properties";
+    static final String STORAGE_PROPERTY = "diary.storage";
+    
+    private final Path dataDir;
+    private final String engine;
+    private final boolean oneFilePerEntry;
+    private EntryStorage storage;
+    private final RevisionHistory history;
+    private final SnapshotStore snapshots;
+    private final Map<String, SnapshotStore.Fingerprint> fingerprints = new ConcurrentHashMap<>();
+    // Index that came with the snapshot, until buildIndex hands it over
+    private volatile EntryIndex loadedIndex;
+    private final ThreadPoolExecutor writer;
+    private final ThreadPoolExecutor readers;
+    private final Set<Task<?>> active = ConcurrentHashMap.newKeySet();
+    private final ReadOnlyIntegerWrapper pending = new ReadOnlyIntegerWrapper(this, "pending");
+    private final ReadOnlyStringWrapper status = new ReadOnlyStringWrapper(this, "status", "");
+    
+    /** Work run on an I/O thread; may report progress through the task. */
+    interface Work<T> {
+        T run(IOTask<T> task) throws Exception;
+    }
+    
+    static class IOTask<T> extends Task<T> {
+        private final Work<T> work;
+        
+        IOTask(String message, Work<T> work) {
+            this.work = work;
+            updateMessage(message);
+        }
+        
+        @Override
+        protected T call() throws Exception {
+            return work.run(this);
+        }
+        
+        void progress(long done, long total, String message) {
+            updateProgress(done, total);
+            updateMessage(message);
+        }
+    }
+    
+    /** Entry files that differ from what the service last loaded or saved. */
+    static class DiskChanges {
+        /** Files that are new or were edited outside the app, freshly read. */
+        final List<DiaryEntry> changed;
+        final Set<String> removed;
+        
+        DiskChanges(List<DiaryEntry> changed, Set<String> removed) {
+            this.changed = changed;
+            this.removed = removed;
+        }
+        
+        boolean isEmpty() {
+            return changed.isEmpty() && removed.isEmpty();
+        }
+    }
+    
+    DiaryIOService(Path dataDir) {
+        this(dataDir, System.getProperty(STORAGE_PROPERTY, "files"));
+    }
+    
+    DiaryIOService(Path dataDir, String engine) {
+        this.dataDir = dataDir;
+        this.engine = engine;
+        this.oneFilePerEntry = engine.equals("files");
+        this.history = new RevisionHistory(dataDir);
+        this.snapshots = new SnapshotStore(dataDir);
+        this.writer = newExecutor("diary-io-write", 1, 256);
+        this.readers = newExecutor("diary-io-read", 2, 32);
+    }
+    
+    private static ThreadPoolExecutor newExecutor(String name, int threads, int queueSize) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize), runnable -> {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+    }
+    
+    ReadOnlyIntegerProperty pendingProperty() {
+        return pending.getReadOnlyProperty();
+    }
+    
+    ReadOnlyStringProperty statusProperty() {
+        return status.getReadOnlyProperty();
+    }
+    
+    Path getDataDir() {
+        return dataDir;
+    }
+    
+    // ===== OPERATIONS =====
+    
+    /**
+     * Every entry, newest first and with its tags extracted. Comes from the
+     * startup snapshot when there is one, reading only the files that changed
+     * if the directory shows some were added or removed behind the app's back;
+     * otherwise reads every entry, reporting progress per entry.
+     */
+    IOTask<List<DiaryEntry>> loadEntries(Consumer<List<DiaryEntry>> onLoaded, Consumer<Throwable> onFailed) {
+        return submit(readers, "Loading entries...", task -> {
+            Files.createDirectories(dataDir);
+            List<DiaryEntry> loaded;
+            DiaryEntry.setContentLoader(this::readContent);
+            SnapshotStore.Image image = oneFilePerEntry ? snapshots.load() : null;
+            if (image != null) {
+                fingerprints.putAll(image.fingerprints);
+                loaded = image.entries;
+                EntryIndex index = image.index;
+                if (image.directoryChanged) {
+                    DiskChanges changes = findChanges(task);
+                    Set<String> stale = new HashSet<>(changes.removed);
+                    changes.changed.forEach(entry -> stale.add(entry.getFileName()));
+                    loaded.removeIf(entry -> {
+                        if (stale.contains(entry.getFileName())) {
+                            if (index != null) {
+                                index.remove(entry);
+                            }
+                            entry.release();
+                            return true;
+                        }
+                        return false;
+                    });
+                    loaded.addAll(changes.changed);
+                    if (index != null) {
+                        changes.changed.forEach(index::update);
+                    }
+                }
+                loadedIndex = index;
+            } else if (oneFilePerEntry) {
+                long directoryTime = snapshots.directoryTime();
+                loaded = readAllEntries(task);
+                snapshots.reset(directoryTime);
+            } else {
+                loaded = readAllEntries(task);
+            }
+            loaded.sort(Comparator.comparing(DiaryEntry::getCreated).reversed());
+            return loaded;
+        }, onLoaded, onFailed);
+    }
+    
+    /**
+     * Indexes {@code entries} off the FX thread, so the first page can be
+     * shown before the index exists. The entries must not be released while
+     * this runs; their fields may still change, since the table locks each
+     * read, but any entry edited meanwhile has to be indexed again. If they
+     * are the entries just loaded and the snapshot had their index, that
+     * index is handed over instead of building another.
+     */
+    IOTask<EntryIndex> buildIndex(List<DiaryEntry> entries, Consumer<EntryIndex> onBuilt, Consumer<Throwable> onFailed) {
+        List<DiaryEntry> copy = new ArrayList<>(entries);
+        EntryIndex stored = loadedIndex;
+        loadedIndex = null;
+        return submit(readers, "Indexing entries...", task -> {
+            if (stored != null && stored.covers(copy)) {
+                return stored;
+            }
+            EntryIndex index = new EntryIndex();
+            copy.forEach(index::update);
+            return index;
+        }, onBuilt, onFailed);
+    }
+    
+    /**
+     * Reads the text of {@code entries} that came from the snapshot without
+     * it, so searching them later doesn't wait on their files. Entries may be
+     * edited or released meanwhile; those are skipped.
+     */
+    IOTask<Void> loadContent(List<DiaryEntry> entries, Consumer<Throwable> onFailed) {
+        List<DiaryEntry> copy = new ArrayList<>(entries);
+        return submit(readers, "Reading entries...", task -> {
+            for (int i = 0; i < copy.size() && !task.isCancelled(); i++) {
+                try {
+                    copy.get(i).loadContent();
+                } catch (UncheckedIOException e) {
+                    // Left to be read, or reported, when it is shown
+                    System.err.println(e.getMessage() + ": " + e.getCause().getMessage());
+                }
+                task.progress(i + 1, copy.size(), "Reading entries " + (i + 1) + "/" + copy.size());
+            }
+            return null;
+        }, result -> { }, onFailed);
+    }
+    
+    /**
+     * Compares the entry files with what was last loaded or saved and reads
+     * the ones that differ, to catch edits made outside the app. Runs on the
+     * write worker so no save can land between the listing and the reads.
+     * Finds nothing unless entries are kept one file each.
+     */
+    IOTask<DiskChanges> checkForChanges(Consumer<DiskChanges> onChecked, Consumer<Throwable> onFailed) {
+        return submit(writer, "Checking for changes...",
+            task -> oneFilePerEntry ? findChanges(task) : new DiskChanges(List.of(), Set.of()), onChecked, onFailed);
+    }
+    
+    /**
+     * Writes the startup snapshot. Call it on clean shutdown with the entries
+     * whose files match them; entries with unsaved edits must be left out.
+     * The index is stored with them if it holds exactly those entries.
+     * Only entries kept one file each have a snapshot.
+     */
+    IOTask<Void> saveSnapshot(List<DiaryEntry> entries, EntryIndex index, Consumer<Throwable> onFailed) {
+        List<DiaryEntry> copy = new ArrayList<>(entries);
+        return submit(writer, "Saving snapshot...", task -> {
+            if (!oneFilePerEntry) {
+                return null;
+            }
+            // Only entries whose file this service has seen, so each has a fingerprint
+            copy.removeIf(entry -> entry.getFileName() == null || !fingerprints.containsKey(entry.getFileName()));
+            snapshots.write(copy, index, fingerprints);
+            return null;
+        }, result -> { }, onFailed);
+    }
+    
+    /**
+     * Writes an already formatted entry; {@code text} must be built on the FX
+     * thread. The new text is also added to the entry's revision history.
+     */
+    IOTask<Void> saveEntry(String fileName, String text, Runnable onSaved, Consumer<Throwable> onFailed) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        return submit(writer, "Saving...", task -> {
+            Files.createDirectories(dataDir);
+            EntryStorage storage = storage();
+            byte[] stored = storage.read(fileName);
+            String previous = stored == null ? null : new String(stored, StandardCharsets.UTF_8);
+            storage.write(fileName, data);
+            // The app reports the save as done, so it can't wait in a batch
+            storage.flush();
+            try {
+                // Decoded back so the history matches the file even if text had unpaired surrogates
+                history.record(fileName, previous, new String(data, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // The entry itself is safe; only its history missed this save
+                System.err.println("Error recording revision of " + fileName + ": " + e.getMessage());
+            }
+            if (!oneFilePerEntry) {
+                return null;
+            }
+            try {
+                SnapshotStore.Fingerprint fingerprint = SnapshotStore.Fingerprint.of(dataDir.resolve(fileName));
+                fingerprints.put(fileName, fingerprint);
+                // The fields as saved, which the FX thread may have changed since
+                DiaryEntry saved = EntryFiles.load(fileName, new String(data, StandardCharsets.UTF_8));
+                try {
+                    snapshots.journalSaved(fileName, fingerprint, saved);
+                } finally {
+                    saved.release();
+                }
+            } catch (IOException e) {
+                // The next check for changes rereads the file instead
+                System.err.println("Error journaling save of " + fileName + ": " + e.getMessage());
+            }
+            return null;
+        }, result -> onSaved.run(), onFailed);
+    }
+    
+    IOTask<Void> deleteEntry(String fileName, Runnable onDeleted, Consumer<Throwable> onFailed) {
+        return submit(writer, "Deleting...", task -> {
+            EntryStorage storage = storage();
+            storage.delete(fileName);
+            storage.flush();
+            history.delete(fileName);
+            if (!oneFilePerEntry) {
+                return null;
+            }
+            fingerprints.remove(fileName);
+            try {
+                snapshots.journalDeleted(fileName);
+            } catch (IOException e) {
+                System.err.println("Error journaling delete of " + fileName + ": " + e.getMessage());
+            }
+            return null;
+        }, result -> onDeleted.run(), onFailed);
+    }
+    
+    IOTask<List<RevisionHistory.Revision>> loadRevisions(String fileName, Consumer<List<RevisionHistory.Revision>> onLoaded,
+                                                         Consumer<Throwable> onFailed) {
+        return submit(readers, "Loading history...", task -> history.list(fileName), onLoaded, onFailed);
+    }
+    
+    /** Rebuilds one revision of an entry as it was saved; only its fields, it is not an entry of the diary. */
+    IOTask<EntryFiles.Fields> loadRevision(String fileName, int revision, Consumer<EntryFiles.Fields> onLoaded,
+                                           Consumer<Throwable> onFailed) {
+        return submit(readers, "Loading revision " + revision + "...",
+            task -> EntryFiles.parseFields(history.rebuild(fileName, revision)), onLoaded, onFailed);
+    }
+    
+    IOTask<Properties> loadProfile(Consumer<Properties> onLoaded, Consumer<Throwable> onFailed) {
+        return submit(readers, "Loading profile...", task -> {
+            Properties properties = new Properties();
+            Path file = dataDir.resolve(PROFILE_FILE);
+            if (Files.exists(file)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    properties.load(in);
+                }
+            }
+            return properties;
+        }, onLoaded, onFailed);
+    }
+    
+    IOTask<Void> saveProfile(Properties properties, Runnable onSaved, Consumer<Throwable> onFailed) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return submit(writer, "Saving profile...", task -> {
+            Files.createDirectories(dataDir);
+            Path temp = Files.createTempFile(dataDir, ".profile", ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    copy.store(out, "Diary profile");
+                }
+                Files.move(temp, dataDir.resolve(PROFILE_FILE), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            try {
+                snapshots.journalTouched();
+            } catch (IOException e) {
+                // Only means the next start checks the directory before trusting the snapshot
+                System.err.println("Error journaling profile save: " + e.getMessage());
+            }
+            return null;
+        }, result -> onSaved.run(), onFailed);
+    }
+    
+    /** The entry storage, opened on first use so that happens on an I/O thread. */
+    private synchronized EntryStorage storage() throws IOException {
+        if (storage == null) {
+            storage = EntryStorage.open(engine, dataDir);
+        }
+        return storage;
+    }
+    
+    /** Content of the entry file {@code fileName}, for entries from the snapshot. */
+    private String readContent(String fileName) throws IOException {
+        byte[] data = storage().read(fileName);
+        if (data == null) {
+            throw new NoSuchFileException(fileName);
+        }
+        return EntryFiles.parseFields(new String(data, StandardCharsets.UTF_8)).content;
+    }
+    
+    private List<DiaryEntry> readAllEntries(IOTask<?> task) throws IOException {
+        EntryStorage storage = storage();
+        List<String> names = storage.names();
+        List<DiaryEntry> loaded = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (task.isCancelled()) {
+                break;
+            }
+            String fileName = names.get(i);
+            // Taken before the read, so a file changing in between looks changed next time
+            SnapshotStore.Fingerprint fingerprint = oneFilePerEntry
+                ? SnapshotStore.Fingerprint.of(dataDir.resolve(fileName)) : null;
+            byte[] data = storage.read(fileName);
+            if (data != null) {
+                loaded.add(EntryFiles.load(fileName, new String(data, StandardCharsets.UTF_8)));
+                if (fingerprint != null) {
+                    fingerprints.put(fileName, fingerprint);
+                }
+            }
+            task.progress(i + 1, names.size(), "Loading entries " + (i + 1) + "/" + names.size());
+        }
+        return loaded;
+    }
+    
+    private DiskChanges findChanges(IOTask<?> task) throws IOException {
+        long directoryTime = snapshots.directoryTime();
+        Set<String> known = new HashSet<>(fingerprints.keySet());
+        List<String> names = storage().names();
+        List<DiaryEntry> changed = new ArrayList<>();
+        for (String fileName : names) {
+            Path file = dataDir.resolve(fileName);
+            try {
+                SnapshotStore.Fingerprint fingerprint = SnapshotStore.Fingerprint.of(file);
+                known.remove(fileName);
+                if (!fingerprint.equals(fingerprints.get(fileName))) {
+                    String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                    changed.add(EntryFiles.load(fileName, text));
+                    fingerprints.put(fileName, fingerprint);
+                }
+            } catch (NoSuchFileException e) {
+                // Deleted since the listing; reported as removed
+            }
+        }
+        fingerprints.keySet().removeAll(known);
+        snapshots.directoryChecked(directoryTime);
+        return new DiskChanges(changed, known);
+    }
+    
+    // ===== PLUMBING =====
+    
+    /** Must be called on the FX thread; callbacks also run there. */
+    <T> IOTask<T> submit(ExecutorService executor, String message, Work<T> work,
+                         Consumer<T> onSuccess, Consumer<Throwable> onFailed) {
+        IOTask<T> task = new IOTask<>(message, work);
+        task.setOnSucceeded(e -> {
+            finished(task);
+            onSuccess.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            finished(task);
+            status.set("Error: " + task.getException().getMessage());
+            onFailed.accept(task.getException());
+        });
+        task.setOnCancelled(e -> finished(task));
+        task.messageProperty().addListener((obs, oldMessage, newMessage) -> status.set(newMessage));
+        
+        active.add(task);
+        pending.set(active.size());
+        status.set(message);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            active.remove(task);
+            pending.set(active.size());
+            IOException busy = new IOException("Too many disk operations queued, please try again");
+            status.set("Error: " + busy.getMessage());
+            // Keep the contract that callbacks run after submit() returns
+            Platform.runLater(() -> onFailed.accept(busy));
+        }
+        return task;
+    }
+    
+    private void finished(Task<?> task) {
+        active.remove(task);
+        pending.set(active.size());
+        if (active.isEmpty() && !status.get().startsWith("Error")) {
+            status.set("Ready");
+        }
+    }
+    
+    /** Cancels outstanding loads and gives queued writes a few seconds to reach the disk. */
+    @Override
+    public void close() {
+        // Reads are disposable; writes are left to finish
+        for (Runnable queued : readers.shutdownNow()) {
+            ((Task<?>) queued).cancel(false);
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (storage != null) {
+                try {
+                    storage.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing entry storage: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.diary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The text being edited, fed by the editor's change deltas rather than its
+ * full text. Each edit updates a {@link PieceTable}, adjusts the word count
+ * from the few characters around the edit, and records the changed range, so
+ * a keystroke costs the same in a 1 MB entry as in a short one. The full text
+ * is only built when it is asked for, typically once on save.
+ */
+class EditorDocument {
+    private final PieceTable text;
+    private int wordCount;
+    private final List<int[]> dirtyRanges = new ArrayList<>(); // Sorted, disjoint [start, end)
+    
+    EditorDocument(String content) {
+        this.text = new PieceTable(content);
+        this.wordCount = countWordStarts(content, false);
+    }
+    
+    void replace(int start, int end, String inserted) {
+        int length = text.length();
+        // Only positions start..end can gain or lose a word start: the edited text
+        // itself, plus the character after it, whose predecessor changes
+        boolean hasPrevious = start > 0;
+        String before = text.substring(hasPrevious ? start - 1 : start, Math.min(length, end + 1));
+        StringBuilder after = new StringBuilder(inserted.length() + 2);
+        if (hasPrevious) {
+            after.append(before.charAt(0));
+        }
+        after.append(inserted);
+        if (end < length) {
+            after.append(before.charAt(before.length() - 1));
+        }
+        wordCount += countWordStarts(after, hasPrevious) - countWordStarts(before, hasPrevious);
+        
+        text.replace(start, end, inserted);
+        markDirty(start, end, inserted.length());
+    }
+    
+    int getWordCount() {
+        return wordCount;
+    }
+    
+    int length() {
+        return text.length();
+    }
+    
+    String getText() {
+        return text.toString();
+    }
+    
+    boolean isDirty() {
+        return !dirtyRanges.isEmpty();
+    }
+    
+    /** Ranges changed since the last {@link #markClean()}, in current positions. */
+    List<int[]> getDirtyRanges() {
+        List<int[]> copy = new ArrayList<>(dirtyRanges.size());
+        for (int[] range : dirtyRanges) {
+            copy.add(range.clone());
+        }
+        return copy;
+    }
+    
+    void markClean() {
+        dirtyRanges.clear();
+    }
+    
+    private void markDirty(int start, int end, int insertedLength) {
+        int delta = insertedLength - (end - start);
+        int newStart = start;
+        int newEnd = start + insertedLength;
+        List<int[]> updated = new ArrayList<>(dirtyRanges.size() + 1);
+        for (int[] range : dirtyRanges) {
+            if (range[1] < start) {
+                updated.add(range);
+            } else if (range[0] > end) {
+                range[0] += delta;
+                range[1] += delta;
+                updated.add(range);
+            } else {
+                // Touches the edit: absorb it, mapping the part after the edit to new positions
+                newStart = Math.min(newStart, range[0]);
+                newEnd = Math.max(newEnd, range[1] > end ? range[1] + delta : newEnd);
+            }
+        }
+        int insertAt = 0;
+        while (insertAt < updated.size() && updated.get(insertAt)[0] < newStart) {
+            insertAt++;
+        }
+        updated.add(insertAt, new int[] {newStart, newEnd});
+        dirtyRanges.clear();
+        dirtyRanges.addAll(updated);
+    }
+    
+    /** Word starts in {@code window}; if {@code hasPrevious}, the first char is context only. */
+    private static int countWordStarts(CharSequence window, boolean hasPrevious) {
+        int count = 0;
+        boolean previousIsSpace = !hasPrevious || window.length() == 0 || Character.isWhitespace(window.charAt(0));
+        for (int i = hasPrevious ? 1 : 0; i < window.length(); i++) {
+            boolean space = Character.isWhitespace(window.charAt(i));
+            if (!space && previousIsSpace) {
+                count++;
+            }
+            previousIsSpace = space;
+        }
+        return count;
+    }
+}
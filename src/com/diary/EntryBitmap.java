@@ -0,0 +1,462 @@
+package com.diary;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of entry ids.
+ *
+ * Ids are split into 16-bit chunks. A chunk is kept as a sorted array while it
+ * is sparse and switches to a plain bitset once it holds more than 4096 ids,
+ * so small tags cost a few bytes and large ones never cost more than 8 KB per
+ * 65536 ids. Set operations return new bitmaps and leave their inputs alone.
+ * {@link #write} stores each chunk as it is kept, so {@link #read} copies the
+ * arrays back in bulk.
+ */
+public class EntryBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final byte ARRAY_CHUNK = 0;
+    private static final byte BITMAP_CHUNK = 1;
+    
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+    
+    public static EntryBitmap of(int... ids) {
+        EntryBitmap bitmap = new EntryBitmap();
+        for (int id : ids) {
+            bitmap.add(id);
+        }
+        return bitmap;
+    }
+    
+    public void add(int id) {
+        char high = (char) (id >>> 16);
+        int index = indexOf(high);
+        if (index >= 0) {
+            containers[index] = containers[index].add((char) id);
+        } else {
+            insertAt(-index - 1, high, new ArrayContainer().add((char) id));
+        }
+    }
+    
+    public void remove(int id) {
+        int index = indexOf((char) (id >>> 16));
+        if (index < 0) {
+            return;
+        }
+        Container updated = containers[index].remove((char) id);
+        if (updated.cardinality() == 0) {
+            removeAt(index);
+        } else {
+            containers[index] = updated;
+        }
+    }
+    
+    public boolean contains(int id) {
+        int index = indexOf((char) (id >>> 16));
+        return index >= 0 && containers[index].contains((char) id);
+    }
+    
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += containers[i].cardinality();
+        }
+        return total;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public EntryBitmap and(EntryBitmap other) {
+        EntryBitmap result = new EntryBitmap();
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container c = containers[i].and(other.containers[j]);
+                if (c.cardinality() > 0) {
+                    result.append(keys[i], c);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+    
+    public EntryBitmap or(EntryBitmap other) {
+        EntryBitmap result = new EntryBitmap();
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i >= size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+    
+    public EntryBitmap andNot(EntryBitmap other) {
+        EntryBitmap result = new EntryBitmap();
+        for (int i = 0; i < size; i++) {
+            int index = other.indexOf(keys[i]);
+            Container c = index >= 0
+                ? containers[i].andNot(other.containers[index])
+                : containers[i].copy();
+            if (c.cardinality() > 0) {
+                result.append(keys[i], c);
+            }
+        }
+        return result;
+    }
+    
+    public EntryBitmap copy() {
+        EntryBitmap result = new EntryBitmap();
+        for (int i = 0; i < size; i++) {
+            result.append(keys[i], containers[i].copy());
+        }
+        return result;
+    }
+    
+    /** Visits ids in ascending order. */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+    
+    public int[] toArray() {
+        int[] ids = new int[cardinality()];
+        int[] position = {0};
+        forEach(id -> ids[position[0]++] = id);
+        return ids;
+    }
+    
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+    
+    /**
+     * The ids renumbered as {@code to[id]}, leaving out those {@code to} has
+     * no number for (or -1); this bitmap itself if {@code to} is null.
+     */
+    EntryBitmap map(int[] to) {
+        if (to == null) {
+            return this;
+        }
+        EntryBitmap result = new EntryBitmap();
+        forEach(id -> {
+            if (id < to.length && to[id] >= 0) {
+                result.add(to[id]);
+            }
+        });
+        return result;
+    }
+    
+    /** Writes the ids for {@link #read}. */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeChar(keys[i]);
+            containers[i].write(out);
+        }
+    }
+    
+    /** A bitmap written by {@link #write}; damaged input throws a {@link RuntimeException}. */
+    static EntryBitmap read(ByteBuffer in) {
+        EntryBitmap bitmap = new EntryBitmap();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            char high = in.getChar();
+            if (i > 0 && high <= bitmap.keys[i - 1]) {
+                throw new IllegalStateException("Bitmap chunks out of order");
+            }
+            bitmap.append(high, Container.read(in));
+        }
+        return bitmap;
+    }
+    
+    private int indexOf(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+    
+    private void append(char high, Container container) {
+        insertAt(size, high, container);
+    }
+    
+    private void insertAt(int index, char high, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = high;
+        containers[index] = container;
+        size++;
+    }
+    
+    private void removeAt(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        containers[--size] = null;
+    }
+    
+    private abstract static class Container {
+        abstract Container add(char value);
+        abstract Container remove(char value);
+        abstract boolean contains(char value);
+        abstract int cardinality();
+        abstract Container copy();
+        abstract void forEach(int base, IntConsumer action);
+        abstract void write(DataOutputStream out) throws IOException;
+        
+        static Container read(ByteBuffer in) {
+            byte kind = in.get();
+            if (kind == ARRAY_CHUNK) {
+                int cardinality = in.getInt();
+                if (cardinality <= 0 || cardinality > ARRAY_MAX) {
+                    throw new IllegalStateException("Bitmap chunk of " + cardinality + " ids");
+                }
+                ArrayContainer array = new ArrayContainer();
+                array.values = new char[Math.max(4, cardinality)];
+                in.asCharBuffer().get(array.values, 0, cardinality);
+                in.position(in.position() + 2 * cardinality);
+                array.cardinality = cardinality;
+                return array;
+            } else if (kind == BITMAP_CHUNK) {
+                BitmapContainer bitmap = new BitmapContainer();
+                in.asLongBuffer().get(bitmap.words);
+                in.position(in.position() + 8 * bitmap.words.length);
+                for (long word : bitmap.words) {
+                    bitmap.cardinality += Long.bitCount(word);
+                }
+                return bitmap;
+            }
+            throw new IllegalStateException("Unknown bitmap chunk " + kind);
+        }
+        
+        Container and(Container other) {
+            ArrayContainer result = new ArrayContainer();
+            forEach(0, value -> {
+                if (other.contains((char) value)) {
+                    result.append((char) value);
+                }
+            });
+            return result;
+        }
+        
+        Container or(Container other) {
+            Container result = copy();
+            Container[] holder = {result};
+            other.forEach(0, value -> holder[0] = holder[0].add((char) value));
+            return holder[0];
+        }
+        
+        Container andNot(Container other) {
+            ArrayContainer result = new ArrayContainer();
+            forEach(0, value -> {
+                if (!other.contains((char) value)) {
+                    result.append((char) value);
+                }
+            });
+            return result.cardinality() > ARRAY_MAX ? result.toBitmap() : result;
+        }
+    }
+    
+    private static class ArrayContainer extends Container {
+        private char[] values = new char[4];
+        private int cardinality;
+        
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+        
+        void append(char value) {
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, cardinality * 2);
+            }
+            values[cardinality++] = value;
+        }
+        
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+        
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+        
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+        
+        @Override
+        Container copy() {
+            ArrayContainer copy = new ArrayContainer();
+            copy.values = Arrays.copyOf(values, Math.max(4, cardinality));
+            copy.cardinality = cardinality;
+            return copy;
+        }
+        
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(base | values[i]);
+            }
+        }
+        
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(ARRAY_CHUNK);
+            out.writeInt(cardinality);
+            for (int i = 0; i < cardinality; i++) {
+                out.writeChar(values[i]);
+            }
+        }
+        
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+    
+    private static class BitmapContainer extends Container {
+        private final long[] words = new long[1024];
+        private int cardinality;
+        
+        @Override
+        Container add(char value) {
+            long mask = 1L << value;
+            if ((words[value >>> 6] & mask) == 0) {
+                words[value >>> 6] |= mask;
+                cardinality++;
+            }
+            return this;
+        }
+        
+        @Override
+        Container remove(char value) {
+            long mask = 1L << value;
+            if ((words[value >>> 6] & mask) != 0) {
+                words[value >>> 6] &= ~mask;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArrayContainer() : this;
+        }
+        
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+        
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+        
+        @Override
+        Container copy() {
+            BitmapContainer copy = new BitmapContainer();
+            System.arraycopy(words, 0, copy.words, 0, words.length);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+        
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(base | (w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+        
+        @Override
+        Container and(Container other) {
+            if (!(other instanceof BitmapContainer)) {
+                return other.and(this);
+            }
+            BitmapContainer result = new BitmapContainer();
+            long[] otherWords = ((BitmapContainer) other).words;
+            for (int w = 0; w < words.length; w++) {
+                result.words[w] = words[w] & otherWords[w];
+                result.cardinality += Long.bitCount(result.words[w]);
+            }
+            return result.cardinality <= ARRAY_MAX ? result.toArrayContainer() : result;
+        }
+        
+        @Override
+        Container or(Container other) {
+            if (!(other instanceof BitmapContainer)) {
+                return super.or(other);
+            }
+            BitmapContainer result = new BitmapContainer();
+            long[] otherWords = ((BitmapContainer) other).words;
+            for (int w = 0; w < words.length; w++) {
+                result.words[w] = words[w] | otherWords[w];
+                result.cardinality += Long.bitCount(result.words[w]);
+            }
+            return result;
+        }
+        
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(BITMAP_CHUNK);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+        
+        ArrayContainer toArrayContainer() {
+            ArrayContainer array = new ArrayContainer();
+            forEach(0, value -> array.append((char) value));
+            return array;
+        }
+    }
+}
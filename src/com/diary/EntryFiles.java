@@ -0,0 +1,146 @@
+package com.diary;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+
+/**
+ * Text format of an entry in {@code diary_data/}: a header block of
+ * {@code Key: value} lines between the {@code === Diary Entry ===} markers,
+ * a blank line, then the content. Files written before the Category line
+ * existed load as "Personal".
+ */
+class EntryFiles {
+    static final String EXTENSION = ".txt";
+    private static final String HEADER = "=== Diary Entry ===";
+    private static final String FOOTER = "===================";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_hh-mma");
+    
+    /** A name like {@code 2026-01-02_11-16PM_New_Entry.txt} that is not in {@code taken}. */
+    static String fileNameFor(DiaryEntry entry, Set<String> taken) {
+        String title = entry.getTitle() == null ? "" : entry.getTitle().replaceAll("[^\\p{L}\\p{N}]+", "_");
+        title = title.replaceAll("^_+|_+$", "");
+        if (title.isEmpty()) {
+            title = "Untitled";
+        } else if (title.length() > 40) {
+            title = title.substring(0, 40);
+        }
+        String base = entry.getCreated().format(NAME_FORMAT) + "_" + title;
+        String name = base + EXTENSION;
+        for (int i = 2; taken.contains(name); i++) {
+            name = base + "_" + i + EXTENSION;
+        }
+        return name;
+    }
+    
+    static String format(DiaryEntry entry) {
+        StringBuilder out = new StringBuilder();
+        out.append(HEADER).append('\n');
+        out.append("Title: ").append(oneLine(entry.getTitle())).append('\n');
+        out.append("Date: ").append(entry.getDate()).append('\n');
+        out.append("Time: ").append(oneLine(entry.getTime())).append('\n');
+        out.append("Created: ").append(entry.getCreated()).append('\n');
+        out.append("Modified: ").append(entry.getModified()).append('\n');
+        out.append("Tags: ").append(String.join(", ", entry.getTags())).append('\n');
+        out.append("Favorite: ").append(entry.isFavorite()).append('\n');
+        out.append("Category: ").append(oneLine(entry.getCategory())).append('\n');
+        out.append(FOOTER).append('\n');
+        out.append('\n');
+        out.append(entry.getContent() == null ? "" : entry.getContent());
+        return out.toString();
+    }
+    
+    /** The fields of an entry file, parsed but not made into a {@link DiaryEntry}, e.g. for a preview. */
+    static class Fields {
+        String title = "Untitled";
+        LocalDate date;
+        String time = "";
+        String category = "Personal";
+        boolean favorite;
+        LocalDateTime created;
+        LocalDateTime modified;
+        String content;
+    }
+    
+    static DiaryEntry parse(String fileName, String text) {
+        Fields fields = parseFields(text);
+        DiaryEntry entry = new DiaryEntry(fields.date, fields.time, fields.title, fields.content, fields.category,
+            fields.favorite);
+        entry.setFileName(fileName);
+        if (fields.created != null) {
+            entry.setCreated(fields.created);
+        }
+        entry.setModified(fields.modified != null ? fields.modified : entry.getCreated());
+        return entry;
+    }
+    
+    static Fields parseFields(String text) {
+        Fields fields = new Fields();
+        int pos = 0;
+        if (text.startsWith(HEADER)) {
+            pos = text.indexOf('\n') + 1;
+            while (pos > 0 && pos < text.length()) {
+                int end = text.indexOf('\n', pos);
+                String line = (end < 0 ? text.substring(pos) : text.substring(pos, end)).replace("\r", "");
+                pos = end < 0 ? text.length() : end + 1;
+                if (line.equals(FOOTER)) {
+                    break;
+                }
+                int colon = line.indexOf(": ");
+                String key = colon < 0 ? line.replace(":", "") : line.substring(0, colon);
+                String value = colon < 0 ? "" : line.substring(colon + 2);
+                switch (key) {
+                    case "Title": fields.title = value; break;
+                    case "Date": fields.date = parseDate(value); break;
+                    case "Time": fields.time = value; break;
+                    case "Created": fields.created = parseDateTime(value); break;
+                    case "Modified": fields.modified = parseDateTime(value); break;
+                    case "Favorite": fields.favorite = Boolean.parseBoolean(value.trim()); break;
+                    case "Category": fields.category = value.isEmpty() ? fields.category : value; break;
+                    default: break; // Tags are re-extracted from the text
+                }
+            }
+            // Blank line between header and content
+            if (text.startsWith("\r\n", pos)) {
+                pos += 2;
+            } else if (text.startsWith("\n", pos)) {
+                pos++;
+            }
+        }
+        
+        if (fields.date == null) {
+            fields.date = fields.created != null ? fields.created.toLocalDate() : LocalDate.now();
+        }
+        fields.content = text.substring(Math.min(pos, text.length()));
+        return fields;
+    }
+    
+    /** {@link #parse} plus the entry's tags, so an entry loaded off the FX thread needs no more work there. */
+    static DiaryEntry load(String fileName, String text) {
+        DiaryEntry entry = parse(fileName, text);
+        entry.setTags(TagIndex.extractTags(entry.getTitle() + "\n" + entry.getContent()));
+        return entry;
+    }
+    
+    private static String oneLine(String value) {
+        return value == null ? "" : value.replace('\n', ' ').replace("\r", "");
+    }
+    
+    private static LocalDate parseDate(String value) {
+        try {
+            return LocalDate.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+    
+    private static LocalDateTime parseDateTime(String value) {
+        try {
+            return LocalDateTime.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.diary;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * In-memory indexes over the GUI's entries: id lookup, tags, categories,
+ * favorites and dates, plus the running {@link EntryStats}. Call
+ * {@link #update} whenever an indexed field or the text of an entry changes
+ * so the postings and totals stay in step with the model.
+ *
+ * The startup snapshot stores the index next to the entries it covers
+ * ({@link #write}), postings and totals as they are, so opening a diary
+ * reads it back ({@link #read}) instead of indexing every entry again.
+ */
+class EntryIndex implements QuerySource {
+    private static final EntryBitmap EMPTY = new EntryBitmap();
+    
+    // By entry id, which the entry table keeps dense
+    private IndexedFields[] indexed = new IndexedFields[256];
+    private int indexedCount;
+    private final EntryBitmap allIds = new EntryBitmap();
+    private EntryBitmap favoriteIds = new EntryBitmap();
+    private final Map<String, EntryBitmap> byCategory = new HashMap<>();
+    private final TreeMap<LocalDate, EntryBitmap> byDate = new TreeMap<>();
+    private final TagIndex tags = new TagIndex();
+    private final EntryStats stats = new EntryStats();
+    
+    private static class IndexedFields {
+        final DiaryEntry entry;
+        final String category;
+        final LocalDate date;
+        
+        IndexedFields(DiaryEntry entry, String category, LocalDate date) {
+            this.entry = entry;
+            this.category = category;
+            this.date = date;
+        }
+    }
+    
+    public void update(DiaryEntry entry) {
+        int id = entry.getId();
+        IndexedFields previous = indexed(id);
+        if (previous != null) {
+            removePosting(byCategory, previous.category, id);
+            removePosting(byDate, previous.date, id);
+        }
+        
+        allIds.add(id);
+        if (entry.isFavorite()) {
+            favoriteIds.add(id);
+        } else {
+            favoriteIds.remove(id);
+        }
+        byCategory.computeIfAbsent(entry.getCategory(), c -> new EntryBitmap()).add(id);
+        byDate.computeIfAbsent(entry.getDate(), d -> new EntryBitmap()).add(id);
+        tags.update(id, entry.getTags());
+        stats.update(entry);
+        setIndexed(id, new IndexedFields(entry, entry.getCategory(), entry.getDate()));
+    }
+    
+    public void remove(DiaryEntry entry) {
+        int id = entry.getId();
+        IndexedFields previous = indexed(id);
+        if (previous != null) {
+            removePosting(byCategory, previous.category, id);
+            removePosting(byDate, previous.date, id);
+            setIndexed(id, null);
+        }
+        allIds.remove(id);
+        favoriteIds.remove(id);
+        tags.remove(id);
+        stats.remove(entry);
+    }
+    
+    public DiaryEntry get(int id) {
+        IndexedFields fields = indexed(id);
+        return fields == null ? null : fields.entry;
+    }
+    
+    public List<DiaryEntry> entriesFor(EntryBitmap ids) {
+        List<DiaryEntry> result = new ArrayList<>(ids.cardinality());
+        ids.forEach(id -> {
+            DiaryEntry entry = get(id);
+            if (entry != null) {
+                result.add(entry);
+            }
+        });
+        return result;
+    }
+    
+    public TagIndex tags() {
+        return tags;
+    }
+    
+    public EntryStats stats() {
+        return stats;
+    }
+    
+    @Override
+    public EntryBitmap allEntries() {
+        return allIds;
+    }
+    
+    @Override
+    public EntryBitmap withTag(String tag) {
+        return tags.withTag(tag);
+    }
+    
+    @Override
+    public EntryBitmap inCategory(String category) {
+        for (Map.Entry<String, EntryBitmap> posting : byCategory.entrySet()) {
+            if (posting.getKey().equalsIgnoreCase(category)) {
+                return posting.getValue();
+            }
+        }
+        return EMPTY;
+    }
+    
+    @Override
+    public EntryBitmap favorites() {
+        return favoriteIds;
+    }
+    
+    @Override
+    public EntryBitmap between(LocalDate from, LocalDate to) {
+        EntryBitmap result = new EntryBitmap();
+        for (EntryBitmap day : dateRange(from, to).values()) {
+            result = result.or(day);
+        }
+        return result;
+    }
+    
+    /** The days from {@code from} to {@code to}, inclusive, that have at least one entry. */
+    public Set<LocalDate> datesBetween(LocalDate from, LocalDate to) {
+        return new HashSet<>(dateRange(from, to).keySet());
+    }
+    
+    @Override
+    public int estimateBetween(LocalDate from, LocalDate to) {
+        int estimate = 0;
+        for (EntryBitmap day : dateRange(from, to).values()) {
+            estimate += day.cardinality();
+        }
+        return estimate;
+    }
+    
+    @Override
+    public boolean containsText(int id, String term) {
+        DiaryEntry entry = get(id);
+        return entry != null
+            && (entry.getTitle().toLowerCase(Locale.ROOT).contains(term)
+                || entry.getContent().toLowerCase(Locale.ROOT).contains(term));
+    }
+    
+    /** Whether the index holds exactly {@code entries}, so {@link #write} can store it for them. */
+    boolean covers(List<DiaryEntry> entries) {
+        if (entries.size() != indexedCount) {
+            return false;
+        }
+        for (DiaryEntry entry : entries) {
+            if (get(entry.getId()) != entry) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Writes the index for {@link #read}, numbering the entries by their place
+     * in {@code entries}, which must be the ones it {@link #covers}.
+     */
+    void write(DataOutputStream out, List<DiaryEntry> entries) throws IOException {
+        int maxId = -1;
+        for (DiaryEntry entry : entries) {
+            maxId = Math.max(maxId, entry.getId());
+        }
+        int[] toPosition = new int[maxId + 1];
+        Arrays.fill(toPosition, -1);
+        for (int position = 0; position < entries.size(); position++) {
+            toPosition[entries.get(position).getId()] = position;
+        }
+        out.writeInt(entries.size());
+        favoriteIds.map(toPosition).write(out);
+        List<String> categories = new ArrayList<>(byCategory.keySet());
+        EntryTable.writeStrings(out, categories);
+        for (String category : categories) {
+            byCategory.get(category).map(toPosition).write(out);
+        }
+        out.writeInt(byDate.size());
+        for (Map.Entry<LocalDate, EntryBitmap> day : byDate.entrySet()) {
+            out.writeInt((int) day.getKey().toEpochDay());
+            day.getValue().map(toPosition).write(out);
+        }
+        tags.write(out, toPosition);
+        stats.write(out, toPosition, entries.size());
+    }
+    
+    /**
+     * The index written by {@link #write}, for {@code entries} in the same
+     * order as they were written. Damaged input throws a
+     * {@link RuntimeException} such as {@link java.nio.BufferUnderflowException}.
+     */
+    static EntryIndex read(ByteBuffer in, List<DiaryEntry> entries) {
+        int count = in.getInt();
+        if (count != entries.size()) {
+            throw new IllegalStateException("Index of " + count + " entries, expected " + entries.size());
+        }
+        int[] toId = new int[count];
+        boolean renumbered = false;
+        for (int position = 0; position < count; position++) {
+            toId[position] = entries.get(position).getId();
+            renumbered |= toId[position] != position;
+        }
+        // Entries read into an empty table get their positions as ids, so the postings are used as read
+        int[] renumber = renumbered ? toId : null;
+        EntryIndex index = new EntryIndex();
+        index.favoriteIds = EntryBitmap.read(in).map(renumber);
+        String[] categoryAt = new String[count];
+        for (String category : EntryTable.readStrings(in)) {
+            EntryBitmap positions = EntryBitmap.read(in);
+            positions.forEach(position -> categoryAt[position] = category);
+            index.byCategory.put(category, positions.map(renumber));
+        }
+        LocalDate[] dateAt = new LocalDate[count];
+        int dayCount = in.getInt();
+        for (int i = 0; i < dayCount; i++) {
+            LocalDate date = LocalDate.ofEpochDay(in.getInt());
+            EntryBitmap positions = EntryBitmap.read(in);
+            positions.forEach(position -> dateAt[position] = date);
+            index.byDate.put(date, positions.map(renumber));
+        }
+        for (int position = 0; position < count; position++) {
+            if (dateAt[position] == null) {
+                throw new IllegalStateException("Entry missing from the date postings");
+            }
+            int id = toId[position];
+            index.allIds.add(id);
+            index.setIndexed(id, new IndexedFields(entries.get(position), categoryAt[position], dateAt[position]));
+        }
+        index.tags.read(in, renumber);
+        index.stats.read(in, toId);
+        return index;
+    }
+    
+    private NavigableMap<LocalDate, EntryBitmap> dateRange(LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            return Collections.emptyNavigableMap();
+        }
+        if (from != null && to != null) {
+            return byDate.subMap(from, true, to, true);
+        } else if (from != null) {
+            return byDate.tailMap(from, true);
+        } else if (to != null) {
+            return byDate.headMap(to, true);
+        }
+        return byDate;
+    }
+    
+    private IndexedFields indexed(int id) {
+        return id < indexed.length ? indexed[id] : null;
+    }
+    
+    private void setIndexed(int id, IndexedFields fields) {
+        if (id >= indexed.length) {
+            indexed = Arrays.copyOf(indexed, Math.max(id + 1, indexed.length * 2));
+        }
+        if (indexed[id] == null && fields != null) {
+            indexedCount++;
+        } else if (indexed[id] != null && fields == null) {
+            indexedCount--;
+        }
+        indexed[id] = fields;
+    }
+    
+    private static <K> void removePosting(Map<K, EntryBitmap> postings, K key, int id) {
+        EntryBitmap bitmap = postings.get(key);
+        if (bitmap != null) {
+            bitmap.remove(id);
+            if (bitmap.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.diary;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Measures heap and off-heap bytes per entry for the column layout of
+ * {@link DiaryEntry} against the one-object-per-field layout it replaced.
+ *
+ * Usage: {@code java com.diary.EntryMemoryBenchmark [entries] [contentChars]}
+ * (defaults 200000 and 600). Field values are built the way parsing a file
+ * builds them, one fresh string per field per entry, so duplicated category
+ * and time strings cost what they would in a loaded diary. Give the JVM
+ * enough heap for the old layout (about 1.5 KB per entry at the defaults).
+ */
+public class EntryMemoryBenchmark {
+    private static final String[] CATEGORIES = {"Personal", "Work", "Health", "Travel", "Ideas"};
+    private static final String[] WORDS = {"today", "walked", "the", "river", "and", "thought", "about", "work",
+        "#ideas", "coffee", "with", "friends", "tired", "but", "happy", "plans", "for", "tomorrow", "#travel"};
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("h:mm:ss a");
+    
+    /** The fields DiaryEntry held as objects before moving into EntryTable. */
+    private static class ObjectEntry {
+        int id;
+        LocalDate date;
+        String time;
+        String title;
+        String content;
+        String category;
+        boolean favorite;
+        Set<String> tags;
+        String fileName;
+        LocalDateTime created;
+        LocalDateTime modified;
+    }
+    
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int contentChars = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+        System.out.printf("%,d entries of about %d characters%n%n", entries, contentChars);
+        System.out.printf("%-10s %16s %20s%n", "", "heap B/entry", "off-heap B/entry");
+        
+        long before = usedHeap();
+        List<ObjectEntry> objects = new ArrayList<>(entries);
+        Random random = new Random(42);
+        for (int i = 0; i < entries; i++) {
+            objects.add(objectEntry(i, random, contentChars));
+        }
+        long objectHeap = usedHeap() - before;
+        Reference.reachabilityFence(objects);
+        System.out.printf("%-10s %,16d %,20d%n", "objects", objectHeap / entries, 0);
+        objects = null;
+        
+        before = usedHeap();
+        long offHeapBefore = DiaryEntry.contentBytesOffHeap();
+        List<DiaryEntry> columns = new ArrayList<>(entries);
+        random = new Random(42);
+        for (int i = 0; i < entries; i++) {
+            columns.add(columnEntry(i, random, contentChars));
+        }
+        long columnHeap = usedHeap() - before;
+        long columnOffHeap = DiaryEntry.contentBytesOffHeap() - offHeapBefore;
+        Reference.reachabilityFence(columns);
+        System.out.printf("%-10s %,16d %,20d%n", "columns", columnHeap / entries, columnOffHeap / entries);
+        System.out.printf("%nHeap per entry down %.0f%%; total per entry down %.0f%%%n",
+            100 - columnHeap * 100.0 / objectHeap, 100 - (columnHeap + columnOffHeap) * 100.0 / objectHeap);
+    }
+    
+    private static ObjectEntry objectEntry(int i, Random random, int contentChars) {
+        Fields fields = new Fields(i, random, contentChars);
+        ObjectEntry entry = new ObjectEntry();
+        entry.id = i;
+        entry.date = fields.created.toLocalDate();
+        entry.time = fields.time;
+        entry.title = fields.title;
+        entry.content = fields.content;
+        entry.category = fields.category;
+        entry.favorite = fields.favorite;
+        entry.tags = TagIndex.extractTags(fields.title + "\n" + fields.content);
+        entry.fileName = fields.fileName;
+        entry.created = fields.created;
+        entry.modified = fields.created.plusMinutes(5);
+        return entry;
+    }
+    
+    private static DiaryEntry columnEntry(int i, Random random, int contentChars) {
+        Fields fields = new Fields(i, random, contentChars);
+        DiaryEntry entry = new DiaryEntry(fields.created.toLocalDate(), fields.time, fields.title, fields.content,
+            fields.category, fields.favorite);
+        entry.setTags(TagIndex.extractTags(fields.title + "\n" + fields.content));
+        entry.setFileName(fields.fileName);
+        entry.setCreated(fields.created);
+        entry.setModified(fields.created.plusMinutes(5));
+        return entry;
+    }
+    
+    /** One entry's values, as fresh strings the way a parser produces them. */
+    private static class Fields {
+        final LocalDateTime created;
+        final String time;
+        final String title;
+        final String content;
+        final String category;
+        final boolean favorite;
+        final String fileName;
+        
+        Fields(int i, Random random, int contentChars) {
+            created = LocalDateTime.of(2020, 1, 1, 7, 0).plusMinutes(i * 97L + random.nextInt(60))
+                .withNano(random.nextInt(1_000_000) * 1000);
+            time = new String(created.format(TIME_FORMAT));
+            title = "Entry " + i + " " + WORDS[random.nextInt(WORDS.length)];
+            StringBuilder text = new StringBuilder(contentChars + 16);
+            while (text.length() < contentChars) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(12) == 0 ? ".\n" : " ");
+            }
+            content = text.toString();
+            category = new String(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            favorite = random.nextInt(5) == 0;
+            fileName = created.format(DateTimeFormatter.ofPattern("yyyy-MM-dd_hh-mma")) + "_" + title.replace(' ', '_') + ".txt";
+        }
+    }
+    
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // Several rounds: one GC can leave garbage that the next one collects
+        for (int round = 0; round < 5; round++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
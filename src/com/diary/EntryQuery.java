@@ -0,0 +1,140 @@
+package com.diary;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parsed form of the combined search syntax shared by both front ends, e.g.
+ * <pre>category:Work tag:ideas after:2025-01-01 fav:true "release notes"</pre>
+ *
+ * Supported keys are {@code category:} (repeat to match any of several),
+ * {@code tag:} or {@code #tag} (all must match), {@code after:}, {@code before:}
+ * and {@code on:} (inclusive ISO dates) and {@code fav:} ({@code true},
+ * {@code false}, {@code yes} or {@code no}). Everything else is free text;
+ * quoted phrases are matched as a whole.
+ */
+public class EntryQuery {
+    private final List<String> categories = new ArrayList<>();
+    private final List<String> tags = new ArrayList<>();
+    private final List<String> terms = new ArrayList<>();
+    private LocalDate after;
+    private LocalDate before;
+    private Boolean favorite;
+    
+    public static EntryQuery parse(String text) {
+        EntryQuery query = new EntryQuery();
+        for (String token : tokenize(text == null ? "" : text)) {
+            query.addToken(token);
+        }
+        return query;
+    }
+    
+    private void addToken(String token) {
+        if (token.startsWith("\"")) {
+            String phrase = token.substring(1).trim();
+            if (!phrase.isEmpty()) {
+                terms.add(phrase.toLowerCase(Locale.ROOT));
+            }
+            return;
+        }
+        if (token.length() > 1 && token.startsWith("#")) {
+            tags.add(token.substring(1).toLowerCase(Locale.ROOT));
+            return;
+        }
+        int colon = token.indexOf(':');
+        if (colon > 0 && colon < token.length() - 1) {
+            String key = token.substring(0, colon).toLowerCase(Locale.ROOT);
+            String value = token.substring(colon + 1);
+            switch (key) {
+                case "category":
+                case "cat":
+                    categories.add(value);
+                    return;
+                case "tag":
+                    tags.add(value.startsWith("#") ? value.substring(1).toLowerCase(Locale.ROOT) : value.toLowerCase(Locale.ROOT));
+                    return;
+                case "after":
+                    after = parseDate(key, value);
+                    return;
+                case "before":
+                    before = parseDate(key, value);
+                    return;
+                case "on":
+                    after = parseDate(key, value);
+                    before = after;
+                    return;
+                case "fav":
+                case "favorite":
+                    favorite = parseFlag(key, value);
+                    return;
+                default:
+                    break;
+            }
+        }
+        terms.add(token.toLowerCase(Locale.ROOT));
+    }
+    
+    private static LocalDate parseDate(String key, String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date for " + key + ": " + value + " (expected yyyy-MM-dd)");
+        }
+    }
+    
+    private static boolean parseFlag(String key, String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "true":
+            case "yes":
+                return true;
+            case "false":
+            case "no":
+                return false;
+            default:
+                throw new IllegalArgumentException("Invalid value for " + key + ": " + value + " (expected true or false)");
+        }
+    }
+    
+    /** Splits on whitespace, keeping quoted phrases together (returned with a leading quote). */
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = text.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = text.length();
+                }
+                tokens.add("\"" + text.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+    
+    public List<String> getCategories() { return Collections.unmodifiableList(categories); }
+    public List<String> getTags() { return Collections.unmodifiableList(tags); }
+    public List<String> getTerms() { return Collections.unmodifiableList(terms); }
+    public LocalDate getAfter() { return after; }
+    public LocalDate getBefore() { return before; }
+    public Boolean getFavorite() { return favorite; }
+    
+    public boolean isEmpty() {
+        return categories.isEmpty() && tags.isEmpty() && terms.isEmpty()
+            && after == null && before == null && favorite == null;
+    }
+}
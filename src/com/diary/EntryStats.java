@@ -0,0 +1,336 @@
+package com.diary;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Running totals over the GUI's entries: entry and word counts per day,
+ * entries per category, favorites, and writing streaks.
+ *
+ * Kept in step by {@link EntryIndex}, which passes every update and removal
+ * through, so each change only adjusts the totals it touches. Streaks are
+ * stored as runs of consecutive days that have at least one entry; a day
+ * gaining its first entry extends or joins its neighbouring runs and a day
+ * losing its last one splits its run, so neither the current nor the longest
+ * streak ever needs a pass over all entries.
+ *
+ * {@link #write} stores the day totals and what each entry counted, so
+ * {@link #read} puts the totals back without counting any entry again.
+ */
+class EntryStats {
+    private Counted[] counted = new Counted[256]; // By entry id, which the entry table keeps dense
+    private int countedEntries;
+    private final TreeMap<LocalDate, DayTotals> days = new TreeMap<>();
+    private final Map<String, Integer> categories = new HashMap<>();
+    private final TreeMap<LocalDate, LocalDate> runs = new TreeMap<>(); // first day -> last day
+    private final TreeMap<Integer, Integer> runLengths = new TreeMap<>(); // length -> number of runs
+    private int favorites;
+    private long words;
+    
+    /** What an entry contributed when last counted, so an edit can take exactly that back out. */
+    private static class Counted {
+        final LocalDate date;
+        final String category;
+        final int words;
+        final boolean favorite;
+        
+        Counted(LocalDate date, String category, int words, boolean favorite) {
+            this.date = date;
+            this.category = category;
+            this.words = words;
+            this.favorite = favorite;
+        }
+    }
+    
+    private static class DayTotals {
+        int entries;
+        long words;
+    }
+    
+    public void update(DiaryEntry entry) {
+        Counted previous = counted(entry.getId());
+        Counted current = new Counted(entry.getDate(), entry.getCategory(),
+            countWords(entry.getTitle()) + entry.getContentWordCount(), entry.isFavorite());
+        if (previous != null) {
+            subtract(previous);
+        }
+        add(current);
+        setCounted(entry.getId(), current);
+    }
+    
+    public void remove(DiaryEntry entry) {
+        Counted previous = counted(entry.getId());
+        if (previous != null) {
+            subtract(previous);
+            setCounted(entry.getId(), null);
+        }
+    }
+    
+    public int totalEntries() {
+        return countedEntries;
+    }
+    
+    public long totalWords() {
+        return words;
+    }
+    
+    public int favoriteCount() {
+        return favorites;
+    }
+    
+    /** Days with at least one entry. */
+    public int activeDays() {
+        return days.size();
+    }
+    
+    public double averageWordsPerDay() {
+        return days.isEmpty() ? 0 : (double) words / days.size();
+    }
+    
+    public long wordsOn(LocalDate date) {
+        DayTotals totals = days.get(date);
+        return totals == null ? 0 : totals.words;
+    }
+    
+    public int entriesOn(LocalDate date) {
+        DayTotals totals = days.get(date);
+        return totals == null ? 0 : totals.entries;
+    }
+    
+    public Map<String, Integer> categoryCounts() {
+        return Collections.unmodifiableMap(categories);
+    }
+    
+    /** Most used category, ties going to the alphabetically first; null with no entries. */
+    public String favoriteCategory() {
+        String best = null;
+        int bestCount = 0;
+        for (Map.Entry<String, Integer> category : categories.entrySet()) {
+            int count = category.getValue();
+            if (count > bestCount || (count == bestCount && category.getKey().compareTo(best) < 0)) {
+                best = category.getKey();
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Consecutive days with entries up to {@code today}. A streak that ended
+     * yesterday still counts: today's entry may just not be written yet.
+     */
+    public int currentStreak(LocalDate today) {
+        Map.Entry<LocalDate, LocalDate> run = runs.floorEntry(today);
+        if (run == null || run.getValue().isBefore(today.minusDays(1))) {
+            return 0;
+        }
+        LocalDate last = run.getValue().isAfter(today) ? today : run.getValue();
+        return length(run.getKey(), last);
+    }
+    
+    public int longestStreak() {
+        return runLengths.isEmpty() ? 0 : runLengths.lastKey();
+    }
+    
+    /**
+     * Writes the day totals and what each entry counted for {@link #read},
+     * each entry given as {@code toPosition[id]}; every counted entry needs a
+     * position below {@code count}.
+     */
+    void write(DataOutputStream out, int[] toPosition, int count) throws IOException {
+        out.writeInt(days.size());
+        for (Map.Entry<LocalDate, DayTotals> day : days.entrySet()) {
+            out.writeInt((int) day.getKey().toEpochDay());
+            out.writeInt(day.getValue().entries);
+            out.writeLong(day.getValue().words);
+        }
+        List<String> names = new ArrayList<>(categories.keySet());
+        Map<String, Integer> codes = new HashMap<>();
+        for (String name : names) {
+            codes.put(name, codes.size());
+        }
+        EntryTable.writeStrings(out, names);
+        Counted[] byPosition = new Counted[count];
+        for (int id = 0; id < counted.length; id++) {
+            if (counted[id] != null) {
+                byPosition[toPosition[id]] = counted[id];
+            }
+        }
+        out.writeInt(count);
+        for (Counted entry : byPosition) {
+            out.writeInt((int) entry.date.toEpochDay());
+            out.writeInt(codes.get(entry.category));
+            out.writeInt(entry.words);
+            out.writeBoolean(entry.favorite);
+        }
+    }
+    
+    /**
+     * Fills empty totals with what {@link #write} wrote, each position given
+     * as {@code toId[position]}. Streaks are found again from the days, which
+     * come back in order.
+     */
+    void read(ByteBuffer in, int[] toId) {
+        int dayCount = in.getInt();
+        int[] epochDays = new int[dayCount];
+        LocalDate[] dates = new LocalDate[dayCount];
+        for (int i = 0; i < dayCount; i++) {
+            epochDays[i] = in.getInt();
+            dates[i] = LocalDate.ofEpochDay(epochDays[i]);
+            DayTotals totals = new DayTotals();
+            totals.entries = in.getInt();
+            totals.words = in.getLong();
+            days.put(dates[i], totals);
+        }
+        LocalDate first = null;
+        LocalDate last = null;
+        for (LocalDate day : days.keySet()) {
+            if (last == null || !day.equals(last.plusDays(1))) {
+                if (first != null) {
+                    addRun(first, last);
+                }
+                first = day;
+            }
+            last = day;
+        }
+        if (first != null) {
+            addRun(first, last);
+        }
+        
+        List<String> names = EntryTable.readStrings(in);
+        int count = in.getInt();
+        if (count != toId.length) {
+            throw new IllegalStateException("Stats for " + count + " entries, expected " + toId.length);
+        }
+        int[] perCategory = new int[names.size()];
+        for (int position = 0; position < count; position++) {
+            // Days were written in order, so each entry's is found by a search
+            int day = Arrays.binarySearch(epochDays, in.getInt());
+            if (day < 0) {
+                throw new IllegalStateException("Entry counted on a day with no totals");
+            }
+            int category = in.getInt();
+            Counted entry = new Counted(dates[day], names.get(category), in.getInt(), in.get() != 0);
+            setCounted(toId[position], entry);
+            perCategory[category]++;
+            words += entry.words;
+            if (entry.favorite) {
+                favorites++;
+            }
+        }
+        for (int category = 0; category < perCategory.length; category++) {
+            if (perCategory[category] > 0) {
+                categories.put(names.get(category), perCategory[category]);
+            }
+        }
+    }
+    
+    private Counted counted(int id) {
+        return id < counted.length ? counted[id] : null;
+    }
+    
+    private void setCounted(int id, Counted entry) {
+        if (id >= counted.length) {
+            counted = Arrays.copyOf(counted, Math.max(id + 1, counted.length * 2));
+        }
+        if (counted[id] == null && entry != null) {
+            countedEntries++;
+        } else if (counted[id] != null && entry == null) {
+            countedEntries--;
+        }
+        counted[id] = entry;
+    }
+    
+    private void add(Counted entry) {
+        DayTotals totals = days.get(entry.date);
+        if (totals == null) {
+            totals = new DayTotals();
+            days.put(entry.date, totals);
+            addDayToRuns(entry.date);
+        }
+        totals.entries++;
+        totals.words += entry.words;
+        categories.merge(entry.category, 1, Integer::sum);
+        words += entry.words;
+        if (entry.favorite) {
+            favorites++;
+        }
+    }
+    
+    private void subtract(Counted entry) {
+        DayTotals totals = days.get(entry.date);
+        totals.words -= entry.words;
+        if (--totals.entries == 0) {
+            days.remove(entry.date);
+            removeDayFromRuns(entry.date);
+        }
+        categories.computeIfPresent(entry.category, (category, count) -> count == 1 ? null : count - 1);
+        words -= entry.words;
+        if (entry.favorite) {
+            favorites--;
+        }
+    }
+    
+    private void addDayToRuns(LocalDate day) {
+        LocalDate first = day;
+        LocalDate last = day;
+        Map.Entry<LocalDate, LocalDate> before = runs.floorEntry(day.minusDays(1));
+        if (before != null && before.getValue().equals(day.minusDays(1))) {
+            first = before.getKey();
+            removeRun(before.getKey(), before.getValue());
+        }
+        LocalDate after = day.plusDays(1);
+        if (runs.containsKey(after)) {
+            last = runs.get(after);
+            removeRun(after, last);
+        }
+        addRun(first, last);
+    }
+    
+    private void removeDayFromRuns(LocalDate day) {
+        Map.Entry<LocalDate, LocalDate> run = runs.floorEntry(day);
+        LocalDate first = run.getKey();
+        LocalDate last = run.getValue();
+        removeRun(first, last);
+        if (first.isBefore(day)) {
+            addRun(first, day.minusDays(1));
+        }
+        if (last.isAfter(day)) {
+            addRun(day.plusDays(1), last);
+        }
+    }
+    
+    private void addRun(LocalDate first, LocalDate last) {
+        runs.put(first, last);
+        runLengths.merge(length(first, last), 1, Integer::sum);
+    }
+    
+    private void removeRun(LocalDate first, LocalDate last) {
+        runs.remove(first);
+        runLengths.computeIfPresent(length(first, last), (length, count) -> count == 1 ? null : count - 1);
+    }
+    
+    private static int length(LocalDate first, LocalDate last) {
+        return (int) ChronoUnit.DAYS.between(first, last) + 1;
+    }
+    
+    static int countWords(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int count = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean visible = !Character.isWhitespace(text.charAt(i));
+            if (visible && !inWord) {
+                count++;
+            }
+            inWord = visible;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,136 @@
+package com.diary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage engine for entries, keyed by file name. Both front ends keep
+ * their entries in it, on whichever engine the {@code diary.storage}
+ * property names: DiaryApp its formatted entries via {@link DiaryIOService},
+ * and DiaryManager its entry text through a decorator that adds the CLI's
+ * compression and encryption. Contents are bytes the engine never looks
+ * into; {@link #load} and {@link #save} put the shared {@link DiaryEntry}
+ * model on top, and a decorator may override them for its own format.
+ *
+ * Engines, by the name {@link #open} takes:
+ * <pre>
+ * files    FileEntryStorage, one file per entry (the format both apps have always used)
+ * log      LogEntryStorage, writes batched into one append-only log with an in-memory index
+ * memory   MemoryEntryStorage, nothing kept after close
+ * </pre>
+ * Implementations are thread-safe. A write is visible to reads as soon as it
+ * returns but an engine may batch it; it is on disk once {@link #flush} or
+ * {@link #close} returns.
+ *
+ * Entries can also be read and written as streams. The files engine streams
+ * them to and from disk, so a large entry is never held whole; the log and
+ * memory engines keep an entry in one piece and collect the stream first.
+ */
+public interface EntryStorage extends Closeable {
+    
+    /** Bytes to store, written to the stream the engine hands over; see {@link #write(String, Content)}. */
+    @FunctionalInterface
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+    
+    /** Every stored name, sorted. */
+    List<String> names() throws IOException;
+    
+    boolean contains(String name) throws IOException;
+    
+    /** The stored bytes, or null if there is no entry by that name. */
+    byte[] read(String name) throws IOException;
+    
+    /** Stores {@code data} under {@code name}, replacing any entry already there. */
+    void write(String name, byte[] data) throws IOException;
+    
+    /**
+     * Stores {@code data} under {@code name} unless an entry by that name
+     * exists; false, with nothing stored, if one does. The check and the store
+     * are one step, so of two callers creating the same name exactly one wins.
+     */
+    boolean create(String name, byte[] data) throws IOException;
+    
+    /** Opens the stored bytes, or returns null if there is no entry by that name. */
+    default InputStream openRead(String name) throws IOException {
+        byte[] data = read(name);
+        return data == null ? null : new ByteArrayInputStream(data);
+    }
+    
+    /**
+     * Stores what {@code content} writes under {@code name}, replacing any
+     * entry already there. The content may close the stream once it is done.
+     */
+    default void write(String name, Content content) throws IOException {
+        write(name, collect(content));
+    }
+    
+    /** {@link #create(String, byte[])} for streamed content, which is written only if the name is free. */
+    default boolean create(String name, Content content) throws IOException {
+        return !contains(name) && create(name, collect(content));
+    }
+    
+    /**
+     * {@link #create(String, byte[])} for each entry in turn; returns the
+     * names that were taken, with nothing stored under them. An engine that
+     * syncs each entry as it is written can sync a batch together, so an
+     * import should store through here.
+     */
+    default List<String> createAll(Map<String, byte[]> entries) throws IOException {
+        List<String> taken = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            if (!create(entry.getKey(), entry.getValue())) {
+                taken.add(entry.getKey());
+            }
+        }
+        return taken;
+    }
+    
+    /** Removes the entry; false if there was none. */
+    boolean delete(String name) throws IOException;
+    
+    /** Makes every write so far durable. */
+    void flush() throws IOException;
+    
+    @Override
+    default void close() throws IOException {
+        flush();
+    }
+    
+    /** The entry stored under {@code name}, parsed and with its tags, or null. */
+    default DiaryEntry load(String name) throws IOException {
+        byte[] data = read(name);
+        return data == null ? null : EntryFiles.load(name, new String(data, StandardCharsets.UTF_8));
+    }
+    
+    /** Stores the entry under its file name, which must be set. */
+    default void save(DiaryEntry entry) throws IOException {
+        write(entry.getFileName(), EntryFiles.format(entry).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static byte[] collect(Content content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        content.writeTo(out);
+        return out.toByteArray();
+    }
+    
+    /** Opens the engine called {@code engine} (see above) over the data directory {@code dir}. */
+    static EntryStorage open(String engine, Path dir) throws IOException {
+        switch (engine) {
+            case "files": return new FileEntryStorage(dir);
+            case "log": return new LogEntryStorage(dir.resolve(LogEntryStorage.FILE_NAME));
+            case "memory": return new MemoryEntryStorage();
+            default: throw new IllegalArgumentException("Unknown storage engine: " + engine);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.diary;
+
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The GUI's list of entries, safe to read from any thread while the FX
+ * thread changes it, so indexing, snapshot writes and other background work
+ * can walk the entries without copying them first or stopping the editor.
+ *
+ * {@link #size} and {@link #get} read under a {@link StampedLock} optimistic
+ * stamp and only take the read lock if a write overlapped them, so readers
+ * never contend with each other. Writes are serialized by the write lock.
+ *
+ * Iterators, streams and {@link #snapshot} see the list as it was when they
+ * started, whatever is added or removed meanwhile. A snapshot shares the
+ * backing array and costs nothing to take; the next write copies the array
+ * once before changing it, instead of every write copying it as
+ * {@link java.util.concurrent.CopyOnWriteArrayList} does. Only membership and
+ * order are captured: the entries are handles onto {@link EntryTable}, whose
+ * fields have their own lock and are read as they are now.
+ *
+ * Positional writes ({@code set}, {@code add(int, E)}, {@code remove(int)})
+ * aren't supported; the app adds, removes and sorts.
+ */
+class EntryStore extends AbstractList<DiaryEntry> implements RandomAccess {
+    private static final int INITIAL_CAPACITY = 16;
+    
+    private final StampedLock lock = new StampedLock();
+    private DiaryEntry[] elements = new DiaryEntry[INITIAL_CAPACITY];
+    private int size;
+    // Set when a snapshot may still be reading elements, so the next write copies it first
+    private volatile boolean shared;
+    
+    /** The entries as they are now, unaffected by later writes. */
+    List<DiaryEntry> snapshot() {
+        long stamp = lock.tryOptimisticRead();
+        DiaryEntry[] array = elements;
+        int count = size;
+        // Before validating: any writer that gets the lock after this sees it and copies
+        shared = true;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                array = elements;
+                count = size;
+                shared = true;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return new Snapshot(array, count);
+    }
+    
+    // ===== READS =====
+    
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int count = size;
+        if (lock.validate(stamp)) {
+            return count;
+        }
+        stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public DiaryEntry get(int index) {
+        long stamp = lock.tryOptimisticRead();
+        DiaryEntry[] array = elements;
+        int count = size;
+        // Bounds are checked against the array too, since a torn read may pair it with another size
+        DiaryEntry entry = index >= 0 && index < count && index < array.length ? array[index] : null;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                count = size;
+                entry = index >= 0 && index < count ? elements[index] : null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        Objects.checkIndex(index, count);
+        return entry;
+    }
+    
+    @Override
+    public Iterator<DiaryEntry> iterator() {
+        return snapshot().iterator();
+    }
+    
+    @Override
+    public ListIterator<DiaryEntry> listIterator(int index) {
+        return snapshot().listIterator(index);
+    }
+    
+    @Override
+    public Spliterator<DiaryEntry> spliterator() {
+        return snapshot().spliterator();
+    }
+    
+    @Override
+    public List<DiaryEntry> subList(int fromIndex, int toIndex) {
+        return snapshot().subList(fromIndex, toIndex);
+    }
+    
+    @Override
+    public void forEach(Consumer<? super DiaryEntry> action) {
+        snapshot().forEach(action);
+    }
+    
+    @Override
+    public Object[] toArray() {
+        return snapshot().toArray();
+    }
+    
+    @Override
+    public <T> T[] toArray(T[] target) {
+        return snapshot().toArray(target);
+    }
+    
+    // ===== WRITES =====
+    
+    @Override
+    public boolean add(DiaryEntry entry) {
+        long stamp = lock.writeLock();
+        try {
+            prepareWrite(size + 1);
+            elements[size++] = entry;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    @Override
+    public boolean addAll(Collection<? extends DiaryEntry> added) {
+        Object[] array = added.toArray();
+        if (array.length == 0) {
+            return false;
+        }
+        long stamp = lock.writeLock();
+        try {
+            prepareWrite(size + array.length);
+            System.arraycopy(array, 0, elements, size, array.length);
+            size += array.length;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    @Override
+    public boolean remove(Object entry) {
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < size; i++) {
+                if (Objects.equals(elements[i], entry)) {
+                    prepareWrite(size);
+                    System.arraycopy(elements, i + 1, elements, i, size - i - 1);
+                    elements[--size] = null;
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    @Override
+    public boolean removeIf(Predicate<? super DiaryEntry> filter) {
+        long stamp = lock.writeLock();
+        try {
+            prepareWrite(size);
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!filter.test(elements[i])) {
+                    elements[kept++] = elements[i];
+                }
+            }
+            boolean removed = kept < size;
+            Arrays.fill(elements, kept, size, null);
+            size = kept;
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    @Override
+    public void sort(Comparator<? super DiaryEntry> order) {
+        long stamp = lock.writeLock();
+        try {
+            prepareWrite(size);
+            Arrays.sort(elements, 0, size, order);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            // A fresh array rather than clearing one a snapshot may share
+            elements = new DiaryEntry[INITIAL_CAPACITY];
+            size = 0;
+            shared = false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /** Under the write lock: makes elements private to the store and able to hold {@code capacity}. */
+    private void prepareWrite(int capacity) {
+        if (shared || capacity > elements.length) {
+            int length = elements.length;
+            while (length < capacity) {
+                length *= 2;
+            }
+            elements = Arrays.copyOf(elements, length);
+            shared = false;
+        }
+    }
+    
+    /** A fixed view of the first {@code size} elements of an array no write will touch again. */
+    private static class Snapshot extends AbstractList<DiaryEntry> implements RandomAccess {
+        private final DiaryEntry[] elements;
+        private final int size;
+        
+        Snapshot(DiaryEntry[] elements, int size) {
+            this.elements = elements;
+            this.size = size;
+        }
+        
+        @Override
+        public DiaryEntry get(int index) {
+            return elements[Objects.checkIndex(index, size)];
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public Object[] toArray() {
+            return Arrays.copyOf(elements, size, Object[].class);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.diary;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stress test and read-throughput benchmark for {@link EntryStore} and the
+ * {@link EntryTable} under it: reader threads read random entries flat out
+ * while a writer edits, adds and removes entries at a steady rate, the way
+ * background work runs alongside someone typing.
+ *
+ * Usage: {@code java com.diary.EntryStoreBenchmark [entries] [seconds] [writesPerSecond]}
+ * (defaults 100000, 2 and 1000). Each reader count from 1 up to the number
+ * of cores runs twice: once as the store works, and once with every read and
+ * write taking one shared monitor, as the synchronized table did. Reads per
+ * second should grow with readers in the first case and stay flat in the
+ * second.
+ *
+ * Readers also walk a full snapshot every so often and check that it keeps
+ * its size and holds no nulls, and that every entry read is whole; any
+ * failure is counted and reported, and makes the exit code 1.
+ */
+public class EntryStoreBenchmark {
+    private static final String[] CATEGORIES = {"Personal", "Work", "Health", "Travel", "Ideas"};
+    private static final int READS_PER_SNAPSHOT_CHECK = 20_000;
+    
+    public static void main(String[] args) throws InterruptedException {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+        int writesPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        
+        EntryStore store = new EntryStore();
+        for (int i = 0; i < entries; i++) {
+            store.add(newEntry(i));
+        }
+        System.out.printf("%,d entries, %d cores, %,d writes/s, %.1f s per run%n%n",
+            entries, cores, writesPerSecond, seconds);
+        // Untimed, so the first reader count isn't measuring the JIT
+        run(store, entries, 1, seconds, writesPerSecond, null);
+        run(store, entries, 1, seconds, writesPerSecond, new Object());
+        System.out.printf("%-8s %18s %18s %10s%n", "readers", "optimistic reads/s", "one lock reads/s", "speedup");
+        
+        long failures = 0;
+        double singleOptimistic = 0;
+        for (int readers = 1; readers <= Math.max(cores, 2); readers *= 2) {
+            Run optimistic = run(store, entries, readers, seconds, writesPerSecond, null);
+            Run locked = run(store, entries, readers, seconds, writesPerSecond, new Object());
+            if (readers == 1) {
+                singleOptimistic = optimistic.readsPerSecond;
+            }
+            System.out.printf("%-8d %,18.0f %,18.0f %9.2fx%n", readers, optimistic.readsPerSecond,
+                locked.readsPerSecond, optimistic.readsPerSecond / singleOptimistic);
+            failures += optimistic.failures + locked.failures;
+        }
+        System.out.printf("%nConsistency failures: %d%n", failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+    
+    private static class Run {
+        final double readsPerSecond;
+        final long failures;
+        
+        Run(double readsPerSecond, long failures) {
+            this.readsPerSecond = readsPerSecond;
+            this.failures = failures;
+        }
+    }
+    
+    /**
+     * One timed run. With a {@code monitor}, every read and write holds it,
+     * which serializes them the way a single synchronized lock does.
+     */
+    private static Run run(EntryStore store, int entries, int readers, double seconds, int writesPerSecond,
+                           Object monitor) throws InterruptedException {
+        AtomicLong reads = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        long durationNanos = (long) (seconds * 1e9);
+        List<Thread> threads = new ArrayList<>();
+        
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                long sink = 0;
+                awaitQuietly(start);
+                long end = System.nanoTime() + durationNanos;
+                while (System.nanoTime() < end) {
+                    for (int i = 0; i < 256; i++) {
+                        // The writer keeps the size at entries or entries + 1
+                        int index = random.nextInt(entries);
+                        if (monitor == null) {
+                            sink += readEntry(store.get(index), failures);
+                        } else {
+                            synchronized (monitor) {
+                                sink += readEntry(store.get(index), failures);
+                            }
+                        }
+                    }
+                    count += 256;
+                    if (count % READS_PER_SNAPSHOT_CHECK < 256) {
+                        checkSnapshot(store, failures);
+                    }
+                }
+                reads.addAndGet(count + (sink == 42 ? 1 : 0));
+            }, "reader-" + r));
+        }
+        
+        threads.add(new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(writesPerSecond, 1);
+            awaitQuietly(start);
+            long end = System.nanoTime() + durationNanos;
+            long next = System.nanoTime();
+            for (long write = 0; System.nanoTime() < end; write++) {
+                if (monitor == null) {
+                    write(store, entries, random, write);
+                } else {
+                    synchronized (monitor) {
+                        write(store, entries, random, write);
+                    }
+                }
+                next += interval;
+                LockSupport.parkNanos(next - System.nanoTime());
+            }
+        }, "writer"));
+        
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return new Run(reads.get() / seconds, failures.get());
+    }
+    
+    /** Reads the fields the entry list shows; a torn or missing entry counts as a failure. */
+    private static long readEntry(DiaryEntry entry, AtomicLong failures) {
+        String title = entry == null ? null : entry.getTitle();
+        if (title == null || !title.startsWith("Entry ") || entry.getCategory() == null) {
+            failures.incrementAndGet();
+            return 0;
+        }
+        return entry.getCreated().getNano() + title.length() + entry.getContentWordCount()
+            + (entry.isFavorite() ? 1 : 0);
+    }
+    
+    private static void checkSnapshot(EntryStore store, AtomicLong failures) {
+        List<DiaryEntry> snapshot = store.snapshot();
+        int size = snapshot.size();
+        int seen = 0;
+        for (DiaryEntry entry : snapshot) {
+            if (entry == null) {
+                failures.incrementAndGet();
+            }
+            seen++;
+        }
+        if (seen != size || snapshot.size() != size) {
+            failures.incrementAndGet();
+        }
+    }
+    
+    /** Mostly edits of existing entries, with an entry added and the oldest one removed every tenth write. */
+    private static void write(EntryStore store, int entries, ThreadLocalRandom random, long write) {
+        if (write % 10 == 0) {
+            DiaryEntry added = newEntry(entries + (int) write);
+            store.add(added);
+            store.remove(store.get(0));
+        } else {
+            DiaryEntry entry = store.get(random.nextInt(entries));
+            entry.setTitle("Entry " + entry.getId() + " rev " + write);
+            entry.setContent("Edited text " + write + " with a few more words in it");
+            entry.setCategory(CATEGORIES[(int) (write % CATEGORIES.length)]);
+            entry.setFavorite(!entry.isFavorite());
+        }
+    }
+    
+    private static DiaryEntry newEntry(int i) {
+        LocalDateTime created = LocalDateTime.of(2020, 1, 1, 8, 0).plusMinutes(i * 37L);
+        DiaryEntry entry = new DiaryEntry(created.toLocalDate(), "8:00:00 AM", "Entry " + i,
+            "Some words written on day " + i + " about nothing much", CATEGORIES[i % CATEGORIES.length], i % 7 == 0);
+        entry.setCreated(created);
+        return entry;
+    }
+    
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
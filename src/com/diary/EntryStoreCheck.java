@@ -0,0 +1,220 @@
+package com.diary;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Checks that readers of an {@link EntryStore} only ever see whole versions
+ * of it while a writer changes it. The writer runs a fixed, seeded sequence
+ * of adds, removes, filters, sorts and clears; before each one it makes the
+ * same change to a plain {@link ArrayList} and publishes the fingerprint of
+ * the result (its size and an order-sensitive hash of the entry ids).
+ * Readers meanwhile take snapshots and iterate the store, and check that
+ * what they get holds no nulls, iterates exactly its size, has the
+ * fingerprint of a published version rather than a mix of two, and in the
+ * case of a snapshot still has it after later writes. {@link EntryStore#get}
+ * must return an entry or throw {@link IndexOutOfBoundsException}, never
+ * null. At the end the store must equal the writer's list.
+ *
+ * Usage: {@code java com.diary.EntryStoreCheck [writes] [readers] [seed]}
+ * (defaults 200000, 3 and 1). The same arguments run the same writes; how
+ * they interleave with the reads is up to the scheduler, so runs repeat the
+ * workload, not the timing. Prints the first few failures and exits with
+ * status 1 if there are any. {@link EntryStoreBenchmark} measures read
+ * throughput under a similar load; this measures nothing.
+ */
+public class EntryStoreCheck {
+    private static final int POOL_SIZE = 4096;
+    private static final int TARGET_SIZE = 2000;
+    private static final int MAX_REPORTED = 10;
+    
+    private static volatile boolean writing;
+    
+    public static void main(String[] args) throws InterruptedException {
+        int writes = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        
+        List<DiaryEntry> spare = new ArrayList<>(POOL_SIZE);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            spare.add(new DiaryEntry(LocalDate.of(2024, 1, 1).plusDays(i), "8:00:00 AM", "Entry " + i, "",
+                "Personal", false));
+        }
+        List<DiaryEntry> all = new ArrayList<>(spare);
+        EntryStore store = new EntryStore();
+        List<DiaryEntry> expected = new ArrayList<>();
+        Set<Long> published = ConcurrentHashMap.newKeySet();
+        published.add(fingerprint(expected));
+        AtomicLong failures = new AtomicLong();
+        AtomicLong checked = new AtomicLong();
+        
+        writing = true;
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            Random random = new Random(seed * 31 + r);
+            threads.add(new Thread(() -> read(store, published, failures, checked, random), "reader-" + r));
+        }
+        threads.forEach(Thread::start);
+        Random random = new Random(seed);
+        for (int write = 0; write < writes; write++) {
+            write(store, expected, spare, published, random);
+            if (write % 64 == 0) {
+                // Lets the readers in between writes even on a single core
+                Thread.yield();
+            }
+        }
+        writing = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        if (!new ArrayList<>(store).equals(expected)) {
+            report(failures, "store ended with " + store.size() + " entries, expected " + expected.size());
+        }
+        System.out.printf("%,d writes, %,d versions, %d readers, %,d reads checked%n", writes, published.size(),
+            readers, checked.get());
+        all.forEach(DiaryEntry::release);
+        System.out.println(failures.get() == 0 ? "OK" : "FAILED: " + failures.get() + " inconsistent reads");
+        System.exit(failures.get() == 0 ? 0 : 1);
+    }
+    
+    /**
+     * One write: publishes the fingerprint of the list it will leave, then
+     * makes it. Adds and removes keep the size around {@link #TARGET_SIZE}.
+     */
+    private static void write(EntryStore store, List<DiaryEntry> expected, List<DiaryEntry> spare,
+                              Set<Long> published, Random random) {
+        int kind = random.nextInt(1000);
+        if (kind < 2) {
+            spare.addAll(expected);
+            expected.clear();
+            published.add(fingerprint(expected));
+            store.clear();
+        } else if (kind < 30) {
+            Comparator<DiaryEntry> order = order(random.nextInt(3), 1 + random.nextInt(996));
+            expected.sort(order);
+            published.add(fingerprint(expected));
+            store.sort(order);
+        } else if (kind < 60) {
+            int modulus = 5 + random.nextInt(46);
+            int remainder = random.nextInt(modulus);
+            Predicate<DiaryEntry> filter = entry -> entry.getId() % modulus == remainder;
+            for (DiaryEntry entry : expected) {
+                if (filter.test(entry)) {
+                    spare.add(entry);
+                }
+            }
+            expected.removeIf(filter);
+            published.add(fingerprint(expected));
+            store.removeIf(filter);
+        } else if (kind < 140) {
+            List<DiaryEntry> added = new ArrayList<>();
+            for (int count = 1 + random.nextInt(20); count > 0 && !spare.isEmpty(); count--) {
+                added.add(takeSpare(spare, random));
+            }
+            expected.addAll(added);
+            published.add(fingerprint(expected));
+            store.addAll(added);
+        } else if ((random.nextInt(2 * TARGET_SIZE) >= expected.size() || expected.isEmpty()) && !spare.isEmpty()) {
+            DiaryEntry entry = takeSpare(spare, random);
+            expected.add(entry);
+            published.add(fingerprint(expected));
+            store.add(entry);
+        } else if (!expected.isEmpty()) {
+            DiaryEntry entry = expected.get(random.nextInt(expected.size()));
+            expected.remove(entry);
+            spare.add(entry);
+            published.add(fingerprint(expected));
+            store.remove(entry);
+        }
+    }
+    
+    /** Reads the store every way it can be read until the writer is done. */
+    private static void read(EntryStore store, Set<Long> published, AtomicLong failures, AtomicLong checked,
+                             Random random) {
+        while (writing) {
+            List<DiaryEntry> snapshot = store.snapshot();
+            long fingerprint = check(snapshot, published, failures, "snapshot");
+            
+            List<DiaryEntry> iterated = new ArrayList<>();
+            for (DiaryEntry entry : store) {
+                iterated.add(entry);
+            }
+            check(iterated, published, failures, "iterator");
+            
+            int size = store.size();
+            for (int i = 0; i < 16 && size > 0; i++) {
+                int index = random.nextInt(size);
+                try {
+                    if (store.get(index) == null) {
+                        report(failures, "get(" + index + ") returned null");
+                    }
+                } catch (IndexOutOfBoundsException e) {
+                    // The store shrank since size(), which is allowed
+                }
+            }
+            
+            Thread.yield();
+            if (fingerprint(snapshot) != fingerprint) {
+                report(failures, "snapshot of " + snapshot.size() + " entries changed after later writes");
+            }
+            checked.incrementAndGet();
+        }
+    }
+    
+    /** Checks a list read from the store and returns its fingerprint. */
+    private static long check(List<DiaryEntry> entries, Set<Long> published, AtomicLong failures, String what) {
+        int size = entries.size();
+        int seen = 0;
+        for (DiaryEntry entry : entries) {
+            if (entry == null) {
+                report(failures, what + " holds a null at " + seen);
+            }
+            seen++;
+        }
+        if (seen != size) {
+            report(failures, what + " of size " + size + " iterated " + seen + " entries");
+        }
+        long fingerprint = fingerprint(entries);
+        if (!published.contains(fingerprint)) {
+            report(failures, what + " of " + size + " entries matches no version the writer made");
+        }
+        return fingerprint;
+    }
+    
+    private static long fingerprint(List<DiaryEntry> entries) {
+        long hash = entries.size();
+        for (DiaryEntry entry : entries) {
+            hash = hash * 1_000_003 + (entry == null ? -1 : entry.getId());
+        }
+        return hash;
+    }
+    
+    /** Ascending or descending id, or a shuffle that still sorts the same way every time. */
+    private static Comparator<DiaryEntry> order(int kind, int multiplier) {
+        Comparator<DiaryEntry> byId = Comparator.comparingInt(DiaryEntry::getId);
+        if (kind == 0) {
+            return byId;
+        } else if (kind == 1) {
+            return byId.reversed();
+        }
+        return Comparator.<DiaryEntry>comparingInt(entry -> entry.getId() * multiplier % 997).thenComparing(byId);
+    }
+    
+    private static DiaryEntry takeSpare(List<DiaryEntry> spare, Random random) {
+        int index = random.nextInt(spare.size());
+        DiaryEntry entry = spare.get(index);
+        spare.set(index, spare.get(spare.size() - 1));
+        spare.remove(spare.size() - 1);
+        return entry;
+    }
+    
+    private static void report(AtomicLong failures, String message) {
+        if (failures.incrementAndGet() <= MAX_REPORTED) {
+            System.out.println("FAIL " + message);
+        }
+    }
+}
@@ -0,0 +1,726 @@
+package com.diary;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Column store for every {@link DiaryEntry}: one array per field, indexed by
+ * entry id, so an entry costs a handful of primitives instead of a graph of
+ * objects.
+ *
+ * Dates are epoch days; created/modified are epoch seconds plus nanos. The
+ * display time is kept as seconds of the day plus which of the app's time
+ * formats it was written in, so it formats back to the exact same text;
+ * anything else is kept verbatim on the side. Categories are a byte code
+ * into a shared name list, and tag names are shared between entries.
+ *
+ * Bodies live off the heap in a {@link TextArena}, as Latin-1 when every
+ * character fits and UTF-16 otherwise (the same choice {@code String} itself
+ * makes), and only become a {@code String} when read. Word counts are taken
+ * as bodies are stored, so statistics never need to decode them.
+ *
+ * A body can also be left in the entry's file: rows read back from the
+ * startup snapshot keep their word counts but not their text, which is
+ * read through the {@link ContentLoader} the first time it is asked for
+ * and kept from then on.
+ *
+ * A removed row gives its body back to the arena and its id to a free list
+ * that the next add takes from, so a long session with many deletes, reloads
+ * and discarded drafts does not keep growing. A handle must not be used once
+ * its row is removed, since the id may already belong to another entry.
+ *
+ * Column arrays only ever grow, so any id that has been handed out indexes
+ * every array there has been. That lets reads go without a lock: they read under a {@link StampedLock}
+ * optimistic stamp and only retry under the read lock if a write overlapped
+ * them, so readers on any number of threads never contend with each other.
+ * Writes are serialized by the write lock. Entries are parsed on I/O threads,
+ * edited on the FX thread and read from anywhere. {@link #writeRows} and
+ * {@link #readRows} copy rows in and out, bodies left behind, which is what
+ * the startup snapshot and its journal are made of.
+ */
+class EntryTable {
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final byte FAVORITE = 1;
+    private static final byte UTF16 = 2;
+    private static final byte REMOVED = 4;
+    // Time styles: 0 verbatim on the side (or null), 1 empty, then one per format
+    private static final byte VERBATIM_TIME = 0;
+    private static final byte EMPTY_TIME = 1;
+    private static final DateTimeFormatter[] TIME_FORMATS = {
+        DateTimeFormatter.ofPattern("h:mm:ss a"),
+        DateTimeFormatter.ofPattern("hh:mm a"),
+        DateTimeFormatter.ofPattern("HH:mm:ss"),
+        DateTimeFormatter.ofPattern("h:mm a"),
+        DateTimeFormatter.ofPattern("HH:mm")
+    };
+    private static final int MAX_CATEGORIES = 255; // code 0 is null
+    private static final String[] NO_TAGS = {};
+    // Body handles below 0: no body, an empty one, or one still in the entry's file
+    private static final long NO_BODY = -1;
+    private static final long EMPTY_BODY = -2;
+    private static final long NOT_LOADED = -3;
+    
+    /** Reads the body of the entry in {@code fileName}, for rows that left it there. */
+    interface ContentLoader {
+        String load(String fileName) throws IOException;
+    }
+    
+    private int size;
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int[] epochDay = new int[INITIAL_CAPACITY];
+    private int[] timeOfDay = new int[INITIAL_CAPACITY];
+    private byte[] timeStyle = new byte[INITIAL_CAPACITY];
+    private byte[] category = new byte[INITIAL_CAPACITY];
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    private long[] createdSeconds = new long[INITIAL_CAPACITY];
+    private int[] createdNanos = new int[INITIAL_CAPACITY];
+    private long[] modifiedSeconds = new long[INITIAL_CAPACITY];
+    private int[] modifiedNanos = new int[INITIAL_CAPACITY];
+    private String[] title = new String[INITIAL_CAPACITY];
+    private String[] fileName = new String[INITIAL_CAPACITY];
+    private String[][] tags = new String[INITIAL_CAPACITY][];
+    private long[] bodyHandle = new long[INITIAL_CAPACITY];
+    private int[] bodyBytes = new int[INITIAL_CAPACITY];
+    private int[] bodyWords = new int[INITIAL_CAPACITY];
+    
+    // Concurrent so an optimistic read can't trip over a resize
+    private final Map<Integer, String> verbatimTimes = new ConcurrentHashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+    private final Map<String, Integer> categoryCodes = new HashMap<>();
+    private final Map<String, String> tagNames = new HashMap<>();
+    private TextArena arena = new TextArena();
+    private final StampedLock lock = new StampedLock();
+    private volatile ContentLoader loader;
+    
+    int add(LocalDate date, String time, String title, String content, String category,
+            boolean favorite, LocalDateTime created) {
+        long stamp = lock.writeLock();
+        try {
+            boolean reused = freeCount > 0;
+            if (!reused && size == epochDay.length) {
+                grow();
+            }
+            int id = reused ? freeIds[--freeCount] : size;
+            epochDay[id] = date == null ? NO_DATE : (int) date.toEpochDay();
+            storeTime(id, time);
+            this.title[id] = title;
+            this.category[id] = categoryCode(category);
+            flags[id] = favorite ? FAVORITE : 0;
+            storeCreated(id, created);
+            storeModified(id, created);
+            tags[id] = NO_TAGS;
+            bodyHandle[id] = NO_BODY;
+            storeContent(id, content);
+            if (!reused) {
+                // Last, so the row is complete before any reader can be given its id
+                size++;
+            }
+            return id;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /** Frees the row: its body goes back to the arena and its id to the next add. Repeats are ignored. */
+    void remove(int id) {
+        write(() -> {
+            if ((flags[id] & REMOVED) != 0) {
+                return;
+            }
+            if (bodyHandle[id] >= 0) {
+                arena.release(bodyBytes[id]);
+            }
+            bodyHandle[id] = NO_BODY;
+            bodyBytes[id] = 0;
+            bodyWords[id] = 0;
+            title[id] = null;
+            fileName[id] = null;
+            tags[id] = NO_TAGS;
+            verbatimTimes.remove(id);
+            flags[id] = REMOVED;
+            if (freeCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            }
+            freeIds[freeCount++] = id;
+            if (arena.wantsCompaction()) {
+                compact();
+            }
+        });
+    }
+    
+    // ===== ACCESSORS =====
+    
+    LocalDate date(int id) {
+        int day = read(() -> epochDay[id]);
+        return day == NO_DATE ? null : LocalDate.ofEpochDay(day);
+    }
+    
+    void setDate(int id, LocalDate date) {
+        write(() -> epochDay[id] = date == null ? NO_DATE : (int) date.toEpochDay());
+    }
+    
+    String time(int id) {
+        return read(() -> {
+            byte style = timeStyle[id];
+            if (style == VERBATIM_TIME) {
+                return verbatimTimes.get(id);
+            } else if (style == EMPTY_TIME) {
+                return "";
+            }
+            return TIME_FORMATS[style - 2].format(LocalTime.ofSecondOfDay(timeOfDay[id]));
+        });
+    }
+    
+    void setTime(int id, String time) {
+        write(() -> storeTime(id, time));
+    }
+    
+    String title(int id) {
+        return read(() -> title[id]);
+    }
+    
+    void setTitle(int id, String value) {
+        write(() -> title[id] = value);
+    }
+    
+    String category(int id) {
+        return read(() -> {
+            int code = category[id] & 0xff;
+            return code == 0 ? null : categoryNames.get(code - 1);
+        });
+    }
+    
+    void setCategory(int id, String name) {
+        write(() -> category[id] = categoryCode(name));
+    }
+    
+    boolean isFavorite(int id) {
+        return read(() -> (flags[id] & FAVORITE) != 0);
+    }
+    
+    void setFavorite(int id, boolean favorite) {
+        write(() -> flags[id] = (byte) (favorite ? flags[id] | FAVORITE : flags[id] & ~FAVORITE));
+    }
+    
+    Set<String> tags(int id) {
+        // The array is never written once stored, so it can be copied after validating
+        String[] names = read(() -> tags[id]);
+        return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(names)));
+    }
+    
+    void setTags(int id, Set<String> names) {
+        write(() -> {
+            String[] shared = new String[names.size()];
+            int i = 0;
+            for (String name : names) {
+                shared[i++] = tagNames.computeIfAbsent(name, key -> key);
+            }
+            tags[id] = shared;
+        });
+    }
+    
+    String fileName(int id) {
+        return read(() -> fileName[id]);
+    }
+    
+    void setFileName(int id, String value) {
+        write(() -> fileName[id] = value);
+    }
+    
+    LocalDateTime created(int id) {
+        return read(() -> LocalDateTime.ofEpochSecond(createdSeconds[id], createdNanos[id], ZoneOffset.UTC));
+    }
+    
+    void setCreated(int id, LocalDateTime created) {
+        write(() -> storeCreated(id, created));
+    }
+    
+    LocalDateTime modified(int id) {
+        return read(() -> LocalDateTime.ofEpochSecond(modifiedSeconds[id], modifiedNanos[id], ZoneOffset.UTC));
+    }
+    
+    void setModified(int id, LocalDateTime modified) {
+        write(() -> storeModified(id, modified));
+    }
+    
+    // ===== BODIES =====
+    
+    String content(int id) {
+        loadContent(id);
+        return read(() -> decode(id, Integer.MAX_VALUE));
+    }
+    
+    /** The first {@code length} characters of the body, decoding no more than that. */
+    String contentPrefix(int id, int length) {
+        loadContent(id);
+        return read(() -> decode(id, length));
+    }
+    
+    /** Where rows that leave their body in the entry's file read it from. */
+    void setContentLoader(ContentLoader loader) {
+        this.loader = loader;
+    }
+    
+    /**
+     * Reads the body from the entry's file if the row left it there. The file
+     * is read outside the lock, and the body only stored if the row still
+     * waits for it, so an edit made meanwhile wins.
+     */
+    void loadContent(int id) {
+        String name = read(() -> bodyHandle[id] == NOT_LOADED ? fileName[id] : null);
+        if (name == null) {
+            return;
+        }
+        ContentLoader from = loader;
+        if (from == null) {
+            throw new IllegalStateException("No loader for the body of " + name);
+        }
+        String content;
+        try {
+            content = from.load(name);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the body of " + name, e);
+        }
+        write(() -> {
+            if (bodyHandle[id] == NOT_LOADED && name.equals(fileName[id])) {
+                storeContent(id, content);
+            }
+        });
+    }
+    
+    int wordCount(int id) {
+        return read(() -> bodyWords[id]);
+    }
+    
+    void setContent(int id, String content) {
+        write(() -> storeContent(id, content));
+    }
+    
+    // ===== LOCKING =====
+    
+    /**
+     * Runs {@code reader} without taking the lock, and again under the read
+     * lock if a write overlapped it. A reader that sees a write half done may
+     * compute nonsense or throw; either way the result is thrown away, so
+     * readers must only read and must not loop on what they read.
+     */
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T value = reader.get();
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    private void write(Runnable writer) {
+        long stamp = lock.writeLock();
+        try {
+            writer.run();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    private void storeTime(int id, String time) {
+        verbatimTimes.remove(id);
+        if (time != null && time.isEmpty()) {
+            timeStyle[id] = EMPTY_TIME;
+            return;
+        }
+        if (time != null) {
+            for (int style = 0; style < TIME_FORMATS.length; style++) {
+                try {
+                    TemporalAccessor parsed = TIME_FORMATS[style].parse(time);
+                    int seconds = parsed.get(ChronoField.SECOND_OF_DAY);
+                    if (TIME_FORMATS[style].format(LocalTime.ofSecondOfDay(seconds)).equals(time)) {
+                        timeOfDay[id] = seconds;
+                        timeStyle[id] = (byte) (style + 2);
+                        return;
+                    }
+                } catch (DateTimeParseException e) {
+                    // Try the next format
+                }
+            }
+        }
+        timeStyle[id] = VERBATIM_TIME;
+        if (time != null) {
+            verbatimTimes.put(id, time);
+        }
+    }
+    
+    private void storeCreated(int id, LocalDateTime created) {
+        createdSeconds[id] = created.toEpochSecond(ZoneOffset.UTC);
+        createdNanos[id] = created.getNano();
+    }
+    
+    private void storeModified(int id, LocalDateTime modified) {
+        modifiedSeconds[id] = modified.toEpochSecond(ZoneOffset.UTC);
+        modifiedNanos[id] = modified.getNano();
+    }
+    
+    private void storeContent(int id, String content) {
+        if (bodyHandle[id] >= 0) {
+            arena.release(bodyBytes[id]);
+        }
+        store(id, content);
+        if (arena.wantsCompaction()) {
+            compact();
+        }
+    }
+    
+    // ===== SNAPSHOTS =====
+    
+    /**
+     * Writes the rows {@code ids} for {@link #readRows}, a column at a time so
+     * they read back in bulk. Bodies stay behind in the entries' files; only
+     * whether there is one and its word count are written.
+     */
+    void writeRows(DataOutputStream out, int[] ids) throws IOException {
+        long stamp = lock.readLock();
+        try {
+            writeStrings(out, categoryNames);
+            Map<String, Integer> tagCodes = new HashMap<>();
+            for (int id : ids) {
+                for (String tag : tags[id]) {
+                    tagCodes.putIfAbsent(tag, tagCodes.size());
+                }
+            }
+            String[] tagList = new String[tagCodes.size()];
+            tagCodes.forEach((tag, code) -> tagList[code] = tag);
+            writeStrings(out, Arrays.asList(tagList));
+            
+            out.writeInt(ids.length);
+            for (int id : ids) {
+                out.writeInt(epochDay[id]);
+            }
+            for (int id : ids) {
+                out.writeInt(timeOfDay[id]);
+            }
+            for (int id : ids) {
+                out.writeByte(timeStyle[id]);
+            }
+            for (int id : ids) {
+                out.writeByte(category[id]);
+            }
+            for (int id : ids) {
+                out.writeByte(flags[id]);
+            }
+            for (int id : ids) {
+                out.writeLong(createdSeconds[id]);
+            }
+            for (int id : ids) {
+                out.writeInt(createdNanos[id]);
+            }
+            for (int id : ids) {
+                out.writeLong(modifiedSeconds[id]);
+            }
+            for (int id : ids) {
+                out.writeInt(modifiedNanos[id]);
+            }
+            List<String> titles = new ArrayList<>(ids.length);
+            List<String> fileNames = new ArrayList<>(ids.length);
+            List<String> times = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                titles.add(title[id]);
+                fileNames.add(fileName[id]);
+                times.add(verbatimTimes.get(id));
+            }
+            writeStrings(out, titles);
+            writeStrings(out, fileNames);
+            writeStrings(out, times);
+            for (int id : ids) {
+                out.writeShort(tags[id].length);
+            }
+            for (int id : ids) {
+                for (String tag : tags[id]) {
+                    out.writeInt(tagCodes.get(tag));
+                }
+            }
+            for (int id : ids) {
+                out.writeByte((int) (bodyHandle[id] >= 0 ? NOT_LOADED : bodyHandle[id]));
+            }
+            for (int id : ids) {
+                out.writeInt(bodyWords[id]);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Appends the rows written by {@link #writeRows}, read from {@code in}, and
+     * returns their new ids in the same order. Their bodies are read from the
+     * entries' files when first asked for. Damaged input throws a
+     * {@link RuntimeException} such as {@link java.nio.BufferUnderflowException}.
+     */
+    int[] readRows(ByteBuffer in) {
+        long stamp = lock.writeLock();
+        try {
+            List<String> categories = readStrings(in);
+            byte[] categoryCode = new byte[categories.size() + 1];
+            for (int code = 1; code < categoryCode.length; code++) {
+                categoryCode[code] = categoryCode(categories.get(code - 1));
+            }
+            List<String> tagList = readStrings(in);
+            for (int i = 0; i < tagList.size(); i++) {
+                tagList.set(i, tagNames.computeIfAbsent(tagList.get(i), key -> key));
+            }
+            
+            int count = in.getInt();
+            int[] rowDays = readInts(in, count);
+            int[] rowTimes = readInts(in, count);
+            byte[] rowTimeStyles = readBytes(in, count);
+            byte[] rowCategories = readBytes(in, count);
+            byte[] rowFlags = readBytes(in, count);
+            long[] rowCreated = readLongs(in, count);
+            int[] rowCreatedNanos = readInts(in, count);
+            long[] rowModified = readLongs(in, count);
+            int[] rowModifiedNanos = readInts(in, count);
+            List<String> titles = readStrings(in);
+            List<String> fileNames = readStrings(in);
+            List<String> times = readStrings(in);
+            short[] tagCounts = new short[count];
+            in.asShortBuffer().get(tagCounts);
+            in.position(in.position() + 2 * count);
+            int tagTotal = 0;
+            for (short tagCount : tagCounts) {
+                tagTotal += tagCount;
+            }
+            int[] tagCodes = readInts(in, tagTotal);
+            byte[] bodies = readBytes(in, count);
+            int[] words = readInts(in, count);
+            if (titles.size() != count || fileNames.size() != count || times.size() != count) {
+                throw new IllegalStateException("Snapshot columns disagree on the number of entries");
+            }
+            
+            while (epochDay.length < size + count) {
+                grow();
+            }
+            int first = size;
+            System.arraycopy(rowDays, 0, epochDay, first, count);
+            System.arraycopy(rowTimes, 0, timeOfDay, first, count);
+            System.arraycopy(rowTimeStyles, 0, timeStyle, first, count);
+            System.arraycopy(rowFlags, 0, flags, first, count);
+            System.arraycopy(rowCreated, 0, createdSeconds, first, count);
+            System.arraycopy(rowCreatedNanos, 0, createdNanos, first, count);
+            System.arraycopy(rowModified, 0, modifiedSeconds, first, count);
+            System.arraycopy(rowModifiedNanos, 0, modifiedNanos, first, count);
+            int nextTag = 0;
+            int[] ids = new int[count];
+            for (int i = 0; i < count; i++) {
+                int id = first + i;
+                category[id] = categoryCode[rowCategories[i] & 0xff];
+                title[id] = titles.get(i);
+                fileName[id] = fileNames.get(i);
+                verbatimTimes.remove(id);
+                if (timeStyle[id] == VERBATIM_TIME && times.get(i) != null) {
+                    verbatimTimes.put(id, times.get(i));
+                }
+                String[] rowTags = tagCounts[i] == 0 ? NO_TAGS : new String[tagCounts[i]];
+                for (int t = 0; t < rowTags.length; t++) {
+                    rowTags[t] = tagList.get(tagCodes[nextTag++]);
+                }
+                tags[id] = rowTags;
+                if (bodies[i] != NO_BODY && bodies[i] != EMPTY_BODY && bodies[i] != NOT_LOADED) {
+                    throw new IllegalStateException("Unknown body marker " + bodies[i]);
+                }
+                bodyHandle[id] = bodies[i];
+                bodyBytes[id] = 0;
+                bodyWords[id] = bodies[i] == NOT_LOADED ? words[i] : 0;
+                ids[i] = id;
+            }
+            // Only now, so rows from damaged input are never counted and the next add reuses them
+            size += count;
+            return ids;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /** Off-heap bytes reserved for bodies. */
+    long offHeapBytes() {
+        return read(() -> arena.reservedBytes());
+    }
+    
+    private void store(int id, String content) {
+        if (content == null || content.isEmpty()) {
+            bodyHandle[id] = content == null ? NO_BODY : EMPTY_BODY;
+            bodyBytes[id] = 0;
+            bodyWords[id] = 0;
+            return;
+        }
+        boolean latin1 = true;
+        for (int i = 0; i < content.length() && latin1; i++) {
+            latin1 = content.charAt(i) < 256;
+        }
+        byte[] data;
+        if (latin1) {
+            data = content.getBytes(StandardCharsets.ISO_8859_1);
+            flags[id] &= ~UTF16;
+        } else {
+            // Char by char rather than a charset, so unpaired surrogates survive
+            data = new byte[content.length() * 2];
+            for (int i = 0; i < content.length(); i++) {
+                char c = content.charAt(i);
+                data[2 * i] = (byte) (c >> 8);
+                data[2 * i + 1] = (byte) c;
+            }
+            flags[id] |= UTF16;
+        }
+        bodyHandle[id] = arena.write(data);
+        bodyBytes[id] = data.length;
+        bodyWords[id] = EntryStats.countWords(content);
+    }
+    
+    private byte categoryCode(String name) {
+        if (name == null) {
+            return 0;
+        }
+        Integer code = categoryCodes.get(name);
+        if (code == null) {
+            if (categoryNames.size() == MAX_CATEGORIES) {
+                throw new IllegalStateException("More than " + MAX_CATEGORIES + " categories");
+            }
+            categoryNames.add(name);
+            code = categoryNames.size();
+            categoryCodes.put(name, code);
+        }
+        return (byte) (int) code;
+    }
+    
+    /** A count, each length (-1 for null), then all the characters. */
+    static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeInt(value == null ? -1 : value.length());
+        }
+        for (String value : values) {
+            if (value != null) {
+                out.writeChars(value);
+            }
+        }
+    }
+    
+    static List<String> readStrings(ByteBuffer in) {
+        int[] lengths = readInts(in, in.getInt());
+        int total = 0;
+        for (int length : lengths) {
+            total += Math.max(length, 0);
+        }
+        char[] chars = new char[total];
+        in.asCharBuffer().get(chars);
+        in.position(in.position() + 2 * total);
+        List<String> values = new ArrayList<>(lengths.length);
+        int offset = 0;
+        for (int length : lengths) {
+            values.add(length < 0 ? null : new String(chars, offset, length));
+            offset += Math.max(length, 0);
+        }
+        return values;
+    }
+    
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * count);
+        return values;
+    }
+    
+    private static long[] readLongs(ByteBuffer in, int count) {
+        long[] values = new long[count];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + 8 * count);
+        return values;
+    }
+    
+    private static byte[] readBytes(ByteBuffer in, int count) {
+        byte[] values = new byte[count];
+        in.get(values);
+        return values;
+    }
+    
+    private String decode(int id, int maxChars) {
+        long handle = bodyHandle[id];
+        if (handle < 0) {
+            return handle == NO_BODY ? null : "";
+        }
+        boolean utf16 = (flags[id] & UTF16) != 0;
+        int bytes = (int) Math.min(bodyBytes[id], utf16 ? 2L * maxChars : maxChars);
+        byte[] data = new byte[bytes];
+        arena.read(handle, data, bytes);
+        if (!utf16) {
+            return new String(data, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[bytes / 2];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ((data[2 * i] & 0xff) << 8 | (data[2 * i + 1] & 0xff));
+        }
+        return new String(chars);
+    }
+    
+    /** Copies the live bodies into a fresh arena; the old one's buffers go with the next GC. */
+    private void compact() {
+        TextArena fresh = new TextArena();
+        byte[] buffer = new byte[0];
+        for (int id = 0; id < size; id++) {
+            if (bodyHandle[id] >= 0) {
+                if (buffer.length < bodyBytes[id]) {
+                    buffer = new byte[bodyBytes[id]];
+                }
+                arena.read(bodyHandle[id], buffer, bodyBytes[id]);
+                bodyHandle[id] = fresh.write(Arrays.copyOf(buffer, bodyBytes[id]));
+            }
+        }
+        arena = fresh;
+    }
+    
+    private void grow() {
+        int capacity = epochDay.length * 2;
+        epochDay = Arrays.copyOf(epochDay, capacity);
+        timeOfDay = Arrays.copyOf(timeOfDay, capacity);
+        timeStyle = Arrays.copyOf(timeStyle, capacity);
+        category = Arrays.copyOf(category, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        createdSeconds = Arrays.copyOf(createdSeconds, capacity);
+        createdNanos = Arrays.copyOf(createdNanos, capacity);
+        modifiedSeconds = Arrays.copyOf(modifiedSeconds, capacity);
+        modifiedNanos = Arrays.copyOf(modifiedNanos, capacity);
+        title = Arrays.copyOf(title, capacity);
+        fileName = Arrays.copyOf(fileName, capacity);
+        tags = Arrays.copyOf(tags, capacity);
+        bodyHandle = Arrays.copyOf(bodyHandle, capacity);
+        bodyBytes = Arrays.copyOf(bodyBytes, capacity);
+        bodyWords = Arrays.copyOf(bodyWords, capacity);
+    }
+}
@@ -0,0 +1,212 @@
+package com.diary;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link EntryStorage} with one file per entry, named after the entry, in a
+ * single directory: the layout both front ends have always used. Only
+ * {@code .txt} files not starting with a dot count as entries, so anything
+ * else kept in the directory (history, snapshots, temp files) is left alone.
+ *
+ * A write goes to a temp file that is then renamed over the entry, so the
+ * old file is never modified in place: a reader sees the old text or the new,
+ * and a hard link to the old file (a backup snapshot) keeps the old text.
+ * {@link #create} links the finished temp file in under the entry's name,
+ * which fails if the name is taken, even by another process; a new entry
+ * never appears half written either. The temp file is forced to disk before
+ * it is renamed or linked, so after a crash an entry holds its old text or
+ * its new one, never an empty file; {@link #flush} forces the directory,
+ * which makes the renames and removals so far durable too.
+ *
+ * Streamed reads and writes go straight to the files, a buffer at a time.
+ */
+public class FileEntryStorage implements EntryStorage {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final Path dir;
+    
+    public FileEntryStorage(Path dir) {
+        this.dir = dir;
+    }
+    
+    /** Where the entry called {@code name} is kept. */
+    public Path path(String name) {
+        return dir.resolve(name);
+    }
+    
+    @Override
+    public List<String> names() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> listing = Files.list(dir)) {
+            return listing.map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(EntryFiles.EXTENSION) && !name.startsWith("."))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+    
+    @Override
+    public boolean contains(String name) {
+        return Files.exists(path(name));
+    }
+    
+    @Override
+    public byte[] read(String name) throws IOException {
+        try {
+            return Files.readAllBytes(path(name));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+    
+    @Override
+    public InputStream openRead(String name) throws IOException {
+        try {
+            return Files.newInputStream(path(name));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+    
+    @Override
+    public void write(String name, byte[] data) throws IOException {
+        write(name, out -> out.write(data));
+    }
+    
+    @Override
+    public void write(String name, Content content) throws IOException {
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, "." + name, ".tmp");
+        try {
+            writeSynced(temp, content, StandardOpenOption.WRITE);
+            Files.move(temp, path(name), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    @Override
+    public boolean create(String name, byte[] data) throws IOException {
+        return create(name, out -> out.write(data));
+    }
+    
+    @Override
+    public boolean create(String name, Content content) throws IOException {
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, "." + name, ".tmp");
+        try {
+            writeSynced(temp, content, StandardOpenOption.WRITE);
+            return link(name, temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    /**
+     * Writes every temp file before forcing any, then links them in, so a
+     * batch costs one pass of forces the file system can overlap rather
+     * than a write-and-wait per entry.
+     */
+    @Override
+    public List<String> createAll(Map<String, byte[]> entries) throws IOException {
+        Files.createDirectories(dir);
+        Map<String, Path> temps = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                Path temp = Files.createTempFile(dir, "." + entry.getKey(), ".tmp");
+                temps.put(entry.getKey(), temp);
+                Files.write(temp, entry.getValue());
+            }
+            for (Path temp : temps.values()) {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    channel.force(false);
+                }
+            }
+            List<String> taken = new ArrayList<>();
+            for (Map.Entry<String, Path> entry : temps.entrySet()) {
+                if (!link(entry.getKey(), entry.getValue())) {
+                    taken.add(entry.getKey());
+                }
+            }
+            return taken;
+        } finally {
+            for (Path temp : temps.values()) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+    
+    /** Links the finished {@code temp} in under {@code name}; false, linking nothing, if the name is taken. */
+    private boolean link(String name, Path temp) throws IOException {
+        try {
+            Files.createLink(path(name), temp);
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // No hard links here, or not on this file system: claim the name empty, then fill it in
+            try {
+                writeSynced(path(name), out -> Files.copy(temp, out), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+            } catch (FileAlreadyExistsException taken) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean delete(String name) throws IOException {
+        return Files.deleteIfExists(path(name));
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        if (Files.isDirectory(dir)) {
+            forceDirectory(dir);
+        }
+    }
+    
+    /** Writes {@code content} to {@code file}, opened with {@code options}, and forces it to disk. */
+    private static void writeSynced(Path file, Content content, OpenOption... options) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            OutputStream out = new BufferedOutputStream(new FilterOutputStream(Channels.newOutputStream(channel)) {
+                @Override
+                public void write(byte[] data, int offset, int length) throws IOException {
+                    this.out.write(data, offset, length);
+                }
+                
+                @Override
+                public void close() throws IOException {
+                    // The channel stays open to be forced below
+                    flush();
+                }
+            }, BUFFER_SIZE);
+            content.writeTo(out);
+            out.flush();
+            channel.force(false);
+        }
+    }
+    
+    /** Forces the directory itself to disk, so the names created, renamed and removed in it are durable. */
+    static void forceDirectory(Path dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows can't open a directory; its renames are as durable as it makes them
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.diary;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * {@link EntryStorage} that appends every write and delete to a single log
+ * file and keeps an in-memory index from name to where its latest bytes are.
+ *
+ * Writes are batched: records collect in a buffer and reach the file in one
+ * append when it passes {@link #BATCH_BYTES}, on {@link #flush} and on
+ * {@link #close}. Saving many entries therefore costs one write call per
+ * batch instead of a file create and rename each, and reading one is a
+ * single positional read. Reads of records still in the buffer are served
+ * from it. {@link #flush} also forces the log to disk, so one sync covers
+ * every write since the last.
+ *
+ * Opening scans the record headers, skipping over the bytes, to rebuild the
+ * index; a record torn by a crash ends the scan and is cut off, as in
+ * {@link RevisionHistory}. Replaced and deleted records stay in the log as
+ * garbage until it outweighs the live bytes, when a flush rewrites the log
+ * with only the live records, forcing the new log before it replaces the
+ * old one.
+ *
+ * Record layout: kind byte ('W' write, 'X' delete), name as modified UTF-8,
+ * then for a write the byte count, the CRC-32 of the bytes and the bytes.
+ * The CRC is checked when a record is read.
+ */
+public class LogEntryStorage implements EntryStorage {
+    public static final String FILE_NAME = "entries.log";
+    static final int BATCH_BYTES = 256 * 1024;
+    private static final int COMPACT_MIN_GARBAGE = 1024 * 1024;
+    private static final byte WRITE = 'W';
+    private static final byte DELETE = 'X';
+    
+    /** Where a name's bytes are: at {@code offset} in the file, or in the batch if past its end. */
+    private static class Location {
+        final long offset;
+        final int length;
+        final int crc;
+        
+        Location(long offset, int length, int crc) {
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+        }
+    }
+    
+    private final Path file;
+    private final TreeMap<String, Location> index = new TreeMap<>();
+    private FileChannel channel;
+    private long fileBytes;
+    private final Batch batch = new Batch();
+    private final DataOutputStream batchOut = new DataOutputStream(batch);
+    private long liveBytes;
+    private long garbageBytes;
+    
+    public LogEntryStorage(Path file) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        open();
+    }
+    
+    @Override
+    public synchronized List<String> names() {
+        return new ArrayList<>(index.keySet());
+    }
+    
+    @Override
+    public synchronized boolean contains(String name) {
+        return index.containsKey(name);
+    }
+    
+    @Override
+    public synchronized byte[] read(String name) throws IOException {
+        Location location = index.get(name);
+        if (location == null) {
+            return null;
+        }
+        byte[] data = readStored(name, location);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != location.crc) {
+            throw new IOException("Entry " + name + " is damaged in " + file);
+        }
+        return data;
+    }
+    
+    @Override
+    public synchronized void write(String name, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        batchOut.writeByte(WRITE);
+        batchOut.writeUTF(name);
+        batchOut.writeInt(data.length);
+        batchOut.writeInt((int) crc.getValue());
+        long offset = fileBytes + batch.size();
+        batchOut.write(data);
+        replace(name, new Location(offset, data.length, (int) crc.getValue()));
+        if (batch.size() >= BATCH_BYTES) {
+            flushBatch();
+        }
+    }
+    
+    @Override
+    public synchronized boolean create(String name, byte[] data) throws IOException {
+        if (index.containsKey(name)) {
+            return false;
+        }
+        write(name, data);
+        return true;
+    }
+    
+    @Override
+    public synchronized boolean delete(String name) throws IOException {
+        if (!index.containsKey(name)) {
+            return false;
+        }
+        batchOut.writeByte(DELETE);
+        batchOut.writeUTF(name);
+        replace(name, null);
+        if (batch.size() >= BATCH_BYTES) {
+            flushBatch();
+        }
+        return true;
+    }
+    
+    @Override
+    public synchronized void flush() throws IOException {
+        flushBatch();
+        channel.force(false);
+        if (garbageBytes > COMPACT_MIN_GARBAGE && garbageBytes > liveBytes) {
+            compact();
+        }
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+    
+    private void replace(String name, Location location) {
+        Location previous = location == null ? index.remove(name) : index.put(name, location);
+        if (previous != null) {
+            liveBytes -= previous.length;
+            garbageBytes += previous.length;
+        }
+        if (location != null) {
+            liveBytes += location.length;
+        }
+    }
+    
+    /** The bytes at {@code location}, unchecked. */
+    private byte[] readStored(String name, Location location) throws IOException {
+        byte[] data = new byte[location.length];
+        if (location.offset >= fileBytes) {
+            // Still in the batch
+            System.arraycopy(batch.buffer(), (int) (location.offset - fileBytes), data, 0, location.length);
+        } else {
+            ByteBuffer target = ByteBuffer.wrap(data);
+            while (target.hasRemaining()) {
+                if (channel.read(target, location.offset + target.position()) < 0) {
+                    throw new EOFException("Entry " + name + " runs past the end of " + file);
+                }
+            }
+        }
+        return data;
+    }
+    
+    private void flushBatch() throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(batch.buffer(), 0, batch.size());
+        while (bytes.hasRemaining()) {
+            channel.write(bytes, fileBytes + bytes.position());
+        }
+        fileBytes += batch.size();
+        batch.reset();
+    }
+    
+    /** Rebuilds the index from the log, cutting off a torn last record. */
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index.clear();
+        liveBytes = 0;
+        garbageBytes = 0;
+        long size = channel.size();
+        long valid = 0;
+        CountingInputStream counter = new CountingInputStream(
+            new BufferedInputStream(Channels.newInputStream(channel.position(0)), 1 << 16));
+        DataInputStream in = new DataInputStream(counter);
+        while (valid < size) {
+            try {
+                byte kind = in.readByte();
+                String name = in.readUTF();
+                if (kind == WRITE) {
+                    int length = in.readInt();
+                    int crc = in.readInt();
+                    long offset = counter.count;
+                    if (length < 0 || offset + length > size) {
+                        break;
+                    }
+                    in.skipNBytes(length);
+                    replace(name, new Location(offset, length, crc));
+                } else if (kind == DELETE) {
+                    replace(name, null);
+                } else {
+                    break;
+                }
+                valid = counter.count;
+            } catch (EOFException | UTFDataFormatException e) {
+                break;
+            }
+        }
+        if (valid < size) {
+            System.err.println("Dropping " + (size - valid) + " damaged bytes at the end of " + file);
+            channel.truncate(valid);
+        }
+        fileBytes = valid;
+    }
+    
+    /**
+     * Writes the live records to a new log in name order and swaps it in.
+     * Records are copied with their stored CRC, so a damaged one stays
+     * detectably damaged instead of stopping the compaction.
+     */
+    private void compact() throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), "." + FILE_NAME, ".tmp");
+        try {
+            try (FileChannel compacted = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(compacted), 1 << 16));
+                for (Map.Entry<String, Location> entry : index.entrySet()) {
+                    byte[] data = readStored(entry.getKey(), entry.getValue());
+                    out.writeByte(WRITE);
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(data.length);
+                    out.writeInt(entry.getValue().crc);
+                    out.write(data);
+                }
+                out.flush();
+                compacted.force(false);
+            }
+            channel.close();
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                FileEntryStorage.forceDirectory(file.toAbsolutePath().getParent());
+            } finally {
+                // The old log if the move failed, so the storage stays usable either way
+                open();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    /** The pending records; lets reads and flushes use the buffer without copying it. */
+    private static class Batch extends ByteArrayOutputStream {
+        Batch() {
+            super(BATCH_BYTES);
+        }
+        
+        byte[] buffer() {
+            return buf;
+        }
+    }
+    
+    /** Counts bytes taken from the stream, so the scan knows each record's offset. */
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.diary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@link EntryStorage} that keeps everything in a sorted map and nothing
+ * after close: for trying the app without touching the disk, and as the
+ * baseline the other engines are measured against. Bytes are copied in and
+ * out so callers can't change what is stored.
+ */
+public class MemoryEntryStorage implements EntryStorage {
+    private final ConcurrentSkipListMap<String, byte[]> entries = new ConcurrentSkipListMap<>();
+    
+    @Override
+    public List<String> names() {
+        return new ArrayList<>(entries.keySet());
+    }
+    
+    @Override
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+    
+    @Override
+    public byte[] read(String name) {
+        byte[] data = entries.get(name);
+        return data == null ? null : data.clone();
+    }
+    
+    @Override
+    public void write(String name, byte[] data) {
+        entries.put(name, data.clone());
+    }
+    
+    @Override
+    public boolean create(String name, byte[] data) {
+        return entries.putIfAbsent(name, data.clone()) == null;
+    }
+    
+    @Override
+    public boolean delete(String name) {
+        return entries.remove(name) != null;
+    }
+    
+    @Override
+    public void flush() {
+        // Nothing to make durable
+    }
+}
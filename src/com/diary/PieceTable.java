@@ -0,0 +1,159 @@
+package com.diary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text buffer that records edits instead of copying the text.
+ *
+ * The original text is never modified; inserted text is appended to a
+ * second buffer, and the document is the list of pieces pointing into one
+ * buffer or the other. An edit costs a scan of the piece list plus the size
+ * of the edit, independent of document length. Typing at one spot extends the
+ * last piece rather than adding a new one, and the list is compacted once it
+ * grows past {@link #COMPACT_THRESHOLD} pieces.
+ */
+class PieceTable {
+    private static final int COMPACT_THRESHOLD = 2048;
+    
+    private static final class Piece {
+        final boolean added;
+        final int start;
+        int length;
+        
+        Piece(boolean added, int start, int length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+    }
+    
+    private String original;
+    private final StringBuilder added = new StringBuilder();
+    private final List<Piece> pieces = new ArrayList<>();
+    private int length;
+    private String text; // Materialized text, null after an edit
+    
+    PieceTable(String original) {
+        reset(original);
+    }
+    
+    int length() {
+        return length;
+    }
+    
+    /** Replaces {@code [start, end)} with {@code inserted}. */
+    void replace(int start, int end, String inserted) {
+        if (start < 0 || end < start || end > length) {
+            throw new IndexOutOfBoundsException("replace " + start + ".." + end + " in length " + length);
+        }
+        if (end > start) {
+            int first = splitAt(start);
+            int last = splitAt(end);
+            pieces.subList(first, last).clear();
+            length -= end - start;
+        }
+        if (!inserted.isEmpty()) {
+            insert(start, inserted);
+        }
+        text = null;
+        if (pieces.size() > COMPACT_THRESHOLD) {
+            reset(toString());
+        }
+    }
+    
+    char charAt(int index) {
+        int offset = 0;
+        for (Piece piece : pieces) {
+            if (index < offset + piece.length) {
+                return buffer(piece).charAt(piece.start + index - offset);
+            }
+            offset += piece.length;
+        }
+        throw new IndexOutOfBoundsException("index " + index + " in length " + length);
+    }
+    
+    String substring(int start, int end) {
+        if (text != null) {
+            return text.substring(start, end);
+        }
+        StringBuilder out = new StringBuilder(end - start);
+        int offset = 0;
+        for (Piece piece : pieces) {
+            int pieceEnd = offset + piece.length;
+            if (pieceEnd > start && offset < end) {
+                int from = Math.max(start, offset) - offset;
+                int to = Math.min(end, pieceEnd) - offset;
+                out.append(buffer(piece), piece.start + from, piece.start + to);
+            }
+            if (pieceEnd >= end) {
+                break;
+            }
+            offset = pieceEnd;
+        }
+        return out.toString();
+    }
+    
+    @Override
+    public String toString() {
+        if (text == null) {
+            StringBuilder out = new StringBuilder(length);
+            for (Piece piece : pieces) {
+                out.append(buffer(piece), piece.start, piece.start + piece.length);
+            }
+            text = out.toString();
+        }
+        return text;
+    }
+    
+    int pieceCount() {
+        return pieces.size();
+    }
+    
+    private void insert(int position, String inserted) {
+        int index = splitAt(position);
+        Piece previous = index > 0 ? pieces.get(index - 1) : null;
+        if (previous != null && previous.added && previous.start + previous.length == added.length()) {
+            // Continues the last insertion: grow that piece instead of adding one
+            previous.length += inserted.length();
+        } else {
+            pieces.add(index, new Piece(true, added.length(), inserted.length()));
+        }
+        added.append(inserted);
+        length += inserted.length();
+    }
+    
+    /** Index of the piece starting at {@code offset}, splitting a piece if needed. */
+    private int splitAt(int offset) {
+        int pieceStart = 0;
+        for (int i = 0; i < pieces.size(); i++) {
+            Piece piece = pieces.get(i);
+            if (offset == pieceStart) {
+                return i;
+            }
+            if (offset < pieceStart + piece.length) {
+                int head = offset - pieceStart;
+                pieces.add(i + 1, new Piece(piece.added, piece.start + head, piece.length - head));
+                piece.length = head;
+                return i + 1;
+            }
+            pieceStart += piece.length;
+        }
+        return pieces.size();
+    }
+    
+    private CharSequence buffer(Piece piece) {
+        return piece.added ? added : original;
+    }
+    
+    private void reset(String content) {
+        original = content;
+        added.setLength(0);
+        pieces.clear();
+        if (!content.isEmpty()) {
+            pieces.add(new Piece(false, 0, content.length()));
+        }
+        length = content.length();
+        text = content;
+    }
+}
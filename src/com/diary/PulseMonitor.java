@@ -0,0 +1,202 @@
+package com.diary;
+
+import javafx.animation.AnimationTimer;
+import javafx.event.Event;
+import javafx.event.EventType;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.Labeled;
+import javafx.scene.control.TextInputControl;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+
+import java.util.Locale;
+
+/**
+ * Optional diagnostics for the JavaFX pulse.
+ *
+ * While enabled it records, for every pulse, the frame interval (from an
+ * {@link AnimationTimer}) and the time spent in CSS and layout (between the
+ * scene's pre- and post-layout pulse listeners), and samples the scene-graph
+ * node count. A user action is timed from its input event until the end of
+ * the layout pass that follows it, which covers the event handlers and the
+ * CSS and layout work they caused; actions over the frame budget are logged
+ * to stderr. Rendering happens after layout on the render thread and is not
+ * included.
+ *
+ * Disabled by default, when it installs nothing on the pulse at all. Toggle
+ * with Ctrl+Shift+D, or start with {@code -Ddiary.diagnostics=true}.
+ */
+class PulseMonitor {
+    static final long FRAME_BUDGET_NANOS = 16_666_667L; // 60 fps
+    private static final int HISTORY = 120;
+    private static final int NODE_SAMPLE_EVERY = 30;
+    private static final long OVERLAY_REFRESH_NANOS = 250_000_000L;
+    
+    private final Scene scene;
+    private final Label overlay = new Label();
+    private final long[] frameNanos = new long[HISTORY];
+    private final long[] layoutNanos = new long[HISTORY];
+    private int samples;
+    private int cursor;
+    private int nodeCount;
+    private long pulses;
+    
+    private long lastPulseStart;
+    private long preLayoutAt;
+    private long lastOverlayRefresh;
+    private long actionStart;
+    private String actionName;
+    private String lastSlowAction = "none";
+    private boolean enabled;
+    
+    private final Runnable preLayout = () -> preLayoutAt = System.nanoTime();
+    private final Runnable postLayout = this::afterLayout;
+    private final AnimationTimer pulseTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (lastPulseStart != 0) {
+                frameNanos[cursor] = now - lastPulseStart;
+            }
+            lastPulseStart = now;
+        }
+    };
+    
+    PulseMonitor(Scene scene) {
+        this.scene = scene;
+        overlay.getStyleClass().add("diagnostics-overlay");
+        overlay.setMouseTransparent(true);
+        overlay.setVisible(false);
+        overlay.setManaged(false);
+        
+        // Filters see the event before any handler runs, so the handler's cost is included
+        scene.addEventFilter(MouseEvent.MOUSE_CLICKED, this::actionStarted);
+        scene.addEventFilter(KeyEvent.KEY_TYPED, this::actionStarted);
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, this::actionStarted);
+        scene.addEventFilter(ScrollEvent.SCROLL, this::actionStarted);
+    }
+    
+    /** Label to place above the scene content; shown only while enabled. */
+    Node getOverlay() {
+        return overlay;
+    }
+    
+    boolean isEnabled() {
+        return enabled;
+    }
+    
+    void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) {
+            return;
+        }
+        this.enabled = enabled;
+        overlay.setVisible(enabled);
+        overlay.setManaged(enabled);
+        if (enabled) {
+            samples = 0;
+            cursor = 0;
+            lastPulseStart = 0;
+            actionName = null;
+            scene.addPreLayoutPulseListener(preLayout);
+            scene.addPostLayoutPulseListener(postLayout);
+            // Keeps pulses coming every frame, which is why it only runs while enabled
+            pulseTimer.start();
+            nodeCount = countNodes(scene.getRoot());
+        } else {
+            pulseTimer.stop();
+            scene.removePreLayoutPulseListener(preLayout);
+            scene.removePostLayoutPulseListener(postLayout);
+        }
+    }
+    
+    void toggle() {
+        setEnabled(!enabled);
+    }
+    
+    private void actionStarted(Event event) {
+        if (!enabled || actionName != null) {
+            return; // Several events before one pulse count as one action
+        }
+        actionStart = System.nanoTime();
+        actionName = describe(event.getEventType(), event.getTarget());
+    }
+    
+    private void afterLayout() {
+        long now = System.nanoTime();
+        layoutNanos[cursor] = now - preLayoutAt;
+        cursor = (cursor + 1) % HISTORY;
+        samples = Math.min(samples + 1, HISTORY);
+        pulses++;
+        
+        if (actionName != null) {
+            long actionNanos = now - actionStart;
+            if (actionNanos > FRAME_BUDGET_NANOS) {
+                lastSlowAction = String.format("%s %.1f ms", actionName, actionNanos / 1e6);
+                System.err.printf("[fx] slow action: %s took %.1f ms (css+layout %.1f ms, budget %.1f ms)%n",
+                    actionName, actionNanos / 1e6, (now - preLayoutAt) / 1e6, FRAME_BUDGET_NANOS / 1e6);
+            }
+            actionName = null;
+            nodeCount = countNodes(scene.getRoot());
+        } else if (pulses % NODE_SAMPLE_EVERY == 0) {
+            nodeCount = countNodes(scene.getRoot());
+        }
+        
+        if (now - lastOverlayRefresh > OVERLAY_REFRESH_NANOS) {
+            lastOverlayRefresh = now;
+            overlay.setText(summary());
+        }
+    }
+    
+    private String summary() {
+        long frameSum = 0;
+        long frameMax = 0;
+        long layoutSum = 0;
+        long layoutMax = 0;
+        int over = 0;
+        for (int i = 0; i < samples; i++) {
+            frameSum += frameNanos[i];
+            frameMax = Math.max(frameMax, frameNanos[i]);
+            layoutSum += layoutNanos[i];
+            layoutMax = Math.max(layoutMax, layoutNanos[i]);
+            if (frameNanos[i] > FRAME_BUDGET_NANOS * 3 / 2) {
+                over++;
+            }
+        }
+        int n = Math.max(samples, 1);
+        return String.format("frame  avg %5.1f  max %5.1f ms (%d late)%n"
+                + "css+layout avg %4.2f  max %5.2f ms%n"
+                + "nodes  %d%n"
+                + "slowest recent: %s",
+            frameSum / 1e6 / n, frameMax / 1e6, over,
+            layoutSum / 1e6 / n, layoutMax / 1e6,
+            nodeCount, lastSlowAction);
+    }
+    
+    private static String describe(EventType<?> type, Object target) {
+        String what;
+        if (target instanceof Labeled && ((Labeled) target).getText() != null) {
+            String text = ((Labeled) target).getText();
+            what = "'" + (text.length() > 20 ? text.substring(0, 20) + "..." : text) + "'";
+        } else if (target instanceof TextInputControl) {
+            what = target.getClass().getSimpleName();
+        } else if (target instanceof Node && !((Node) target).getStyleClass().isEmpty()) {
+            what = "." + ((Node) target).getStyleClass().get(0);
+        } else {
+            what = target.getClass().getSimpleName();
+        }
+        return type.getName().toLowerCase(Locale.ROOT).replace('_', ' ') + " on " + what;
+    }
+    
+    private static int countNodes(Node node) {
+        int count = 1;
+        if (node instanceof Parent) {
+            for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,117 @@
+package com.diary;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates an {@link EntryQuery} against a {@link QuerySource}.
+ *
+ * Every indexed predicate (tag, category, favorite, date range) is first
+ * costed by the size of its posting list. The smallest one seeds the candidate
+ * set and the rest are intersected in ascending order, stopping as soon as the
+ * set is empty. Free-text terms have no index, so they run last and only
+ * against the surviving candidates.
+ */
+public class QueryPlanner {
+    
+    private static class Step {
+        final String label;
+        final int estimate;
+        final Supplier<EntryBitmap> bitmap;
+        
+        Step(String label, int estimate, Supplier<EntryBitmap> bitmap) {
+            this.label = label;
+            this.estimate = estimate;
+            this.bitmap = bitmap;
+        }
+    }
+    
+    public static EntryBitmap execute(EntryQuery query, QuerySource source) {
+        List<Step> steps = plan(query, source);
+        
+        EntryBitmap candidates = null;
+        for (Step step : steps) {
+            candidates = candidates == null ? step.bitmap.get().copy() : candidates.and(step.bitmap.get());
+            if (candidates.isEmpty()) {
+                return candidates;
+            }
+        }
+        if (candidates == null) {
+            candidates = source.allEntries().copy();
+        }
+        
+        if (query.getTerms().isEmpty()) {
+            return candidates;
+        }
+        EntryBitmap matches = new EntryBitmap();
+        candidates.forEach(id -> {
+            for (String term : query.getTerms()) {
+                if (!source.containsText(id, term)) {
+                    return;
+                }
+            }
+            matches.add(id);
+        });
+        return matches;
+    }
+    
+    /** Human-readable plan, cheapest step first. */
+    public static String explain(EntryQuery query, QuerySource source) {
+        StringBuilder plan = new StringBuilder();
+        for (Step step : plan(query, source)) {
+            if (plan.length() > 0) {
+                plan.append(" -> ");
+            }
+            plan.append(step.label).append(" (~").append(step.estimate).append(")");
+        }
+        if (plan.length() == 0) {
+            plan.append("all entries (~").append(source.allEntries().cardinality()).append(")");
+        }
+        for (String term : query.getTerms()) {
+            plan.append(" -> text \"").append(term).append("\"");
+        }
+        return plan.toString();
+    }
+    
+    private static List<Step> plan(EntryQuery query, QuerySource source) {
+        List<Step> steps = new ArrayList<>();
+        
+        for (String tag : query.getTags()) {
+            EntryBitmap posting = source.withTag(tag);
+            steps.add(new Step("tag:" + tag, posting.cardinality(), () -> posting));
+        }
+        
+        if (!query.getCategories().isEmpty()) {
+            EntryBitmap union = new EntryBitmap();
+            for (String category : query.getCategories()) {
+                union = union.or(source.inCategory(category));
+            }
+            EntryBitmap categories = union;
+            steps.add(new Step("category:" + String.join("|", query.getCategories()),
+                categories.cardinality(), () -> categories));
+        }
+        
+        if (query.getFavorite() != null) {
+            if (query.getFavorite()) {
+                EntryBitmap favorites = source.favorites();
+                steps.add(new Step("fav:true", favorites.cardinality(), () -> favorites));
+            } else {
+                int estimate = source.allEntries().cardinality() - source.favorites().cardinality();
+                steps.add(new Step("fav:false", estimate,
+                    () -> source.allEntries().andNot(source.favorites())));
+            }
+        }
+        
+        if (query.getAfter() != null || query.getBefore() != null) {
+            String label = "date:" + (query.getAfter() == null ? "*" : query.getAfter())
+                + ".." + (query.getBefore() == null ? "*" : query.getBefore());
+            steps.add(new Step(label, source.estimateBetween(query.getAfter(), query.getBefore()),
+                () -> source.between(query.getAfter(), query.getBefore())));
+        }
+        
+        steps.sort(Comparator.comparingInt(step -> step.estimate));
+        return steps;
+    }
+}
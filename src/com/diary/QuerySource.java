@@ -0,0 +1,29 @@
+package com.diary;
+
+import java.time.LocalDate;
+
+/**
+ * Indexes a front end exposes to {@link QueryPlanner}. Bitmaps returned here
+ * may be live index structures and must not be modified by the caller.
+ */
+public interface QuerySource {
+    
+    EntryBitmap allEntries();
+    
+    EntryBitmap withTag(String tag);
+    
+    EntryBitmap inCategory(String category);
+    
+    EntryBitmap favorites();
+    
+    /** Entries dated within the inclusive range; either bound may be null. */
+    EntryBitmap between(LocalDate from, LocalDate to);
+    
+    /** Cheap upper bound for {@link #between}, used only to order the plan. */
+    default int estimateBetween(LocalDate from, LocalDate to) {
+        return between(from, to).cardinality();
+    }
+    
+    /** Full-text check against a single entry; {@code term} is already lower-case. */
+    boolean containsText(int id, String term);
+}
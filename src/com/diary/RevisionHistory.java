@@ -0,0 +1,317 @@
+package com.diary;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Saved revisions of each entry file, kept in {@code diary_data/.history} as
+ * one append-only log per entry.
+ *
+ * A revision is normally stored as a delta against the one before it, so an
+ * edit costs about as many bytes as it changed. Each text is split in two at
+ * its first blank line, which in an entry file ends the header, and each
+ * part gets the length of its unchanged prefix and suffix plus the text in
+ * between. Every save rewrites the header's time fields, so with one prefix
+ * and suffix over the whole file the changed span would run from there to
+ * the edit and each delta would copy most of the body. Every
+ * {@link #SNAPSHOT_EVERY}th revision is a full snapshot, so rebuilding any
+ * revision applies fewer than that many deltas. A snapshot is also written
+ * whenever the file on disk no longer matches the last recorded revision
+ * (edited outside the app), since a delta would then apply to the wrong text.
+ *
+ * Record layout: a header line, then the body bytes, then a newline.
+ * <pre>
+ * S rev epochMillis crc32 bodyBytes          snapshot, body is the whole text
+ * D rev epochMillis crc32 prefix suffix bodyBytes   body replaces the middle
+ * P rev epochMillis crc32 headPrefix headSuffix headBytes prefix suffix bodyBytes
+ * </pre>
+ * prefix and suffix count chars of the previous revision; crc32 is of the
+ * resulting text. A P record's body is the middle of the header part
+ * ({@code headBytes} long) followed by the middle of the rest; D records,
+ * one span over the whole text, are only read. A record torn by a crash is
+ * cut off on the next append.
+ */
+class RevisionHistory {
+    static final int SNAPSHOT_EVERY = 16;
+    private static final String EXTENSION = ".hist";
+    
+    static class Revision {
+        final int number;
+        final LocalDateTime time;
+        final boolean snapshot;
+        final int storedBytes;
+        
+        Revision(int number, LocalDateTime time, boolean snapshot, int storedBytes) {
+            this.number = number;
+            this.time = time;
+            this.snapshot = snapshot;
+            this.storedBytes = storedBytes;
+        }
+    }
+    
+    /** Last revision of a log, cached so appending never rereads it. */
+    private static class Tail {
+        int revision;
+        int sinceSnapshot;
+        long crc;
+        long validBytes;
+    }
+    
+    private static class Record {
+        final String[] header;
+        final byte[] body;
+        
+        Record(String[] header, byte[] body) {
+            this.header = header;
+            this.body = body;
+        }
+        
+        boolean isSnapshot() {
+            return header[0].equals("S");
+        }
+        
+        int revision() {
+            return Integer.parseInt(header[1]);
+        }
+        
+        long crc() {
+            return Long.parseLong(header[3], 16);
+        }
+    }
+    
+    private final Path historyDir;
+    private final Map<String, Tail> tails = new ConcurrentHashMap<>();
+    
+    RevisionHistory(Path dataDir) {
+        this.historyDir = dataDir.resolve(".history");
+    }
+    
+    /**
+     * Records {@code newText} as the next revision of {@code fileName}.
+     * {@code previousText} is the file's content before this save, or null if
+     * it is new. Does nothing if the text did not change.
+     */
+    synchronized void record(String fileName, String previousText, String newText) throws IOException {
+        Path log = logFor(fileName);
+        Tail tail = tails.get(fileName);
+        if (tail == null) {
+            tail = readTail(log);
+            tails.put(fileName, tail);
+        }
+        long crc = crc(newText);
+        if (tail.revision > 0 && crc == tail.crc) {
+            return;
+        }
+        
+        int revision = tail.revision + 1;
+        long now = System.currentTimeMillis();
+        boolean snapshot = tail.revision == 0 || previousText == null || crc(previousText) != tail.crc
+            || tail.sinceSnapshot + 1 >= SNAPSHOT_EVERY;
+        String header;
+        byte[] body;
+        if (snapshot) {
+            body = newText.getBytes(StandardCharsets.UTF_8);
+            header = "S " + revision + " " + now + " " + Long.toHexString(crc) + " " + body.length;
+        } else {
+            int previousSplit = split(previousText);
+            int newSplit = split(newText);
+            String previousHead = previousText.substring(0, previousSplit);
+            String newHead = newText.substring(0, newSplit);
+            String previousRest = previousText.substring(previousSplit);
+            String newRest = newText.substring(newSplit);
+            int headPrefix = commonPrefix(previousHead, newHead);
+            int headSuffix = commonSuffix(previousHead, newHead, headPrefix);
+            int prefix = commonPrefix(previousRest, newRest);
+            int suffix = commonSuffix(previousRest, newRest, prefix);
+            byte[] headMiddle = newHead.substring(headPrefix, newHead.length() - headSuffix).getBytes(StandardCharsets.UTF_8);
+            byte[] restMiddle = newRest.substring(prefix, newRest.length() - suffix).getBytes(StandardCharsets.UTF_8);
+            body = new byte[headMiddle.length + restMiddle.length];
+            System.arraycopy(headMiddle, 0, body, 0, headMiddle.length);
+            System.arraycopy(restMiddle, 0, body, headMiddle.length, restMiddle.length);
+            header = "P " + revision + " " + now + " " + Long.toHexString(crc) + " " + headPrefix + " " + headSuffix
+                + " " + headMiddle.length + " " + prefix + " " + suffix + " " + body.length;
+        }
+        
+        Files.createDirectories(historyDir);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Drop any record a crash left half written
+            channel.truncate(tail.validBytes);
+            channel.position(tail.validBytes);
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            out.write((header + "\n").getBytes(StandardCharsets.UTF_8));
+            out.write(body);
+            out.write('\n');
+            out.flush();
+            tail.validBytes = channel.position();
+        }
+        tail.revision = revision;
+        tail.sinceSnapshot = snapshot ? 0 : tail.sinceSnapshot + 1;
+        tail.crc = crc;
+    }
+    
+    /** All revisions of an entry, oldest first. */
+    List<Revision> list(String fileName) throws IOException {
+        List<Revision> revisions = new ArrayList<>();
+        for (Record record : readRecords(logFor(fileName), null)) {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(record.header[2])),
+                ZoneId.systemDefault());
+            revisions.add(new Revision(record.revision(), time, record.isSnapshot(), record.body.length));
+        }
+        return revisions;
+    }
+    
+    /** Text of {@code revision}, applying deltas from the nearest snapshot before it. */
+    String rebuild(String fileName, int revision) throws IOException {
+        List<Record> records = readRecords(logFor(fileName), null);
+        int start = -1;
+        int end = -1;
+        for (int i = 0; i < records.size() && records.get(i).revision() <= revision; i++) {
+            if (records.get(i).isSnapshot()) {
+                start = i;
+            }
+            end = i;
+        }
+        if (start < 0 || records.get(end).revision() != revision) {
+            throw new IOException("No revision " + revision + " of " + fileName);
+        }
+        String text = new String(records.get(start).body, StandardCharsets.UTF_8);
+        for (int i = start + 1; i <= end; i++) {
+            text = apply(text, records.get(i));
+        }
+        if (crc(text) != records.get(end).crc()) {
+            throw new IOException("Revision " + revision + " of " + fileName + " is corrupt");
+        }
+        return text;
+    }
+    
+    private static String apply(String text, Record delta) {
+        String[] h = delta.header;
+        if (h[0].equals("D")) {
+            return replaceMiddle(text, Integer.parseInt(h[4]), Integer.parseInt(h[5]),
+                new String(delta.body, StandardCharsets.UTF_8));
+        }
+        int headBytes = Integer.parseInt(h[6]);
+        int split = split(text);
+        String head = replaceMiddle(text.substring(0, split), Integer.parseInt(h[4]), Integer.parseInt(h[5]),
+            new String(delta.body, 0, headBytes, StandardCharsets.UTF_8));
+        String rest = replaceMiddle(text.substring(split), Integer.parseInt(h[7]), Integer.parseInt(h[8]),
+            new String(delta.body, headBytes, delta.body.length - headBytes, StandardCharsets.UTF_8));
+        return head + rest;
+    }
+    
+    private static String replaceMiddle(String text, int prefix, int suffix, String middle) {
+        return text.substring(0, prefix) + middle + text.substring(text.length() - suffix);
+    }
+    
+    /** Where a text's first part ends: just past its first blank line, or its end if it has none. */
+    private static int split(String text) {
+        int blank = text.indexOf("\n\n");
+        return blank < 0 ? text.length() : blank + 2;
+    }
+    
+    synchronized void delete(String fileName) throws IOException {
+        tails.remove(fileName);
+        Files.deleteIfExists(logFor(fileName));
+    }
+    
+    private Path logFor(String fileName) {
+        return historyDir.resolve(fileName + EXTENSION);
+    }
+    
+    private static Tail readTail(Path log) throws IOException {
+        Tail tail = new Tail();
+        long[] validBytes = new long[1];
+        for (Record record : readRecords(log, validBytes)) {
+            tail.revision = record.revision();
+            tail.sinceSnapshot = record.isSnapshot() ? 0 : tail.sinceSnapshot + 1;
+            tail.crc = record.crc();
+        }
+        tail.validBytes = validBytes[0];
+        return tail;
+    }
+    
+    /** Complete records of a log; stops at a torn one. Sets validBytes[0] to where that is. */
+    private static List<Record> readRecords(Path log, long[] validBytes) throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (!Files.exists(log)) {
+            return records;
+        }
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+            while (true) {
+                String line = readLine(in);
+                if (line == null) {
+                    break;
+                }
+                String[] header = line.split(" ");
+                if (header.length < 5 || !(header[0].equals("S") || header[0].equals("D") || header[0].equals("P"))) {
+                    break;
+                }
+                byte[] body;
+                try {
+                    body = new byte[Integer.parseInt(header[header.length - 1])];
+                    in.readFully(body);
+                    if (in.read() != '\n') {
+                        break;
+                    }
+                } catch (EOFException | NumberFormatException e) {
+                    break;
+                }
+                records.add(new Record(header, body));
+                offset += line.getBytes(StandardCharsets.UTF_8).length + 1 + body.length + 1;
+            }
+        }
+        if (validBytes != null) {
+            validBytes[0] = offset;
+        }
+        return records;
+    }
+    
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                return null; // No complete header line
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+    
+    private static int commonPrefix(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        // Don't split a surrogate pair between prefix and middle
+        return i > 0 && Character.isHighSurrogate(a.charAt(i - 1)) ? i - 1 : i;
+    }
+    
+    private static int commonSuffix(String a, String b, int prefix) {
+        int max = Math.min(a.length(), b.length()) - prefix;
+        int i = 0;
+        while (i < max && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+            i++;
+        }
+        return i > 0 && Character.isLowSurrogate(a.charAt(a.length() - i)) ? i - 1 : i;
+    }
+    
+    private static long crc(String text) {
+        CRC32 crc = new CRC32();
+        crc.update(text.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
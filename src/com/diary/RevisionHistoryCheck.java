@@ -0,0 +1,85 @@
+package com.diary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Checks that {@link RevisionHistory} stores an edit at about its own size.
+ * Saves a 17 KB entry the way the app does, appending a few words each time
+ * with the header's time fields rewritten, then a few edits in the middle
+ * and one to the title. Every delta must stay under {@link #MAX_DELTA_BYTES},
+ * and every revision must rebuild to exactly the text that was saved.
+ *
+ * Usage: {@code java com.diary.RevisionHistoryCheck}. Prints each revision's
+ * stored size and exits with status 1 if any check fails.
+ */
+public class RevisionHistoryCheck {
+    private static final int MAX_DELTA_BYTES = 256;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("h:mm:ss a");
+    
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("history-check");
+        try {
+            System.exit(run(dir) ? 0 : 1);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+    
+    private static boolean run(Path dir) throws IOException {
+        RevisionHistory history = new RevisionHistory(dir);
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 17_000) {
+            body.append("Walked along the river after work and thought about the plans for tomorrow. ");
+        }
+        DiaryEntry entry = new DiaryEntry(LocalDate.of(2025, 3, 1), "9:00:00 AM", "Long day", body.toString(),
+            "Personal", false);
+        entry.setFileName("2025-03-01_long-day.txt");
+        LocalDateTime time = LocalDateTime.of(2025, 3, 1, 9, 0);
+        
+        List<String> saved = new ArrayList<>();
+        String previous = null;
+        for (int save = 0; save < 12; save++) {
+            time = time.plusMinutes(7);
+            if (save < 8) {
+                entry.setContent(entry.getContent() + " more.");
+            } else if (save < 11) {
+                String content = entry.getContent();
+                entry.setContent(content.substring(0, 5_000) + "edited " + content.substring(5_000));
+            } else {
+                entry.setTitle("A long day");
+            }
+            entry.setTime(time.format(TIME_FORMAT));
+            entry.setModified(time);
+            String text = EntryFiles.format(entry);
+            history.record(entry.getFileName(), previous, text);
+            saved.add(text);
+            previous = text;
+        }
+        
+        boolean ok = true;
+        for (RevisionHistory.Revision revision : history.list(entry.getFileName())) {
+            boolean small = revision.snapshot || revision.storedBytes <= MAX_DELTA_BYTES;
+            String rebuilt = history.rebuild(entry.getFileName(), revision.number);
+            boolean exact = rebuilt.equals(saved.get(revision.number - 1));
+            System.out.printf("revision %2d  %-8s %,7d bytes%s%s%n", revision.number,
+                revision.snapshot ? "snapshot" : "delta", revision.storedBytes,
+                small ? "" : "  TOO LARGE", exact ? "" : "  REBUILDS WRONG");
+            ok &= small && exact;
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        entry.release();
+        return ok;
+    }
+}
@@ -0,0 +1,324 @@
+package com.diary;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup snapshot of {@code diary_data/}, kept in {@code diary_data/.snapshot}
+ * so that opening a large diary reads two files instead of every entry.
+ *
+ * The image holds every entry's fields as {@link EntryTable} stores them,
+ * tags and word counts included, and the {@link EntryIndex} over them, and is
+ * written on clean shutdown. Bodies are not in it: they stay in the entry
+ * files and are read when first asked for, so the image grows with the
+ * number of entries, not with what is written in them. Saves and deletes
+ * made after it are appended to a journal and replayed on top, so a crash
+ * loses nothing; writing the next image empties the journal. A save is
+ * journaled as the saved entry's fields, again without its body.
+ *
+ * Each entry carries the size and modification time of its file, and the
+ * image and every journal record carry the modification time of the data
+ * directory. If the directory changed in a way the journal doesn't explain,
+ * files were added, removed or renamed behind the app's back and the caller
+ * checks the directory before trusting the image. Edits made in place don't
+ * touch the directory; those are found by comparing fingerprints later.
+ *
+ * Image layout: magic, version, directory time, entry count, then size and
+ * modification time per entry, the {@link DiaryEntry#writeAll} rows, and
+ * whether an index follows, then the {@link EntryIndex#write} index.
+ * Journal record: kind byte, directory time, then for a save the file name,
+ * size, modification time and the entry's {@link DiaryEntry#writeAll} row;
+ * for a delete the file name. A
+ * record torn by a crash is cut off on the next append, as in
+ * {@link RevisionHistory}.
+ */
+class SnapshotStore {
+    private static final int MAGIC = 0x44534e50; // "DSNP"
+    private static final int VERSION = 2;
+    private static final byte SAVED = 'S';
+    private static final byte DELETED = 'D';
+    private static final byte TOUCHED = 'T';
+    
+    /** Size and modification time of an entry file. */
+    static class Fingerprint {
+        final long size;
+        final long modified;
+        
+        Fingerprint(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+        
+        static Fingerprint of(BasicFileAttributes attributes) {
+            return new Fingerprint(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        }
+        
+        static Fingerprint of(Path file) throws IOException {
+            return of(Files.readAttributes(file, BasicFileAttributes.class));
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Fingerprint && ((Fingerprint) other).size == size
+                && ((Fingerprint) other).modified == modified;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(modified);
+        }
+    }
+    
+    /** What {@link #load} found, journal applied. */
+    static class Image {
+        final List<DiaryEntry> entries;
+        /** Index over exactly {@link #entries}, or null if the image had none. */
+        final EntryIndex index;
+        final Map<String, Fingerprint> fingerprints;
+        final boolean directoryChanged;
+        
+        Image(List<DiaryEntry> entries, EntryIndex index, Map<String, Fingerprint> fingerprints,
+              boolean directoryChanged) {
+            this.entries = entries;
+            this.index = index;
+            this.fingerprints = fingerprints;
+            this.directoryChanged = directoryChanged;
+        }
+    }
+    
+    private final Path dataDir;
+    private final Path snapshotDir;
+    private final Path imageFile;
+    private final Path journalFile;
+    private long journalBytes = -1; // Length of the complete records, -1 until read
+    private long knownDirectoryTime;
+    
+    SnapshotStore(Path dataDir) {
+        this.dataDir = dataDir;
+        this.snapshotDir = dataDir.resolve(".snapshot");
+        this.imageFile = snapshotDir.resolve("entries.snap");
+        this.journalFile = snapshotDir.resolve("journal");
+    }
+    
+    /** The image with the journal replayed on it, or null if there is no usable image. */
+    synchronized Image load() throws IOException {
+        if (!Files.exists(imageFile)) {
+            return null;
+        }
+        Map<String, DiaryEntry> entries = new LinkedHashMap<>();
+        Map<String, Fingerprint> fingerprints = new HashMap<>();
+        EntryIndex index = null;
+        long recordedTime;
+        try {
+            // One read and bulk copies out of it; the columns are laid out for exactly this
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(imageFile));
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                System.err.println("Startup snapshot is from another version, rebuilding");
+                return null;
+            }
+            recordedTime = in.getLong();
+            Fingerprint[] sizes = new Fingerprint[in.getInt()];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = new Fingerprint(in.getLong(), in.getLong());
+            }
+            List<DiaryEntry> rows = DiaryEntry.readAll(in);
+            if (rows.size() != sizes.length) {
+                rows.forEach(DiaryEntry::release);
+                throw new IOException("expected " + sizes.length + " entries, found " + rows.size());
+            }
+            for (int i = 0; i < sizes.length; i++) {
+                entries.put(rows.get(i).getFileName(), rows.get(i));
+                fingerprints.put(rows.get(i).getFileName(), sizes[i]);
+            }
+            try {
+                index = in.get() != 0 ? EntryIndex.read(in, rows) : null;
+            } catch (RuntimeException e) {
+                rows.forEach(DiaryEntry::release);
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Startup snapshot unreadable, rebuilding: " + e);
+            return null;
+        }
+        
+        // Only the last save of each file becomes an entry; null for a delete
+        Map<String, byte[]> journaled = new LinkedHashMap<>();
+        recordedTime = replayJournal(journaled, fingerprints, recordedTime);
+        for (Map.Entry<String, byte[]> saved : journaled.entrySet()) {
+            String fileName = saved.getKey();
+            DiaryEntry entry = saved.getValue() == null ? null
+                : DiaryEntry.readAll(ByteBuffer.wrap(saved.getValue())).get(0);
+            DiaryEntry previous = entry == null ? entries.remove(fileName) : entries.put(fileName, entry);
+            if (previous != null) {
+                if (index != null) {
+                    index.remove(previous);
+                }
+                previous.release();
+            }
+            if (entry != null && index != null) {
+                index.update(entry);
+            }
+        }
+        knownDirectoryTime = recordedTime;
+        return new Image(new ArrayList<>(entries.values()), index, fingerprints, recordedTime != directoryTime());
+    }
+    
+    /**
+     * Writes a new image of {@code entries} and empties the journal; entries
+     * need a fingerprint each. {@code index} goes in too if it holds exactly
+     * those entries, and must not change while this runs.
+     */
+    synchronized void write(List<DiaryEntry> entries, EntryIndex index, Map<String, Fingerprint> fingerprints)
+            throws IOException {
+        long before = directoryTime();
+        Files.createDirectories(snapshotDir);
+        if (before == knownDirectoryTime) {
+            // Making our own directory is no reason to distrust the image
+            knownDirectoryTime = directoryTime();
+        }
+        Path temp = Files.createTempFile(snapshotDir, ".entries", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(knownDirectoryTime);
+                out.writeInt(entries.size());
+                for (DiaryEntry entry : entries) {
+                    Fingerprint fingerprint = fingerprints.get(entry.getFileName());
+                    out.writeLong(fingerprint.size);
+                    out.writeLong(fingerprint.modified);
+                }
+                DiaryEntry.writeAll(out, entries);
+                boolean withIndex = index != null && index.covers(entries);
+                out.writeBoolean(withIndex);
+                if (withIndex) {
+                    index.write(out, entries);
+                }
+            }
+            Files.move(temp, imageFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        Files.deleteIfExists(journalFile);
+        journalBytes = 0;
+    }
+    
+    /** Drops the image and journal, after a full load has replaced what they described. */
+    synchronized void reset(long directoryTime) throws IOException {
+        Files.deleteIfExists(imageFile);
+        Files.deleteIfExists(journalFile);
+        journalBytes = 0;
+        knownDirectoryTime = directoryTime;
+    }
+    
+    /** Records that the directory was checked against the fingerprints as of {@code directoryTime}. */
+    synchronized void directoryChecked(long directoryTime) {
+        knownDirectoryTime = directoryTime;
+    }
+    
+    /** Records that {@code saved}, whose fields are as in its file, was written to {@code fileName}. */
+    synchronized void journalSaved(String fileName, Fingerprint fingerprint, DiaryEntry saved) throws IOException {
+        ByteArrayOutputStream row = new ByteArrayOutputStream();
+        DiaryEntry.writeAll(new DataOutputStream(row), List.of(saved));
+        append(SAVED, out -> {
+            out.writeUTF(fileName);
+            out.writeLong(fingerprint.size);
+            out.writeLong(fingerprint.modified);
+            out.writeInt(row.size());
+            row.writeTo(out);
+        });
+    }
+    
+    synchronized void journalDeleted(String fileName) throws IOException {
+        append(DELETED, out -> out.writeUTF(fileName));
+    }
+    
+    /** Records a change to the directory that isn't an entry, such as saving the profile. */
+    synchronized void journalTouched() throws IOException {
+        append(TOUCHED, out -> { });
+    }
+    
+    /** Modification time of the data directory, which changes when a file in it is added, removed or renamed. */
+    long directoryTime() throws IOException {
+        return Files.getLastModifiedTime(dataDir).to(TimeUnit.NANOSECONDS);
+    }
+    
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+    
+    private void append(byte kind, Payload payload) throws IOException {
+        long directoryTime = directoryTime();
+        knownDirectoryTime = directoryTime;
+        if (!Files.exists(imageFile)) {
+            return; // Nothing to replay it on; the next load reads every file anyway
+        }
+        if (journalBytes < 0) {
+            replayJournal(null, null, 0);
+        }
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Drop any record a crash left half written
+            channel.truncate(journalBytes);
+            channel.position(journalBytes);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeByte(kind);
+            out.writeLong(directoryTime);
+            payload.write(out);
+            out.flush();
+            journalBytes = channel.position();
+        }
+    }
+    
+    /**
+     * Applies the complete journal records to {@code saved} (the last row
+     * saved per file, null once deleted) and {@code fingerprints}, or only
+     * finds where they end if those are null. Returns the directory time of
+     * the last record, or {@code directoryTime} if there are none.
+     */
+    private long replayJournal(Map<String, byte[]> saved, Map<String, Fingerprint> fingerprints,
+                               long directoryTime) throws IOException {
+        journalBytes = 0;
+        if (!Files.exists(journalFile)) {
+            return directoryTime;
+        }
+        byte[] journal = Files.readAllBytes(journalFile);
+        ByteArrayInputStream bytes = new ByteArrayInputStream(journal);
+        DataInputStream in = new DataInputStream(bytes);
+        while (true) {
+            int kind = in.read();
+            if (kind != SAVED && kind != DELETED && kind != TOUCHED) {
+                break;
+            }
+            try {
+                long recordTime = in.readLong();
+                if (kind == SAVED) {
+                    String fileName = in.readUTF();
+                    Fingerprint fingerprint = new Fingerprint(in.readLong(), in.readLong());
+                    byte[] row = new byte[in.readInt()];
+                    in.readFully(row);
+                    if (saved != null) {
+                        saved.put(fileName, row);
+                        fingerprints.put(fileName, fingerprint);
+                    }
+                } else if (kind == DELETED) {
+                    String fileName = in.readUTF();
+                    if (saved != null) {
+                        saved.put(fileName, null);
+                        fingerprints.remove(fileName);
+                    }
+                }
+                directoryTime = recordTime;
+                journalBytes = journal.length - bytes.available();
+            } catch (EOFException | NegativeArraySizeException e) {
+                break;
+            }
+        }
+        return directoryTime;
+    }
+}
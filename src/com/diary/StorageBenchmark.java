@@ -0,0 +1,144 @@
+package com.diary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Runs the same workload against every {@link EntryStorage} engine, so an
+ * engine can be picked on numbers: write every entry and flush, reopen,
+ * read them all, read at random, rewrite a fifth and delete a tenth.
+ *
+ * Usage: {@code java com.diary.StorageBenchmark [entries] [engine...]}
+ * (defaults 20000 and all of files, log and memory). Each engine works in a
+ * fresh temp directory that is removed afterwards. The memory engine keeps
+ * nothing across a reopen, so its reopen reuses the open instance.
+ */
+public class StorageBenchmark {
+    private static final String[] CATEGORIES = {"Personal", "Work", "Health", "Travel", "Ideas"};
+    private static final String[] WORDS = {"today", "walked", "the", "river", "and", "thought", "about", "work",
+        "#ideas", "coffee", "with", "friends", "tired", "but", "happy", "plans", "for", "tomorrow", "#travel"};
+    
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        List<String> engines = args.length > 1
+            ? Arrays.asList(args).subList(1, args.length) : List.of("files", "log", "memory");
+        
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        Random random = new Random(42);
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            DiaryEntry entry = newEntry(i, random);
+            byte[] data = EntryFiles.format(entry).getBytes(StandardCharsets.UTF_8);
+            entries.put(entry.getFileName(), data);
+            bytes += data.length;
+        }
+        List<String> names = new ArrayList<>(entries.keySet());
+        System.out.printf("%,d entries, %,d bytes of text%n%n", count, bytes);
+        System.out.printf("%-8s %12s %10s %12s %12s %12s %12s %12s%n", "engine", "write/s", "reopen ms",
+            "read all/s", "random/s", "rewrite/s", "delete/s", "disk bytes");
+        
+        for (String engine : engines) {
+            Path dir = Files.createTempDirectory("storage-benchmark");
+            try {
+                run(engine, dir, entries, names);
+            } finally {
+                deleteTree(dir);
+            }
+        }
+    }
+    
+    private static void run(String engine, Path dir, Map<String, byte[]> entries, List<String> names) throws IOException {
+        Random random = new Random(7);
+        EntryStorage storage = EntryStorage.open(engine, dir);
+        
+        long start = System.nanoTime();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            storage.write(entry.getKey(), entry.getValue());
+        }
+        storage.flush();
+        double writeRate = rate(entries.size(), start);
+        
+        start = System.nanoTime();
+        if (!engine.equals("memory")) {
+            storage.close();
+            storage = EntryStorage.open(engine, dir);
+        }
+        double reopenMillis = (System.nanoTime() - start) / 1e6;
+        
+        start = System.nanoTime();
+        List<String> stored = storage.names();
+        long checksum = 0;
+        for (String name : stored) {
+            checksum += storage.read(name).length;
+        }
+        double readAllRate = rate(stored.size(), start);
+        if (stored.size() != entries.size()) {
+            throw new IllegalStateException(engine + " returned " + stored.size() + " of " + entries.size() + " entries");
+        }
+        
+        start = System.nanoTime();
+        for (int i = 0; i < entries.size(); i++) {
+            checksum += storage.read(names.get(random.nextInt(names.size()))).length;
+        }
+        double randomRate = rate(entries.size(), start);
+        
+        int rewrites = entries.size() / 5;
+        start = System.nanoTime();
+        for (int i = 0; i < rewrites; i++) {
+            String name = names.get(random.nextInt(names.size()));
+            byte[] data = entries.get(name);
+            storage.write(name, Arrays.copyOf(data, data.length + 1));
+        }
+        storage.flush();
+        double rewriteRate = rate(rewrites, start);
+        
+        int deletes = entries.size() / 10;
+        start = System.nanoTime();
+        for (int i = 0; i < deletes; i++) {
+            storage.delete(names.get(i * 10));
+        }
+        storage.flush();
+        double deleteRate = rate(deletes, start);
+        
+        storage.close();
+        System.out.printf("%-8s %,12.0f %,10.1f %,12.0f %,12.0f %,12.0f %,12.0f %,12d%n", engine, writeRate, reopenMillis,
+            readAllRate, randomRate, rewriteRate, deleteRate, diskBytes(dir) + (checksum == 42 ? 1 : 0));
+    }
+    
+    private static DiaryEntry newEntry(int i, Random random) {
+        LocalDateTime created = LocalDateTime.of(2020, 1, 1, 7, 0).plusMinutes(i * 97L + random.nextInt(60));
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 600) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        DiaryEntry entry = new DiaryEntry(created.toLocalDate(), "7:00:00 AM", "Entry " + i, text.toString(),
+            CATEGORIES[random.nextInt(CATEGORIES.length)], random.nextInt(5) == 0);
+        entry.setCreated(created);
+        entry.setTags(TagIndex.extractTags(entry.getTitle() + "\n" + entry.getContent()));
+        entry.setFileName(EntryFiles.fileNameFor(entry, Set.of()));
+        return entry;
+    }
+    
+    private static double rate(int operations, long startNanos) {
+        return operations / ((System.nanoTime() - startNanos) / 1e9);
+    }
+    
+    private static long diskBytes(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+    
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.diary;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index from hashtag to the ids of the entries that use it.
+ *
+ * Tags are pulled out of entry text on save ("#travel", "#work-notes") and
+ * stored lower-case. Filters, intersections and counts work on the bitmaps
+ * directly, so none of them touch the entries themselves.
+ */
+public class TagIndex {
+    private static final Pattern HASHTAG = Pattern.compile("(?<![\\w#&])#([\\p{L}\\p{N}_][\\p{L}\\p{N}_-]*)");
+    private static final EntryBitmap EMPTY = new EntryBitmap();
+    
+    private final Map<String, EntryBitmap> postings = new HashMap<>();
+    private final Map<Integer, Set<String>> tagsById = new HashMap<>();
+    
+    public static Set<String> extractTags(String text) {
+        Set<String> tags = new LinkedHashSet<>();
+        if (text == null || text.indexOf('#') < 0) {
+            return tags;
+        }
+        Matcher matcher = HASHTAG.matcher(text);
+        while (matcher.find()) {
+            tags.add(matcher.group(1).toLowerCase(Locale.ROOT));
+        }
+        return tags;
+    }
+    
+    public void update(int id, Set<String> tags) {
+        Set<String> previous = tagsById.getOrDefault(id, Collections.emptySet());
+        for (String tag : previous) {
+            if (!tags.contains(tag)) {
+                removePosting(tag, id);
+            }
+        }
+        for (String tag : tags) {
+            if (!previous.contains(tag)) {
+                postings.computeIfAbsent(tag, t -> new EntryBitmap()).add(id);
+            }
+        }
+        if (tags.isEmpty()) {
+            tagsById.remove(id);
+        } else {
+            tagsById.put(id, new LinkedHashSet<>(tags));
+        }
+    }
+    
+    public void remove(int id) {
+        Set<String> previous = tagsById.remove(id);
+        if (previous != null) {
+            for (String tag : previous) {
+                removePosting(tag, id);
+            }
+        }
+    }
+    
+    /** Returns the live posting list for a tag; callers must not modify it. */
+    public EntryBitmap withTag(String tag) {
+        return postings.getOrDefault(normalize(tag), EMPTY);
+    }
+    
+    public EntryBitmap withAllTags(Collection<String> tags) {
+        List<EntryBitmap> lists = new ArrayList<>();
+        for (String tag : tags) {
+            lists.add(withTag(tag));
+        }
+        if (lists.isEmpty()) {
+            return new EntryBitmap();
+        }
+        // Start from the rarest tag so every later intersection is as small as possible
+        lists.sort(Comparator.comparingInt(EntryBitmap::cardinality));
+        EntryBitmap result = lists.get(0).copy();
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result = result.and(lists.get(i));
+        }
+        return result;
+    }
+    
+    public EntryBitmap withAnyTag(Collection<String> tags) {
+        EntryBitmap result = new EntryBitmap();
+        for (String tag : tags) {
+            result = result.or(withTag(tag));
+        }
+        return result;
+    }
+    
+    public int count(String tag) {
+        return withTag(tag).cardinality();
+    }
+    
+    public Set<String> tagsOf(int id) {
+        return Collections.unmodifiableSet(tagsById.getOrDefault(id, Collections.emptySet()));
+    }
+    
+    /** Tags with their entry counts, most used first. */
+    public List<Map.Entry<String, Integer>> tagCounts() {
+        List<Map.Entry<String, Integer>> counts = new ArrayList<>(postings.size());
+        for (Map.Entry<String, EntryBitmap> posting : postings.entrySet()) {
+            counts.add(new AbstractMap.SimpleImmutableEntry<>(posting.getKey(), posting.getValue().cardinality()));
+        }
+        counts.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+            .thenComparing(Map.Entry.comparingByKey()));
+        return counts;
+    }
+    
+    /** Writes the postings for {@link #read}, each id given as {@code toPosition[id]}. */
+    void write(DataOutputStream out, int[] toPosition) throws IOException {
+        List<String> names = new ArrayList<>(postings.keySet());
+        EntryTable.writeStrings(out, names);
+        for (String tag : names) {
+            postings.get(tag).map(toPosition).write(out);
+        }
+    }
+    
+    /**
+     * Fills an empty index with the postings written by {@link #write}, each
+     * position given as {@code toId[position]}, or kept as it is if
+     * {@code toId} is null.
+     */
+    void read(ByteBuffer in, int[] toId) {
+        for (String tag : EntryTable.readStrings(in)) {
+            EntryBitmap ids = EntryBitmap.read(in).map(toId);
+            postings.put(tag, ids);
+            // Compact sets, since nearly every entry has one or two tags and they are only read
+            ids.forEach(id -> tagsById.merge(id, Set.of(tag), TagIndex::union));
+        }
+    }
+    
+    private static Set<String> union(Set<String> tags, Set<String> more) {
+        List<String> all = new ArrayList<>(tags);
+        all.addAll(more);
+        return Set.copyOf(all);
+    }
+    
+    private void removePosting(String tag, int id) {
+        EntryBitmap bitmap = postings.get(tag);
+        if (bitmap != null) {
+            bitmap.remove(id);
+            if (bitmap.isEmpty()) {
+                postings.remove(tag);
+            }
+        }
+    }
+    
+    private static String normalize(String tag) {
+        String trimmed = tag.trim().toLowerCase(Locale.ROOT);
+        return trimmed.startsWith("#") ? trimmed.substring(1) : trimmed;
+    }
+}
@@ -0,0 +1,82 @@
+package com.diary;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only byte storage outside the Java heap, in direct buffers of 1 MB.
+ *
+ * A stored run is addressed by a handle: its page in the high 32 bits and
+ * its offset in the low 32. Runs never move and are never overwritten;
+ * replacing text stores it again and {@link #release} counts the old run as
+ * garbage, which the owner reclaims by copying the live runs into a fresh
+ * arena once {@link #wantsCompaction} says garbage outweighs them.
+ *
+ * Not thread-safe; {@link EntryTable} guards it.
+ */
+class TextArena {
+    private static final int PAGE_SIZE = 1024 * 1024;
+    private static final int OWN_PAGE_THRESHOLD = PAGE_SIZE / 4;
+    
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    private ByteBuffer current;
+    private int currentIndex;
+    private long reservedBytes;
+    private long liveBytes;
+    private long garbageBytes;
+    
+    long write(byte[] data) {
+        return write(ByteBuffer.wrap(data));
+    }
+    
+    /** Stores the remaining bytes of {@code data}, consuming them. */
+    long write(ByteBuffer data) {
+        int length = data.remaining();
+        ByteBuffer page;
+        int index;
+        if (length > OWN_PAGE_THRESHOLD) {
+            // A large run gets a page of its own so it doesn't strand the rest of a shared one
+            page = ByteBuffer.allocateDirect(length);
+            index = pages.size();
+            pages.add(page);
+            reservedBytes += length;
+        } else {
+            if (current == null || current.remaining() < length) {
+                current = ByteBuffer.allocateDirect(PAGE_SIZE);
+                currentIndex = pages.size();
+                pages.add(current);
+                reservedBytes += PAGE_SIZE;
+            }
+            page = current;
+            index = currentIndex;
+        }
+        int offset = page.position();
+        page.put(data);
+        liveBytes += length;
+        return (long) index << 32 | offset;
+    }
+    
+    /** Copies {@code length} bytes of the run at {@code handle} into {@code target}. */
+    void read(long handle, byte[] target, int length) {
+        pages.get((int) (handle >>> 32)).get((int) handle, target, 0, length);
+    }
+    
+    void release(int length) {
+        liveBytes -= length;
+        garbageBytes += length;
+    }
+    
+    boolean wantsCompaction() {
+        return garbageBytes > PAGE_SIZE && garbageBytes > liveBytes;
+    }
+    
+    /** Direct memory held, including the unused tail of the current page and garbage. */
+    long reservedBytes() {
+        return reservedBytes;
+    }
+    
+    long liveBytes() {
+        return liveBytes;
+    }
+}